@@ -82,8 +82,6 @@ public class RouterStatusController {
             return;
         }
 
-        RouterManagement routerManagement = RouterManagement.withCerts(vertx, "address-space-controller", connectTimeout, queryTimeout, cert, cert, key);
-
         String infraUuid = addressSpace.getAnnotation(AnnotationKeys.INFRA_UUID);
         Map<RouterEntity, Map<String, List<List<?>>>> results = new HashMap<>();
 
@@ -91,6 +89,7 @@ public class RouterStatusController {
                 .filter(Readiness::isPodReady)
                 .collect(Collectors.toList());
 
+        RouterManagement routerManagement = RouterManagement.withCerts(vertx, "address-space-controller", connectTimeout, queryTimeout, cert, cert, key);
         for (Pod router : routerPods) {
             try {
                 int port = 0;
@@ -117,6 +116,8 @@ public class RouterStatusController {
                 log.info("Error requesting registered topics from {}. Ignoring", router.getMetadata().getName(), e);
             }
         }
+        // The client certificate is specific to the address space, so its connections are not kept around
+        routerManagement.close();
 
         if (results.containsKey(connection)) {
             Map<String, AddressSpaceSpecConnector> connectorMap = new HashMap<>();
@@ -5,6 +5,7 @@
 
 package io.enmasse.amqp;
 
+import io.vertx.core.Context;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
 import org.apache.qpid.proton.amqp.messaging.AmqpValue;
@@ -14,14 +15,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /**
  * Represents an Artemis broker that may be managed
  */
 public class Artemis implements AutoCloseable {
     private static final Logger log = LoggerFactory.getLogger(Artemis.class.getName());
+    // Max number of operations of a batch in flight at once
+    private static final int BATCH_WINDOW = 100;
     private final long requestTimeoutMillis;
     private final SyncRequestClient syncRequestClient;
 
@@ -57,6 +64,11 @@ public class Artemis implements AutoCloseable {
     }
 
     private Message doRequestResponse(long timeout, TimeUnit timeUnit, Message message, Object ... parameters) throws TimeoutException {
+        setParameters(message, parameters);
+        return syncRequestClient.request(message, timeout, timeUnit);
+    }
+
+    private static void setParameters(Message message, Object ... parameters) {
         JsonArray params = new JsonArray();
         for (Object param : parameters) {
             if (param == null) {
@@ -67,10 +79,87 @@ public class Artemis implements AutoCloseable {
         }
 
         message.setBody(new AmqpValue(Json.encode(params)));
-        return syncRequestClient.request(message, timeout, timeUnit);
     }
 
-    private Message createOperationMessage(String resource, String operation) {
+    /**
+     * Run an operation for each key, pipelining the requests over the management link. Failed operations are
+     * reported in the result rather than stopping the batch.
+     *
+     * The batch waits for the responses, which are received on the event loop of the client, so it must not be run
+     * from an event loop thread.
+     */
+    private <K, V> BatchResult<K, V> doBatch(Collection<K> keys, Function<K, Message> requestFactory, Function<Message, V> responseParser) throws InterruptedException {
+        if (Context.isOnEventLoopThread()) {
+            throw new IllegalStateException("Batch operations on broker " + syncRequestClient.getRemoteContainer() + " block waiting for the responses, they must not be run from an event loop thread");
+        }
+        BatchResult<K, V> result = new BatchResult<>();
+        Semaphore window = new Semaphore(BATCH_WINDOW);
+        CountDownLatch done = new CountDownLatch(keys.size());
+        for (K key : keys) {
+            window.acquire();
+            CompletableFuture<Message> response;
+            try {
+                response = syncRequestClient.requestAsync(requestFactory.apply(key), requestTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                response = new CompletableFuture<>();
+                response.completeExceptionally(e);
+            }
+            response.whenComplete((message, error) -> {
+                try {
+                    if (error != null) {
+                        result.failed(key, error instanceof Exception ? (Exception) error : new RuntimeException(error));
+                    } else {
+                        checkSucceeded(message);
+                        result.succeeded(key, responseParser.apply(message));
+                    }
+                } catch (Exception e) {
+                    result.failed(key, e);
+                } finally {
+                    window.release();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (!result.isSuccess()) {
+            log.warn("Batch on broker {} completed with failures: {}", syncRequestClient.getRemoteContainer(), result);
+        }
+        return result;
+    }
+
+    private static void checkSucceeded(Message response) {
+        if (response.getApplicationProperties() != null) {
+            Object succeeded = response.getApplicationProperties().getValue().get("_AMQ_OperationSucceeded");
+            if (Boolean.FALSE.equals(succeeded)) {
+                Object error = response.getBody() instanceof AmqpValue ? ((AmqpValue) response.getBody()).getValue() : null;
+                throw new IllegalStateException("Operation failed: " + error);
+            }
+        }
+    }
+
+    private static Message createOperationRequest(String resource, String operation, Object ... parameters) {
+        Message message = createOperationMessage(resource, operation);
+        setParameters(message, parameters);
+        return message;
+    }
+
+    private static Message createAttributeRequest(String resource, String attribute, Object ... parameters) {
+        Message message = createAttributeMessage(resource, attribute);
+        setParameters(message, parameters);
+        return message;
+    }
+
+    private static String getStringResult(Message response) {
+        String payload = (String) ((AmqpValue)response.getBody()).getValue();
+        return new JsonArray(payload).getString(0);
+    }
+
+    private static Long getLongResult(Message response) {
+        String payload = (String) ((AmqpValue)response.getBody()).getValue();
+        return new JsonArray(payload).getLong(0);
+    }
+
+    private static Message createOperationMessage(String resource, String operation) {
         Message message = Message.Factory.create();
         Map<String, Object> properties = new LinkedHashMap<>();
         properties.put("_AMQ_ResourceName", resource);
@@ -79,7 +168,7 @@ public class Artemis implements AutoCloseable {
         return message;
     }
 
-    private Message createAttributeMessage(String resource, String attribute) {
+    private static Message createAttributeMessage(String resource, String attribute) {
         Message message = Message.Factory.create();
         Map<String, Object> properties = new LinkedHashMap<>();
         properties.put("_AMQ_ResourceName", resource);
@@ -126,6 +215,39 @@ public class Artemis implements AutoCloseable {
         return json.getLong(0);
     }
 
+    /**
+     * Get the message count of many queues at once.
+     */
+    public BatchResult<String, Long> getQueueMessageCounts(Collection<String> queueNames) throws InterruptedException {
+        log.info("Checking message count for {} queues on broker {}", queueNames.size(), syncRequestClient.getRemoteContainer());
+        return doBatch(queueNames, queueName -> createAttributeRequest("queue." + queueName, "messageCount"), Artemis::getLongResult);
+    }
+
+    public BatchResult<String, String> getQueueAddresses(Collection<String> queueNames) throws InterruptedException {
+        log.info("Checking queue address for {} queues on broker {}", queueNames.size(), syncRequestClient.getRemoteContainer());
+        return doBatch(queueNames, queueName -> createOperationRequest("queue." + queueName, "getAddress"), Artemis::getStringResult);
+    }
+
+    /**
+     * Create many queues at once.
+     *
+     * @param queues address by queue name
+     */
+    public BatchResult<String, Void> createQueues(Map<String, String> queues) throws InterruptedException {
+        log.info("Creating {} queues on broker {}", queues.size(), syncRequestClient.getRemoteContainer());
+        return doBatch(queues.keySet(), name -> createOperationRequest("broker", "createQueue", queues.get(name), "ANYCAST", name, null, true, -1, false, true), response -> null);
+    }
+
+    public BatchResult<String, Void> destroyQueues(Collection<String> queueNames) throws InterruptedException {
+        log.info("Destroying {} queues on broker {}", queueNames.size(), syncRequestClient.getRemoteContainer());
+        return doBatch(queueNames, name -> createOperationRequest("broker", "destroyQueue", name, true), response -> null);
+    }
+
+    public BatchResult<String, Void> purgeQueues(Collection<String> queueNames) throws InterruptedException {
+        log.info("Purging {} queues on broker {}", queueNames.size(), syncRequestClient.getRemoteContainer());
+        return doBatch(queueNames, name -> createOperationRequest("queue." + name, "removeAllMessages"), response -> null);
+    }
+
     public String getQueueAddress(String queueName) throws TimeoutException {
         log.info("Checking queue address for queue {} on broker {}", queueName, syncRequestClient.getRemoteContainer());
         Message response = doOperation("queue." + queueName, "getAddress");
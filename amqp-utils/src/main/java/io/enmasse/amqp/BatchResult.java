@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.amqp;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of a batch of operations, one per key, some of which may have failed.
+ */
+public class BatchResult<K, V> {
+    private final Map<K, V> results = new LinkedHashMap<>();
+    private final Map<K, Exception> failures = new LinkedHashMap<>();
+
+    synchronized void succeeded(K key, V value) {
+        results.put(key, value);
+    }
+
+    synchronized void failed(K key, Exception cause) {
+        failures.put(key, cause);
+    }
+
+    /**
+     * Results of the operations that succeeded, by key.
+     */
+    public synchronized Map<K, V> getResults() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(results));
+    }
+
+    /**
+     * Causes of the operations that failed, by key.
+     */
+    public synchronized Map<K, Exception> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    public synchronized boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * Get the results, failing if any of the operations failed. The failures are suppressed in the thrown exception.
+     */
+    public synchronized Map<K, V> getResultsOrThrow() throws Exception {
+        if (!failures.isEmpty()) {
+            Exception exception = new Exception(failures.size() + " of " + (failures.size() + results.size()) + " operations failed: " + failures.keySet());
+            for (Exception failure : failures.values()) {
+                exception.addSuppressed(failure);
+            }
+            throw exception;
+        }
+        return getResults();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "{results=" + results.size() + ",failures=" + failures.keySet() + "}";
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.amqp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queues of encoded messages by address, stored in off-heap segments.
+ *
+ * Addresses are spread over lock stripes, so that publishers and subscribers of different addresses don't contend.
+ * Each message is stored as its length followed by its bytes, appended to the last segment of its queue, so the
+ * heap holds a few objects per segment rather than per message.
+ */
+class MessageStore {
+    static final int DEFAULT_STRIPES = 16;
+    static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    private final Stripe[] stripes;
+    private final int segmentSize;
+
+    MessageStore() {
+        this(DEFAULT_STRIPES, DEFAULT_SEGMENT_SIZE);
+    }
+
+    MessageStore(int numStripes, int segmentSize) {
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.segmentSize = segmentSize;
+    }
+
+    private Stripe stripe(String address) {
+        return stripes[(address.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    /**
+     * Create the queue of an address if it does not exist.
+     */
+    void create(String address) {
+        Stripe stripe = stripe(address);
+        synchronized (stripe) {
+            stripe.queues.computeIfAbsent(address, a -> new AddressQueue(segmentSize));
+        }
+    }
+
+    boolean exists(String address) {
+        Stripe stripe = stripe(address);
+        synchronized (stripe) {
+            return stripe.queues.containsKey(address);
+        }
+    }
+
+    /**
+     * Append a message to the queue of an address, creating it if it does not exist.
+     */
+    void add(String address, byte[] data, int offset, int length) {
+        Stripe stripe = stripe(address);
+        synchronized (stripe) {
+            stripe.queues.computeIfAbsent(address, a -> new AddressQueue(segmentSize)).add(data, offset, length);
+        }
+    }
+
+    /**
+     * Remove the first message of the queue of an address, null if there is none.
+     */
+    byte[] poll(String address) {
+        Stripe stripe = stripe(address);
+        synchronized (stripe) {
+            AddressQueue queue = stripe.queues.get(address);
+            return queue != null ? queue.poll() : null;
+        }
+    }
+
+    /**
+     * The messages of the queue of an address without removing them, null if the queue does not exist.
+     */
+    List<byte[]> peekAll(String address) {
+        Stripe stripe = stripe(address);
+        synchronized (stripe) {
+            AddressQueue queue = stripe.queues.get(address);
+            return queue != null ? queue.peekAll() : null;
+        }
+    }
+
+    /**
+     * Number of messages in the queue of an address, -1 if the queue does not exist.
+     */
+    int size(String address) {
+        Stripe stripe = stripe(address);
+        synchronized (stripe) {
+            AddressQueue queue = stripe.queues.get(address);
+            return queue != null ? queue.size : -1;
+        }
+    }
+
+    private static class Stripe {
+        private final Map<String, AddressQueue> queues = new HashMap<>();
+    }
+
+    /**
+     * A queue of messages over a list of segments, written at the end of the last and read from the start of the first.
+     */
+    private static class AddressQueue {
+        private final int segmentSize;
+        private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+        private Segment spare;
+        private int size;
+
+        private AddressQueue(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        private void add(byte[] data, int offset, int length) {
+            int required = Integer.BYTES + length;
+            Segment tail = segments.peekLast();
+            if (tail == null || tail.writer.remaining() < required) {
+                tail = allocate(required);
+                segments.addLast(tail);
+            }
+            tail.writer.putInt(length);
+            tail.writer.put(data, offset, length);
+            size++;
+        }
+
+        private byte[] poll() {
+            Segment head = segments.peekFirst();
+            if (head == null || size == 0) {
+                return null;
+            }
+            if (!head.hasNext()) {
+                // Only the last segment can be written to, so there is a next one
+                segments.removeFirst();
+                release(head);
+                head = segments.peekFirst();
+            }
+            byte[] data = head.next(head.reader);
+            size--;
+            if (size == 0) {
+                // Reuse the segment from its start
+                segments.clear();
+                release(head);
+            }
+            return data;
+        }
+
+        private List<byte[]> peekAll() {
+            List<byte[]> messages = new ArrayList<>(size);
+            Iterator<Segment> iterator = segments.iterator();
+            while (iterator.hasNext()) {
+                Segment segment = iterator.next();
+                ByteBuffer reader = segment.reader.duplicate();
+                while (reader.position() < segment.writer.position()) {
+                    messages.add(segment.next(reader));
+                }
+            }
+            return messages;
+        }
+
+        private Segment allocate(int required) {
+            if (spare != null && required <= spare.writer.capacity()) {
+                Segment segment = spare;
+                spare = null;
+                return segment;
+            }
+            return new Segment(ByteBuffer.allocateDirect(Math.max(segmentSize, required)));
+        }
+
+        /**
+         * Keep one segment of the default size to avoid allocating direct memory when the queue is drained and filled.
+         */
+        private void release(Segment segment) {
+            if (segment.writer.capacity() == segmentSize) {
+                segment.writer.clear();
+                segment.reader.clear();
+                spare = segment;
+            }
+        }
+    }
+
+    private static class Segment {
+        private final ByteBuffer writer;
+        private final ByteBuffer reader;
+
+        private Segment(ByteBuffer buffer) {
+            this.writer = buffer;
+            this.reader = buffer.duplicate();
+        }
+
+        private boolean hasNext() {
+            return reader.position() < writer.position();
+        }
+
+        private byte[] next(ByteBuffer from) {
+            int length = from.getInt();
+            byte[] data = new byte[length];
+            from.get(data);
+            return data;
+        }
+    }
+}
@@ -14,24 +14,31 @@ import org.apache.qpid.proton.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.*;
 
 /**
  * A simple client for doing request-response over AMQP.
+ *
+ * Requests are correlated with their responses by correlation-id, so that multiple requests
+ * can be in flight at once over the same link, each one with its own timeout.
  */
 public class ProtonRequestClient implements SyncRequestClient {
     private static final Logger log = LoggerFactory.getLogger(ProtonRequestClient.class);
     private final Vertx vertx;
     private final int maxRetries;
     private final String containerId;
-    private final BlockingQueue<Message> replies = new LinkedBlockingQueue<>();
+    private final Map<Object, CompletableFuture<Message>> pendingRequests = new ConcurrentHashMap<>();
     private Context context;
     private ProtonConnection connection;
     private ProtonSender sender;
     private ProtonReceiver receiver;
     private String replyTo;
+    private volatile boolean connected;
 
     public ProtonRequestClient(Vertx vertx, String containerId) {
         this(vertx, containerId, 0);
@@ -51,6 +58,13 @@ public class ProtonRequestClient implements SyncRequestClient {
         return replyTo;
     }
 
+    /**
+     * Whether the request link is established and the connection has not been lost since.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
     public void connect(String host, int port, CompletableFuture<Void> promise) {
         connect(host, port, new ProtonClientOptions(), null, promise);
     }
@@ -66,8 +80,21 @@ public class ProtonRequestClient implements SyncRequestClient {
         client.connect(clientOptions, host, port, result -> {
             if (result.succeeded()) {
                 log.debug("Connected to {}:{}", host, port);
-                connection = result.result();
+                ProtonConnection conn = result.result();
+                connection = conn;
+                context = vertx.getOrCreateContext();
                 connection.setContainer(containerId);
+                connection.closeHandler(closed -> {
+                    log.debug("Connection to {}:{} closed by peer", host, port);
+                    connected = false;
+                    conn.close();
+                    failPendingRequests(new IllegalStateException("Connection to " + host + ":" + port + " closed"));
+                });
+                connection.disconnectHandler(disconnected -> {
+                    log.debug("Disconnected from {}:{}", host, port);
+                    connected = false;
+                    failPendingRequests(new IllegalStateException("Disconnected from " + host + ":" + port));
+                });
                 createSender(vertx, address, promise, 0);
                 connection.open();
             } else {
@@ -102,8 +129,8 @@ public class ProtonRequestClient implements SyncRequestClient {
         receiver.setSource(source);
         receiver.openHandler(h -> {
             if (h.succeeded()) {
-                context = vertx.getOrCreateContext();
                 replyTo = receiver.getRemoteSource().getAddress();
+                connected = true;
                 promise.complete(null);
             } else {
                 if (retries > maxRetries) {
@@ -115,17 +142,39 @@ public class ProtonRequestClient implements SyncRequestClient {
             }
         });
         receiver.handler(((protonDelivery, message) -> {
-            try {
-                replies.put(message);
-                ProtonHelper.accepted(protonDelivery, true);
-            } catch (Exception e) {
-                ProtonHelper.rejected(protonDelivery, true);
+            Object correlationId = message.getCorrelationId();
+            CompletableFuture<Message> request = correlationId != null ? pendingRequests.remove(correlationId) : null;
+            if (request != null) {
+                request.complete(message);
+            } else {
+                log.debug("Discarding response with unknown correlation id {}, request may have timed out", correlationId);
             }
+            ProtonHelper.accepted(protonDelivery, true);
         }));
         receiver.open();
     }
 
     public Message request(Message message, long timeout, TimeUnit timeUnit) {
+        CompletableFuture<Message> promise = requestAsync(message, timeout, timeUnit);
+        try {
+            return promise.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                return null;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Not waiting for the response anymore, also cancels its timer
+            if (pendingRequests.remove(message.getCorrelationId(), promise)) {
+                promise.cancel(false);
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Message> requestAsync(Message message, long timeout, TimeUnit timeUnit) {
         Map<String, Object> properties = new HashMap<>();
         if (message.getApplicationProperties() != null) {
             properties.putAll(message.getApplicationProperties().getValue());
@@ -135,16 +184,47 @@ public class ProtonRequestClient implements SyncRequestClient {
         if (message.getReplyTo() == null) {
             message.setReplyTo(replyTo);
         }
-        context.runOnContext(h -> sender.send(message));
-        try {
-            return replies.poll(timeout, timeUnit);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        if (message.getMessageId() == null) {
+            message.setMessageId(UUID.randomUUID().toString());
         }
+        // Responders either copy the request message-id or the request correlation-id to the response correlation-id
+        Object correlationId = message.getMessageId();
+        message.setCorrelationId(correlationId);
+
+        CompletableFuture<Message> promise = new CompletableFuture<>();
+        Context requestContext = context;
+        if (requestContext == null || !connected) {
+            promise.completeExceptionally(new IllegalStateException("Client is not connected"));
+            return promise;
+        }
+        if (pendingRequests.putIfAbsent(correlationId, promise) != null) {
+            promise.completeExceptionally(new IllegalArgumentException("Request with id " + correlationId + " is already in flight"));
+            return promise;
+        }
+        requestContext.runOnContext(h -> {
+            if (sender == null) {
+                pendingRequests.remove(correlationId, promise);
+                promise.completeExceptionally(new IllegalStateException("Client is closed"));
+                return;
+            }
+            long timerId = vertx.setTimer(Math.max(1, timeUnit.toMillis(timeout)), id -> {
+                if (pendingRequests.remove(correlationId, promise)) {
+                    promise.completeExceptionally(new TimeoutException("Timed out waiting for response to request " + correlationId));
+                }
+            });
+            // A request cancelled by the caller is dropped, its response is then discarded
+            promise.whenComplete((response, error) -> {
+                vertx.cancelTimer(timerId);
+                pendingRequests.remove(correlationId, promise);
+            });
+            sender.send(message);
+        });
+        return promise;
     }
 
     @Override
     public void close() throws Exception {
+        connected = false;
         if (context != null) {
             CompletableFuture.allOf(
                     runOnContext(context, () -> {
@@ -166,11 +246,21 @@ public class ProtonRequestClient implements SyncRequestClient {
         sender = null;
         receiver = null;
         connection = null;
-        replies.clear();
+        failPendingRequests(new IllegalStateException("Client closed"));
         replyTo = null;
         context = null;
     }
 
+    private void failPendingRequests(Exception cause) {
+        List<Object> correlationIds = new ArrayList<>(pendingRequests.keySet());
+        for (Object correlationId : correlationIds) {
+            CompletableFuture<Message> promise = pendingRequests.remove(correlationId);
+            if (promise != null) {
+                promise.completeExceptionally(cause);
+            }
+        }
+    }
+
     private static CompletableFuture<Void> runOnContext(Context context, Runnable runnable) {
         CompletableFuture<Void> promise = new CompletableFuture<>();
         context.runOnContext(h -> {
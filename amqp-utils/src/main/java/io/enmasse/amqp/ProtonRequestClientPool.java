@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.amqp;
+
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonClientOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pool of long lived request clients, one per host and port, so that repeated requests to the same
+ * endpoint don't pay for a new connection, with its TLS and SASL handshake, each time.
+ *
+ * A client is handed out only while its connection is healthy. Once the connection is lost, or the client is
+ * invalidated after a failed request, a new one is connected asynchronously on the next acquire. Clients not
+ * used within the idle timeout are closed.
+ */
+public class ProtonRequestClientPool implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ProtonRequestClientPool.class);
+    private final Vertx vertx;
+    private final String containerId;
+    private final ProtonClientOptions clientOptions;
+    private final String address;
+    private final Duration connectTimeout;
+    private final Duration idleTimeout;
+    private final Map<String, PooledClient> clients = new ConcurrentHashMap<>();
+    private final long evictionTimerId;
+
+    public ProtonRequestClientPool(Vertx vertx, String containerId, ProtonClientOptions clientOptions, String address, Duration connectTimeout, Duration idleTimeout) {
+        this.vertx = vertx;
+        this.containerId = containerId;
+        this.clientOptions = clientOptions;
+        this.address = address;
+        this.connectTimeout = connectTimeout;
+        this.idleTimeout = idleTimeout;
+        this.evictionTimerId = vertx.setPeriodic(Math.max(1000, idleTimeout.toMillis() / 2), id -> evictIdle());
+    }
+
+    /**
+     * Get a connected client for the host and port, connecting a new one if there is no healthy client in the pool.
+     */
+    public CompletableFuture<SyncRequestClient> acquire(String host, int port) {
+        String key = key(host, port);
+        PooledClient pooled = clients.get(key);
+        if (pooled != null && pooled.isBroken()) {
+            log.debug("Replacing broken client for {}", key);
+            remove(key, pooled);
+            pooled = null;
+        }
+
+        if (pooled == null) {
+            PooledClient created = new PooledClient(new ProtonRequestClient(vertx, containerId));
+            pooled = clients.putIfAbsent(key, created);
+            if (pooled == null) {
+                pooled = created;
+                connect(host, port, created);
+            }
+        }
+
+        PooledClient acquired = pooled;
+        acquired.lastUsed = System.nanoTime();
+        return acquired.connected.thenApply(v -> acquired.client);
+    }
+
+    /**
+     * Close the client for the host and port, i.e. after a failed request, so that the next acquire reconnects.
+     */
+    public void invalidate(String host, int port) {
+        String key = key(host, port);
+        PooledClient pooled = clients.get(key);
+        if (pooled != null) {
+            remove(key, pooled);
+        }
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    @Override
+    public void close() {
+        vertx.cancelTimer(evictionTimerId);
+        List<PooledClient> pooled = new ArrayList<>(clients.values());
+        clients.clear();
+        for (PooledClient client : pooled) {
+            closeQuietly(client);
+        }
+    }
+
+    private void connect(String host, int port, PooledClient pooled) {
+        log.debug("Connecting pooled client to {}:{}", host, port);
+        long timerId = vertx.setTimer(connectTimeout.toMillis(), id ->
+                pooled.connected.completeExceptionally(new TimeoutException("Timed out connecting to " + host + ":" + port)));
+        pooled.connected.whenComplete((v, error) -> vertx.cancelTimer(timerId));
+        pooled.client.connect(host, port, clientOptions, address, pooled.connected);
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, PooledClient> entry : clients.entrySet()) {
+            PooledClient pooled = entry.getValue();
+            if (now - pooled.lastUsed > idleTimeout.toNanos()) {
+                log.debug("Closing client for {}, idle for more than {}", entry.getKey(), idleTimeout);
+                remove(entry.getKey(), pooled);
+            }
+        }
+    }
+
+    private void remove(String key, PooledClient pooled) {
+        if (clients.remove(key, pooled)) {
+            // Closing waits for the client context, so it must not happen on an event loop
+            vertx.executeBlocking(future -> {
+                closeQuietly(pooled);
+                future.complete();
+            }, false, result -> { });
+        }
+    }
+
+    private static void closeQuietly(PooledClient pooled) {
+        try {
+            pooled.client.close();
+        } catch (Exception e) {
+            log.debug("Error closing client", e);
+        }
+    }
+
+    private static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    private static class PooledClient {
+        private final ProtonRequestClient client;
+        private final CompletableFuture<Void> connected = new CompletableFuture<>();
+        private volatile long lastUsed = System.nanoTime();
+
+        private PooledClient(ProtonRequestClient client) {
+            this.client = client;
+        }
+
+        private boolean isBroken() {
+            return connected.isCompletedExceptionally() || (connected.isDone() && !client.isConnected());
+        }
+    }
+}
@@ -6,7 +6,13 @@
 
 package io.enmasse.amqp;
 
-import java.util.*;
+import java.nio.BufferOverflowException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Context;
@@ -21,26 +27,58 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.qpid.proton.amqp.messaging.Source;
 
+/**
+ * A lightweight broker keeping a queue per address, with at most one subscriber per address.
+ *
+ * Messages are kept encoded in a {@link MessageStore}. Subscribers are served on the context of their connection,
+ * which is notified when messages are published to their address.
+ */
 public class PubSubBroker extends AbstractVerticle {
     private static final Logger log = LoggerFactory.getLogger(PubSubBroker.class.getName());
+    private static final ThreadLocal<byte[]> encodeBuffer = ThreadLocal.withInitial(() -> new byte[4096]);
 
     private volatile ProtonServer server;
     private final String containerId;
-    private final Map<String, Queue<Message>> queues = new HashMap<>();
-    private final Map<String, SenderInfo> subscribers = new HashMap<>();
+    private final MessageStore store = new MessageStore();
+    private final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
 
     public PubSubBroker(String containerId) {
         this.containerId = containerId;
     }
 
-    private static class SenderInfo {
+    private class Subscriber {
+        final String address;
         final ProtonSender sender;
         final Context senderContext;
+        final AtomicBoolean scheduled = new AtomicBoolean();
 
-        public SenderInfo(ProtonSender sender, Context senderContext) {
+        Subscriber(String address, ProtonSender sender, Context senderContext) {
+            this.address = address;
             this.sender = sender;
             this.senderContext = senderContext;
         }
+
+        /**
+         * Send messages from the store on the sender context, unless already scheduled to.
+         */
+        void notifyMessages() {
+            if (scheduled.compareAndSet(false, true)) {
+                senderContext.runOnContext(v -> {
+                    scheduled.set(false);
+                    sendMessages();
+                });
+            }
+        }
+
+        void sendMessages() {
+            while (!sender.sendQueueFull() && subscribers.get(address) == this) {
+                byte[] data = store.poll(address);
+                if (data == null) {
+                    break;
+                }
+                sender.send(decode(data));
+            }
+        }
     }
 
     private void connectHandler(ProtonConnection connection) {
@@ -64,110 +102,87 @@ public class PubSubBroker extends AbstractVerticle {
     private void receiverOpenHandler(ProtonConnection connection, ProtonReceiver receiver) {
         Target target = (Target) receiver.getRemoteTarget();
         receiver.setTarget(target);
-        log.info("[{}]: Got publish request from {} on {}", containerId, connection.getRemoteContainer(), target.getAddress());
+        String address = target.getAddress();
+        log.info("[{}]: Got publish request from {} on {}", containerId, connection.getRemoteContainer(), address);
+        store.create(address);
         receiver.handler((delivery, message) -> {
-            vertx.executeBlocking(promise -> {
-                try {
-                    synchronized (this) {
-                        Queue<Message> queue = queues.get(target.getAddress());
-                        queue.add(message);
-                        SenderInfo senderInfo = subscribers.get(target.getAddress());
-                        if (senderInfo != null) {
-                            checkQueue(senderInfo.senderContext, senderInfo.sender);
-                        }
-                    }
-                    promise.complete();
-                } catch (Exception e) {
-                    promise.fail(e);
-                }
-            }, result -> {
-                if (result.succeeded()) {
-                    ProtonHelper.accepted(delivery, true);
-                } else {
-                    ProtonHelper.rejected(delivery, true);
-                }
-            });
-        });
-        vertx.executeBlocking(promise -> {
             try {
-                synchronized (this) {
-                    Queue<Message> queue = queues.get(target.getAddress());
-                    if (queue == null) {
-                        queue = new ArrayDeque<>();
-                        queues.put(target.getAddress(), queue);
-                    }
-                }
-                promise.complete();
+                publish(address, message);
+                ProtonHelper.accepted(delivery, true);
             } catch (Exception e) {
-                promise.fail(e);
+                log.warn("[{}]: Failed storing message on {}", containerId, address, e);
+                ProtonHelper.rejected(delivery, true);
             }
-        }, result -> {
-            if (result.succeeded()) {
-                receiver.open();
-            } else {
-                receiver.close();
-                log.info("[{}]: Failed creating publisher {} for address {}", containerId, connection.getRemoteContainer(), receiver.getRemoteTarget().getAddress(), result.cause());
-            }
-
         });
+        receiver.open();
     }
 
     private void senderOpenHandler(ProtonConnection connection, ProtonSender sender) {
         Source source = (Source) sender.getRemoteSource();
         sender.setSource(source);
-        log.info("[{}]: Got subscription request from {} on {}", containerId, connection.getRemoteContainer(), source.getAddress());
+        String address = source.getAddress();
+        log.info("[{}]: Got subscription request from {} on {}", containerId, connection.getRemoteContainer(), address);
+
+        Subscriber subscriber = new Subscriber(address, sender, vertx.getOrCreateContext());
+        if (!store.exists(address) || subscribers.putIfAbsent(address, subscriber) != null) {
+            sender.close();
+            log.info("[{}]: Failed creating subscriber {} for address {}", containerId, connection.getRemoteContainer(), address);
+            return;
+        }
 
-        Context senderContext = vertx.getOrCreateContext();
         sender.closeHandler(handle -> {
-            vertx.executeBlocking(promise -> {
-                synchronized (this) {
-                    subscribers.remove(source.getAddress());
-                }
-                promise.complete();
-            }, result -> {
-                sender.close();
-            });
+            subscribers.remove(address, subscriber);
+            sender.close();
         });
+        sender.sendQueueDrainHandler(s -> subscriber.sendMessages());
+        sender.open();
+        log.info("[{}]: Opened sender for subscriber {} for address {}", containerId, connection.getRemoteContainer(), address);
+    }
 
-        vertx.executeBlocking(promise -> {
-            try {
-                synchronized (this) {
-                    if (queues.get(source.getAddress()) == null || subscribers.get(source.getAddress()) != null) {
-                        senderContext.runOnContext(id -> sender.close());
-                    }
-                    subscribers.put(source.getAddress(), new SenderInfo(sender, senderContext));
-                    if (queues.get(source.getAddress()) != null) {
-                        checkQueue(senderContext, sender);
-                    }
-                }
-                promise.complete();
-            } catch (Exception e) {
-                promise.fail(e);
-            }
-        }, result -> {
-            if (result.succeeded()) {
-                sender.open();
-                log.info("[{}]: Opened sender for subscriber {} for address {}", containerId, connection.getRemoteContainer(), sender.getRemoteSource().getAddress());
-            } else {
-                sender.close();
-                log.info("[{}]: Failed creating subscriber {} for address {}", containerId, connection.getRemoteContainer(), sender.getRemoteSource().getAddress(), result.cause());
-            }
-        });
+    private void publish(String address, Message message) {
+        byte[] buffer = encodeBuffer.get();
+        int length = encode(message, buffer);
+        while (length < 0) {
+            buffer = new byte[buffer.length * 2];
+            encodeBuffer.set(buffer);
+            length = encode(message, buffer);
+        }
+        store.add(address, buffer, 0, length);
+
+        Subscriber subscriber = subscribers.get(address);
+        if (subscriber != null) {
+            subscriber.notifyMessages();
+        }
     }
 
-    private void checkQueue(Context senderContext, ProtonSender sender) {
-        String address = sender.getSource().getAddress();
-        log.debug("[{}]: Has {} messages in store on address {}", containerId, queues.get(address).size(), address);
-        Message message = queues.get(address).poll();
-        if (message != null) {
-            senderContext.runOnContext(v -> sender.send(message, delivery -> {
-                checkQueue(senderContext, sender);
-            }));
+    /**
+     * Encode the message into the buffer, returning -1 if it does not fit.
+     */
+    private static int encode(Message message, byte[] buffer) {
+        try {
+            int length = message.encode(buffer, 0, buffer.length);
+            return length < buffer.length ? length : -1;
+        } catch (BufferOverflowException e) {
+            return -1;
         }
     }
 
-    public synchronized List<Message> getMessages(String address) {
-        return new ArrayList<>(queues.get(address));
+    private static Message decode(byte[] data) {
+        Message message = Proton.message();
+        message.decode(data, 0, data.length);
+        return message;
+    }
+
+    public List<Message> getMessages(String address) {
+        List<byte[]> encoded = store.peekAll(address);
+        if (encoded == null) {
+            return Collections.emptyList();
+        }
+        List<Message> messages = new ArrayList<>(encoded.size());
+        for (byte[] data : encoded) {
+            messages.add(decode(data));
+        }
+        return messages;
     }
 
     @Override
@@ -199,31 +214,29 @@ public class PubSubBroker extends AbstractVerticle {
         }
     }
 
-    public synchronized  int numMessages(String address) {
-        return queues.get(address).size();
+    public int numMessages(String address) {
+        return store.size(address);
     }
 
-    public synchronized void sendMessages(String address, List<String> messages) {
-        Queue<Message> queue = queues.computeIfAbsent(address, a -> new ArrayDeque<>());
+    public void sendMessages(String address, List<String> messages) {
         for (String data : messages) {
             Message message = Proton.message();
             message.setBody(new AmqpValue(data));
-            queue.add(message);
+            publish(address, message);
         }
     }
 
-    public synchronized List<String> recvMessages(String address, int numMessages) {
-        Queue<Message> queue = queues.get(address);
-        if (queue == null) {
+    public List<String> recvMessages(String address, int numMessages) {
+        if (!store.exists(address)) {
             return null;
         }
         List<String> messages = new ArrayList<>();
         while (numMessages > 0) {
-            Message message = queue.poll();
-            if (message == null) {
+            byte[] data = store.poll(address);
+            if (data == null) {
                 throw new RuntimeException("No more messages, " + numMessages + " remains");
             }
-            messages.add((String)((AmqpValue)message.getBody()).getValue());
+            messages.add((String)((AmqpValue) decode(data).getBody()).getValue());
             numMessages--;
         }
         return messages;
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.amqp;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.message.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query of a router entity, one page at a time, into a {@link RouterEntityTable}.
+ *
+ * Pages are requested with the offset and count supported by the router management agent, so that no single
+ * response holds all the entities. Entities added or removed while paging may be missed or seen twice, which
+ * is corrected by the next query.
+ */
+class RouterEntityQuery {
+    private static final String IDENTITY = "identity";
+    private final SyncRequestClient client;
+    private final RouterEntity entity;
+    private final int pageSize;
+    private final long timeoutMillis;
+    private final Set<CompletableFuture<Message>> pendingRequests = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    RouterEntityQuery(SyncRequestClient client, RouterEntity entity, int pageSize, long timeoutMillis) {
+        this.client = client;
+        this.entity = entity;
+        this.pageSize = pageSize;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Fetch all the entities, with their identities.
+     */
+    CompletableFuture<RouterEntityTable> fetchAll() {
+        List<String> attributeNames = new ArrayList<>();
+        boolean identityAppended = false;
+        if (entity.getAttributes() != null && entity.getAttributes().length > 0) {
+            attributeNames.addAll(Arrays.asList(entity.getAttributes()));
+            if (!attributeNames.contains(IDENTITY)) {
+                attributeNames.add(IDENTITY);
+                identityAppended = true;
+            }
+        }
+
+        TableCollector collector = new TableCollector(identityAppended);
+        CompletableFuture<Void> promise = new CompletableFuture<>();
+        fetchPage(attributeNames, 0, collector, promise);
+        return promise.thenApply(v -> collector.build());
+    }
+
+    /**
+     * Fetch only the entities whose identity is not in the base table, taking the others from it. Only the identities
+     * of all the entities are queried, so this is valid only for entities whose attributes don't change.
+     */
+    CompletableFuture<RouterEntityTable> fetchChanged(RouterEntityTable base) {
+        List<Object> identities = new ArrayList<>();
+        CompletableFuture<Void> promise = new CompletableFuture<>();
+        fetchPage(Collections.singletonList(IDENTITY), 0, (names, rows) -> {
+            for (List<?> row : rows) {
+                identities.add(row.get(0));
+            }
+        }, promise);
+
+        return promise.thenCompose(v -> {
+            Map<Object, Integer> baseRows = new HashMap<>(base.size());
+            for (int row = 0; row < base.size(); row++) {
+                baseRows.put(base.getIdentity(row), row);
+            }
+
+            List<Object> added = new ArrayList<>();
+            for (Object identity : identities) {
+                if (!baseRows.containsKey(identity)) {
+                    added.add(identity);
+                }
+            }
+
+            Map<Object, List<?>> addedRows = new HashMap<>();
+            CompletableFuture<Void> read = new CompletableFuture<>();
+            readEntities(base.getAttributeNames(), added, 0, addedRows, read);
+            return read.thenApply(r -> {
+                RouterEntityTable.Builder builder = new RouterEntityTable.Builder(base.getAttributeNames(), true);
+                for (Object identity : identities) {
+                    Integer baseRow = baseRows.get(identity);
+                    if (baseRow != null) {
+                        builder.addRow(identity, base.getRow(baseRow));
+                    } else if (addedRows.containsKey(identity)) {
+                        // The entity may have been removed after the identities were queried
+                        builder.addRow(identity, addedRows.get(identity));
+                    }
+                }
+                return builder.build();
+            });
+        });
+    }
+
+    private void fetchPage(List<String> attributeNames, int offset, PageHandler handler, CompletableFuture<Void> promise) {
+        request(createQueryMessage(attributeNames, offset)).whenComplete((response, error) -> {
+            if (error != null) {
+                promise.completeExceptionally(error);
+                return;
+            }
+            try {
+                Map<?, ?> values = getBodyValue(response);
+
+                @SuppressWarnings("unchecked")
+                List<String> names = (List<String>) values.get("attributeNames");
+                @SuppressWarnings("unchecked")
+                List<List<?>> results = (List<List<?>>) values.get("results");
+                if (results == null) {
+                    throw new IllegalArgumentException("Unexpected null results list");
+                }
+
+                handler.handle(names != null ? names : attributeNames, results);
+                if (results.size() < pageSize) {
+                    promise.complete(null);
+                } else {
+                    fetchPage(attributeNames, offset + results.size(), handler, promise);
+                }
+            } catch (Exception e) {
+                promise.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Read the entities by identity, pipelining up to a page of requests at a time.
+     */
+    private void readEntities(String[] attributeNames, List<Object> identities, int offset, Map<Object, List<?>> rows, CompletableFuture<Void> promise) {
+        if (offset >= identities.size()) {
+            promise.complete(null);
+            return;
+        }
+
+        List<Object> chunk = identities.subList(offset, Math.min(identities.size(), offset + pageSize));
+        Map<Object, CompletableFuture<Message>> responses = new LinkedHashMap<>();
+        for (Object identity : chunk) {
+            responses.put(identity, request(createReadMessage(identity)));
+        }
+
+        CompletableFuture.allOf(responses.values().toArray(new CompletableFuture[0])).whenComplete((v, error) -> {
+            if (error != null) {
+                promise.completeExceptionally(error);
+                return;
+            }
+            try {
+                for (Map.Entry<Object, CompletableFuture<Message>> entry : responses.entrySet()) {
+                    Message response = entry.getValue().join();
+                    if (isStatusOk(response)) {
+                        Map<?, ?> values = getBodyValue(response);
+                        List<Object> row = new ArrayList<>(attributeNames.length);
+                        for (String attributeName : attributeNames) {
+                            row.add(values.get(attributeName));
+                        }
+                        rows.put(entry.getKey(), row);
+                    }
+                }
+                readEntities(attributeNames, identities, offset + chunk.size(), rows, promise);
+            } catch (Exception e) {
+                promise.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Stop the query, its pending requests are dropped and no more are sent.
+     */
+    void cancel() {
+        cancelled = true;
+        for (CompletableFuture<Message> request : pendingRequests) {
+            request.cancel(false);
+        }
+    }
+
+    private CompletableFuture<Message> request(Message message) {
+        if (cancelled) {
+            CompletableFuture<Message> cancelledRequest = new CompletableFuture<>();
+            cancelledRequest.completeExceptionally(new CancellationException("Query of " + entity.getName() + " cancelled"));
+            return cancelledRequest;
+        }
+        CompletableFuture<Message> request = client.requestAsync(message, timeoutMillis, TimeUnit.MILLISECONDS);
+        pendingRequests.add(request);
+        request.whenComplete((response, error) -> pendingRequests.remove(request));
+        // Cancelled while sending
+        if (cancelled) {
+            request.cancel(false);
+        }
+        return request;
+    }
+
+    private Message createQueryMessage(List<String> attributeNames, int offset) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("operation", "QUERY");
+        properties.put("entityType", entity.getName());
+        properties.put("offset", offset);
+        properties.put("count", pageSize);
+        Map<String, Object> body = new LinkedHashMap<>();
+
+        if (!attributeNames.isEmpty()) {
+            body.put("attributeNames", attributeNames);
+        }
+
+        Message message = Proton.message();
+        message.setApplicationProperties(new ApplicationProperties(properties));
+        message.setBody(new AmqpValue(body));
+        return message;
+    }
+
+    private Message createReadMessage(Object identity) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("operation", "READ");
+        properties.put("type", entity.getName());
+        properties.put(IDENTITY, identity);
+
+        Message message = Proton.message();
+        message.setApplicationProperties(new ApplicationProperties(properties));
+        message.setBody(new AmqpValue(Collections.emptyMap()));
+        return message;
+    }
+
+    private static boolean isStatusOk(Message response) {
+        if (response.getApplicationProperties() == null) {
+            return true;
+        }
+        Object statusCode = response.getApplicationProperties().getValue().get("statusCode");
+        return statusCode == null || ((Number) statusCode).intValue() == 200;
+    }
+
+    private static Map<?, ?> getBodyValue(Message response) {
+        AmqpValue value = (AmqpValue) response.getBody();
+        if (value == null) {
+            throw new IllegalArgumentException("Unexpected null body");
+        }
+        Map<?, ?> values = (Map<?, ?>) value.getValue();
+        if (values == null) {
+            throw new IllegalArgumentException("Unexpected null body value");
+        }
+        return values;
+    }
+
+    private interface PageHandler {
+        void handle(List<String> attributeNames, List<List<?>> rows);
+    }
+
+    /**
+     * Collects the pages into a table, moving the identity to its own column if it was not one of the entity attributes.
+     */
+    private static class TableCollector implements PageHandler {
+        private final boolean identityAppended;
+        private RouterEntityTable.Builder builder;
+        private int identityIndex;
+        private int columns;
+
+        private TableCollector(boolean identityAppended) {
+            this.identityAppended = identityAppended;
+        }
+
+        @Override
+        public void handle(List<String> attributeNames, List<List<?>> rows) {
+            if (builder == null) {
+                identityIndex = attributeNames.indexOf(IDENTITY);
+                columns = identityAppended ? attributeNames.size() - 1 : attributeNames.size();
+                builder = new RouterEntityTable.Builder(attributeNames.subList(0, columns).toArray(new String[0]), identityIndex >= 0);
+            }
+            for (List<?> row : rows) {
+                Object identity = identityIndex >= 0 && identityIndex < row.size() ? row.get(identityIndex) : null;
+                builder.addRow(identity, row.size() > columns ? row.subList(0, columns) : row);
+            }
+        }
+
+        private RouterEntityTable build() {
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.amqp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a router entity query, stored by column.
+ *
+ * Values repeated across rows (i.e. container ids, directions and statuses) are stored once per column, and the
+ * identities of the entities are kept apart from the queried attributes, so that a table can be the base for
+ * fetching only the entities added since.
+ */
+public class RouterEntityTable {
+    private final String[] attributeNames;
+    private final Object[][] columns;
+    private final Object[] identities;
+    private final int size;
+
+    private RouterEntityTable(String[] attributeNames, Object[][] columns, Object[] identities, int size) {
+        this.attributeNames = attributeNames;
+        this.columns = columns;
+        this.identities = identities;
+        this.size = size;
+    }
+
+    public static RouterEntityTable empty(String... attributeNames) {
+        return new RouterEntityTable(attributeNames, new Object[attributeNames.length][0], new Object[0], 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String[] getAttributeNames() {
+        return attributeNames;
+    }
+
+    public int getAttributeIndex(String attribute) {
+        return Arrays.asList(attributeNames).indexOf(attribute);
+    }
+
+    public Object get(int row, int column) {
+        checkRow(row);
+        return columns[column][row];
+    }
+
+    public <T> T get(int row, int column, Class<T> type) {
+        return type.cast(get(row, column));
+    }
+
+    /**
+     * Identity of the entity in the row, null if identities were not queried.
+     */
+    public Object getIdentity(int row) {
+        checkRow(row);
+        return identities != null ? identities[row] : null;
+    }
+
+    public boolean hasIdentities() {
+        return identities != null;
+    }
+
+    /**
+     * The table as a list of rows, in the format of the query results.
+     */
+    public List<List<?>> toRows() {
+        List<List<?>> rows = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            rows.add(getRow(row));
+        }
+        return rows;
+    }
+
+    List<?> getRow(int row) {
+        checkRow(row);
+        Object[] values = new Object[columns.length];
+        for (int column = 0; column < columns.length; column++) {
+            values[column] = columns[column][row];
+        }
+        return Collections.unmodifiableList(Arrays.asList(values));
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+        }
+    }
+
+    static class Builder {
+        private final String[] attributeNames;
+        private final boolean withIdentities;
+        private final List<Map<Object, Object>> canonicalValues = new ArrayList<>();
+        private Object[][] columns;
+        private Object[] identities;
+        private int size;
+
+        Builder(String[] attributeNames, boolean withIdentities) {
+            this.attributeNames = attributeNames;
+            this.withIdentities = withIdentities;
+            this.columns = new Object[attributeNames.length][16];
+            this.identities = new Object[16];
+            for (int i = 0; i < attributeNames.length; i++) {
+                canonicalValues.add(new HashMap<>());
+            }
+        }
+
+        String[] getAttributeNames() {
+            return attributeNames;
+        }
+
+        Builder addRow(Object identity, List<?> values) {
+            if (size == identities.length) {
+                int capacity = size * 2;
+                for (int column = 0; column < columns.length; column++) {
+                    columns[column] = Arrays.copyOf(columns[column], capacity);
+                }
+                identities = Arrays.copyOf(identities, capacity);
+            }
+            for (int column = 0; column < columns.length; column++) {
+                Object value = column < values.size() ? values.get(column) : null;
+                columns[column][size] = value != null ? canonicalValues.get(column).computeIfAbsent(value, v -> v) : null;
+            }
+            identities[size] = identity;
+            size++;
+            return this;
+        }
+
+        RouterEntityTable build() {
+            Object[][] compacted = new Object[columns.length][];
+            for (int column = 0; column < columns.length; column++) {
+                compacted[column] = Arrays.copyOf(columns[column], size);
+            }
+            return new RouterEntityTable(attributeNames, compacted, withIdentities ? Arrays.copyOf(identities, size) : null, size);
+        }
+    }
+}
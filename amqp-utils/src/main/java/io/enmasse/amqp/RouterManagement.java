@@ -9,10 +9,6 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.net.PemKeyCertOptions;
 import io.vertx.core.net.PemTrustOptions;
 import io.vertx.proton.ProtonClientOptions;
-import org.apache.qpid.proton.Proton;
-import org.apache.qpid.proton.amqp.messaging.AmqpValue;
-import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
-import org.apache.qpid.proton.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,22 +16,29 @@ import java.io.File;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.DoubleConsumer;
 
-public class RouterManagement {
+public class RouterManagement implements AutoCloseable {
     private static final Logger log = LoggerFactory.getLogger(RouterManagement.class);
+    private static final Duration IDLE_TIMEOUT = Duration.ofMinutes(5);
+    private static final int ALLOWED_ATTEMPTS = 3;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
     private final Vertx vertx;
-    private final String containerId;
-    private final ProtonClientOptions clientOptions;
     private final Duration connectTimeout;
     private final Duration queryTimeout;
+    private final ProtonRequestClientPool clientPool;
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private volatile DoubleConsumer queryLatencyObserver = latency -> { };
+    private volatile int pageSize = DEFAULT_PAGE_SIZE;
 
     private RouterManagement(Vertx vertx, String containerId, ProtonClientOptions clientOptions, Duration connectTimeout, Duration queryTimeout) {
         this.vertx = vertx;
-        this.containerId = containerId;
-        this.clientOptions = clientOptions;
         this.connectTimeout = connectTimeout;
         this.queryTimeout = queryTimeout;
+        this.clientPool = new ProtonRequestClientPool(vertx, containerId, clientOptions, "$management", connectTimeout, IDLE_TIMEOUT);
     }
 
     public static RouterManagement withCertsInDir(Vertx vertx, String containerId, Duration connectTimeout, Duration queryTimeout, String certDir) {
@@ -64,81 +67,115 @@ public class RouterManagement {
         return new RouterManagement(vertx, containerId, clientOptions, connectTimeout, queryTimeout);
     }
 
+    /**
+     * Set the observer of the time (in seconds) taken by each successful query, including the connection
+     * when there is no pooled connection to the router.
+     */
+    public void setQueryLatencyObserver(DoubleConsumer queryLatencyObserver) {
+        this.queryLatencyObserver = queryLatencyObserver;
+    }
 
+    /**
+     * Set the max number of entities requested at once, queries of larger entity sets are paged.
+     */
+    public void setPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        }
+        this.pageSize = pageSize;
+    }
 
     public Map<RouterEntity, List<List<?>>> query(String host, int port, RouterEntity... entities) throws Exception {
-        int attempt = 1;
-        final int allowedAttempts = 3;
-        Exception lastException;
-        do {
-            try {
-                return doQuery(host, port, entities);
-            } catch (Exception e) {
-                log.error("Failed to collect router {} status (attempt {}/{}})", host, attempt, allowedAttempts, e);
-                lastException = e;
-                try {
-                    Thread.sleep(5 * 1000);
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-                attempt++;
-            }
-        } while (allowedAttempts >= attempt);
-
-        throw lastException;
+        Map<RouterEntity, List<List<?>>> resultMap = new HashMap<>();
+        for (Map.Entry<RouterEntity, RouterEntityTable> entry : queryTables(host, port, Collections.emptyMap(), entities).entrySet()) {
+            resultMap.put(entry.getKey(), entry.getValue().toRows());
+        }
+        return resultMap;
     }
 
-    private Map<RouterEntity, List<List<?>>> doQuery(String host, int port, RouterEntity... entities) throws Exception {
-        log.debug("Checking router status of router : {}", host);
-        try (ProtonRequestClient client = new ProtonRequestClient(vertx, containerId)) {
-            CompletableFuture<Void> promise = new CompletableFuture<>();
-            client.connect(host, port, clientOptions, "$management", promise);
-
-            promise.get(connectTimeout.getSeconds(), TimeUnit.SECONDS);
-
-            Map<RouterEntity, List<List<?>>> resultMap = new HashMap<>();
-            for (RouterEntity routerEntity : entities) {
-                resultMap.put(routerEntity, collectRouter(client, routerEntity));
-            }
-            return resultMap;
+    /**
+     * Query the entities into tables. The entities with a table in the previous results are queried by difference:
+     * only the identities of all the entities are queried, and the attributes of the ones not found in the
+     * previous table are read. This is valid only for entities whose attributes don't change, i.e. addresses.
+     */
+    public Map<RouterEntity, RouterEntityTable> queryTables(String host, int port, Map<RouterEntity, RouterEntityTable> previous, RouterEntity... entities) throws Exception {
+        CompletableFuture<Map<RouterEntity, RouterEntityTable>> query = queryTablesAsync(host, port, previous, entities);
+        try {
+            return query.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            query.cancel(false);
+            throw e;
         }
     }
 
-    private List<List<?>> collectRouter(SyncRequestClient client, RouterEntity routerEntity) {
-        Map<String, Object> properties = new LinkedHashMap<>();
-        properties.put("operation", "QUERY");
-        properties.put("entityType", routerEntity.getName());
-        Map<String, Object> body = new LinkedHashMap<>();
+    /**
+     * Query the entities into tables without blocking, see {@link #queryTables}. Cancelling the returned future stops
+     * the query: it is not retried anymore and its pending requests are dropped.
+     */
+    public CompletableFuture<Map<RouterEntity, RouterEntityTable>> queryTablesAsync(String host, int port, Map<RouterEntity, RouterEntityTable> previous, RouterEntity... entities) {
+        CompletableFuture<Map<RouterEntity, RouterEntityTable>> promise = new CompletableFuture<>();
+        queryWithRetries(host, port, previous, entities, 1, promise);
+        return promise;
+    }
 
-        if (routerEntity.getAttributes() != null) {
-            body.put("attributeNames", Arrays.asList(routerEntity.getAttributes()));
+    private void queryWithRetries(String host, int port, Map<RouterEntity, RouterEntityTable> previous, RouterEntity[] entities, int attempt, CompletableFuture<Map<RouterEntity, RouterEntityTable>> promise) {
+        if (promise.isDone()) {
+            return;
         }
+        long start = System.nanoTime();
+        doQuery(host, port, previous, entities, promise).whenComplete((result, error) -> {
+            if (promise.isDone()) {
+                // Cancelled
+                return;
+            }
+            if (error == null) {
+                queryLatencyObserver.accept((System.nanoTime() - start) / 1_000_000_000.0);
+                promise.complete(result);
+                return;
+            }
 
-        Message message = Proton.message();
-        message.setApplicationProperties(new ApplicationProperties(properties));
-        message.setBody(new AmqpValue(body));
+            Exception cause = unwrap(error);
+            log.error("Failed to collect router {} status (attempt {}/{})", host, attempt, ALLOWED_ATTEMPTS, cause);
+            // The connection may be the cause of the failure, so don't reuse it
+            clientPool.invalidate(host, port);
+            if (attempt >= ALLOWED_ATTEMPTS) {
+                promise.completeExceptionally(cause);
+            } else {
+                long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << (attempt - 1));
+                vertx.setTimer(backoff, id -> queryWithRetries(host, port, previous, entities, attempt + 1, promise));
+            }
+        });
+    }
 
-        long timeoutSeconds = this.queryTimeout.getSeconds();
-        Message response = client.request(message, timeoutSeconds, TimeUnit.SECONDS);
-        if (response == null) {
-            throw new IllegalArgumentException(String.format("No response received within timeout : %s(s)", timeoutSeconds));
-        }
-        AmqpValue value = (AmqpValue) response.getBody();
-        if (value == null) {
-            throw new IllegalArgumentException("Unexpected null body");
-        }
-        Map<?,?> values = (Map<?,?>) value.getValue();
-        if (values == null) {
-            throw new IllegalArgumentException("Unexpected null body value");
-        }
+    private CompletableFuture<Map<RouterEntity, RouterEntityTable>> doQuery(String host, int port, Map<RouterEntity, RouterEntityTable> previous, RouterEntity[] entities, CompletableFuture<?> promise) {
+        log.debug("Checking router status of router : {}", host);
+        int pageSize = this.pageSize;
+        return clientPool.acquire(host, port).thenCompose(client -> {
+            // Pipeline the queries of the entities over the management link, rather than waiting for each one in turn
+            Map<RouterEntity, CompletableFuture<RouterEntityTable>> tables = new LinkedHashMap<>();
+            List<RouterEntityQuery> queries = new ArrayList<>(entities.length);
+            for (RouterEntity routerEntity : entities) {
+                RouterEntityQuery query = new RouterEntityQuery(client, routerEntity, pageSize, queryTimeout.toMillis());
+                queries.add(query);
+                RouterEntityTable base = previous.get(routerEntity);
+                tables.put(routerEntity, base != null && base.hasIdentities() ? query.fetchChanged(base) : query.fetchAll());
+            }
+            promise.whenComplete((result, error) -> {
+                if (promise.isCancelled()) {
+                    queries.forEach(RouterEntityQuery::cancel);
+                }
+            });
 
-        @SuppressWarnings("unchecked")
-        List<List<?>> results = (List<List<?>>) values.get("results");
-        if (results == null) {
-            throw new IllegalArgumentException("Unexpected null results list");
-        }
-        return results;
+            return CompletableFuture.allOf(tables.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+                Map<RouterEntity, RouterEntityTable> resultMap = new HashMap<>();
+                for (Map.Entry<RouterEntity, CompletableFuture<RouterEntityTable>> entry : tables.entrySet()) {
+                    resultMap.put(entry.getKey(), entry.getValue().join());
+                }
+                return resultMap;
+            });
+        });
     }
 
     public Duration getConnectTimeout() {
@@ -149,4 +186,16 @@ public class RouterManagement {
         return queryTimeout;
     }
 
+    @Override
+    public void close() {
+        clientPool.close();
+    }
+
+    private static Exception unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof Exception ? (Exception) error : new RuntimeException(error);
+    }
+
 }
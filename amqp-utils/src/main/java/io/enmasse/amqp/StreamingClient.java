@@ -0,0 +1,469 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.amqp;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonClient;
+import io.vertx.proton.ProtonClientOptions;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonDelivery;
+import io.vertx.proton.ProtonReceiver;
+import io.vertx.proton.ProtonSender;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Outcome;
+import org.apache.qpid.proton.amqp.transport.DeliveryState;
+import org.apache.qpid.proton.message.Message;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client that streams messages to and from a host without blocking, as reactive streams.
+ *
+ * All calls share one connection, which is opened on first use and reopened if lost. Subscribers of received
+ * messages are signalled on the event loop of the client, and should not block it.
+ */
+public class StreamingClient implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(StreamingClient.class);
+
+    private final Vertx vertx;
+    private final Context context;
+    private final String host;
+    private final int port;
+    private final ProtonClientOptions clientOptions;
+
+    private final Set<Stream> streams = new HashSet<>();
+    private CompletableFuture<ProtonConnection> connection;
+
+    public StreamingClient(Vertx vertx, String host, int port) {
+        this(vertx, host, port, new ProtonClientOptions());
+    }
+
+    public StreamingClient(Vertx vertx, String host, int port, ProtonClientOptions clientOptions) {
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.host = host;
+        this.port = port;
+        this.clientOptions = clientOptions;
+    }
+
+    /**
+     * Messages received from an address. Credit for up to prefetch messages is given as the subscriber requests them.
+     * A message is accepted only once the subscriber is done with it: when it requests more messages or cancels the
+     * subscription after being passed the message, or when onComplete returns. Consumed messages are accepted in
+     * batches of settleBatch, and the ones not consumed when the stream fails are left for the host to redeliver.
+     * The stream completes when no message has been received for the idle timeout, or never if it is 0.
+     */
+    public Publisher<Message> receive(String address, int prefetch, int settleBatch, long idleTimeout, TimeUnit timeUnit) {
+        if (prefetch <= 0 || settleBatch <= 0) {
+            throw new IllegalArgumentException("Prefetch and settle batch must be positive");
+        }
+        return subscriber -> {
+            Objects.requireNonNull(subscriber);
+            context.runOnContext(v -> new ReceiveSubscription(address, prefetch, settleBatch, timeUnit.toMillis(idleTimeout), subscriber).start());
+        };
+    }
+
+    /**
+     * Send the messages of a publisher to an address, with up to window messages unsettled at a time. Completes with
+     * the number of messages sent once all are accepted, or exceptionally on the first one that is not.
+     */
+    public CompletableFuture<Long> send(String address, Publisher<Message> messages, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be positive");
+        }
+        SendSubscriber subscriber = new SendSubscriber(address, window);
+        messages.subscribe(subscriber);
+        return subscriber.result;
+    }
+
+    private CompletableFuture<ProtonConnection> getConnection() {
+        if (connection == null || connection.isCompletedExceptionally() || (connection.isDone() && connection.join().isDisconnected())) {
+            CompletableFuture<ProtonConnection> promise = new CompletableFuture<>();
+            connection = promise;
+            ProtonClient client = ProtonClient.create(vertx);
+            client.connect(clientOptions, host, port, result -> {
+                if (result.succeeded()) {
+                    ProtonConnection conn = result.result();
+                    conn.openHandler(open -> {
+                        if (open.succeeded()) {
+                            log.debug("Connected to {}:{}", host, port);
+                            promise.complete(conn);
+                        } else {
+                            promise.completeExceptionally(open.cause());
+                        }
+                    });
+                    conn.closeHandler(c -> {
+                        conn.close();
+                        conn.disconnect();
+                    });
+                    conn.disconnectHandler(c -> {
+                        log.debug("Disconnected from {}:{}", host, port);
+                        IOException error = new IOException("Disconnected from " + host + ":" + port);
+                        promise.completeExceptionally(error);
+                        for (Stream stream : new ArrayList<>(streams)) {
+                            stream.fail(error);
+                        }
+                    });
+                    conn.open();
+                } else {
+                    promise.completeExceptionally(result.cause());
+                }
+            });
+        }
+        return connection;
+    }
+
+    @Override
+    public void close() {
+        context.runOnContext(v -> {
+            if (connection != null) {
+                connection.thenAccept(conn -> {
+                    conn.close();
+                    conn.disconnect();
+                });
+                connection = null;
+            }
+        });
+    }
+
+    /**
+     * A stream over a link of the connection, failed if the connection is lost.
+     */
+    private interface Stream {
+        void fail(Throwable error);
+    }
+
+    /**
+     * Subscription of a receiver link. All state is confined to the client context, but for the count of messages
+     * passed to the subscriber, read by the subscriber calls to know which messages it consumed.
+     */
+    private class ReceiveSubscription implements Subscription, Stream {
+        private final String address;
+        private final int prefetch;
+        private final int settleBatch;
+        private final long idleTimeoutMillis;
+        private final Subscriber<? super Message> subscriber;
+        private final Deque<ProtonDelivery> unsettled = new ArrayDeque<>();
+
+        private ProtonReceiver receiver;
+        private boolean opened;
+        private boolean done;
+        private long demand;
+        private long credit;
+        private long lastActivity;
+        private long idleTimer = -1;
+        private volatile long delivered;
+        private long consumed;
+        private long settled;
+
+        private ReceiveSubscription(String address, int prefetch, int settleBatch, long idleTimeoutMillis, Subscriber<? super Message> subscriber) {
+            this.address = address;
+            this.prefetch = prefetch;
+            this.settleBatch = settleBatch;
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            this.subscriber = subscriber;
+        }
+
+        private void start() {
+            subscriber.onSubscribe(this);
+            getConnection().whenComplete((conn, error) -> {
+                if (done) {
+                    return;
+                }
+                if (error != null) {
+                    fail(error);
+                } else {
+                    open(conn);
+                }
+            });
+        }
+
+        private void open(ProtonConnection conn) {
+            streams.add(this);
+            receiver = conn.createReceiver(address);
+            receiver.setPrefetch(0);
+            receiver.setAutoAccept(false);
+            receiver.handler(this::handleMessage);
+            receiver.openHandler(result -> {
+                if (result.failed()) {
+                    fail(result.cause());
+                } else if (!done) {
+                    opened = true;
+                    lastActivity = System.nanoTime();
+                    scheduleIdleCheck(idleTimeoutMillis);
+                    flow();
+                }
+            });
+            receiver.closeHandler(result -> fail(result.failed() ? result.cause() : new IOException("Receiver for " + address + " closed by " + host + ":" + port)));
+            receiver.open();
+        }
+
+        private void handleMessage(ProtonDelivery delivery, Message message) {
+            if (done) {
+                return;
+            }
+            credit--;
+            demand--;
+            lastActivity = System.nanoTime();
+            unsettled.add(delivery);
+            delivered++;
+            subscriber.onNext(message);
+            flow();
+        }
+
+        /**
+         * The subscriber is done with the messages up to position, accept them once a batch of them is consumed.
+         */
+        private void consumed(long position) {
+            consumed = Math.max(consumed, position);
+            if (consumed - settled >= settleBatch) {
+                settle();
+            }
+        }
+
+        /**
+         * Give credit up to the demand of the subscriber, capped by the prefetch, once at least half of it is used.
+         */
+        private void flow() {
+            if (!opened || done) {
+                return;
+            }
+            long wanted = Math.min(demand, prefetch) - credit;
+            if (wanted > 0 && (credit == 0 || wanted >= prefetch / 2)) {
+                receiver.flow((int) wanted);
+                credit += wanted;
+            }
+        }
+
+        private void settle() {
+            while (settled < consumed) {
+                unsettled.poll().disposition(Accepted.getInstance(), true);
+                settled++;
+            }
+        }
+
+        private void scheduleIdleCheck(long delay) {
+            if (idleTimeoutMillis > 0) {
+                idleTimer = vertx.setTimer(Math.max(1, delay), id -> {
+                    long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivity);
+                    if (idle >= idleTimeoutMillis) {
+                        if (finish()) {
+                            subscriber.onComplete();
+                            consumed = delivered;
+                            close();
+                        }
+                    } else {
+                        scheduleIdleCheck(idleTimeoutMillis - idle);
+                    }
+                });
+            }
+        }
+
+        private boolean finish() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            streams.remove(this);
+            if (idleTimer != -1) {
+                vertx.cancelTimer(idleTimer);
+            }
+            return true;
+        }
+
+        /**
+         * Accept the consumed messages and close the receiver, which returns the others to the host.
+         */
+        private void close() {
+            if (receiver != null) {
+                settle();
+                receiver.close();
+            }
+        }
+
+        @Override
+        public void fail(Throwable error) {
+            if (finish()) {
+                subscriber.onError(error);
+                close();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            long position = delivered;
+            context.runOnContext(v -> {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException("Requested " + n + " messages, must be positive"));
+                } else if (!done) {
+                    consumed(position);
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    flow();
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            long position = delivered;
+            context.runOnContext(v -> {
+                if (finish()) {
+                    consumed = Math.max(consumed, position);
+                    close();
+                }
+            });
+        }
+    }
+
+    /**
+     * Subscriber sending to a sender link. All state is confined to the client context.
+     */
+    private class SendSubscriber implements Subscriber<Message>, Stream {
+        private final String address;
+        private final int window;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        private Subscription subscription;
+        private ProtonSender sender;
+        private boolean completed;
+        private boolean done;
+        private int inFlight;
+        private int settledSinceRequest;
+        private long accepted;
+
+        private SendSubscriber(String address, int window) {
+            this.address = address;
+            this.window = window;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            context.runOnContext(v -> {
+                if (subscription != null) {
+                    s.cancel();
+                    return;
+                }
+                subscription = s;
+                getConnection().whenComplete((conn, error) -> {
+                    if (done) {
+                        return;
+                    }
+                    if (error != null) {
+                        fail(error);
+                    } else {
+                        open(conn);
+                    }
+                });
+            });
+        }
+
+        private void open(ProtonConnection conn) {
+            streams.add(this);
+            sender = conn.createSender(address);
+            sender.openHandler(result -> {
+                if (result.failed()) {
+                    fail(result.cause());
+                } else if (!done) {
+                    subscription.request(window);
+                }
+            });
+            sender.closeHandler(result -> fail(result.failed() ? result.cause() : new IOException("Sender for " + address + " closed by " + host + ":" + port)));
+            sender.open();
+        }
+
+        @Override
+        public void onNext(Message message) {
+            context.runOnContext(v -> {
+                if (!done) {
+                    inFlight++;
+                    boolean[] settled = {false};
+                    sender.send(message, delivery -> {
+                        // The host may give the outcome without settling, the message is done either way
+                        if (!settled[0] && (delivery.remotelySettled() || delivery.getRemoteState() instanceof Outcome)) {
+                            settled[0] = true;
+                            if (!delivery.remotelySettled()) {
+                                delivery.settle();
+                            }
+                            settled(delivery.getRemoteState());
+                        }
+                    });
+                }
+            });
+        }
+
+        private void settled(DeliveryState state) {
+            inFlight--;
+            if (done) {
+                return;
+            }
+            if (!(state instanceof Accepted)) {
+                fail(new IllegalStateException("Message to " + address + " not accepted: " + state));
+                return;
+            }
+            accepted++;
+            settledSinceRequest++;
+            if (completed) {
+                checkDone();
+            } else if (settledSinceRequest >= Math.max(1, window / 2)) {
+                subscription.request(settledSinceRequest);
+                settledSinceRequest = 0;
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            context.runOnContext(v -> fail(error));
+        }
+
+        @Override
+        public void onComplete() {
+            context.runOnContext(v -> {
+                completed = true;
+                checkDone();
+            });
+        }
+
+        private void checkDone() {
+            if (!done && inFlight == 0) {
+                done = true;
+                streams.remove(this);
+                if (sender != null) {
+                    sender.close();
+                }
+                result.complete(accepted);
+            }
+        }
+
+        @Override
+        public void fail(Throwable error) {
+            if (done) {
+                return;
+            }
+            done = true;
+            streams.remove(this);
+            if (!completed && subscription != null) {
+                subscription.cancel();
+            }
+            if (sender != null) {
+                sender.close();
+            }
+            result.completeExceptionally(error);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.apache.qpid.proton.message.Message;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public interface SyncRequestClient extends AutoCloseable {
     void connect(String host, int port, ProtonClientOptions clientOptions, String address, CompletableFuture<Void> connectedPromise);
@@ -16,4 +17,24 @@ public interface SyncRequestClient extends AutoCloseable {
     String getReplyTo();
 
     Message request(Message message, long timeout, TimeUnit timeUnit);
+
+    /**
+     * Send a request without waiting for the response, so that multiple requests can be in flight at once.
+     * The returned future fails with a {@link TimeoutException} if no response is received
+     * within the timeout. Cancelling the returned future drops the request.
+     */
+    default CompletableFuture<Message> requestAsync(Message message, long timeout, TimeUnit timeUnit) {
+        CompletableFuture<Message> promise = new CompletableFuture<>();
+        try {
+            Message response = request(message, timeout, timeUnit);
+            if (response == null) {
+                promise.completeExceptionally(new TimeoutException("Timed out waiting for response"));
+            } else {
+                promise.complete(response);
+            }
+        } catch (Exception e) {
+            promise.completeExceptionally(e);
+        }
+        return promise;
+    }
 }
@@ -5,16 +5,26 @@
 
 package io.enmasse.amqp;
 
+import io.vertx.core.Vertx;
 import io.vertx.proton.ProtonClientOptions;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
 import org.apache.qpid.proton.message.Message;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ArtemisTest {
 
@@ -88,4 +98,54 @@ public class ArtemisTest {
 
         }
     }
+
+    @Test
+    public void testBatchMessageCounts() throws Exception {
+        TestClient testClient = new TestClient() {
+            @Override
+            public Message request(Message message, long timeout, TimeUnit timeUnit) {
+                String resource = (String) message.getApplicationProperties().getValue().get("_AMQ_ResourceName");
+                Message response = Proton.message();
+                Map<String, Object> properties = new HashMap<>();
+                if (resource.equals("queue.missing")) {
+                    properties.put("_AMQ_OperationSucceeded", false);
+                    response.setBody(new AmqpValue("queue not found"));
+                } else {
+                    properties.put("_AMQ_OperationSucceeded", true);
+                    response.setBody(new AmqpValue("[" + resource.length() + "]"));
+                }
+                response.setApplicationProperties(new ApplicationProperties(properties));
+                return response;
+            }
+        };
+        try (Artemis artemis = new Artemis(testClient)) {
+            BatchResult<String, Long> result = artemis.getQueueMessageCounts(Arrays.asList("q1", "queue2", "missing"));
+
+            assertFalse(result.isSuccess());
+            assertEquals(2, result.getResults().size());
+            assertEquals(8L, (long) result.getResults().get("q1"));
+            assertEquals(12L, (long) result.getResults().get("queue2"));
+            assertEquals(Collections.singleton("missing"), result.getFailures().keySet());
+            assertThrows(Exception.class, result::getResultsOrThrow);
+        }
+    }
+
+    @Test
+    public void testBatchFailsOnEventLoop() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try (Artemis artemis = new Artemis(new TestClient())) {
+            CompletableFuture<BatchResult<String, Long>> result = new CompletableFuture<>();
+            vertx.runOnContext(v -> {
+                try {
+                    result.complete(artemis.getQueueMessageCounts(Collections.singletonList("q1")));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            vertx.close();
+        }
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package io.enmasse.amqp;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+
+/**
+ * Publisher of the elements of an iterator, to a single subscriber.
+ */
+class IteratorPublisher<T> implements Publisher<T> {
+    private final Iterator<T> iterator;
+
+    IteratorPublisher(Iterator<T> iterator) {
+        this.iterator = iterator;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        subscriber.onSubscribe(new Subscription() {
+            private long demand;
+            private boolean emitting;
+            private boolean done;
+
+            @Override
+            public synchronized void request(long n) {
+                demand += n;
+                if (emitting) {
+                    return;
+                }
+                emitting = true;
+                while (demand > 0 && !done && iterator.hasNext()) {
+                    demand--;
+                    subscriber.onNext(iterator.next());
+                }
+                if (!done && !iterator.hasNext()) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+                emitting = false;
+            }
+
+            @Override
+            public synchronized void cancel() {
+                done = true;
+            }
+        });
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package io.enmasse.amqp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageStoreTest {
+
+    private static void add(MessageStore store, String address, String message) {
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        store.add(address, data, 0, data.length);
+    }
+
+    private static String poll(MessageStore store, String address) {
+        byte[] data = store.poll(address);
+        return data != null ? new String(data, StandardCharsets.UTF_8) : null;
+    }
+
+    @Test
+    public void testQueuesAcrossSegments() {
+        MessageStore store = new MessageStore(4, 64);
+        for (int i = 0; i < 100; i++) {
+            add(store, "a", "message-" + i);
+            add(store, "b", "other-" + i);
+        }
+        assertEquals(100, store.size("a"));
+        assertEquals(100, store.size("b"));
+
+        List<byte[]> peeked = store.peekAll("a");
+        assertEquals(100, peeked.size());
+        assertEquals("message-42", new String(peeked.get(42), StandardCharsets.UTF_8));
+        assertEquals(100, store.size("a"));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("message-" + i, poll(store, "a"));
+        }
+        assertNull(poll(store, "a"));
+        assertEquals(0, store.size("a"));
+        assertEquals("other-0", poll(store, "b"));
+
+        // Drained queue is reused
+        add(store, "a", "again");
+        assertEquals("again", poll(store, "a"));
+    }
+
+    @Test
+    public void testMessageLargerThanSegment() {
+        MessageStore store = new MessageStore(1, 16);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append(i);
+        }
+        add(store, "a", "small");
+        add(store, "a", large.toString());
+        add(store, "a", "small again");
+
+        assertEquals("small", poll(store, "a"));
+        assertEquals(large.toString(), poll(store, "a"));
+        assertEquals("small again", poll(store, "a"));
+    }
+
+    @Test
+    public void testMissingQueue() {
+        MessageStore store = new MessageStore();
+        assertFalse(store.exists("a"));
+        assertNull(store.poll("a"));
+        assertNull(store.peekAll("a"));
+        assertEquals(-1, store.size("a"));
+        store.create("a");
+        assertTrue(store.exists("a"));
+        assertEquals(0, store.size("a"));
+    }
+}
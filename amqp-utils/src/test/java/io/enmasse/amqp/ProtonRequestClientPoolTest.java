@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package io.enmasse.amqp;
+
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonClientOptions;
+import io.vertx.proton.ProtonServer;
+import io.vertx.proton.ProtonSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ProtonRequestClientPoolTest {
+    private Vertx vertx;
+    private ProtonServer server;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @BeforeEach
+    public void setup() throws InterruptedException {
+        vertx = Vertx.vertx();
+        server = ProtonServer.create(vertx);
+        CountDownLatch latch = new CountDownLatch(1);
+        server.connectHandler(conn -> {
+            connections.incrementAndGet();
+            conn.closeHandler(c -> {
+                conn.close();
+                conn.disconnect();
+            });
+            conn.disconnectHandler(c -> conn.disconnect()).open();
+            conn.sessionOpenHandler(ProtonSession::open);
+            conn.receiverOpenHandler(receiver -> {
+                receiver.setTarget(receiver.getRemoteTarget());
+                receiver.open();
+            });
+            conn.senderOpenHandler(sender -> {
+                sender.setSource(sender.getRemoteSource());
+                sender.open();
+            });
+        }).listen(12348, res -> latch.countDown());
+        latch.await();
+    }
+
+    @AfterEach
+    public void teardown() {
+        server.close();
+        vertx.close();
+    }
+
+    @Test
+    public void testClientIsReused() throws Exception {
+        try (ProtonRequestClientPool pool = new ProtonRequestClientPool(vertx, "test-client", new ProtonClientOptions(), null, Duration.ofSeconds(10), Duration.ofMinutes(1))) {
+            SyncRequestClient first = pool.acquire("127.0.0.1", 12348).get(10, TimeUnit.SECONDS);
+            SyncRequestClient second = pool.acquire("127.0.0.1", 12348).get(10, TimeUnit.SECONDS);
+            assertSame(first, second);
+            assertEquals(1, connections.get());
+            assertEquals(1, pool.size());
+
+            pool.invalidate("127.0.0.1", 12348);
+            SyncRequestClient third = pool.acquire("127.0.0.1", 12348).get(10, TimeUnit.SECONDS);
+            assertNotSame(first, third);
+            assertEquals(2, connections.get());
+        }
+    }
+
+    @Test
+    public void testIdleClientIsEvicted() throws Exception {
+        try (ProtonRequestClientPool pool = new ProtonRequestClientPool(vertx, "test-client", new ProtonClientOptions(), null, Duration.ofSeconds(10), Duration.ofMillis(100))) {
+            pool.acquire("127.0.0.1", 12348).get(10, TimeUnit.SECONDS);
+            assertEquals(1, pool.size());
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (pool.size() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals(0, pool.size());
+        }
+    }
+}
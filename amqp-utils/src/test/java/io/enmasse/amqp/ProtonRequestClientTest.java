@@ -15,15 +15,24 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ProtonRequestClientTest {
     private Vertx vertx;
     private ProtonServer server;
+    private final AtomicInteger echoed = new AtomicInteger();
 
     @BeforeEach
     public void setup() throws InterruptedException {
@@ -46,16 +55,23 @@ public class ProtonRequestClientTest {
                 System.out.println("Receiver open");
                 receiver.setTarget(receiver.getRemoteTarget());
                 receiver.handler((delivery, message) -> {
+                    if ("ignore".equals(message.getSubject())) {
+                        return;
+                    }
                     Message response = Message.Factory.create();
                     response.setAddress(message.getAddress());
-                    response.setBody(new AmqpValue(true));
+                    response.setBody("echo".equals(message.getSubject()) ? message.getBody() : new AmqpValue(true));
                     response.setCorrelationId(message.getCorrelationId());
                     response.setReplyTo(message.getReplyTo());
-                    try {
-                        futureSender.get().send(response);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+                    // Respond to the echo requests in reverse order of arrival
+                    long delay = "echo".equals(message.getSubject()) ? 500 - 10 * echoed.getAndIncrement() : 0;
+                    vertx.setTimer(Math.max(1, delay), id -> {
+                        try {
+                            futureSender.get().send(response);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    });
                 });
                 receiver.open();
             });
@@ -95,4 +111,79 @@ public class ProtonRequestClientTest {
             future.get(10, TimeUnit.SECONDS);
         }
     }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        try (ProtonRequestClient client = new ProtonRequestClient(Vertx.vertx(), "test-client")) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            client.connect("127.0.0.1", 12347, future);
+            future.get(10, TimeUnit.SECONDS);
+
+            List<CompletableFuture<Message>> responses = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Message request = Message.Factory.create();
+                request.setAddress("echo");
+                request.setBody(new AmqpValue("request-" + i));
+                request.setSubject("echo");
+                responses.add(client.requestAsync(request, 10, TimeUnit.SECONDS));
+            }
+
+            for (int i = 0; i < responses.size(); i++) {
+                Message response = responses.get(i).get(10, TimeUnit.SECONDS);
+                assertEquals("request-" + i, ((AmqpValue) response.getBody()).getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testRequestTimeout() throws Exception {
+        try (ProtonRequestClient client = new ProtonRequestClient(Vertx.vertx(), "test-client")) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            client.connect("127.0.0.1", 12347, future);
+            future.get(10, TimeUnit.SECONDS);
+
+            Message ignored = Message.Factory.create();
+            ignored.setAddress("ignore");
+            ignored.setSubject("ignore");
+            CompletableFuture<Message> timedOut = client.requestAsync(ignored, 100, TimeUnit.MILLISECONDS);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> timedOut.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof TimeoutException);
+
+            ignored = Message.Factory.create();
+            ignored.setAddress("ignore");
+            ignored.setSubject("ignore");
+            assertNull(client.request(ignored, 100, TimeUnit.MILLISECONDS));
+
+            Message request = Message.Factory.create();
+            request.setAddress("health-check");
+            request.setSubject("health-check");
+            Message response = client.request(request, 10, TimeUnit.SECONDS);
+            assertTrue((Boolean) ((AmqpValue) response.getBody()).getValue());
+        }
+    }
+
+    @Test
+    public void testInterruptedRequest() throws Exception {
+        try (ProtonRequestClient client = new ProtonRequestClient(Vertx.vertx(), "test-client")) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            client.connect("127.0.0.1", 12347, future);
+            future.get(10, TimeUnit.SECONDS);
+
+            Message ignored = Message.Factory.create();
+            ignored.setAddress("ignore");
+            ignored.setSubject("ignore");
+            ignored.setMessageId("request-1");
+            Thread.currentThread().interrupt();
+            assertThrows(RuntimeException.class, () -> client.request(ignored, 1, TimeUnit.MINUTES));
+            assertTrue(Thread.interrupted());
+
+            // The interrupted request is no longer in flight, so its id can be used again
+            Message request = Message.Factory.create();
+            request.setAddress("health-check");
+            request.setSubject("health-check");
+            request.setMessageId("request-1");
+            Message response = client.request(request, 10, TimeUnit.SECONDS);
+            assertTrue((Boolean) ((AmqpValue) response.getBody()).getValue());
+        }
+    }
 }
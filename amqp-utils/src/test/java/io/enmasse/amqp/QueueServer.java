@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package io.enmasse.amqp;
+
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonSender;
+import io.vertx.proton.ProtonServer;
+import io.vertx.proton.ProtonSession;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.message.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AMQP server keeping a queue per address, to test clients against.
+ */
+class QueueServer {
+    private final Vertx vertx;
+    private final Map<String, Queue<Message>> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger accepted = new AtomicInteger();
+    private ProtonServer server;
+
+    QueueServer(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    int start() throws InterruptedException {
+        server = ProtonServer.create(vertx);
+        CountDownLatch latch = new CountDownLatch(1);
+        server.connectHandler(conn -> {
+            connections.incrementAndGet();
+            List<Long> timers = new ArrayList<>();
+            conn.closeHandler(c -> {
+                conn.close();
+                conn.disconnect();
+            });
+            conn.disconnectHandler(c -> {
+                timers.forEach(vertx::cancelTimer);
+                conn.disconnect();
+            }).open();
+            conn.sessionOpenHandler(ProtonSession::open);
+
+            conn.receiverOpenHandler(receiver -> {
+                receiver.setTarget(receiver.getRemoteTarget());
+                Queue<Message> queue = queue(receiver.getRemoteTarget().getAddress());
+                receiver.handler((delivery, message) -> queue.add(message));
+                receiver.open();
+            });
+
+            conn.senderOpenHandler(sender -> {
+                sender.setSource(sender.getRemoteSource());
+                Queue<Message> queue = queue(sender.getRemoteSource().getAddress());
+                sender.sendQueueDrainHandler(s -> pump(sender, queue));
+                long timer = vertx.setPeriodic(10, id -> pump(sender, queue));
+                timers.add(timer);
+                sender.closeHandler(c -> {
+                    timers.remove(timer);
+                    vertx.cancelTimer(timer);
+                    sender.close();
+                });
+                sender.open();
+            });
+        }).listen(0, res -> latch.countDown());
+        latch.await();
+        return server.actualPort();
+    }
+
+    private void pump(ProtonSender sender, Queue<Message> queue) {
+        while (!sender.sendQueueFull()) {
+            Message message = queue.poll();
+            if (message == null) {
+                break;
+            }
+            sender.send(message, delivery -> {
+                if (delivery.remotelySettled() && delivery.getRemoteState() instanceof Accepted) {
+                    accepted.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    Queue<Message> queue(String address) {
+        return queues.computeIfAbsent(address, a -> new ConcurrentLinkedQueue<>());
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    int getAccepted() {
+        return accepted.get();
+    }
+
+    void close() {
+        server.close();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package io.enmasse.amqp;
+
+import io.vertx.proton.ProtonClientOptions;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.message.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RouterEntityQueryTest {
+
+    private static final RouterEntity address = new RouterEntity("org.apache.qpid.dispatch.router.config.address", "prefix", "distribution");
+
+    /**
+     * Serves the QUERY and READ operations of the router management agent from a list of entities.
+     */
+    private static class TestClient implements SyncRequestClient {
+
+        final List<Map<String, Object>> entities = new ArrayList<>();
+        int queries;
+        int reads;
+
+        void addEntity(String identity, String prefix, String distribution) {
+            Map<String, Object> entity = new LinkedHashMap<>();
+            entity.put("identity", identity);
+            entity.put("prefix", prefix);
+            entity.put("distribution", distribution);
+            entities.add(entity);
+        }
+
+        @Override
+        public void connect(String host, int port, ProtonClientOptions clientOptions, String address, CompletableFuture<Void> connectedPromise) {
+
+        }
+
+        @Override
+        public String getRemoteContainer() {
+            return null;
+        }
+
+        @Override
+        public String getReplyTo() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+
+        }
+
+        @Override
+        public Message request(Message message, long timeout, TimeUnit timeUnit) {
+            Map<String, Object> properties = message.getApplicationProperties().getValue();
+            Message response = Proton.message();
+            Map<String, Object> responseProperties = new LinkedHashMap<>();
+            responseProperties.put("statusCode", 200);
+
+            if ("QUERY".equals(properties.get("operation"))) {
+                queries++;
+                int offset = (Integer) properties.get("offset");
+                int count = (Integer) properties.get("count");
+                @SuppressWarnings("unchecked")
+                List<String> attributeNames = (List<String>) ((Map<String, Object>) ((AmqpValue) message.getBody()).getValue()).get("attributeNames");
+
+                List<List<?>> results = new ArrayList<>();
+                for (Map<String, Object> entity : entities.subList(Math.min(offset, entities.size()), Math.min(offset + count, entities.size()))) {
+                    List<Object> row = new ArrayList<>();
+                    for (String attributeName : attributeNames) {
+                        row.add(entity.get(attributeName));
+                    }
+                    results.add(row);
+                }
+                Map<String, Object> body = new LinkedHashMap<>();
+                body.put("attributeNames", attributeNames);
+                body.put("results", results);
+                response.setBody(new AmqpValue(body));
+            } else {
+                reads++;
+                Map<String, Object> found = entities.stream()
+                        .filter(entity -> entity.get("identity").equals(properties.get("identity")))
+                        .findFirst().orElse(null);
+                if (found == null) {
+                    responseProperties.put("statusCode", 404);
+                }
+                response.setBody(new AmqpValue(found != null ? found : Collections.emptyMap()));
+            }
+            response.setApplicationProperties(new ApplicationProperties(responseProperties));
+            return response;
+        }
+    }
+
+    @Test
+    public void testPagedQuery() throws Exception {
+        TestClient client = new TestClient();
+        for (int i = 0; i < 25; i++) {
+            client.addEntity("a" + i, "addr" + i, i % 2 == 0 ? "balanced" : "multicast");
+        }
+
+        RouterEntityTable table = new RouterEntityQuery(client, address, 10, 1000).fetchAll().get();
+
+        assertEquals(3, client.queries);
+        assertEquals(25, table.size());
+        assertEquals(Arrays.asList("prefix", "distribution"), Arrays.asList(table.getAttributeNames()));
+        assertEquals("addr12", table.get(12, 0));
+        assertEquals("a12", table.getIdentity(12));
+        assertEquals(Arrays.asList("addr3", "multicast"), table.toRows().get(3));
+        // Repeated values are stored once
+        assertSame(table.get(1, 1), table.get(3, 1));
+    }
+
+    @Test
+    public void testChangedQuery() throws Exception {
+        TestClient client = new TestClient();
+        for (int i = 0; i < 5; i++) {
+            client.addEntity("a" + i, "addr" + i, "balanced");
+        }
+        RouterEntityTable base = new RouterEntityQuery(client, address, 10, 1000).fetchAll().get();
+
+        client.entities.remove(1);
+        client.addEntity("a5", "addr5", "multicast");
+        client.queries = 0;
+
+        RouterEntityTable table = new RouterEntityQuery(client, address, 10, 1000).fetchChanged(base).get();
+
+        assertEquals(1, client.queries);
+        assertEquals(1, client.reads);
+        assertEquals(5, table.size());
+        assertEquals(Arrays.asList("addr0", "addr2", "addr3", "addr4", "addr5"), Arrays.asList(table.get(0, 0), table.get(1, 0), table.get(2, 0), table.get(3, 0), table.get(4, 0)));
+        assertEquals("multicast", table.get(4, 1));
+        assertEquals("a5", table.getIdentity(4));
+    }
+
+    @Test
+    public void testCancelledQueryDropsPendingRequests() {
+        List<CompletableFuture<Message>> requests = new ArrayList<>();
+        TestClient client = new TestClient() {
+            @Override
+            public CompletableFuture<Message> requestAsync(Message message, long timeout, TimeUnit timeUnit) {
+                CompletableFuture<Message> request = new CompletableFuture<>();
+                requests.add(request);
+                return request;
+            }
+        };
+
+        RouterEntityQuery query = new RouterEntityQuery(client, address, 10, 1000);
+        CompletableFuture<RouterEntityTable> table = query.fetchAll();
+        query.cancel();
+
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).isCancelled());
+        assertTrue(table.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package io.enmasse.amqp;
+
+import io.vertx.core.Vertx;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of draining a queue to a file and replaying the file to a queue, in messages per second, comparing the
+ * {@link StreamingClient} with the {@link BlockingClient}.
+ *
+ * Not run as part of the tests, run it through the main method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StreamingClientBenchmark {
+    private static final int MESSAGES = 10_000;
+    private static final String ADDRESS = "benchmark";
+
+    private Vertx vertx;
+    private QueueServer server;
+    private StreamingClient streamingClient;
+    private BlockingClient blockingClient;
+    private List<Message> messages;
+    private File replayFile;
+    private File drainFile;
+
+    @Setup
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        server = new QueueServer(vertx);
+        int port = server.start();
+        streamingClient = new StreamingClient(vertx, "127.0.0.1", port);
+        blockingClient = new BlockingClient("127.0.0.1", port);
+
+        byte[] payload = new byte[1024];
+        new Random(0).nextBytes(payload);
+        messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            Message message = Proton.message();
+            message.setMessageId("message-" + i);
+            message.setBody(new Data(new Binary(payload)));
+            messages.add(message);
+        }
+
+        replayFile = File.createTempFile("replay", ".amqp");
+        replayFile.deleteOnExit();
+        drainFile = File.createTempFile("drain", ".amqp");
+        drainFile.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(replayFile)))) {
+            for (Message message : messages) {
+                writeMessage(out, message);
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void fillQueue() {
+        Queue<Message> queue = server.queue(ADDRESS);
+        queue.clear();
+        queue.addAll(messages);
+    }
+
+    @TearDown
+    public void teardown() {
+        streamingClient.close();
+        blockingClient.close();
+        server.close();
+        vertx.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long drainToFileStreaming(Window window) throws Exception {
+        CompletableFuture<Long> drained = new CompletableFuture<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(drainFile)))) {
+            streamingClient.receive(ADDRESS, window.size, Math.max(1, window.size / 2), 0, TimeUnit.SECONDS).subscribe(new Subscriber<Message>() {
+                private Subscription subscription;
+                private long count;
+
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(MESSAGES);
+                }
+
+                @Override
+                public void onNext(Message message) {
+                    try {
+                        writeMessage(out, message);
+                    } catch (IOException e) {
+                        subscription.cancel();
+                        drained.completeExceptionally(e);
+                        return;
+                    }
+                    if (++count == MESSAGES) {
+                        subscription.cancel();
+                        drained.complete(count);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    drained.completeExceptionally(error);
+                }
+
+                @Override
+                public void onComplete() {
+                    drained.complete(count);
+                }
+            });
+            return drained.get(5, TimeUnit.MINUTES);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long drainToFileBlocking() throws Exception {
+        List<Message> received = blockingClient.recv(ADDRESS, MESSAGES, 5, TimeUnit.MINUTES);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(drainFile)))) {
+            for (Message message : received) {
+                writeMessage(out, message);
+            }
+        }
+        return received.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long replayFromFileStreaming(Window window) throws Exception {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(replayFile)))) {
+            return streamingClient.send(ADDRESS, new IteratorPublisher<>(new MessageFileIterator(in)), window.size).get(5, TimeUnit.MINUTES);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long replayFromFileBlocking() throws Exception {
+        List<Message> replayed = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(replayFile)))) {
+            new MessageFileIterator(in).forEachRemaining(replayed::add);
+        }
+        blockingClient.send(ADDRESS, replayed, 5, TimeUnit.MINUTES);
+        return replayed.size();
+    }
+
+    /**
+     * Prefetch and window of the streaming client, not a parameter of the blocking client benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Window {
+        @Param({"1", "100", "1000"})
+        private int size;
+    }
+
+    private static void writeMessage(DataOutputStream out, Message message) throws IOException {
+        byte[] buffer = new byte[2048];
+        int length = message.encode(buffer, 0, buffer.length);
+        out.writeInt(length);
+        out.write(buffer, 0, length);
+    }
+
+    /**
+     * Messages of a file written by {@link #writeMessage}.
+     */
+    private static class MessageFileIterator implements Iterator<Message> {
+        private final DataInputStream in;
+        private Message next;
+
+        private MessageFileIterator(DataInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    int length = in.readInt();
+                    byte[] buffer = new byte[length];
+                    in.readFully(buffer);
+                    next = Proton.message();
+                    next.decode(buffer, 0, length);
+                } catch (EOFException e) {
+                    return false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Message next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Message message = next;
+            next = null;
+            return message;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(StreamingClientBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
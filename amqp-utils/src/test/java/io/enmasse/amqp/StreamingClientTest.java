@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package io.enmasse.amqp;
+
+import io.vertx.core.Vertx;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.message.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingClientTest {
+    private Vertx vertx;
+    private QueueServer server;
+    private int port;
+
+    @BeforeEach
+    public void setup() throws InterruptedException {
+        vertx = Vertx.vertx();
+        server = new QueueServer(vertx);
+        port = server.start();
+    }
+
+    @AfterEach
+    public void teardown() {
+        server.close();
+        vertx.close();
+    }
+
+    @Test
+    public void testSendAndReceive() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Message message = Proton.message();
+            message.setBody(new AmqpValue("message-" + i));
+            messages.add(message);
+        }
+
+        try (StreamingClient client = new StreamingClient(vertx, "127.0.0.1", port)) {
+            long sent = client.send("queue1", new IteratorPublisher<>(messages.iterator()), 100).get(1, TimeUnit.MINUTES);
+            assertEquals(1000, sent);
+            assertEquals(1000, server.queue("queue1").size());
+
+            CompletableFuture<List<String>> received = new CompletableFuture<>();
+            client.receive("queue1", 50, 20, 1, TimeUnit.SECONDS).subscribe(new Subscriber<Message>() {
+                private final List<String> bodies = new ArrayList<>();
+                private Subscription subscription;
+
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(10);
+                }
+
+                @Override
+                public void onNext(Message message) {
+                    bodies.add((String) ((AmqpValue) message.getBody()).getValue());
+                    if (bodies.size() % 10 == 0) {
+                        subscription.request(10);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    received.completeExceptionally(error);
+                }
+
+                @Override
+                public void onComplete() {
+                    received.complete(bodies);
+                }
+            });
+
+            List<String> bodies = received.get(1, TimeUnit.MINUTES);
+            assertEquals(1000, bodies.size());
+            assertEquals("message-0", bodies.get(0));
+            assertEquals("message-999", bodies.get(999));
+            assertEquals(0, server.queue("queue1").size());
+
+            // Both streams used the same connection
+            assertEquals(1, server.getConnections());
+        }
+    }
+
+    @Test
+    public void testMessagesAreAcceptedOnceConsumed() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Message message = Proton.message();
+            message.setBody(new AmqpValue("message-" + i));
+            server.queue("queue2").add(message);
+        }
+
+        try (StreamingClient client = new StreamingClient(vertx, "127.0.0.1", port)) {
+            AtomicReference<Subscription> subscription = new AtomicReference<>();
+            CountDownLatch first = new CountDownLatch(5);
+            CountDownLatch all = new CountDownLatch(10);
+            client.receive("queue2", 10, 1, 0, TimeUnit.SECONDS).subscribe(new Subscriber<Message>() {
+                @Override
+                public void onSubscribe(Subscription s) {
+                    subscription.set(s);
+                    s.request(5);
+                }
+
+                @Override
+                public void onNext(Message message) {
+                    first.countDown();
+                    all.countDown();
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+
+            // Not accepted while the subscriber may still be processing them
+            assertTrue(first.await(1, TimeUnit.MINUTES));
+            Thread.sleep(500);
+            assertEquals(0, server.getAccepted());
+
+            // Requesting more means the subscriber is done with the messages passed so far
+            subscription.get().request(5);
+            assertTrue(all.await(1, TimeUnit.MINUTES));
+            waitFor(() -> server.getAccepted() == 5);
+
+            subscription.get().cancel();
+            waitFor(() -> server.getAccepted() == 10);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long endTime = System.currentTimeMillis() + 60_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < endTime) {
+            Thread.sleep(100);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
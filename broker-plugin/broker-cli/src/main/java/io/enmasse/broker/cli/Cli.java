@@ -17,16 +17,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.concurrent.TimeoutException;
 
 public class Cli implements Closeable {
 
     private static final Logger log = LoggerFactory.getLogger(Cli.class.getName());
+    private Vertx vertx;
+    private ClientFactory clientFactory;
     private SyncRequestClient brokerClient;
     private Artemis artemis;
     private String command;
     private String queue;
+    private String targetHost;
+    private int targetPort;
+    private String targetQueue;
+    private int window;
+    private String checkpoint;
 
 
     private boolean parserArgs(String[] args) {
@@ -38,12 +45,30 @@ public class Cli implements Closeable {
             .setRequired(true)
             .addChoice("purgeQueue")
             .addChoice("getMessageCount")
+            .addChoice("migrateQueue")
             .setDescription("Command to run on broker"));
         parser.addOption(new Option()
             .setLongName("queue")
             .setShortName("q")
             .setRequired(true)
             .setDescription("Queue to run command against"));
+        parser.addOption(new Option()
+            .setLongName("target-host")
+            .setDescription("Broker to move messages to with migrateQueue"));
+        parser.addOption(new Option()
+            .setLongName("target-port")
+            .setDefaultValue("5673")
+            .setDescription("Port of the broker to move messages to"));
+        parser.addOption(new Option()
+            .setLongName("target-queue")
+            .setDescription("Queue to move messages to, the same queue by default"));
+        parser.addOption(new Option()
+            .setLongName("window")
+            .setDefaultValue("100")
+            .setDescription("Maximum number of messages in flight while moving messages"));
+        parser.addOption(new Option()
+            .setLongName("checkpoint")
+            .setDescription("File to record the progress of moving messages to, and resume it from"));
 
         StringBuilder builder = new StringBuilder();
         parser.usage(builder);
@@ -52,6 +77,14 @@ public class Cli implements Closeable {
             CommandLine cl = parser.parse(Arrays.asList(args));
             this.command = cl.getOptionValue("c");
             this.queue = cl.getOptionValue("q");
+            this.targetHost = cl.getOptionValue("target-host");
+            this.targetPort = Integer.parseInt(cl.getOptionValue("target-port"));
+            this.targetQueue = cl.getOptionValue("target-queue") != null ? cl.getOptionValue("target-queue") : queue;
+            this.window = Integer.parseInt(cl.getOptionValue("window"));
+            this.checkpoint = cl.getOptionValue("checkpoint");
+            if ("migrateQueue".equals(command) && targetHost == null) {
+                throw new IllegalArgumentException("migrateQueue requires --target-host");
+            }
             return true;
         } catch (Exception e) {
             log.info("\n" + builder.toString());
@@ -61,14 +94,14 @@ public class Cli implements Closeable {
 
     private void start() throws Exception {
 
-        Vertx vertx = Vertx.vertx();
-        ClientFactory clientFactory = new ClientFactory(vertx);
+        vertx = Vertx.vertx();
+        clientFactory = new ClientFactory(vertx);
         brokerClient = clientFactory.connectBrokerManagementClient("localhost", 5673);
         if (brokerClient == null) throw new IllegalStateException("Failed to connect to broker localhost:5673");
         artemis = new Artemis(brokerClient);
     }
 
-    private void run() throws TimeoutException {
+    private void run() throws Exception {
 
         switch (command) {
             case "getMessageCount":
@@ -77,11 +110,30 @@ public class Cli implements Closeable {
             case "purgeQueue":
                 artemis.purgeQueue(queue);
                 break;
+            case "migrateQueue":
+                migrateQueue();
+                break;
             default:
                 throw new IllegalStateException();
         }
     }
 
+    private void migrateQueue() throws Exception {
+        long count = artemis.getQueueMessageCount(queue);
+        log.info("Moving " + count + " messages from " + queue + " to " + targetHost + ":" + targetPort + "/" + targetQueue);
+
+        QueueMigrator migrator = new QueueMigrator(vertx,
+                new QueueMigrator.Endpoint("localhost", 5673, clientFactory.getProtonClientOptions(), queue),
+                new QueueMigrator.Endpoint(targetHost, targetPort, clientFactory.getProtonClientOptions(), targetQueue));
+        migrator.setWindow(window);
+        migrator.setExpectedMessages(count);
+        if (checkpoint != null) {
+            migrator.setCheckpoint(Paths.get(checkpoint));
+        }
+        long moved = migrator.migrate().get();
+        log.info("Moved " + moved + " messages");
+    }
+
     public static void main(String[] args) {
         try (Cli cli = new Cli()) {
             if (cli.parserArgs(args)) {
@@ -48,6 +48,10 @@ public class ClientFactory {
 
     }
 
+    public ProtonClientOptions getProtonClientOptions() {
+        return protonClientOptions;
+    }
+
     public SyncRequestClient connectBrokerManagementClient(String host, int port) throws Exception {
         ProtonRequestClient client = null;
         try {
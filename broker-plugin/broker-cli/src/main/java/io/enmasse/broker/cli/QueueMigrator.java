@@ -0,0 +1,368 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package io.enmasse.broker.cli;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonClient;
+import io.vertx.proton.ProtonClientOptions;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonDelivery;
+import io.vertx.proton.ProtonReceiver;
+import io.vertx.proton.ProtonSender;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Outcome;
+import org.apache.qpid.proton.amqp.messaging.Released;
+import org.apache.qpid.proton.amqp.transport.DeliveryState;
+import org.apache.qpid.proton.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Moves the messages of a queue from one broker to another.
+ *
+ * Up to a window of messages are in flight at a time, so memory use does not depend on the depth of the queue. A
+ * message is accepted on the source only once the target has accepted it, so the messages not moved when the
+ * migration fails are still on the source, and running it again resumes from there. Messages are sent with their
+ * message id as duplicate id, so that the target drops those it accepted but that were not accepted on the source.
+ * Messages without message id are moved at least once: they have nothing telling them apart from other messages with
+ * the same content, so those accepted by the target but not on the source are moved again by the next run.
+ *
+ * Progress is logged and written to an optional checkpoint file, from which the count of moved messages is resumed.
+ * The migration completes only once the final checkpoint is written.
+ */
+public class QueueMigrator {
+    private static final Logger log = LoggerFactory.getLogger(QueueMigrator.class.getName());
+    static final String DUPLICATE_ID = "_AMQ_DUPL_ID";
+
+    private final Vertx vertx;
+    private final Context context;
+    private final Endpoint source;
+    private final Endpoint target;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+    private int window = 100;
+    private long idleTimeout = TimeUnit.SECONDS.toMillis(10);
+    private long progressInterval = TimeUnit.SECONDS.toMillis(5);
+    private long expectedMessages = -1;
+    private Path checkpoint;
+
+    private ProtonConnection sourceConnection;
+    private ProtonConnection targetConnection;
+    private ProtonReceiver receiver;
+    private ProtonSender sender;
+    private int inFlight;
+    private int creditToReturn;
+    private long moved;
+    private long movedAtLastProgress;
+    private Object lastMessageId;
+    private long lastActivity;
+    private long lastProgress;
+    private long timer = -1;
+    private boolean finished;
+
+    public QueueMigrator(Vertx vertx, Endpoint source, Endpoint target) {
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.source = source;
+        this.target = target;
+    }
+
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    public void setIdleTimeout(long idleTimeout, TimeUnit timeUnit) {
+        this.idleTimeout = timeUnit.toMillis(idleTimeout);
+    }
+
+    public void setProgressInterval(long progressInterval, TimeUnit timeUnit) {
+        this.progressInterval = timeUnit.toMillis(progressInterval);
+    }
+
+    /**
+     * Number of messages expected to be moved, to report the progress against.
+     */
+    public void setExpectedMessages(long expectedMessages) {
+        this.expectedMessages = expectedMessages;
+    }
+
+    public void setCheckpoint(Path checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Move messages until none has been received for the idle timeout.
+     *
+     * @return the total number of messages moved, including those of previous runs with the same checkpoint
+     */
+    public CompletableFuture<Long> migrate() throws IOException {
+        moved = readCheckpoint();
+        movedAtLastProgress = moved;
+        if (moved > 0) {
+            log.info("Resuming migration of {} to {} after {} messages", source, target, moved);
+        }
+        context.runOnContext(v -> connect(target, targetConnection -> {
+            this.targetConnection = targetConnection;
+            openSender();
+        }));
+        return result;
+    }
+
+    private void connect(Endpoint endpoint, Consumer<ProtonConnection> onOpen) {
+        ProtonClient client = ProtonClient.create(vertx);
+        client.connect(endpoint.options, endpoint.host, endpoint.port, connectResult -> {
+            if (connectResult.failed()) {
+                fail(connectResult.cause());
+                return;
+            }
+            ProtonConnection connection = connectResult.result();
+            connection.openHandler(openResult -> {
+                if (openResult.succeeded()) {
+                    onOpen.accept(connection);
+                } else {
+                    fail(openResult.cause());
+                }
+            });
+            connection.closeHandler(closeResult -> fail(new IOException("Connection to " + endpoint + " closed")));
+            connection.disconnectHandler(c -> fail(new IOException("Disconnected from " + endpoint)));
+            connection.open();
+        });
+    }
+
+    private void openSender() {
+        sender = targetConnection.createSender(target.address);
+        sender.openHandler(openResult -> {
+            if (openResult.succeeded()) {
+                connect(source, sourceConnection -> {
+                    this.sourceConnection = sourceConnection;
+                    openReceiver();
+                });
+            } else {
+                fail(openResult.cause());
+            }
+        });
+        sender.closeHandler(closeResult -> fail(new IOException("Sender to " + target + " closed")));
+        sender.open();
+    }
+
+    private void openReceiver() {
+        receiver = sourceConnection.createReceiver(source.address);
+        receiver.setPrefetch(0);
+        receiver.setAutoAccept(false);
+        receiver.handler(this::forward);
+        receiver.openHandler(openResult -> {
+            if (openResult.succeeded()) {
+                log.info("Moving messages from {} to {} with a window of {}", source, target, window);
+                lastActivity = System.nanoTime();
+                lastProgress = lastActivity;
+                timer = vertx.setPeriodic(Math.min(progressInterval, Math.max(1, idleTimeout)), id -> checkProgress());
+                receiver.flow(window);
+            } else {
+                fail(openResult.cause());
+            }
+        });
+        receiver.closeHandler(closeResult -> fail(new IOException("Receiver from " + source + " closed")));
+        receiver.open();
+    }
+
+    private void forward(ProtonDelivery sourceDelivery, Message message) {
+        if (finished) {
+            return;
+        }
+        lastActivity = System.nanoTime();
+        inFlight++;
+        setDuplicateId(message);
+        boolean[] done = new boolean[1];
+        sender.send(message, targetDelivery -> {
+            DeliveryState state = targetDelivery.getRemoteState();
+            // The target may give the outcome without settling, the delivery is done either way
+            if (done[0] || !(targetDelivery.remotelySettled() || state instanceof Outcome)) {
+                return;
+            }
+            done[0] = true;
+            if (!targetDelivery.remotelySettled()) {
+                targetDelivery.settle();
+            }
+            // Left unsettled on the source once finished, the target drops them as duplicates if moved again
+            if (finished) {
+                return;
+            }
+            if (!(state instanceof Accepted)) {
+                sourceDelivery.disposition(Released.getInstance(), true);
+                fail(new IllegalStateException("Message " + message.getMessageId() + " not accepted by " + target + ": " + state));
+                return;
+            }
+            sourceDelivery.disposition(Accepted.getInstance(), true);
+            inFlight--;
+            moved++;
+            lastMessageId = message.getMessageId();
+            lastActivity = System.nanoTime();
+
+            creditToReturn++;
+            if (creditToReturn >= Math.max(1, window / 2)) {
+                receiver.flow(creditToReturn);
+                creditToReturn = 0;
+            }
+        });
+    }
+
+    static void setDuplicateId(Message message) {
+        if (message.getMessageId() == null) {
+            return;
+        }
+        ApplicationProperties properties = message.getApplicationProperties();
+        if (properties == null) {
+            properties = new ApplicationProperties(new HashMap<>());
+            message.setApplicationProperties(properties);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> values = properties.getValue();
+        values.putIfAbsent(DUPLICATE_ID, message.getMessageId().toString());
+    }
+
+    private void checkProgress() {
+        long now = System.nanoTime();
+        if (TimeUnit.NANOSECONDS.toMillis(now - lastProgress) >= progressInterval) {
+            double seconds = (double) (now - lastProgress) / TimeUnit.SECONDS.toNanos(1);
+            logProgress((moved - movedAtLastProgress) / seconds);
+            lastProgress = now;
+            movedAtLastProgress = moved;
+            writeCheckpoint(() -> { });
+        }
+
+        if (inFlight == 0 && TimeUnit.NANOSECONDS.toMillis(now - lastActivity) >= idleTimeout) {
+            log.info("No messages received from {} for {} ms, done", source, idleTimeout);
+            logProgress(0);
+            finish(null);
+        }
+    }
+
+    private void logProgress(double rate) {
+        if (expectedMessages >= 0) {
+            log.info("Moved {} of {} messages, {} in flight, {} msg/s", moved, expectedMessages, inFlight, String.format("%.1f", rate));
+        } else {
+            log.info("Moved {} messages, {} in flight, {} msg/s", moved, inFlight, String.format("%.1f", rate));
+        }
+    }
+
+    private void fail(Throwable error) {
+        if (finished) {
+            return;
+        }
+        log.warn("Migration from {} to {} failed after {} messages", source, target, moved, error);
+        finish(error);
+    }
+
+    /**
+     * Stop moving messages, and complete the result once the final checkpoint is written.
+     */
+    private void finish(Throwable error) {
+        finished = true;
+        close();
+        writeCheckpoint(() -> {
+            if (error == null) {
+                result.complete(moved);
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    private void close() {
+        if (timer != -1) {
+            vertx.cancelTimer(timer);
+        }
+        if (sourceConnection != null) {
+            sourceConnection.close();
+        }
+        if (targetConnection != null) {
+            targetConnection.close();
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (checkpoint == null || !Files.exists(checkpoint)) {
+            return 0;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            properties.load(in);
+        }
+        if (!source.toString().equals(properties.getProperty("source")) || !target.toString().equals(properties.getProperty("target"))) {
+            throw new IllegalArgumentException("Checkpoint " + checkpoint + " is for a migration from " + properties.getProperty("source") + " to " + properties.getProperty("target"));
+        }
+        return Long.parseLong(properties.getProperty("moved", "0"));
+    }
+
+    /**
+     * Replace the checkpoint with the current progress, without blocking the event loop. Writes are done in order, and
+     * the given task is run on the event loop once this one is done, whether it succeeded or not.
+     */
+    private void writeCheckpoint(Runnable then) {
+        if (checkpoint == null) {
+            then.run();
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("source", source.toString());
+        properties.setProperty("target", target.toString());
+        properties.setProperty("moved", String.valueOf(moved));
+        if (lastMessageId != null) {
+            properties.setProperty("lastMessageId", lastMessageId.toString());
+        }
+        vertx.executeBlocking(promise -> {
+            try {
+                Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    properties.store(out, "Queue migration checkpoint");
+                }
+                Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                promise.complete();
+            } catch (IOException e) {
+                promise.fail(e);
+            }
+        }, true, writeResult -> {
+            if (writeResult.failed()) {
+                log.warn("Error writing checkpoint {}", checkpoint, writeResult.cause());
+            }
+            then.run();
+        });
+    }
+
+    public static class Endpoint {
+        private final String host;
+        private final int port;
+        private final ProtonClientOptions options;
+        private final String address;
+
+        public Endpoint(String host, int port, ProtonClientOptions options, String address) {
+            this.host = host;
+            this.port = port;
+            this.options = options;
+            this.address = address;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port + "/" + address;
+        }
+    }
+}
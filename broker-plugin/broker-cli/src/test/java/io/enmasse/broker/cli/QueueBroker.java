@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package io.enmasse.broker.cli;
+
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonServer;
+import io.vertx.proton.ProtonSession;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Rejected;
+import org.apache.qpid.proton.message.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AMQP server keeping a queue per address, dropping messages with a duplicate id it already has. Messages sent from
+ * a queue go back to its head unless accepted.
+ */
+class QueueBroker {
+    private final Vertx vertx;
+    private final Map<String, Deque<Message>> queues = new ConcurrentHashMap<>();
+    private final Set<Object> duplicateIds = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger received = new AtomicInteger();
+    private volatile int rejected = -1;
+    private ProtonServer server;
+
+    QueueBroker(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    int start() throws InterruptedException {
+        server = ProtonServer.create(vertx);
+        CountDownLatch latch = new CountDownLatch(1);
+        server.connectHandler(conn -> {
+            // Messages sent on the connection and not settled yet, with their queue
+            Map<Message, Deque<Message>> inFlight = new LinkedHashMap<>();
+            conn.closeHandler(c -> {
+                requeue(inFlight);
+                conn.close();
+                conn.disconnect();
+            });
+            conn.disconnectHandler(c -> {
+                requeue(inFlight);
+                conn.disconnect();
+            }).open();
+            conn.sessionOpenHandler(ProtonSession::open);
+
+            conn.receiverOpenHandler(receiver -> {
+                receiver.setTarget(receiver.getRemoteTarget());
+                Deque<Message> queue = queue(receiver.getRemoteTarget().getAddress());
+                receiver.setAutoAccept(false);
+                receiver.handler((delivery, message) -> {
+                    if (received.incrementAndGet() == rejected) {
+                        delivery.disposition(new Rejected(), true);
+                        return;
+                    }
+                    Object duplicateId = message.getApplicationProperties() == null ? null :
+                            message.getApplicationProperties().getValue().get(QueueMigrator.DUPLICATE_ID);
+                    if (duplicateId == null || duplicateIds.add(duplicateId)) {
+                        queue.add(message);
+                    }
+                    delivery.disposition(Accepted.getInstance(), true);
+                });
+                receiver.open();
+            });
+
+            conn.senderOpenHandler(sender -> {
+                sender.setSource(sender.getRemoteSource());
+                Deque<Message> queue = queue(sender.getRemoteSource().getAddress());
+                sender.sendQueueDrainHandler(s -> {
+                    while (!s.sendQueueFull()) {
+                        Message message = queue.pollFirst();
+                        if (message == null) {
+                            break;
+                        }
+                        inFlight.put(message, queue);
+                        s.send(message, delivery -> {
+                            if (delivery.remotelySettled() && inFlight.remove(message) != null && !(delivery.getRemoteState() instanceof Accepted)) {
+                                queue.addFirst(message);
+                            }
+                        });
+                    }
+                });
+                sender.open();
+            });
+        }).listen(0, res -> latch.countDown());
+        latch.await();
+        return server.actualPort();
+    }
+
+    /**
+     * Put the messages in flight back to the head of their queues, in the order they were sent.
+     */
+    private static void requeue(Map<Message, Deque<Message>> inFlight) {
+        List<Map.Entry<Message, Deque<Message>>> entries = new ArrayList<>(inFlight.entrySet());
+        Collections.reverse(entries);
+        for (Map.Entry<Message, Deque<Message>> entry : entries) {
+            entry.getValue().addFirst(entry.getKey());
+        }
+        inFlight.clear();
+    }
+
+    /**
+     * Reject the nth message received, counting from 1.
+     */
+    void rejectMessage(int n) {
+        rejected = n;
+    }
+
+    Deque<Message> queue(String address) {
+        return queues.computeIfAbsent(address, a -> new ConcurrentLinkedDeque<>());
+    }
+
+    void close() {
+        server.close();
+    }
+}
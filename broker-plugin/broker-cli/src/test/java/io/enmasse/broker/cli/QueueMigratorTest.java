@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package io.enmasse.broker.cli;
+
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonClientOptions;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.message.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QueueMigratorTest {
+    private Vertx vertx;
+    private QueueBroker source;
+    private QueueBroker target;
+    private int sourcePort;
+    private int targetPort;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setup() throws InterruptedException {
+        vertx = Vertx.vertx();
+        source = new QueueBroker(vertx);
+        target = new QueueBroker(vertx);
+        sourcePort = source.start();
+        targetPort = target.start();
+    }
+
+    @AfterEach
+    public void teardown() {
+        source.close();
+        target.close();
+        vertx.close();
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        Path checkpoint = directory.resolve("checkpoint");
+        addMessages(0, 5, true);
+
+        assertEquals(5, migrate(checkpoint).get(1, TimeUnit.MINUTES).longValue());
+        // Written before the migration completes
+        assertEquals("5", readCheckpoint(checkpoint).getProperty("moved"));
+        assertEquals("message-4", readCheckpoint(checkpoint).getProperty("lastMessageId"));
+
+        addMessages(5, 8, true);
+        assertEquals(8, migrate(checkpoint).get(1, TimeUnit.MINUTES).longValue());
+        assertEquals("8", readCheckpoint(checkpoint).getProperty("moved"));
+        assertEquals(0, source.queue("queue1").size());
+        assertEquals(8, target.queue("queue2").size());
+    }
+
+    @Test
+    public void testCheckpointOfOtherMigrationIsRefused() throws Exception {
+        Path checkpoint = directory.resolve("checkpoint");
+        addMessages(0, 1, true);
+        assertEquals(1, migrate(checkpoint).get(1, TimeUnit.MINUTES).longValue());
+
+        QueueMigrator migrator = new QueueMigrator(vertx,
+                new QueueMigrator.Endpoint("127.0.0.1", sourcePort, new ProtonClientOptions(), "queue1"),
+                new QueueMigrator.Endpoint("127.0.0.1", targetPort, new ProtonClientOptions(), "queue3"));
+        migrator.setCheckpoint(checkpoint);
+        assertThrows(IllegalArgumentException.class, migrator::migrate);
+    }
+
+    @Test
+    public void testFailureInBatch() throws Exception {
+        Path checkpoint = directory.resolve("checkpoint");
+        addMessages(0, 10, true);
+        target.rejectMessage(4);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> migrate(checkpoint).get(1, TimeUnit.MINUTES));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals("3", readCheckpoint(checkpoint).getProperty("moved"));
+
+        // The messages after the rejected one were accepted by the target, but are still on the source
+        waitFor(() -> source.queue("queue1").size() == 7);
+        assertEquals(9, target.queue("queue2").size());
+
+        target.rejectMessage(-1);
+        assertEquals(10, migrate(checkpoint).get(1, TimeUnit.MINUTES).longValue());
+        assertEquals("10", readCheckpoint(checkpoint).getProperty("moved"));
+        assertEquals(0, source.queue("queue1").size());
+
+        List<Object> bodies = target.queue("queue2").stream()
+                .map(message -> ((AmqpValue) message.getBody()).getValue())
+                .collect(Collectors.toList());
+        assertEquals(10, bodies.size());
+        assertEquals(10, bodies.stream().distinct().count());
+    }
+
+    @Test
+    public void testMessagesWithoutIdAreNotDropped() throws Exception {
+        Path checkpoint = directory.resolve("checkpoint");
+        for (int i = 0; i < 5; i++) {
+            Message message = Proton.message();
+            message.setBody(new AmqpValue("same body"));
+            source.queue("queue1").add(message);
+        }
+
+        assertEquals(5, migrate(checkpoint).get(1, TimeUnit.MINUTES).longValue());
+        assertEquals(0, source.queue("queue1").size());
+        assertEquals(5, target.queue("queue2").size());
+    }
+
+    private void addMessages(int from, int to, boolean withId) {
+        for (int i = from; i < to; i++) {
+            Message message = Proton.message();
+            if (withId) {
+                message.setMessageId("message-" + i);
+            }
+            message.setBody(new AmqpValue("message-" + i));
+            source.queue("queue1").add(message);
+        }
+    }
+
+    private CompletableFuture<Long> migrate(Path checkpoint) throws Exception {
+        QueueMigrator migrator = new QueueMigrator(vertx,
+                new QueueMigrator.Endpoint("127.0.0.1", sourcePort, new ProtonClientOptions(), "queue1"),
+                new QueueMigrator.Endpoint("127.0.0.1", targetPort, new ProtonClientOptions(), "queue2"));
+        migrator.setWindow(10);
+        migrator.setIdleTimeout(500, TimeUnit.MILLISECONDS);
+        migrator.setProgressInterval(100, TimeUnit.MILLISECONDS);
+        migrator.setCheckpoint(checkpoint);
+        return migrator.migrate();
+    }
+
+    private static Properties readCheckpoint(Path checkpoint) throws Exception {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long endTime = System.currentTimeMillis() + 60_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < endTime) {
+            Thread.sleep(100);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.metrics.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe recorder of observations (i.e. latencies) backing a {@link HistogramMetric}.
+ */
+public class HistogramRecorder {
+    private final double[] bounds;
+    private final LongAdder[] buckets;
+    private final DoubleAdder sum = new DoubleAdder();
+    private final LongAdder count = new LongAdder();
+
+    public HistogramRecorder(double ... bounds) {
+        this.bounds = Arrays.copyOf(bounds, bounds.length);
+        Arrays.sort(this.bounds);
+        this.buckets = new LongAdder[this.bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double value) {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sum.add(value);
+        count.increment();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    public HistogramMetric toMetric(String name, String description, MetricLabel ... labels) {
+        List<MetricValueSupplier> bucketSuppliers = new ArrayList<>();
+        for (int i = 0; i <= bounds.length; i++) {
+            int bucket = i;
+            List<MetricLabel> bucketLabels = new ArrayList<>(Arrays.asList(labels));
+            bucketLabels.add(new MetricLabel("le", bucket < bounds.length ? String.valueOf(bounds[bucket]) : "+Inf"));
+            bucketSuppliers.add(() -> Collections.singletonList(new MetricValue(cumulativeCount(bucket), bucketLabels)));
+        }
+        return new HistogramMetric(name, description, MetricType.histogram,
+                () -> Collections.singletonList(new MetricValue(getSum(), labels)),
+                () -> Collections.singletonList(new MetricValue(getCount(), labels)),
+                bucketSuppliers);
+    }
+
+    private long cumulativeCount(int bucket) {
+        long total = 0;
+        for (int i = 0; i <= bucket; i++) {
+            total += buckets[i].sum();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.metrics.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HistogramRecorderTest {
+    @Test
+    public void testObserve() {
+        HistogramRecorder recorder = new HistogramRecorder(0.1, 1.0);
+        recorder.observe(0.05);
+        recorder.observe(0.5);
+        recorder.observe(0.7);
+        recorder.observe(5.0);
+
+        assertEquals(4, recorder.getCount());
+        assertEquals(6.25, recorder.getSum(), 0.0001);
+
+        MetricSnapshot snapshot = recorder.toMetric("latency", "latency", new MetricLabel("k1", "v1")).getSnapshot();
+        List<MetricValue> buckets = snapshot.getValues();
+        assertEquals(3, buckets.size());
+        assertEquals(List.of(new MetricLabel("k1", "v1"), new MetricLabel("le", "0.1")), buckets.get(0).getLabels());
+        assertEquals(1L, buckets.get(0).getValue());
+        assertEquals(3L, buckets.get(1).getValue());
+        assertEquals(List.of(new MetricLabel("k1", "v1"), new MetricLabel("le", "+Inf")), buckets.get(2).getLabels());
+        assertEquals(4L, buckets.get(2).getValue());
+        assertEquals(4L, snapshot.getCountValues().get(0).getValue());
+    }
+}
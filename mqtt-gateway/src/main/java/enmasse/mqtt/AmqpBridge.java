@@ -11,7 +11,7 @@ import static io.netty.handler.codec.mqtt.MqttConnectReturnCode.CONNECTION_REFUS
 
 import enmasse.mqtt.endpoints.AmqpPublishData;
 import enmasse.mqtt.endpoints.AmqpPublishEndpoint;
-import enmasse.mqtt.endpoints.AmqpPublisher;
+import enmasse.mqtt.endpoints.AmqpPublisherCache;
 import enmasse.mqtt.endpoints.AmqpReceiver;
 import enmasse.mqtt.endpoints.AmqpReceiverEndpoint;
 import enmasse.mqtt.endpoints.AmqpSubscriptionServiceEndpoint;
@@ -45,13 +45,15 @@ import io.vertx.proton.ProtonDelivery;
 import io.vertx.proton.ProtonLinkOptions;
 import io.vertx.proton.ProtonReceiver;
 import io.vertx.proton.ProtonSender;
+import io.vertx.proton.ProtonSession;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -79,11 +81,19 @@ public class AmqpBridge {
 
     private final Vertx vertx;
 
+    // gateway wide cache of the links for publishing on topics
+    private final AmqpPublisherCache publisherCache;
+
     private final AtomicBoolean closed = new AtomicBoolean();
 
     private ProtonClient client;
     private ProtonConnection connection;
 
+    // pool providing the shared connection (if any) and the bridge session on it
+    private AmqpConnectionPool connectionPool;
+    private ProtonSession session;
+    private final Handler<ProtonConnection> connectionLostHandler = this::handleConnectionLost;
+
 
     // endpoint for handling communication with Last Will and Testament Service (LWTS)
     private AmqpLwtServiceEndpoint lwtEndpoint;
@@ -98,19 +108,32 @@ public class AmqpBridge {
     private Handler<AmqpBridge> mqttEndpointCloseHandler;
 
     // topic subscriptions with granted QoS levels
-    private Map<String, MqttQoS> grantedQoSLevels;
+    private final TopicTrie grantedQoSLevels = new TopicTrie();
+    // gateway local cache of the subscriptions (if enabled)
+    private SubscriptionCache subscriptionCache;
 
     private boolean detachForced = true;
 
+    // watermarks on the published messages waiting for credit
+    private int publishLowWatermark = AmqpPublishEndpoint.DEFAULT_LOW_WATERMARK;
+    private int publishHighWatermark = AmqpPublishEndpoint.DEFAULT_HIGH_WATERMARK;
+    // window of unsettled deliveries to the MQTT client
+    private int inFlightWindow = AmqpReceiverEndpoint.DEFAULT_IN_FLIGHT_WINDOW;
+
+    // QoS 1 messages from the MQTT client waiting for disposition, in arrival order (packet id -> disposed)
+    private final Map<Integer, Boolean> pendingPubacks = new LinkedHashMap<>();
+
     /**
      * Constructor
      *
      * @param vertx Vert.x instance
      * @param mqttEndpoint  MQTT local endpoint
+     * @param publisherCache    gateway wide cache of the links for publishing on topics
      */
-    public AmqpBridge(Vertx vertx, MqttEndpoint mqttEndpoint) {
+    public AmqpBridge(Vertx vertx, MqttEndpoint mqttEndpoint, AmqpPublisherCache publisherCache) {
         this.vertx = vertx;
         this.mqttEndpoint = mqttEndpoint;
+        this.publisherCache = publisherCache;
         this.remoteAddress = mqttEndpoint.remoteAddress();
     }
 
@@ -135,7 +158,6 @@ public class AmqpBridge {
         //        otherwise it provides PLAIN with username/password provided here
         this.client.connect(clientOptions, address, port, userName, password, done -> {
 
-            String clientIdentifier = this.mqttEndpoint.clientIdentifier();
             if (done.succeeded()) {
 
                 this.connection = done.result();
@@ -143,120 +165,182 @@ public class AmqpBridge {
                         .closeHandler(remoteClose -> handleRemoteConnectionClose(this.connection, remoteClose))
                         .disconnectHandler(this::handleRemoteDisconnect)
                         .open();
+            }
 
-                // setup MQTT endpoint handlers and AMQP endpoints
-                this.setupMqttEndpoint();
-                this.setupAmqpEndpoits();
+            this.setupBridge(done, openHandler);
+        });
 
-                // setup a Future for completed connection steps with all services
-                // with AMQP_WILL and AMQP_LIST/AMQP_SUBSCRIPTIONS or AMQP_CLOSE handled
-                Future<AmqpSubscriptionsMessage> connectionFuture = Future.future();
-                connectionFuture.setHandler(ar -> {
+    }
 
-                    try {
-                        if (ar.succeeded()) {
+    /**
+     * Open the bridge using a connection to the AMQP service provider shared with other bridges.
+     * The bridge gets its own session, with all the related links, on the shared connection opened
+     * with the credentials of the MQTT client
+     *
+     * @param connectionPool    pool providing the shared connection
+     * @param openHandler   handler called when the open is completed (with success or not)
+     */
+    public void open(AmqpConnectionPool connectionPool, Handler<AsyncResult<AmqpBridge>> openHandler) {
 
-                            this.rcvEndpoint.publishHandler(this::publishHandler);
-                            this.rcvEndpoint.pubrelHandler(this::pubrelHandler);
+        String userName = (this.mqttEndpoint.auth() != null) ? this.mqttEndpoint.auth().getUsername() : null;
+        String password = (this.mqttEndpoint.auth() != null) ? this.mqttEndpoint.auth().getPassword() : null;
 
-                            AmqpSubscriptionsMessage amqpSubscriptionsMessage = ar.result();
+        // the connection is shared only with bridges of clients providing the same credentials
+        this.connectionPool = connectionPool;
+        this.connectionPool.acquire(userName, password, this.connectionLostHandler, done -> {
 
-                            if (amqpSubscriptionsMessage != null) {
-                                this.mqttEndpoint.accept(!amqpSubscriptionsMessage.topicSubscriptions().isEmpty());
-                                // added topic subscriptions of a previous session in the local collection
-                                this.grantedQoSLevels = amqpSubscriptionsMessage.topicSubscriptions()
-                                        .stream()
-                                        .collect(Collectors.toMap(amqpTopicSubscription -> amqpTopicSubscription.topic(),
-                                                amqpTopicSubscription -> amqpTopicSubscription.qos()));
+            if (done.succeeded()) {
 
-                            } else {
-                                this.mqttEndpoint.accept(false);
-                                this.grantedQoSLevels = new HashMap<>();
-                            }
-                            LOG.info("CONNACK [{}] to MQTT client {} at {}", CONNECTION_ACCEPTED.ordinal(),
-                                     clientIdentifier, this.remoteAddress);
+                this.connection = done.result();
+                this.session = this.connection.createSession();
+                this.session.open();
+            }
+
+            this.setupBridge(done, openHandler);
+        });
+    }
+
+    /**
+     * Setup the bridge once connected to the AMQP service provider
+     *
+     * @param done  result of the connection to the AMQP service provider
+     * @param openHandler   handler called when the open is completed (with success or not)
+     */
+    private void setupBridge(AsyncResult<ProtonConnection> done, Handler<AsyncResult<AmqpBridge>> openHandler) {
 
-                            // open unique client publish address receiver
-                            this.rcvEndpoint.openPublish();
+        String clientIdentifier = this.mqttEndpoint.clientIdentifier();
+        if (done.succeeded()) {
 
-                            openHandler.handle(Future.succeededFuture(AmqpBridge.this));
+            // setup MQTT endpoint handlers and AMQP endpoints
+            this.setupMqttEndpoint();
+            this.setupAmqpEndpoits();
 
-                        } else {
+            // setup a Future for completed connection steps with all services
+            // with AMQP_WILL and AMQP_LIST/AMQP_SUBSCRIPTIONS or AMQP_CLOSE handled
+            Future<AmqpSubscriptionsMessage> connectionFuture = Future.future();
+            connectionFuture.setHandler(ar -> {
+
+                try {
+                    if (ar.succeeded()) {
+
+                        this.rcvEndpoint.publishHandler(this::publishHandler);
+                        this.rcvEndpoint.pubrelHandler(this::pubrelHandler);
 
-                            this.mqttEndpoint.reject(CONNECTION_REFUSED_SERVER_UNAVAILABLE);
-                            LOG.error("CONNACK [{}] to MQTT client {} at {}", CONNECTION_REFUSED_SERVER_UNAVAILABLE.ordinal(),
-                                      clientIdentifier, this.remoteAddress);
+                        AmqpSubscriptionsMessage amqpSubscriptionsMessage = ar.result();
 
-                            openHandler.handle(Future.failedFuture(ar.cause()));
+                        if (amqpSubscriptionsMessage != null) {
+                            this.mqttEndpoint.accept(!amqpSubscriptionsMessage.topicSubscriptions().isEmpty());
+                            // added topic subscriptions of a previous session in the local collection
+                            amqpSubscriptionsMessage.topicSubscriptions().forEach(amqpTopicSubscription -> {
+                                this.grantedQoSLevels.add(amqpTopicSubscription.topic(), amqpTopicSubscription.qos());
+                            });
+
+                        } else {
+                            this.mqttEndpoint.accept(false);
                         }
+                        LOG.info("CONNACK [{}] to MQTT client {} at {}", CONNECTION_ACCEPTED.ordinal(),
+                                 clientIdentifier, this.remoteAddress);
+
+                        // open unique client publish address receiver
+                        this.rcvEndpoint.openPublish();
+
+                        openHandler.handle(Future.succeededFuture(AmqpBridge.this));
+
+                    } else {
+
+                        this.mqttEndpoint.reject(CONNECTION_REFUSED_SERVER_UNAVAILABLE);
+                        LOG.error("CONNACK [{}] to MQTT client {} at {}", CONNECTION_REFUSED_SERVER_UNAVAILABLE.ordinal(),
+                                  clientIdentifier, this.remoteAddress);
+
+                        openHandler.handle(Future.failedFuture(ar.cause()));
                     }
-                    finally
-                    {
-                        openedFuture.complete();
-                    }
-                });
+                }
+                finally
+                {
+                    openedFuture.complete();
+                }
+            });
 
-                // step 1 : send AMQP_WILL to Last Will and Testament Service
-                Future<ProtonDelivery> willFuture = Future.future();
-                // if remote MQTT has specified the will
-                if (this.mqttEndpoint.will().isWillFlag()) {
+            // step 1 : send AMQP_WILL to Last Will and Testament Service
+            Future<ProtonDelivery> willFuture = Future.future();
+            // if remote MQTT has specified the will
+            if (this.mqttEndpoint.will().isWillFlag()) {
 
-                    // sending AMQP_WILL
-                    MqttWill will = this.mqttEndpoint.will();
+                // sending AMQP_WILL
+                MqttWill will = this.mqttEndpoint.will();
 
-                    AmqpWillMessage amqpWillMessage =
-                            new AmqpWillMessage(will.isWillRetain(),
-                                    will.getWillTopic(),
-                                    MqttQoS.valueOf(will.getWillQos()),
-                                    Buffer.buffer(will.getWillMessageBytes()));
+                AmqpWillMessage amqpWillMessage =
+                        new AmqpWillMessage(will.isWillRetain(),
+                                will.getWillTopic(),
+                                MqttQoS.valueOf(will.getWillQos()),
+                                Buffer.buffer(will.getWillMessageBytes()));
 
-                    // specified link name for the Last Will and Testament Service as MQTT clientid
-                    ProtonLinkOptions linkOptions = new ProtonLinkOptions();
-                    linkOptions.setLinkName(clientIdentifier);
+                // specified link name for the Last Will and Testament Service as MQTT clientid
+                ProtonLinkOptions linkOptions = new ProtonLinkOptions();
+                linkOptions.setLinkName(clientIdentifier);
 
-                    // setup and open AMQP endpoints to Last Will and Testament Service
-                    ProtonSender wsSender = this.connection.createSender(AmqpLwtServiceEndpoint.LWT_SERVICE_ENDPOINT, linkOptions);
-                    this.lwtEndpoint = new AmqpLwtServiceEndpoint(wsSender);
+                // setup and open AMQP endpoints to Last Will and Testament Service
+                ProtonSender wsSender = this.createSender(AmqpLwtServiceEndpoint.LWT_SERVICE_ENDPOINT, linkOptions);
+                this.lwtEndpoint = new AmqpLwtServiceEndpoint(wsSender);
 
-                    this.lwtEndpoint.open();
-                    this.lwtEndpoint.sendWill(amqpWillMessage, willFuture);
+                this.lwtEndpoint.open();
+                this.lwtEndpoint.sendWill(amqpWillMessage, willFuture);
 
-                } else {
+            } else {
 
-                    // otherwise just complete the Future
-                    willFuture.complete();
-                }
+                // otherwise just complete the Future
+                willFuture.complete();
+            }
 
-                willFuture.compose(v -> {
+            willFuture.compose(v -> {
 
-                    // handling AMQP_SUBSCRIPTIONS reply from Subscription Service
-                    this.rcvEndpoint.subscriptionsHandler(amqpSubscriptionsMessage -> {
+                // handling AMQP_SUBSCRIPTIONS reply from Subscription Service
+                this.rcvEndpoint.subscriptionsHandler(amqpSubscriptionsMessage -> {
 
-                        LOG.info("Session present: {}", !amqpSubscriptionsMessage.topicSubscriptions().isEmpty());
-                        LOG.info(amqpSubscriptionsMessage.toString());
+                    LOG.info("Session present: {}", !amqpSubscriptionsMessage.topicSubscriptions().isEmpty());
+                    LOG.info(amqpSubscriptionsMessage.toString());
 
-                        connectionFuture.complete(amqpSubscriptionsMessage);
-                    });
+                    if (this.subscriptionCache != null) {
+                        this.subscriptionCache.put(clientIdentifier, amqpSubscriptionsMessage.topicSubscriptions());
+                    }
 
-                    // step 2 : send AMQP_CLOSE or AMQP_LIST (based on "clean session" flag) to Subscription Service
-                    Future<ProtonDelivery> sessionFuture = Future.future();
+                    connectionFuture.complete(amqpSubscriptionsMessage);
+                });
 
-                    if (this.mqttEndpoint.isCleanSession()) {
+                // step 2 : send AMQP_CLOSE or AMQP_LIST (based on "clean session" flag) to Subscription Service
+                Future<ProtonDelivery> sessionFuture = Future.future();
 
-                        // sending AMQP_CLOSE
-                        AmqpCloseMessage amqpCloseMessage =
-                                new AmqpCloseMessage(clientIdentifier);
+                if (this.mqttEndpoint.isCleanSession()) {
 
-                        this.ssEndpoint.sendClose(amqpCloseMessage, closeAsyncResult -> {
+                    if (this.subscriptionCache != null) {
+                        this.subscriptionCache.invalidate(clientIdentifier);
+                    }
 
-                            // in case of AMQP_CLOSE, the connection completes on its disposition
-                            // no other AMQP message will be delivered by Subscription Service (i.e. AMQP_SUBSCRIPTIONS)
-                            if (closeAsyncResult.succeeded()) {
-                                connectionFuture.complete();
-                            } else {
-                                connectionFuture.fail(closeAsyncResult.cause());
-                            }
-                        });
+                    // sending AMQP_CLOSE
+                    AmqpCloseMessage amqpCloseMessage =
+                            new AmqpCloseMessage(clientIdentifier);
+
+                    this.ssEndpoint.sendClose(amqpCloseMessage, closeAsyncResult -> {
+
+                        // in case of AMQP_CLOSE, the connection completes on its disposition
+                        // no other AMQP message will be delivered by Subscription Service (i.e. AMQP_SUBSCRIPTIONS)
+                        if (closeAsyncResult.succeeded()) {
+                            connectionFuture.complete();
+                        } else {
+                            connectionFuture.fail(closeAsyncResult.cause());
+                        }
+                    });
+
+                } else {
+
+                    List<AmqpTopicSubscription> cachedSubscriptions = (this.subscriptionCache != null) ?
+                            this.subscriptionCache.get(clientIdentifier) : null;
+
+                    if (cachedSubscriptions != null) {
+
+                        // session restored from the local cache, without the round trip with the Subscription Service
+                        LOG.info("Session present: {} (cached)", !cachedSubscriptions.isEmpty());
+                        connectionFuture.complete(new AmqpSubscriptionsMessage(cachedSubscriptions));
 
                     } else {
 
@@ -266,41 +350,39 @@ public class AmqpBridge {
 
                         this.ssEndpoint.sendList(amqpListMessage, sessionFuture);
                     }
+                }
 
-                    return sessionFuture;
-
-                }).compose(v -> {
-                    // nothing here !??
-                }, connectionFuture);
+                return sessionFuture;
 
-                // timeout for the overall connection process
-                vertx.setTimer(AMQP_SERVICES_CONNECTION_TIMEOUT, timer -> {
-                   if (!connectionFuture.isComplete()) {
-                       connectionFuture.fail("Timeout on connecting to AMQP services");
-                   }
-                });
-
-            } else {
+            }).compose(v -> {
+                // nothing here !??
+            }, connectionFuture);
 
-                LOG.error("Error connecting to AMQP services ...", done.cause());
-                final MqttConnectReturnCode code;
-                if (done.cause() instanceof SecurityException) {
-                    // error on the SASL mechanism side
-                    code = CONNECTION_REFUSED_NOT_AUTHORIZED;
-                } else {
-                    code = CONNECTION_REFUSED_SERVER_UNAVAILABLE;
+            // timeout for the overall connection process
+            vertx.setTimer(AMQP_SERVICES_CONNECTION_TIMEOUT, timer -> {
+               if (!connectionFuture.isComplete()) {
+                   connectionFuture.fail("Timeout on connecting to AMQP services");
+               }
+            });
 
-                }
-                this.mqttEndpoint.reject(code);
+        } else {
 
-                openHandler.handle(Future.failedFuture(done.cause()));
+            LOG.error("Error connecting to AMQP services ...", done.cause());
+            final MqttConnectReturnCode code;
+            if (done.cause() instanceof SecurityException) {
+                // error on the SASL mechanism side
+                code = CONNECTION_REFUSED_NOT_AUTHORIZED;
+            } else {
+                code = CONNECTION_REFUSED_SERVER_UNAVAILABLE;
 
-                LOG.info("CONNACK [{}] to MQTT client {} at {}", code.ordinal(),
-                         clientIdentifier, this.remoteAddress);
             }
+            this.mqttEndpoint.reject(code);
 
-        });
+            openHandler.handle(Future.failedFuture(done.cause()));
 
+            LOG.info("CONNACK [{}] to MQTT client {} at {}", code.ordinal(),
+                     clientIdentifier, this.remoteAddress);
+        }
     }
 
     /**
@@ -326,12 +408,17 @@ public class AmqpBridge {
                         if (this.pubEndpoint != null) {
                             this.pubEndpoint.close();
                         }
-                        if (this.connection != null) {
+                        if (this.session != null) {
+                            this.session.close();
+                            if (this.connectionPool.release(this.connection, this.connectionLostHandler)) {
+                                this.publisherCache.evict(this.connection);
+                            }
+                        } else if (this.connection != null) {
+                            this.publisherCache.evict(this.connection);
                             this.connection.close();
                         }
-                        if (this.grantedQoSLevels != null) {
-                            this.grantedQoSLevels.clear();
-                        }
+                        this.grantedQoSLevels.clear();
+                        this.pendingPubacks.clear();
 
                         try {
                             this.mqttEndpoint.close();
@@ -347,6 +434,9 @@ public class AmqpBridge {
                 });
 
                 if (this.mqttEndpoint.isCleanSession()) {
+                    if (this.subscriptionCache != null) {
+                        this.subscriptionCache.invalidate(this.mqttEndpoint.clientIdentifier());
+                    }
                     AmqpCloseMessage value = new AmqpCloseMessage(this.mqttEndpoint.clientIdentifier());
                     this.ssEndpoint.sendClose(value, event -> {
                         if (event.failed()) {
@@ -378,18 +468,6 @@ public class AmqpBridge {
         final int mqttPacketId = publish.messageId();
         LOG.info("PUBLISH [{}] from MQTT client {}", mqttPacketId, this.mqttEndpoint.clientIdentifier());
 
-        // TODO: simple way, without considering wildcards
-
-        // check if a publisher already exists for the requested topic
-        if (!this.pubEndpoint.isPublisher(publish.topicName())) {
-
-            // create two sender for publishing QoS 0/1 and QoS 2 messages
-            ProtonSender senderQoS01 = this.connection.createSender(publish.topicName());
-            ProtonSender senderQoS2 = this.connection.createSender(publish.topicName());
-
-            this.pubEndpoint.addPublisher(publish.topicName(), new AmqpPublisher(senderQoS01, senderQoS2));
-        }
-
         // sending AMQP_PUBLISH
         AmqpPublishMessage amqpPublishMessage =
                 new AmqpPublishMessage(null,
@@ -399,6 +477,10 @@ public class AmqpBridge {
                                        publish.topicName(),
                                        publish.payload());
 
+        if (publish.qosLevel() == MqttQoS.AT_LEAST_ONCE) {
+            this.pendingPubacks.put(mqttPacketId, false);
+        }
+
         pubEndpoint.publish(amqpPublishMessage, mqttPacketId, done -> {
 
             if (done.succeeded()) {
@@ -407,8 +489,8 @@ public class AmqpBridge {
                 if (delivery != null) {
 
                     if (publish.qosLevel() == MqttQoS.AT_LEAST_ONCE) {
-                        this.mqttEndpoint.publishAcknowledge(mqttPacketId);
-                        LOG.info("PUBACK [{}] to MQTT client {}", mqttPacketId, this.mqttEndpoint.clientIdentifier());
+                        this.pendingPubacks.replace(mqttPacketId, true);
+                        this.sendPubacks();
                     } else {
 
                         this.mqttEndpoint.publishReceived(mqttPacketId);
@@ -416,11 +498,36 @@ public class AmqpBridge {
                     }
 
                 }
+            } else {
+
+                LOG.debug("PUBLISH [{}] from MQTT client {} not delivered", mqttPacketId, this.mqttEndpoint.clientIdentifier(), done.cause());
+                // not acknowledged, the MQTT client will send it again on reconnection
+                if (this.pendingPubacks.remove(mqttPacketId) != null) {
+                    this.sendPubacks();
+                }
             }
 
         });
     }
 
+    /**
+     * Send the PUBACKs for the QoS 1 messages already disposed, in the same order as the related
+     * PUBLISH were received (MQTT 3.1.1), all together as soon as the oldest message is disposed
+     */
+    private void sendPubacks() {
+
+        Iterator<Map.Entry<Integer, Boolean>> it = this.pendingPubacks.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Boolean> pending = it.next();
+            if (!pending.getValue()) {
+                break;
+            }
+            it.remove();
+            this.mqttEndpoint.publishAcknowledge(pending.getKey());
+            LOG.info("PUBACK [{}] to MQTT client {}", pending.getKey(), this.mqttEndpoint.clientIdentifier());
+        }
+    }
+
     /**
      * Handler for incoming AMQP_PUBLISH message
      *
@@ -434,28 +541,23 @@ public class AmqpBridge {
         // see https://github.com/EnMasseProject/subserv/issues/8
 
         // try to get subscribed topic (that could have wildcards) that matches the publish topic
-        String topic = (this.grantedQoSLevels.size() == 0) ? null :
-                TopicMatcher.match(this.grantedQoSLevels.keySet().stream().collect(Collectors.toList()), publish.topic());
+        TopicTrie.Subscription subscription = this.grantedQoSLevels.match(publish.topic());
 
-        if (topic != null) {
+        if (subscription != null) {
 
             // MQTT 3.1.1 spec :  The QoS of Payload Messages sent in response to a Subscription MUST be
             // the minimum of the QoS of the originally published message and the maximum QoS granted by the Server
-            MqttQoS qos = (publish.qos().value() < this.grantedQoSLevels.get(topic).value()) ?
+            MqttQoS qos = (publish.qos().value() < subscription.qos().value()) ?
                     publish.qos() :
-                    this.grantedQoSLevels.get(topic);
+                    subscription.qos();
 
             this.mqttEndpoint.publish(publish.topic(), publish.payload(), qos, publish.isDup(), publish.isRetain());
-            // the the message identifier assigned to the published message
-            amqpPublishData.setMessageId(this.mqttEndpoint.lastMessageId());
+            // the the message identifier assigned to the published message, for QoS 0 the receiver
+            // endpoint settles the message immediately
+            amqpPublishData.setPublished(this.mqttEndpoint.lastMessageId(), qos);
 
             LOG.info("PUBLISH [{}] to MQTT client {}", this.mqttEndpoint.lastMessageId(), this.mqttEndpoint.clientIdentifier());
 
-            // for QoS 0, message settled immediately
-            if (qos == MqttQoS.AT_MOST_ONCE) {
-                this.rcvEndpoint.settle(amqpPublishData.messageId());
-            }
-
         } else {
 
             LOG.error("Published message : MQTT client {} is not subscribed to {} !!", this.mqttEndpoint.clientIdentifier(), publish.topic());
@@ -511,8 +613,11 @@ public class AmqpBridge {
 
                     // add accepted topic subscriptions to the local collection
                     amqpSubscribeMessage.topicSubscriptions().stream().forEach(amqpTopicSubscription -> {
-                        this.grantedQoSLevels.put(amqpTopicSubscription.topic(), amqpTopicSubscription.qos());
+                        this.grantedQoSLevels.add(amqpTopicSubscription.topic(), amqpTopicSubscription.qos());
                     });
+                    if (this.subscriptionCache != null) {
+                        this.subscriptionCache.subscribed(this.mqttEndpoint.clientIdentifier(), amqpSubscribeMessage.topicSubscriptions());
+                    }
 
                 } else {
 
@@ -553,6 +658,9 @@ public class AmqpBridge {
 
                     this.grantedQoSLevels.remove(topic);
                 });
+                if (this.subscriptionCache != null) {
+                    this.subscriptionCache.unsubscribed(this.mqttEndpoint.clientIdentifier(), unsubscribe.topics());
+                }
 
                 LOG.info("UNSUBACK [{}] to MQTT client {}", messageId, this.mqttEndpoint.clientIdentifier());
             }
@@ -674,23 +782,103 @@ public class AmqpBridge {
         //        connection is established (and CONNACK sent to the MQTT client)
 
         // setup and open AMQP endpoint for receiving on unique client control/publish addresses
-        ProtonReceiver receiverControl = this.connection.createReceiver(String.format(AmqpReceiverEndpoint.CLIENT_CONTROL_ENDPOINT_TEMPLATE, this.mqttEndpoint.clientIdentifier()));
-        ProtonReceiver receiverPublish = this.connection.createReceiver(String.format(AmqpReceiverEndpoint.CLIENT_PUBLISH_ENDPOINT_TEMPLATE, this.mqttEndpoint.clientIdentifier()));
-        this.rcvEndpoint = new AmqpReceiverEndpoint(new AmqpReceiver(receiverControl, receiverPublish));
+        ProtonReceiver receiverControl = this.createReceiver(String.format(AmqpReceiverEndpoint.CLIENT_CONTROL_ENDPOINT_TEMPLATE, this.mqttEndpoint.clientIdentifier()));
+        ProtonReceiver receiverPublish = this.createReceiver(String.format(AmqpReceiverEndpoint.CLIENT_PUBLISH_ENDPOINT_TEMPLATE, this.mqttEndpoint.clientIdentifier()));
+        this.rcvEndpoint = new AmqpReceiverEndpoint(this.vertx, new AmqpReceiver(receiverControl, receiverPublish))
+                .inFlightWindow(this.inFlightWindow);
 
         // setup and open AMQP endpoint to Subscription Service
-        ProtonSender ssSender = this.connection.createSender(AmqpSubscriptionServiceEndpoint.SUBSCRIPTION_SERVICE_ENDPOINT);
+        ProtonSender ssSender = this.createSender(AmqpSubscriptionServiceEndpoint.SUBSCRIPTION_SERVICE_ENDPOINT);
         this.ssEndpoint = new AmqpSubscriptionServiceEndpoint(ssSender);
 
         // setup and open AMQP endpoint for publishing
-        ProtonSender senderPubrel = this.connection.createSender(String.format(AmqpPublishEndpoint.AMQP_CLIENT_PUBREL_ENDPOINT_TEMPLATE, this.mqttEndpoint.clientIdentifier()));
-        this.pubEndpoint = new AmqpPublishEndpoint(senderPubrel);
+        ProtonSender senderPubrel = this.createSender(String.format(AmqpPublishEndpoint.AMQP_CLIENT_PUBREL_ENDPOINT_TEMPLATE, this.mqttEndpoint.clientIdentifier()));
+        this.pubEndpoint = new AmqpPublishEndpoint(senderPubrel, this.publisherCache, this.connection)
+                .flowControl(this.publishLowWatermark, this.publishHighWatermark);
 
         this.rcvEndpoint.openControl();
         this.ssEndpoint.open();
         this.pubEndpoint.open();
     }
 
+    /**
+     * Create a sender link on the bridge session (if using a shared connection) or on the bridge connection
+     *
+     * @param address   target address
+     * @return  the sender link
+     */
+    private ProtonSender createSender(String address) {
+
+        return this.createSender(address, new ProtonLinkOptions());
+    }
+
+    /**
+     * Create a sender link on the bridge session (if using a shared connection) or on the bridge connection
+     *
+     * @param address   target address
+     * @param linkOptions   link options
+     * @return  the sender link
+     */
+    private ProtonSender createSender(String address, ProtonLinkOptions linkOptions) {
+
+        return (this.session != null) ?
+                this.session.createSender(address, linkOptions) :
+                this.connection.createSender(address, linkOptions);
+    }
+
+    /**
+     * Create a receiver link on the bridge session (if using a shared connection) or on the bridge connection
+     *
+     * @param address   source address
+     * @return  the receiver link
+     */
+    private ProtonReceiver createReceiver(String address) {
+
+        return (this.session != null) ?
+                this.session.createReceiver(address) :
+                this.connection.createReceiver(address);
+    }
+
+    /**
+     * Set the watermarks on the messages published by the MQTT client which are waiting for credit
+     *
+     * @param lowWatermark  low watermark for resuming
+     * @param highWatermark high watermark for pausing
+     * @return  the current AmqpBridge instance
+     */
+    public AmqpBridge publishWatermarks(int lowWatermark, int highWatermark) {
+
+        this.publishLowWatermark = lowWatermark;
+        this.publishHighWatermark = highWatermark;
+        return this;
+    }
+
+    /**
+     * Set the window of messages delivered to the MQTT client and not acknowledged yet.
+     * Deliveries are settled when acknowledged, with settlements and credit flushed per event loop tick
+     *
+     * @param inFlightWindow    max number of unsettled deliveries (0 for no window)
+     * @return  the current AmqpBridge instance
+     */
+    public AmqpBridge inFlightWindow(int inFlightWindow) {
+
+        this.inFlightWindow = inFlightWindow;
+        return this;
+    }
+
+    /**
+     * Set the gateway local cache of the subscriptions, used for restoring the session
+     * without asking the Subscription Service
+     *
+     * @param subscriptionCache cache of the subscriptions
+     * @return  the current AmqpBridge instance
+     */
+    public AmqpBridge subscriptionCache(SubscriptionCache subscriptionCache) {
+
+        this.subscriptionCache = subscriptionCache;
+        return this;
+    }
+
     /**
      * Set the session handler called when MQTT client closes connection
      *
@@ -755,6 +943,23 @@ public class AmqpBridge {
         }
     }
 
+    /**
+     * Handle the loss of the connection shared with other bridges
+     *
+     * @param connection    shared ProtonConnection instance
+     */
+    private void handleConnectionLost(ProtonConnection connection) {
+
+        LOG.info("Shared AMQP connection lost with {}", connection.getRemoteContainer());
+        this.publisherCache.evict(connection);
+
+        try {
+            this.mqttEndpoint.close();
+        } catch (IllegalStateException e) {
+            LOG.warn("MQTT endpoint for client {} already closed", this.mqttEndpoint.clientIdentifier());
+        }
+    }
+
     /**
      * AMQP bridge identifier
      *
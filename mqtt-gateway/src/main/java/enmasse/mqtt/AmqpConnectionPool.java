@@ -0,0 +1,325 @@
+/*
+ * Copyright 2016-2018, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonClient;
+import io.vertx.proton.ProtonClientOptions;
+import io.vertx.proton.ProtonConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Pool of AMQP connections to the messaging service shared by the AMQP bridges.
+ *
+ * Every bridge gets its own session and links on one of the pooled connections, so the number of
+ * connections (and TLS/SASL handshakes) to the router doesn't grow with the connected MQTT clients.
+ * Connections are opened lazily and re-opened on the first acquire after they are lost.
+ *
+ * Connections are opened with the credentials of the MQTT clients, so that the messaging service keeps
+ * authenticating every client : clients only share connections opened with the same username and password,
+ * and the connections for a set of credentials are closed when the last bridge using them is released.
+ * AMQP authenticates a connection rather than its links, so the pool only helps clients sharing credentials:
+ * when every device has its own username, each one still gets connections of its own.
+ * The pool is not thread safe and it's meant to be used from the context of the owning gateway.
+ */
+public class AmqpConnectionPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AmqpConnectionPool.class);
+
+    private static final int AMQP_HEARTBEAT = 60_000; // in ms
+
+    private final String host;
+    private final int port;
+    private final ProtonClient client;
+    private final ProtonClientOptions clientOptions;
+    private final int size;
+    // connections opened with the same credentials
+    private final Map<Credentials, PooledConnection[]> connections = new HashMap<>();
+
+    private boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param vertx Vert.x instance
+     * @param host  AMQP service provider address
+     * @param port  AMQP service provider port
+     * @param size  number of connections in the pool, for every set of credentials
+     */
+    public AmqpConnectionPool(Vertx vertx, String host, int port, int size) {
+
+        if (size <= 0) {
+            throw new IllegalArgumentException("AMQP connection pool size must be greater than 0");
+        }
+
+        this.host = host;
+        this.port = port;
+        this.client = ProtonClient.create(vertx);
+        this.clientOptions = new ProtonClientOptions().setHeartbeat(AMQP_HEARTBEAT);
+        this.size = size;
+    }
+
+    /**
+     * Acquire a connection opened with the provided credentials from the pool, picking the one with less bridges on it.
+     * If the credentials are refused by the AMQP service provider, the handler fails with a {@link SecurityException}
+     *
+     * @param userName  username of the MQTT client (null for SASL ANONYMOUS)
+     * @param password  password of the MQTT client
+     * @param connectionLostHandler handler called if the connection is lost while acquired
+     * @param handler   handler called when the connection is available (or the connection failed)
+     */
+    public void acquire(String userName, String password,
+                        Handler<ProtonConnection> connectionLostHandler, Handler<AsyncResult<ProtonConnection>> handler) {
+
+        if (this.closed) {
+            handler.handle(Future.failedFuture(new IllegalStateException("AMQP connection pool closed")));
+            return;
+        }
+
+        Credentials credentials = new Credentials(userName, password);
+        PooledConnection[] pooledConnections = this.connections.computeIfAbsent(credentials, c -> {
+            PooledConnection[] created = new PooledConnection[this.size];
+            for (int i = 0; i < this.size; i++) {
+                created[i] = new PooledConnection(c, i);
+            }
+            return created;
+        });
+
+        PooledConnection selected = pooledConnections[0];
+        for (PooledConnection pooled : pooledConnections) {
+            if (pooled.load() < selected.load()) {
+                selected = pooled;
+            }
+        }
+        selected.acquire(connectionLostHandler, handler);
+    }
+
+    /**
+     * Release a connection previously acquired from the pool
+     *
+     * @param connection    connection to release
+     * @param connectionLostHandler handler provided on acquire
+     * @return  if the connection was closed, being no more used by any bridge
+     */
+    public boolean release(ProtonConnection connection, Handler<ProtonConnection> connectionLostHandler) {
+
+        for (PooledConnection[] pooledConnections : this.connections.values()) {
+            for (PooledConnection pooled : pooledConnections) {
+                if (pooled.connection == connection) {
+                    pooled.lostHandlers.remove(connectionLostHandler);
+                    return this.closeIfUnused(pooled.credentials);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Close all the connections in the pool
+     */
+    public void close() {
+
+        this.closed = true;
+        for (PooledConnection[] pooledConnections : this.connections.values()) {
+            for (PooledConnection pooled : pooledConnections) {
+                pooled.close();
+            }
+        }
+        this.connections.clear();
+    }
+
+    /**
+     * @return  number of sets of credentials with connections in the pool
+     */
+    int credentialsCount() {
+        return this.connections.size();
+    }
+
+    /**
+     * Close the connections opened with some credentials if no bridge is using nor waiting for them,
+     * so that connections (and credentials) of clients gone are not kept around
+     *
+     * @param credentials   credentials of the connections
+     * @return  if the connections were closed
+     */
+    private boolean closeIfUnused(Credentials credentials) {
+
+        PooledConnection[] pooledConnections = this.connections.get(credentials);
+        if (pooledConnections == null) {
+            return false;
+        }
+        for (PooledConnection pooled : pooledConnections) {
+            if (pooled.load() > 0 || pooled.connecting) {
+                return false;
+            }
+        }
+        this.connections.remove(credentials);
+        for (PooledConnection pooled : pooledConnections) {
+            pooled.close();
+        }
+        return true;
+    }
+
+    /**
+     * Credentials the pooled connections are opened with
+     */
+    private static final class Credentials {
+
+        private final String userName;
+        private final String password;
+
+        Credentials(String userName, String password) {
+            this.userName = userName;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Credentials that = (Credentials) o;
+            return Objects.equals(userName, that.userName) &&
+                    Objects.equals(password, that.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userName, password);
+        }
+    }
+
+    /**
+     * Connection slot in the pool
+     */
+    private class PooledConnection {
+
+        private final Credentials credentials;
+        private final int index;
+        // bridges using the connection, notified on connection lost
+        private final Set<Handler<ProtonConnection>> lostHandlers = new HashSet<>();
+        // acquire requests waiting for the connection to be opened
+        private final List<Handler<AsyncResult<ProtonConnection>>> waiters = new ArrayList<>();
+
+        private ProtonConnection connection;
+        private boolean connecting;
+
+        PooledConnection(Credentials credentials, int index) {
+            this.credentials = credentials;
+            this.index = index;
+        }
+
+        int load() {
+            return this.lostHandlers.size() + this.waiters.size();
+        }
+
+        void acquire(Handler<ProtonConnection> connectionLostHandler, Handler<AsyncResult<ProtonConnection>> handler) {
+
+            if (this.connection != null && !this.connection.isDisconnected()) {
+                this.lostHandlers.add(connectionLostHandler);
+                handler.handle(Future.succeededFuture(this.connection));
+                return;
+            }
+
+            this.waiters.add(done -> {
+                if (done.succeeded()) {
+                    this.lostHandlers.add(connectionLostHandler);
+                }
+                handler.handle(done);
+            });
+
+            if (!this.connecting) {
+                this.connect();
+            }
+        }
+
+        private void connect() {
+
+            LOG.info("Opening pooled AMQP connection [{}] to {}:{} for user {}", this.index, host, port, this.credentials.userName);
+            this.connecting = true;
+
+            // NOTE : if username/password are null then Vert.x Proton just provides SASL ANONYMOUS as supported mechanism
+            //        otherwise it provides PLAIN with username/password provided here
+            client.connect(clientOptions, host, port, this.credentials.userName, this.credentials.password, done -> {
+
+                this.connecting = false;
+                AsyncResult<ProtonConnection> result;
+
+                if (done.succeeded() && !closed) {
+
+                    ProtonConnection connection = done.result();
+                    connection
+                            .closeHandler(remoteClose -> {
+                                LOG.info("Pooled AMQP connection [{}] closed with {}", this.index, connection.getRemoteContainer());
+                                connection.close();
+                                this.handleConnectionLost(connection);
+                            })
+                            .disconnectHandler(disconnected -> {
+                                LOG.info("Pooled AMQP connection [{}] disconnected from {}", this.index, disconnected.getRemoteContainer());
+                                disconnected.disconnect();
+                                this.handleConnectionLost(disconnected);
+                            })
+                            .open();
+
+                    this.connection = connection;
+                    result = Future.succeededFuture(connection);
+
+                } else if (done.succeeded()) {
+
+                    done.result().disconnect();
+                    result = Future.failedFuture(new IllegalStateException("AMQP connection pool closed"));
+
+                } else {
+
+                    LOG.error("Error opening pooled AMQP connection [{}] ...", this.index, done.cause());
+                    result = Future.failedFuture(done.cause());
+                }
+
+                List<Handler<AsyncResult<ProtonConnection>>> handlers = new ArrayList<>(this.waiters);
+                this.waiters.clear();
+                handlers.forEach(waiter -> waiter.handle(result));
+
+                if (result.failed()) {
+                    closeIfUnused(this.credentials);
+                }
+            });
+        }
+
+        private void handleConnectionLost(ProtonConnection lost) {
+
+            if (this.connection != lost) {
+                return;
+            }
+            this.connection = null;
+
+            List<Handler<ProtonConnection>> handlers = new ArrayList<>(this.lostHandlers);
+            this.lostHandlers.clear();
+            handlers.forEach(lostHandler -> lostHandler.handle(lost));
+            closeIfUnused(this.credentials);
+        }
+
+        void close() {
+
+            if (this.connection != null) {
+                ProtonConnection connection = this.connection;
+                this.connection = null;
+                this.lostHandlers.clear();
+                connection.close();
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@
 
 package enmasse.mqtt;
 
+import io.enmasse.metrics.api.Metrics;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -12,6 +13,7 @@ import io.vertx.core.logging.SLF4JLogDelegateFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -159,17 +161,32 @@ public class Application {
 
         LOG.info("MqttGateway starting with options: {}", options);
 
-        MqttGateway gateway = new MqttGateway(options);
+        Metrics metrics = new Metrics();
+        MqttGateway gateway = new MqttGateway(options, metrics);
 
         Application app = new Application(options, gateway);
         app.registerVerticles();
 
+        HTTPServer httpServer = null;
+        if (options.getMetricsPort() > 0) {
+            try {
+                httpServer = new HTTPServer(options.getMetricsPort(), metrics);
+                httpServer.start();
+            } catch (IOException e) {
+                LOG.error("Could not start metrics HTTP server on port {}", options.getMetricsPort(), e);
+            }
+        }
+        final HTTPServer metricsServer = httpServer;
+
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 super.run();
                 LOG.info("MqttGateway shutdown");
                 app.shutdown();
+                if (metricsServer != null) {
+                    metricsServer.stop();
+                }
             }
         });
     }
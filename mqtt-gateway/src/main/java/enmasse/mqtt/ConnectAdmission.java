@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016-2018, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import io.enmasse.metrics.api.MetricType;
+import io.enmasse.metrics.api.MetricValue;
+import io.enmasse.metrics.api.Metrics;
+import io.enmasse.metrics.api.ScalarMetric;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.mqtt.MqttEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.netty.handler.codec.mqtt.MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE;
+
+/**
+ * Admission control for the connection requests (CONNECT) from MQTT clients.
+ *
+ * Connections are admitted at the rate of a token bucket, the ones over it wait in a bounded queue
+ * and, when the queue is full, they are rejected right away with CONNACK "server unavailable" so that
+ * a reconnection storm doesn't flood the messaging service with attaches and subscriptions requests.
+ * It is not thread safe and it's meant to be used from the context of the owning gateway.
+ */
+public class ConnectAdmission {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectAdmission.class);
+
+    private final Vertx vertx;
+    private final TokenBucket tokenBucket;
+    private final int maxPending;
+
+    // connections waiting for a token, in arrival order
+    private final Deque<PendingConnect> pending = new ArrayDeque<>();
+    private long drainTimerId = -1;
+    private volatile int pendingCount;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param vertx Vert.x instance
+     * @param rate  connections admitted per second
+     * @param burst max number of connections admitted at once
+     * @param maxPending    max number of connections waiting to be admitted
+     */
+    public ConnectAdmission(Vertx vertx, double rate, int burst, int maxPending) {
+
+        this.vertx = vertx;
+        this.tokenBucket = new TokenBucket(rate, burst, System.nanoTime());
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Register the admission control metrics
+     *
+     * @param metrics   metrics registry
+     */
+    public void registerMetrics(Metrics metrics) {
+
+        metrics.registerMetric(new ScalarMetric(
+                "mqtt_connect_pending",
+                "Number of MQTT connections waiting to be admitted",
+                MetricType.gauge,
+                () -> Collections.singletonList(new MetricValue(this.pendingCount))));
+
+        metrics.registerMetric(new ScalarMetric(
+                "mqtt_connect_admitted_total",
+                "Number of MQTT connections admitted",
+                MetricType.counter,
+                () -> Collections.singletonList(new MetricValue(this.admitted.get()))));
+
+        metrics.registerMetric(new ScalarMetric(
+                "mqtt_connect_rejected_total",
+                "Number of MQTT connections rejected by the admission control",
+                MetricType.counter,
+                () -> Collections.singletonList(new MetricValue(this.rejected.get()))));
+    }
+
+    /**
+     * Admit the connection from a MQTT client, now or as soon as there is capacity for it.
+     * If the waiting queue is full, the connection is rejected
+     *
+     * @param mqttEndpoint  MQTT local endpoint
+     * @param handler   handler called when the connection is admitted
+     */
+    public void admit(MqttEndpoint mqttEndpoint, Handler<MqttEndpoint> handler) {
+
+        if (this.pending.isEmpty() && this.tokenBucket.tryAcquire(System.nanoTime())) {
+            this.admitted.incrementAndGet();
+            handler.handle(mqttEndpoint);
+            return;
+        }
+
+        if (this.pending.size() >= this.maxPending) {
+            LOG.info("CONNACK [{}] to MQTT client {} at {}, too many connections waiting", CONNECTION_REFUSED_SERVER_UNAVAILABLE.ordinal(),
+                     mqttEndpoint.clientIdentifier(), mqttEndpoint.remoteAddress());
+            this.rejected.incrementAndGet();
+            this.reject(mqttEndpoint);
+            return;
+        }
+
+        this.pending.add(new PendingConnect(mqttEndpoint, handler));
+        this.pendingCount = this.pending.size();
+        this.scheduleDrain();
+    }
+
+    /**
+     * Stop the admission control, rejecting the connections still waiting
+     */
+    public void stop() {
+
+        if (this.drainTimerId != -1) {
+            this.vertx.cancelTimer(this.drainTimerId);
+            this.drainTimerId = -1;
+        }
+        this.pending.forEach(pendingConnect -> this.reject(pendingConnect.mqttEndpoint));
+        this.pending.clear();
+        this.pendingCount = 0;
+    }
+
+    private void scheduleDrain() {
+
+        if (this.drainTimerId == -1 && !this.pending.isEmpty()) {
+            long delay = Math.max(1, this.tokenBucket.nanosUntilToken(System.nanoTime()) / 1_000_000);
+            this.drainTimerId = this.vertx.setTimer(delay, id -> {
+                this.drainTimerId = -1;
+                this.drain();
+            });
+        }
+    }
+
+    /**
+     * Admit the waiting connections, in arrival order, while there are tokens for them
+     */
+    private void drain() {
+
+        while (!this.pending.isEmpty() && this.tokenBucket.tryAcquire(System.nanoTime())) {
+            PendingConnect pendingConnect = this.pending.poll();
+            this.admitted.incrementAndGet();
+            pendingConnect.handler.handle(pendingConnect.mqttEndpoint);
+        }
+        this.pendingCount = this.pending.size();
+        this.scheduleDrain();
+    }
+
+    private void reject(MqttEndpoint mqttEndpoint) {
+
+        try {
+            mqttEndpoint.reject(CONNECTION_REFUSED_SERVER_UNAVAILABLE);
+        } catch (IllegalStateException e) {
+            // the client has already closed the connection
+            LOG.debug("Error rejecting MQTT client {}", mqttEndpoint.clientIdentifier(), e);
+        }
+    }
+
+    /**
+     * Connection waiting to be admitted
+     */
+    private static class PendingConnect {
+
+        private final MqttEndpoint mqttEndpoint;
+        private final Handler<MqttEndpoint> handler;
+
+        PendingConnect(MqttEndpoint mqttEndpoint, Handler<MqttEndpoint> handler) {
+            this.mqttEndpoint = mqttEndpoint;
+            this.handler = handler;
+        }
+    }
+}
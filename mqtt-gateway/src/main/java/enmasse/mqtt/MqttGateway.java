@@ -5,9 +5,13 @@
 
 package enmasse.mqtt;
 
+import enmasse.mqtt.endpoints.AmqpPublisherCache;
+import io.enmasse.metrics.api.Metrics;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.net.PemKeyCertOptions;
 import io.vertx.core.net.SocketAddress;
 import io.vertx.mqtt.MqttEndpoint;
@@ -31,15 +35,25 @@ public class MqttGateway extends AbstractVerticle {
 
     private static final Logger LOG = LoggerFactory.getLogger(MqttGateway.class);
     private final MqttGatewayOptions options;
+    private final Metrics metrics;
 
     private MqttServer server;
+    // pool of AMQP connections shared by the bridges (if enabled)
+    private AmqpConnectionPool connectionPool;
+    // links for publishing on topics shared by the bridges
+    private AmqpPublisherCache publisherCache;
+    // admission control for connections (if enabled)
+    private ConnectAdmission connectAdmission;
+    // subscriptions of the clients, for restoring sessions locally (if enabled)
+    private SubscriptionCache subscriptionCache;
 
     private final Map<String, AmqpBridge> bridges = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, Semaphore> clientIdSemaphores = new ConcurrentHashMap<>();
 
-    public MqttGateway(MqttGatewayOptions options) {
+    public MqttGateway(MqttGatewayOptions options, Metrics metrics) {
 
         this.options = options;
+        this.metrics = metrics;
     }
 
 
@@ -70,7 +84,7 @@ public class MqttGateway extends AbstractVerticle {
         this.server = MqttServer.create(this.vertx, options);
 
         this.server
-                .endpointHandler(this::handleMqttEndpointConnection)
+                .endpointHandler(this::admitMqttEndpointConnection)
                 .exceptionHandler(t -> {LOG.error("Error handling connection ", t);})
                 .listen(done -> {
 
@@ -87,6 +101,21 @@ public class MqttGateway extends AbstractVerticle {
                 });
     }
 
+    /**
+     * Handler for a connection request (CONNECT) received by a remote MQTT client, going through
+     * the admission control (if enabled) before being handled
+     *
+     * @param mqttEndpoint  MQTT local endpoint
+     */
+    private void admitMqttEndpointConnection(MqttEndpoint mqttEndpoint) {
+
+        if (this.connectAdmission != null) {
+            this.connectAdmission.admit(mqttEndpoint, this::handleMqttEndpointConnection);
+        } else {
+            this.handleMqttEndpointConnection(mqttEndpoint);
+        }
+    }
+
     /**
      * Handler for a connection request (CONNECT) received by a remote MQTT client
      *
@@ -102,7 +131,10 @@ public class MqttGateway extends AbstractVerticle {
                                                                          s -> new Semaphore(1));
 
         if (clientIdSemaphore.tryAcquire()) {
-            AmqpBridge bridge = new AmqpBridge(this.vertx, mqttEndpoint);
+            AmqpBridge bridge = new AmqpBridge(this.vertx, mqttEndpoint, this.publisherCache)
+                    .publishWatermarks(this.options.getPublishLowWatermark(), this.options.getPublishHighWatermark())
+                    .inFlightWindow(this.options.getInFlightWindow())
+                    .subscriptionCache(this.subscriptionCache);
 
             bridge.mqttEndpointCloseHandler(amqpBridge -> {
 
@@ -111,7 +143,9 @@ public class MqttGateway extends AbstractVerticle {
                 } finally {
                     clientIdSemaphores.remove(clientIdentifier, clientIdSemaphore);
                 }
-            }).open(this.options.getMessagingServiceHost(), this.options.getMessagingServicePort(), done -> {
+            });
+
+            Handler<AsyncResult<AmqpBridge>> openHandler = done -> {
                 if (done.succeeded()) {
                     AmqpBridge newBridge = done.result();
                     this.bridges.put(newBridge.id(), newBridge);
@@ -119,7 +153,13 @@ public class MqttGateway extends AbstractVerticle {
                     LOG.info("Error opening the AMQP bridge ...", done.cause());
                     clientIdSemaphores.remove(clientIdentifier, clientIdSemaphore);
                 }
-            });
+            };
+
+            if (this.connectionPool != null) {
+                bridge.open(this.connectionPool, openHandler);
+            } else {
+                bridge.open(this.options.getMessagingServiceHost(), this.options.getMessagingServicePort(), openHandler);
+            }
         } else {
             AmqpBridge existingBridge = bridges.get(clientIdentifier);
             if (existingBridge == null) {
@@ -147,6 +187,37 @@ public class MqttGateway extends AbstractVerticle {
     public void start(Future<Void> startFuture) throws Exception {
 
         LOG.info("Starting MQTT gateway verticle...");
+
+        this.publisherCache = new AmqpPublisherCache(this.vertx,
+                                                     this.options.getPublisherCacheSize(),
+                                                     this.options.getPublisherIdleTimeout().toMillis());
+        this.publisherCache.registerMetrics(this.metrics);
+        this.publisherCache.start();
+
+        if (this.options.getConnectionPoolSize() > 0) {
+            LOG.info("Sharing {} AMQP connections between MQTT clients", this.options.getConnectionPoolSize());
+            this.connectionPool = new AmqpConnectionPool(this.vertx,
+                                                         this.options.getMessagingServiceHost(),
+                                                         this.options.getMessagingServicePort(),
+                                                         this.options.getConnectionPoolSize());
+        }
+
+        if (!this.options.getSubscriptionCacheTtl().isZero()) {
+            this.subscriptionCache = new SubscriptionCache(this.options.getSubscriptionCacheTtl().toMillis(),
+                                                           this.options.getSubscriptionCacheSize());
+            this.subscriptionCache.registerMetrics(this.metrics);
+        }
+
+        if (this.options.getConnectRate() > 0) {
+            LOG.info("Admitting {} MQTT connections per second (burst {}, max pending {})",
+                     this.options.getConnectRate(), this.options.getConnectBurst(), this.options.getMaxPendingConnects());
+            this.connectAdmission = new ConnectAdmission(this.vertx,
+                                                         this.options.getConnectRate(),
+                                                         this.options.getConnectBurst(),
+                                                         this.options.getMaxPendingConnects());
+            this.connectAdmission.registerMetrics(this.metrics);
+        }
+
         this.bindMqttServer(startFuture);
     }
 
@@ -166,6 +237,10 @@ public class MqttGateway extends AbstractVerticle {
            }
         });
 
+        if (this.connectAdmission != null) {
+            this.connectAdmission.stop();
+        }
+
         if (this.server != null) {
             @SuppressWarnings("rawtypes")
             List<Future> closeFutures = this.bridges.entrySet()
@@ -174,6 +249,10 @@ public class MqttGateway extends AbstractVerticle {
                                                     .collect(Collectors.toList());
 
             CompositeFuture.all(closeFutures).setHandler(done -> {
+                this.publisherCache.stop();
+                if (this.connectionPool != null) {
+                    this.connectionPool.close();
+                }
                 this.server.close(shutdownTracker);
             });
         } else {
@@ -5,6 +5,9 @@
 
 package enmasse.mqtt;
 
+import enmasse.mqtt.endpoints.AmqpPublishEndpoint;
+import enmasse.mqtt.endpoints.AmqpReceiverEndpoint;
+
 import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
@@ -19,6 +22,25 @@ public class MqttGatewayOptions {
     // connection info to the messaging service
     private String messagingServiceHost;
     private int messagingServicePort;
+    // number of AMQP connections shared by all the bridges (0 for a connection per MQTT client)
+    private int connectionPoolSize;
+    // links for publishing on topics, shared by the bridges
+    private int publisherCacheSize;
+    private Duration publisherIdleTimeout;
+    // watermarks on the published messages waiting for credit, per connection
+    private int publishLowWatermark;
+    private int publishHighWatermark;
+    // unsettled deliveries to the MQTT client, per connection (0 for no window)
+    private int inFlightWindow;
+    // subscriptions of the clients cached locally (0 TTL for no cache)
+    private Duration subscriptionCacheTtl;
+    private int subscriptionCacheSize;
+    // admission control for connections (0 rate for no admission control)
+    private int connectRate;
+    private int connectBurst;
+    private int maxPendingConnects;
+    // port for exposing metrics
+    private int metricsPort;
 
     // SSL/TLS support stuff
     private boolean ssl;
@@ -68,6 +90,102 @@ public class MqttGatewayOptions {
         this.messagingServicePort = messagingServicePort;
     }
 
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    public void setConnectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    public int getPublisherCacheSize() {
+        return publisherCacheSize;
+    }
+
+    public void setPublisherCacheSize(int publisherCacheSize) {
+        this.publisherCacheSize = publisherCacheSize;
+    }
+
+    public Duration getPublisherIdleTimeout() {
+        return publisherIdleTimeout;
+    }
+
+    public void setPublisherIdleTimeout(Duration publisherIdleTimeout) {
+        this.publisherIdleTimeout = publisherIdleTimeout;
+    }
+
+    public int getPublishLowWatermark() {
+        return publishLowWatermark;
+    }
+
+    public void setPublishLowWatermark(int publishLowWatermark) {
+        this.publishLowWatermark = publishLowWatermark;
+    }
+
+    public int getPublishHighWatermark() {
+        return publishHighWatermark;
+    }
+
+    public void setPublishHighWatermark(int publishHighWatermark) {
+        this.publishHighWatermark = publishHighWatermark;
+    }
+
+    public int getInFlightWindow() {
+        return inFlightWindow;
+    }
+
+    public void setInFlightWindow(int inFlightWindow) {
+        this.inFlightWindow = inFlightWindow;
+    }
+
+    public Duration getSubscriptionCacheTtl() {
+        return subscriptionCacheTtl;
+    }
+
+    public void setSubscriptionCacheTtl(Duration subscriptionCacheTtl) {
+        this.subscriptionCacheTtl = subscriptionCacheTtl;
+    }
+
+    public int getSubscriptionCacheSize() {
+        return subscriptionCacheSize;
+    }
+
+    public void setSubscriptionCacheSize(int subscriptionCacheSize) {
+        this.subscriptionCacheSize = subscriptionCacheSize;
+    }
+
+    public int getConnectRate() {
+        return connectRate;
+    }
+
+    public void setConnectRate(int connectRate) {
+        this.connectRate = connectRate;
+    }
+
+    public int getConnectBurst() {
+        return connectBurst;
+    }
+
+    public void setConnectBurst(int connectBurst) {
+        this.connectBurst = connectBurst;
+    }
+
+    public int getMaxPendingConnects() {
+        return maxPendingConnects;
+    }
+
+    public void setMaxPendingConnects(int maxPendingConnects) {
+        this.maxPendingConnects = maxPendingConnects;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
     public boolean isSsl() {
         return ssl;
     }
@@ -115,6 +233,54 @@ public class MqttGatewayOptions {
                 .map(Integer::parseInt)
                 .orElse(5672));
 
+        options.setConnectionPoolSize(getEnv(env, "ENMASSE_MQTT_CONNECTIONPOOLSIZE")
+                .map(Integer::parseInt)
+                .orElse(0));
+
+        options.setPublisherCacheSize(getEnv(env, "ENMASSE_MQTT_PUBLISHERCACHESIZE")
+                .map(Integer::parseInt)
+                .orElse(10000));
+
+        options.setPublisherIdleTimeout(getEnv(env, "ENMASSE_MQTT_PUBLISHERIDLETIMEOUT")
+                .map(i -> Duration.ofSeconds(Long.parseLong(i)))
+                .orElse(Duration.ofMinutes(5)));
+
+        options.setPublishLowWatermark(getEnv(env, "ENMASSE_MQTT_PUBLISHLOWWATERMARK")
+                .map(Integer::parseInt)
+                .orElse(AmqpPublishEndpoint.DEFAULT_LOW_WATERMARK));
+
+        options.setPublishHighWatermark(getEnv(env, "ENMASSE_MQTT_PUBLISHHIGHWATERMARK")
+                .map(Integer::parseInt)
+                .orElse(AmqpPublishEndpoint.DEFAULT_HIGH_WATERMARK));
+
+        options.setInFlightWindow(getEnv(env, "ENMASSE_MQTT_INFLIGHTWINDOW")
+                .map(Integer::parseInt)
+                .orElse(AmqpReceiverEndpoint.DEFAULT_IN_FLIGHT_WINDOW));
+
+        options.setSubscriptionCacheTtl(getEnv(env, "ENMASSE_MQTT_SUBSCRIPTIONCACHETTL")
+                .map(i -> Duration.ofSeconds(Long.parseLong(i)))
+                .orElse(Duration.ZERO));
+
+        options.setSubscriptionCacheSize(getEnv(env, "ENMASSE_MQTT_SUBSCRIPTIONCACHESIZE")
+                .map(Integer::parseInt)
+                .orElse(100000));
+
+        options.setConnectRate(getEnv(env, "ENMASSE_MQTT_CONNECTRATE")
+                .map(Integer::parseInt)
+                .orElse(0));
+
+        options.setConnectBurst(getEnv(env, "ENMASSE_MQTT_CONNECTBURST")
+                .map(Integer::parseInt)
+                .orElse(Math.max(1, options.getConnectRate())));
+
+        options.setMaxPendingConnects(getEnv(env, "ENMASSE_MQTT_MAXPENDINGCONNECTS")
+                .map(Integer::parseInt)
+                .orElse(1000));
+
+        options.setMetricsPort(getEnv(env, "ENMASSE_MQTT_METRICSPORT")
+                .map(Integer::parseInt)
+                .orElse(8080));
+
         options.setStartupTimeout(getEnv(env, "ENMASSE_MQTT_STARTUPTIMEOUT")
                 .map(i -> Duration.ofSeconds(Long.parseLong(i)))
                 .orElse(Duration.ofSeconds(20)));
@@ -151,6 +317,18 @@ public class MqttGatewayOptions {
                 ", maxMessageSize=" + maxMessageSize +
                 ", messagingServiceHost='" + messagingServiceHost + '\'' +
                 ", messagingServicePort=" + messagingServicePort +
+                ", connectionPoolSize=" + connectionPoolSize +
+                ", publisherCacheSize=" + publisherCacheSize +
+                ", publisherIdleTimeout=" + publisherIdleTimeout +
+                ", publishLowWatermark=" + publishLowWatermark +
+                ", publishHighWatermark=" + publishHighWatermark +
+                ", inFlightWindow=" + inFlightWindow +
+                ", subscriptionCacheTtl=" + subscriptionCacheTtl +
+                ", subscriptionCacheSize=" + subscriptionCacheSize +
+                ", connectRate=" + connectRate +
+                ", connectBurst=" + connectBurst +
+                ", maxPendingConnects=" + maxPendingConnects +
+                ", metricsPort=" + metricsPort +
                 ", ssl=" + ssl +
                 ", certFile='" + certFile + '\'' +
                 ", keyFile='" + keyFile + '\'' +
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016-2018, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import enmasse.mqtt.messages.AmqpTopicSubscription;
+import io.enmasse.metrics.api.MetricType;
+import io.enmasse.metrics.api.MetricValue;
+import io.enmasse.metrics.api.Metrics;
+import io.enmasse.metrics.api.ScalarMetric;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gateway local cache of the clients subscriptions, as provided by the Subscription Service.
+ *
+ * It allows to restore the session of a reconnecting client without the AMQP_LIST/AMQP_SUBSCRIPTIONS
+ * round trip with the Subscription Service. The subscriptions are loaded on AMQP_SUBSCRIPTIONS, kept up to
+ * date on SUBSCRIBE/UNSUBSCRIBE through this gateway and they expire after the TTL, bounding how stale they
+ * can be if changed through another gateway. The cache is bounded, evicting the least recently used client.
+ * It is not thread safe and it's meant to be used from the context of the owning gateway.
+ */
+public class SubscriptionCache {
+
+    private final long ttl;
+    private final int maxSize;
+    // subscriptions in access order, the eldest is the least recently used
+    private final LinkedHashMap<String, Entry> subscriptions;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param ttl   time (in ms) after that the subscriptions of a client have to be loaded again
+     * @param maxSize   max number of clients in the cache
+     */
+    public SubscriptionCache(long ttl, int maxSize) {
+
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+        this.subscriptions = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > SubscriptionCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Register the cache metrics
+     *
+     * @param metrics   metrics registry
+     */
+    public void registerMetrics(Metrics metrics) {
+
+        metrics.registerMetric(new ScalarMetric(
+                "mqtt_subscription_cache_hits_total",
+                "Number of sessions restored from the subscriptions cache",
+                MetricType.counter,
+                () -> Collections.singletonList(new MetricValue(this.hits.get()))));
+
+        metrics.registerMetric(new ScalarMetric(
+                "mqtt_subscription_cache_misses_total",
+                "Number of sessions restored from the Subscription Service",
+                MetricType.counter,
+                () -> Collections.singletonList(new MetricValue(this.misses.get()))));
+    }
+
+    /**
+     * Get the subscriptions of a client
+     *
+     * @param clientId  client identifier
+     * @return  the topic subscriptions, null if not cached or expired
+     */
+    public List<AmqpTopicSubscription> get(String clientId) {
+
+        Entry entry = this.subscriptions.get(clientId);
+        if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+            if (entry != null) {
+                this.subscriptions.remove(clientId);
+            }
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        this.hits.incrementAndGet();
+        List<AmqpTopicSubscription> topicSubscriptions = new ArrayList<>(entry.topics.size());
+        entry.topics.forEach((topic, qos) -> topicSubscriptions.add(new AmqpTopicSubscription(topic, qos)));
+        return topicSubscriptions;
+    }
+
+    /**
+     * Put the subscriptions of a client, as provided by the Subscription Service
+     *
+     * @param clientId  client identifier
+     * @param topicSubscriptions    topic subscriptions
+     */
+    public void put(String clientId, List<AmqpTopicSubscription> topicSubscriptions) {
+
+        Entry entry = new Entry(System.currentTimeMillis() + this.ttl);
+        topicSubscriptions.forEach(topicSubscription -> entry.topics.put(topicSubscription.topic(), topicSubscription.qos()));
+        this.subscriptions.put(clientId, entry);
+    }
+
+    /**
+     * Update the subscriptions of a client (if cached) with the accepted topic subscriptions
+     *
+     * @param clientId  client identifier
+     * @param topicSubscriptions    topic subscriptions accepted
+     */
+    public void subscribed(String clientId, List<AmqpTopicSubscription> topicSubscriptions) {
+
+        Entry entry = this.subscriptions.get(clientId);
+        if (entry != null) {
+            topicSubscriptions.forEach(topicSubscription -> entry.topics.put(topicSubscription.topic(), topicSubscription.qos()));
+        }
+    }
+
+    /**
+     * Update the subscriptions of a client (if cached) removing the unsubscribed topics
+     *
+     * @param clientId  client identifier
+     * @param topics    topics unsubscribed
+     */
+    public void unsubscribed(String clientId, List<String> topics) {
+
+        Entry entry = this.subscriptions.get(clientId);
+        if (entry != null) {
+            topics.forEach(entry.topics::remove);
+        }
+    }
+
+    /**
+     * Remove the subscriptions of a client, i.e. when the session is cleaned
+     *
+     * @param clientId  client identifier
+     */
+    public void invalidate(String clientId) {
+        this.subscriptions.remove(clientId);
+    }
+
+    /**
+     * Cached subscriptions of a client with their expiration time
+     */
+    private static final class Entry {
+
+        private final Map<String, MqttQoS> topics = new LinkedHashMap<>();
+        private final long expiresAt;
+
+        Entry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+    }
+}
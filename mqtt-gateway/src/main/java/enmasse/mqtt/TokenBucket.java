@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016-2018, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+/**
+ * Token bucket, refilled at a fixed rate up to its capacity.
+ * Time is provided by the caller (in ns), it is not thread safe.
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final double rate;
+    private final int capacity;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Constructor
+     *
+     * @param rate  tokens added per second
+     * @param capacity  max number of tokens (the burst)
+     * @param now   current time (in ns), the bucket starts full
+     */
+    public TokenBucket(double rate, int capacity, long now) {
+
+        if (rate <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Token bucket rate and capacity must be greater than 0");
+        }
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Take a token from the bucket, if available
+     *
+     * @param now   current time (in ns)
+     * @return  if the token was taken
+     */
+    public boolean tryAcquire(long now) {
+
+        this.refill(now);
+        if (this.tokens >= 1) {
+            this.tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Time until the next token is available
+     *
+     * @param now   current time (in ns)
+     * @return  time (in ns) until the next token, 0 if already available
+     */
+    public long nanosUntilToken(long now) {
+
+        this.refill(now);
+        if (this.tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - this.tokens) * NANOS_PER_SECOND / this.rate);
+    }
+
+    private void refill(long now) {
+
+        long elapsed = now - this.lastRefill;
+        if (elapsed > 0) {
+            this.tokens = Math.min(this.capacity, this.tokens + elapsed * this.rate / NANOS_PER_SECOND);
+            this.lastRefill = now;
+        }
+    }
+}
@@ -6,7 +6,6 @@
 package enmasse.mqtt;
 
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * Provides matching feature between "wildcarded" topics (for subscription)
@@ -14,11 +13,9 @@ import java.util.regex.Pattern;
  */
 public class TopicMatcher {
 
-    private static final String PLUS_WILDCARD = "\\+";
-    private static final String SHARP_WILDCARD = "#";
-
-    private static final String PLUS_WILDCARD_REPLACE = "[^/]\\+";
-    private static final String SHARP_WILDCARD_REPLACE = ".*";
+    private static final char LEVEL_SEPARATOR = '/';
+    private static final char PLUS_WILDCARD = '+';
+    private static final char SHARP_WILDCARD = '#';
 
     /**
      * Verify if the topic matches the "wildcarded" topic provided
@@ -29,12 +26,42 @@ public class TopicMatcher {
      */
     public static boolean isMatch(String wildcardedTopic, String topic) {
 
-        String topicReplaced =
-                wildcardedTopic.replaceAll(PLUS_WILDCARD, PLUS_WILDCARD_REPLACE).replaceAll(SHARP_WILDCARD, SHARP_WILDCARD_REPLACE);
+        int wildcardedStart = 0;
+        int topicStart = 0;
+
+        // compare level by level, without building any regular expression
+        while (true) {
+
+            int wildcardedEnd = levelEnd(wildcardedTopic, wildcardedStart);
+            int topicEnd = levelEnd(topic, topicStart);
+            int wildcardedLength = wildcardedEnd - wildcardedStart;
+
+            if (wildcardedLength == 1 && wildcardedTopic.charAt(wildcardedStart) == SHARP_WILDCARD) {
+                // "#" matches the current level and all the following ones
+                return true;
+            }
+
+            boolean isPlus = (wildcardedLength == 1 && wildcardedTopic.charAt(wildcardedStart) == PLUS_WILDCARD);
+            if (!isPlus && (wildcardedLength != topicEnd - topicStart ||
+                    !topic.regionMatches(topicStart, wildcardedTopic, wildcardedStart, wildcardedLength))) {
+                return false;
+            }
+
+            boolean wildcardedLast = (wildcardedEnd == wildcardedTopic.length());
+            boolean topicLast = (topicEnd == topic.length());
+            if (wildcardedLast || topicLast) {
+                return wildcardedLast && topicLast;
+            }
+
+            wildcardedStart = wildcardedEnd + 1;
+            topicStart = topicEnd + 1;
+        }
+    }
 
-        Pattern pattern = Pattern.compile(topicReplaced);
+    private static int levelEnd(String topic, int start) {
 
-        return pattern.matcher(topic).matches();
+        int end = topic.indexOf(LEVEL_SEPARATOR, start);
+        return (end < 0) ? topic.length() : end;
     }
 
     /**
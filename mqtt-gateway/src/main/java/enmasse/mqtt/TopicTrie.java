@@ -0,0 +1,313 @@
+/*
+ * Copyright 2016-2018, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+/**
+ * Topic level based index of the subscriptions (with the granted QoS levels) of an MQTT client.
+ *
+ * The trie is built incrementally on SUBSCRIBE/UNSUBSCRIBE and it is used for finding the subscription
+ * matching a published topic without allocating on the delivery path. It is not thread safe and
+ * it's meant to be used only from the context of the owning bridge.
+ */
+public class TopicTrie {
+
+    private static final char LEVEL_SEPARATOR = '/';
+    private static final String PLUS_WILDCARD = "+";
+    private static final String SHARP_WILDCARD = "#";
+
+    private final Node root = new Node(null);
+    private int size;
+
+    /**
+     * Subscription to a topic filter (that could have wildcards) with the granted QoS level
+     */
+    public static class Subscription {
+
+        private final String topicFilter;
+        private final MqttQoS qos;
+
+        /**
+         * Constructor
+         *
+         * @param topicFilter   topic filter (that could have wildcards)
+         * @param qos   granted QoS level
+         */
+        public Subscription(String topicFilter, MqttQoS qos) {
+            this.topicFilter = topicFilter;
+            this.qos = qos;
+        }
+
+        /**
+         * Topic filter (that could have wildcards)
+         * @return
+         */
+        public String topicFilter() {
+            return this.topicFilter;
+        }
+
+        /**
+         * Granted QoS level
+         * @return
+         */
+        public MqttQoS qos() {
+            return this.qos;
+        }
+
+        @Override
+        public String toString() {
+            return "Subscription{" +
+                    "topicFilter=" + this.topicFilter +
+                    ", qos=" + this.qos +
+                    "}";
+        }
+    }
+
+    /**
+     * Add a subscription to the index, replacing the granted QoS level if the topic filter is already there
+     *
+     * @param topicFilter   topic filter (that could have wildcards)
+     * @param qos   granted QoS level
+     */
+    public void add(String topicFilter, MqttQoS qos) {
+
+        Node node = this.root;
+        int start = 0;
+        while (true) {
+
+            int end = levelEnd(topicFilter, start);
+            node = node.getOrCreateChild(topicFilter.substring(start, end));
+            if (end == topicFilter.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+
+        if (node.subscription == null) {
+            this.size++;
+        }
+        node.subscription = new Subscription(topicFilter, qos);
+    }
+
+    /**
+     * Remove a subscription from the index
+     *
+     * @param topicFilter   topic filter (that could have wildcards)
+     * @return  if the subscription was in the index
+     */
+    public boolean remove(String topicFilter) {
+
+        boolean removed = remove(this.root, topicFilter, 0);
+        if (removed) {
+            this.size--;
+        }
+        return removed;
+    }
+
+    /**
+     * Find the subscription matching the topic provided. When more subscriptions
+     * overlap, the one with the maximum granted QoS level is returned
+     *
+     * @param topic fixed topic (for publishing)
+     * @return  the matching subscription or null if no one matches
+     */
+    public Subscription match(String topic) {
+
+        if (this.size == 0) {
+            return null;
+        }
+        return match(this.root, topic, 0, null);
+    }
+
+    /**
+     * Remove all the subscriptions from the index
+     */
+    public void clear() {
+
+        this.root.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Number of subscriptions in the index
+     * @return
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * If there are no subscriptions in the index
+     * @return
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    private static int levelEnd(String topic, int start) {
+
+        int end = topic.indexOf(LEVEL_SEPARATOR, start);
+        return (end < 0) ? topic.length() : end;
+    }
+
+    private static boolean remove(Node node, String topicFilter, int start) {
+
+        int end = levelEnd(topicFilter, start);
+        Node child = node.getChild(topicFilter.substring(start, end));
+        if (child == null) {
+            return false;
+        }
+
+        boolean removed;
+        if (end == topicFilter.length()) {
+            removed = (child.subscription != null);
+            child.subscription = null;
+        } else {
+            removed = remove(child, topicFilter, end + 1);
+        }
+
+        if (removed && child.isEmpty()) {
+            node.removeChild(child);
+        }
+        return removed;
+    }
+
+    private static Subscription match(Node node, String topic, int start, Subscription best) {
+
+        int end = levelEnd(topic, start);
+        boolean lastLevel = (end == topic.length());
+
+        // "#" matches the current level and all the following ones
+        if (node.sharp != null) {
+            best = max(best, node.sharp.subscription);
+        }
+
+        Node child = node.findChild(topic, start, end - start);
+        if (child != null) {
+            best = lastLevel ? max(best, child.subscription) : match(child, topic, end + 1, best);
+        }
+
+        // "+" matches just the current level
+        if (node.plus != null) {
+            best = lastLevel ? max(best, node.plus.subscription) : match(node.plus, topic, end + 1, best);
+        }
+
+        return best;
+    }
+
+    private static Subscription max(Subscription current, Subscription candidate) {
+
+        if (candidate == null) {
+            return current;
+        }
+        if (current == null || candidate.qos.value() > current.qos.value()) {
+            return candidate;
+        }
+        return current;
+    }
+
+    /**
+     * Node of the trie related to a single topic level
+     */
+    private static final class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final String level;
+        // children for the levels without wildcards
+        private Node[] children = NO_CHILDREN;
+        private int childrenCount;
+        // children for the "+" and "#" wildcards
+        private Node plus;
+        private Node sharp;
+        // subscription for the topic filter ending at this level (if any)
+        private Subscription subscription;
+
+        Node(String level) {
+            this.level = level;
+        }
+
+        Node findChild(String topic, int start, int length) {
+
+            for (int i = 0; i < this.childrenCount; i++) {
+                String childLevel = this.children[i].level;
+                if (childLevel.length() == length && topic.regionMatches(start, childLevel, 0, length)) {
+                    return this.children[i];
+                }
+            }
+            return null;
+        }
+
+        Node getChild(String level) {
+
+            switch (level) {
+                case PLUS_WILDCARD:
+                    return this.plus;
+                case SHARP_WILDCARD:
+                    return this.sharp;
+                default:
+                    return findChild(level, 0, level.length());
+            }
+        }
+
+        Node getOrCreateChild(String level) {
+
+            Node child = getChild(level);
+            if (child == null) {
+
+                child = new Node(level);
+                switch (level) {
+                    case PLUS_WILDCARD:
+                        this.plus = child;
+                        break;
+                    case SHARP_WILDCARD:
+                        this.sharp = child;
+                        break;
+                    default:
+                        if (this.childrenCount == this.children.length) {
+                            Node[] grown = new Node[Math.max(4, this.childrenCount * 2)];
+                            System.arraycopy(this.children, 0, grown, 0, this.childrenCount);
+                            this.children = grown;
+                        }
+                        this.children[this.childrenCount++] = child;
+                        break;
+                }
+            }
+            return child;
+        }
+
+        void removeChild(Node child) {
+
+            if (child == this.plus) {
+                this.plus = null;
+            } else if (child == this.sharp) {
+                this.sharp = null;
+            } else {
+                for (int i = 0; i < this.childrenCount; i++) {
+                    if (this.children[i] == child) {
+                        this.children[i] = this.children[--this.childrenCount];
+                        this.children[this.childrenCount] = null;
+                        break;
+                    }
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return this.subscription == null && this.childrenCount == 0 && this.plus == null && this.sharp == null;
+        }
+
+        void clear() {
+
+            this.children = NO_CHILDREN;
+            this.childrenCount = 0;
+            this.plus = null;
+            this.sharp = null;
+            this.subscription = null;
+        }
+    }
+}
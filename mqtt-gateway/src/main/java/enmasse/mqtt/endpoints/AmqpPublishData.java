@@ -6,6 +6,7 @@
 package enmasse.mqtt.endpoints;
 
 import enmasse.mqtt.messages.AmqpPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
 
 /**
  * Class for bringing AMQP_PUBLISH to an MQTT client and the
@@ -14,7 +15,9 @@ import enmasse.mqtt.messages.AmqpPublishMessage;
 public class AmqpPublishData {
 
     private AmqpPublishMessage amqpPublishMessage;
-    private int messageId;
+    // null if not published to the MQTT client
+    private Integer messageId;
+    private MqttQoS qos;
 
     /**
      * AMQP_PUBLISH message to send
@@ -36,19 +39,29 @@ public class AmqpPublishData {
 
     /**
      * Message identifier assigned to AMQP_PUBLISH message sent
-     * @return
+     * @return  the message identifier, null if the message wasn't published to the MQTT client
      */
-    public int messageId() {
+    public Integer messageId() {
         return this.messageId;
     }
 
     /**
-     * Set the message identifier assigned to AMQP_PUBLISH message sent
+     * QoS level the AMQP_PUBLISH message was sent with to the MQTT client
+     * @return  the QoS level, null if the message wasn't published to the MQTT client
+     */
+    public MqttQoS qos() {
+        return this.qos;
+    }
+
+    /**
+     * Set the message identifier and the QoS level of the AMQP_PUBLISH message sent
      * @param messageId message identifier
+     * @param qos   QoS level the message was sent with
      * @return  current instance of the AmqpPublishData
      */
-    public AmqpPublishData setMessageId(int messageId) {
+    public AmqpPublishData setPublished(int messageId, MqttQoS qos) {
         this.messageId = messageId;
+        this.qos = qos;
         return this;
     }
 }
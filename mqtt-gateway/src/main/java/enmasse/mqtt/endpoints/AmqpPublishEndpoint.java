@@ -11,15 +11,22 @@ import io.netty.handler.codec.mqtt.MqttQoS;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.proton.ProtonConnection;
 import io.vertx.proton.ProtonDelivery;
 import io.vertx.proton.ProtonQoS;
 import io.vertx.proton.ProtonSender;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Outcome;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Publisher endpoint
@@ -30,20 +37,63 @@ public class AmqpPublishEndpoint {
 
     public static final String AMQP_CLIENT_PUBREL_ENDPOINT_TEMPLATE = "$mqtt.%s.pubrel";
 
+    public static final int DEFAULT_LOW_WATERMARK = 100;
+    public static final int DEFAULT_HIGH_WATERMARK = 1000;
+
     // all delivery for published messages if they need settlement (messageId -> delivery)
     private Map<Object, ProtonDelivery> deliveries;
-    // links for publishing message on topic (topic -> link/senders couple)
-    private Map<String, AmqpPublisher> publishers;
+    // links held in the cache for the deliveries waiting for settlement (messageId -> hold)
+    private Map<Object, Hold> deliveryHolds;
+    // links for publishing message on topic, shared at gateway level
+    private final AmqpPublisherCache publisherCache;
+    // connection on which the links for publishing are attached
+    private final ProtonConnection connection;
     // sender for PUBREL messages
     private ProtonSender senderPubrel;
 
+    // messages waiting for credit, by link and in arrival order, so a topic without credit doesn't hold back the others
+    private final Map<Link, Deque<PendingPublish>> pendingPublishes = new HashMap<>();
+    // links with a handler waiting for credit
+    private final Set<Link> awaitingCredit = new HashSet<>();
+    private int pendingCount;
+    private int lowWatermark = DEFAULT_LOW_WATERMARK;
+    private int highWatermark = DEFAULT_HIGH_WATERMARK;
+    // if over the high watermark (until under the low one), QoS 0 messages are dropped
+    private boolean paused;
+    private boolean closed;
+
     /**
      * Constructor
      *
      * @param senderPubrel  ProtonSender instance related to client PUBREL address
+     * @param publisherCache    cache providing the links for publishing on topics
+     * @param connection    connection on which the links for publishing are attached
      */
-    public AmqpPublishEndpoint(ProtonSender senderPubrel) {
+    public AmqpPublishEndpoint(ProtonSender senderPubrel, AmqpPublisherCache publisherCache, ProtonConnection connection) {
         this.senderPubrel = senderPubrel;
+        this.publisherCache = publisherCache;
+        this.connection = connection;
+    }
+
+    /**
+     * Set the watermarks on the messages waiting for credit. Over the high watermark QoS 0 messages
+     * are dropped, until the waiting messages are under the low watermark. The high watermark bounds
+     * the waiting messages : when reached, QoS 1 and 2 messages are refused as well and they are not
+     * acknowledged, so the MQTT client stops publishing once its in-flight window is full and sends them
+     * again on reconnection
+     *
+     * @param lowWatermark  low watermark for resuming
+     * @param highWatermark high watermark for pausing
+     * @return  the current AmqpPublishEndpoint instance
+     */
+    public AmqpPublishEndpoint flowControl(int lowWatermark, int highWatermark) {
+
+        if (lowWatermark < 0 || lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("Low watermark must be between 0 and the high watermark");
+        }
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        return this;
     }
 
     /**
@@ -52,68 +102,160 @@ public class AmqpPublishEndpoint {
     public void open() {
 
         this.deliveries = new HashMap<>();
-        this.publishers = new HashMap<>();
+        this.deliveryHolds = new HashMap<>();
     }
 
     /**
-     * Check if a publisher already exists for the specified topic
-     *
-     * @param topic topic to check the publisher
-     * @return  if publisher already exists
+     * Send the AMQP_PUBLISH to the attached topic/address
+     * @param amqpPublishMessage    AMQP_PUBLISH message
+     * @param mqttPacketId
      */
-    public boolean isPublisher(String topic) {
 
-        return this.publishers.containsKey(topic);
+    public void publish(AmqpPublishMessage amqpPublishMessage,
+                        final int mqttPacketId, Handler<AsyncResult<ProtonDelivery>> handler) {
+
+        if (this.paused && amqpPublishMessage.qos() == MqttQoS.AT_MOST_ONCE) {
+            handler.handle(Future.failedFuture("AMQP publish dropped, no credit on " + amqpPublishMessage.topic()));
+            return;
+        }
+
+        Link link = new Link(amqpPublishMessage.topic(), amqpPublishMessage.qos() == MqttQoS.EXACTLY_ONCE);
+        Deque<PendingPublish> pending = this.pendingPublishes.get(link);
+        if (pending == null) {
+
+            // get sender link on "topic" for the QoS (attached if doesn't exist yet)
+            ProtonSender sender = this.publisherCache.sender(this.connection, amqpPublishMessage.topic(), amqpPublishMessage.qos());
+            if (!sender.sendQueueFull()) {
+                this.send(sender, amqpPublishMessage, mqttPacketId, handler);
+                return;
+            }
+        }
+
+        if (this.pendingCount >= this.highWatermark) {
+            handler.handle(Future.failedFuture("AMQP publish refused, too many messages waiting for credit"));
+            return;
+        }
+
+        // no credit (or other messages already waiting for it on the same link), the message has to wait
+        if (pending == null) {
+            pending = new ArrayDeque<>();
+            this.pendingPublishes.put(link, pending);
+        }
+        pending.add(new PendingPublish(amqpPublishMessage, mqttPacketId, handler));
+        this.pendingCount++;
+        if (!this.paused && this.pendingCount >= this.highWatermark) {
+            this.paused = true;
+            LOG.warn("AMQP publish paused with {} messages waiting for credit", this.pendingCount);
+        }
+        this.sendPending(link);
     }
 
     /**
-     * Add a publisher to the endpoint
+     * Send the messages waiting for credit on a link, in arrival order, until there is credit for them
      *
-     * @param topic topic for which adding the publisher
-     * @param amqpPublisher publisher to add
+     * @param link  link the messages are waiting for
      */
-    public void addPublisher(String topic, AmqpPublisher amqpPublisher) {
+    private void sendPending(Link link) {
+
+        Deque<PendingPublish> pending = this.pendingPublishes.get(link);
+        while (!this.closed && pending != null && !pending.isEmpty()) {
+
+            PendingPublish first = pending.peek();
+            AmqpPublishMessage amqpPublishMessage = first.amqpPublishMessage;
+
+            ProtonSender sender = this.publisherCache.sender(this.connection, amqpPublishMessage.topic(), amqpPublishMessage.qos());
+            if (sender.sendQueueFull()) {
+
+                if (this.awaitingCredit.add(link)) {
+                    this.publisherCache.creditHandler(this.connection, amqpPublishMessage.topic(), amqpPublishMessage.qos(), ar -> {
+                        this.awaitingCredit.remove(link);
+                        if (ar.succeeded()) {
+                            this.sendPending(link);
+                        } else {
+                            this.failPending(link, ar.cause());
+                        }
+                    });
+                }
+                break;
+            }
 
-        if (this.publishers.containsKey(topic)) {
-            throw new IllegalStateException(String.format("AMQP publisher for %s already exists !", topic));
+            pending.poll();
+            this.pendingCount--;
+            this.send(sender, amqpPublishMessage, first.mqttPacketId, first.handler);
+        }
+
+        if (pending != null && pending.isEmpty()) {
+            this.pendingPublishes.remove(link);
+        }
+
+        if (this.paused && this.pendingCount <= this.lowWatermark) {
+            this.paused = false;
+            LOG.info("AMQP publish resumed with {} messages waiting for credit", this.pendingCount);
         }
-        this.publishers.put(topic, amqpPublisher);
     }
 
     /**
-     * Send the AMQP_PUBLISH to the attached topic/address
-     * @param amqpPublishMessage    AMQP_PUBLISH message
-     * @param mqttPacketId
+     * Fail the messages waiting for credit on a link closed or detached, so that it isn't attached
+     * again for them (i.e. the topic is refused)
+     *
+     * @param link  link the messages are waiting for
+     * @param cause the reason why the link was closed
      */
+    private void failPending(Link link, Throwable cause) {
 
-    public void publish(AmqpPublishMessage amqpPublishMessage,
-                        final int mqttPacketId, Handler<AsyncResult<ProtonDelivery>> handler) {
-
-        // send AMQP_PUBLISH message
+        Deque<PendingPublish> pending = this.pendingPublishes.remove(link);
+        if (this.closed || pending == null) {
+            return;
+        }
 
-        AmqpPublisher publisher = this.publishers.get(amqpPublishMessage.topic());
+        LOG.warn("AMQP publish of {} messages on {} failed", pending.size(), link.topic, cause);
+        this.pendingCount -= pending.size();
+        for (PendingPublish publish : pending) {
+            publish.handler.handle(Future.failedFuture(cause));
+        }
 
-        // use sender for QoS 0/1 messages
-        if (amqpPublishMessage.qos() != MqttQoS.EXACTLY_ONCE) {
+        if (this.paused && this.pendingCount <= this.lowWatermark) {
+            this.paused = false;
+            LOG.info("AMQP publish resumed with {} messages waiting for credit", this.pendingCount);
+        }
+    }
 
-            // attach sender link on "topic" (if doesn't exist yet)
-            if (!publisher.senderQoS01().isOpen()) {
+    private void send(ProtonSender sender, AmqpPublishMessage amqpPublishMessage,
+                      final int mqttPacketId, Handler<AsyncResult<ProtonDelivery>> handler) {
 
-                publisher.senderQoS01()
-                        .setQoS(ProtonQoS.AT_LEAST_ONCE)
-                        .open();
+        // send AMQP_PUBLISH message
 
-                // TODO: think about starting a timer for inactivity on this link for detaching ?
-            }
+        // use sender for QoS 0/1 messages
+        if (amqpPublishMessage.qos() != MqttQoS.EXACTLY_ONCE) {
 
             if (amqpPublishMessage.qos() == MqttQoS.AT_MOST_ONCE) {
 
-                publisher.senderQoS01().send(amqpPublishMessage.toAmqp());
+                sender.send(amqpPublishMessage.toAmqp());
                 handler.handle(Future.succeededFuture(null));
 
             } else {
 
-                publisher.senderQoS01().send(amqpPublishMessage.toAmqp(), delivery -> {
+                // the link isn't evicted from the cache until the delivery gets its outcome, and if it's closed
+                // before the delivery fails, so that it doesn't hold back the PUBACKs of the following ones
+                boolean[] done = new boolean[1];
+                Handler<Void> closeHandler = v -> {
+                    if (!done[0]) {
+                        done[0] = true;
+                        handler.handle(Future.failedFuture("AMQP publish link closed before the delivery outcome"));
+                    }
+                };
+                this.publisherCache.hold(sender, closeHandler);
+                sender.send(amqpPublishMessage.toAmqp(), delivery -> {
+
+                    // the outcome may come without settlement, the delivery is done either way
+                    if (done[0] || !(delivery.remotelySettled() || delivery.getRemoteState() instanceof Outcome)) {
+                        return;
+                    }
+                    done[0] = true;
+                    if (!delivery.remotelySettled()) {
+                        delivery.settle();
+                    }
+                    this.publisherCache.release(sender, closeHandler);
 
                     if (delivery.getRemoteState() == Accepted.getInstance()) {
                         LOG.info("AMQP publish delivery {}", delivery.getRemoteState());
@@ -128,28 +270,40 @@ public class AmqpPublishEndpoint {
         // use sender for QoS 2 messages
         } else {
 
-            // attach sender link on "topic" (if doesn't exist yet)
-            if (!publisher.senderQoS2().isOpen()) {
-
-                publisher.senderQoS2()
-                        // TODO: Vert.x Proton doesn't support EXACTLY_ONCE
-                        .open();
-
-                // TODO: think about starting a timer for inactivity on this link for detaching ?
-            }
+            // the link isn't evicted from the cache until the delivery is settled on PUBREL, and if it's closed
+            // before the delivery fails or, once stored, can't be settled anymore
+            boolean[] done = new boolean[1];
+            Hold hold = new Hold(sender);
+            hold.closeHandler = v -> {
+                if (this.deliveryHolds.remove(mqttPacketId, hold)) {
+                    this.deliveries.remove(mqttPacketId);
+                } else if (!done[0]) {
+                    done[0] = true;
+                    handler.handle(Future.failedFuture("AMQP publish link closed before the delivery outcome"));
+                }
+            };
+            this.publisherCache.hold(sender, hold.closeHandler);
+            sender.send(amqpPublishMessage.toAmqp(), delivery -> {
 
-            publisher.senderQoS2().send(amqpPublishMessage.toAmqp(), delivery -> {
+                if (done[0]) {
+                    return;
+                }
+                done[0] = true;
 
                 if (delivery.getRemoteState() == Accepted.getInstance()) {
                     LOG.info("AMQP publish delivery {}", delivery.getRemoteState());
 
                     // received disposition not settled, store for future settlement
-                    if (!delivery.remotelySettled()) {
+                    if (!delivery.remotelySettled() && !this.closed) {
                         this.deliveries.put(mqttPacketId, delivery);
+                        this.deliveryHolds.put(mqttPacketId, hold);
+                    } else {
+                        this.publisherCache.release(sender, hold.closeHandler);
                     }
 
                     handler.handle(Future.succeededFuture(delivery));
                 } else {
+                    this.publisherCache.release(sender, hold.closeHandler);
                     handler.handle(Future.failedFuture(String.format("AMQP publish delivery %s", delivery.getRemoteState())));
                 }
             });
@@ -188,25 +342,22 @@ public class AmqpPublishEndpoint {
     }
 
     /**
-     * Close the endpoint, detaching the links
+     * Close the endpoint, detaching the PUBREL link (links for publishing are owned by the cache)
      */
     public void close() {
 
-        // detach links
-        for (Map.Entry<String, AmqpPublisher> entry: this.publishers.entrySet()) {
-
-            AmqpPublisher publisher = entry.getValue();
-            if (publisher.isOpen()) {
-                publisher.close();
-            }
-        }
+        this.closed = true;
+        this.pendingPublishes.clear();
+        this.awaitingCredit.clear();
+        this.pendingCount = 0;
 
         if (this.senderPubrel.isOpen()) {
             this.senderPubrel.close();
         }
 
-        this.publishers.clear();
         this.deliveries.clear();
+        this.deliveryHolds.values().forEach(hold -> this.publisherCache.release(hold.sender, hold.closeHandler));
+        this.deliveryHolds.clear();
     }
 
     /**
@@ -219,6 +370,65 @@ public class AmqpPublishEndpoint {
         if (this.deliveries.containsKey(messageId)) {
             ProtonDelivery delivery = this.deliveries.remove(messageId);
             delivery.disposition(Accepted.getInstance(), true);
+            Hold hold = this.deliveryHolds.remove(messageId);
+            this.publisherCache.release(hold.sender, hold.closeHandler);
+        }
+    }
+
+    /**
+     * Link for publishing, by topic and QoS class (QoS 0/1 or QoS 2) as in the publisher cache
+     */
+    private static final class Link {
+
+        private final String topic;
+        private final boolean exactlyOnce;
+
+        Link(String topic, boolean exactlyOnce) {
+            this.topic = topic;
+            this.exactlyOnce = exactlyOnce;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Link link = (Link) o;
+            return this.exactlyOnce == link.exactlyOnce &&
+                    this.topic.equals(link.topic);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.topic, this.exactlyOnce);
+        }
+    }
+
+    /**
+     * Link held in the publisher cache for a delivery, with the handler called if it's closed meanwhile
+     */
+    private static class Hold {
+
+        private final ProtonSender sender;
+        private Handler<Void> closeHandler;
+
+        Hold(ProtonSender sender) {
+            this.sender = sender;
+        }
+    }
+
+    /**
+     * Message waiting for credit on the related link
+     */
+    private static class PendingPublish {
+
+        private final AmqpPublishMessage amqpPublishMessage;
+        private final int mqttPacketId;
+        private final Handler<AsyncResult<ProtonDelivery>> handler;
+
+        PendingPublish(AmqpPublishMessage amqpPublishMessage, int mqttPacketId, Handler<AsyncResult<ProtonDelivery>> handler) {
+            this.amqpPublishMessage = amqpPublishMessage;
+            this.mqttPacketId = mqttPacketId;
+            this.handler = handler;
         }
     }
 }
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2016-2018, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt.endpoints;
+
+import io.enmasse.metrics.api.HistogramRecorder;
+import io.enmasse.metrics.api.MetricType;
+import io.enmasse.metrics.api.MetricValue;
+import io.enmasse.metrics.api.Metrics;
+import io.enmasse.metrics.api.ScalarMetric;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonQoS;
+import io.vertx.proton.ProtonSender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gateway wide cache of the links for publishing messages on topics.
+ *
+ * Links are keyed by connection, topic and QoS class (QoS 0/1 or QoS 2), so MQTT clients publishing
+ * to the same topic through a shared connection use the same link. The cache is bounded, evicting
+ * the least recently used link, and links not used for the idle timeout are detached as well.
+ * Links with deliveries held by the clients (i.e. waiting for the disposition or the PUBREL)
+ * or with clients waiting for credit are never evicted, so the cache can go over its max size
+ * until they are released. A link closed or detached releases its deliveries, notifying the clients
+ * holding them, and fails the clients waiting for credit on it, so that they don't attach it again
+ * right away when the topic is refused.
+ * It is not thread safe and it's meant to be used from the context of the owning gateway.
+ */
+public class AmqpPublisherCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AmqpPublisherCache.class);
+
+    private static final long MIN_EVICTION_PERIOD = 1_000; // in ms
+
+    private final Vertx vertx;
+    private final int maxSize;
+    private final long idleTimeout;
+    // links in access order, the eldest is the least recently used
+    private final LinkedHashMap<Key, Entry> publishers;
+    // cached links by sender, for holding and releasing them
+    private final Map<ProtonSender, Entry> senders = new IdentityHashMap<>();
+
+    private final HistogramRecorder attachLatency = new HistogramRecorder(0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1.0, 5.0);
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile int openLinks;
+
+    private long evictionTimerId = -1;
+
+    /**
+     * Constructor
+     *
+     * @param vertx Vert.x instance
+     * @param maxSize   max number of links in the cache
+     * @param idleTimeout   timeout (in ms) after that an unused link is detached
+     */
+    public AmqpPublisherCache(Vertx vertx, int maxSize, long idleTimeout) {
+
+        this.vertx = vertx;
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.publishers = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+
+                if (size() > AmqpPublisherCache.this.maxSize) {
+                    // the eldest link could be in use, evicting the least recently used ones which aren't
+                    evictUnused();
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Register the cache metrics
+     *
+     * @param metrics   metrics registry
+     */
+    public void registerMetrics(Metrics metrics) {
+
+        metrics.registerMetric(this.attachLatency.toMetric(
+                "mqtt_publisher_attach_duration_seconds",
+                "Time for attaching a link for publishing on a topic"));
+
+        metrics.registerMetric(new ScalarMetric(
+                "mqtt_publisher_links",
+                "Number of open links for publishing on topics",
+                MetricType.gauge,
+                () -> Collections.singletonList(new MetricValue(this.openLinks))));
+
+        metrics.registerMetric(new ScalarMetric(
+                "mqtt_publisher_evictions_total",
+                "Number of links for publishing on topics evicted from the cache",
+                MetricType.counter,
+                () -> Collections.singletonList(new MetricValue(this.evictions.get()))));
+    }
+
+    /**
+     * Start the periodic eviction of idle links
+     */
+    public void start() {
+
+        this.evictionTimerId = this.vertx.setPeriodic(Math.max(MIN_EVICTION_PERIOD, this.idleTimeout / 2), id -> this.evictIdle());
+    }
+
+    /**
+     * Stop the periodic eviction of idle links and detach all the links
+     */
+    public void stop() {
+
+        if (this.evictionTimerId != -1) {
+            this.vertx.cancelTimer(this.evictionTimerId);
+            this.evictionTimerId = -1;
+        }
+
+        this.publishers.values().forEach(Entry::close);
+        this.publishers.clear();
+        this.senders.clear();
+        this.openLinks = 0;
+    }
+
+    /**
+     * Get the link for publishing on the topic with the provided QoS, attaching it if it doesn't exist yet
+     *
+     * @param connection    connection on which the link is attached
+     * @param topic topic for publishing
+     * @param qos   QoS level of the message to publish
+     * @return  the link for publishing
+     */
+    public ProtonSender sender(ProtonConnection connection, String topic, MqttQoS qos) {
+
+        Key key = new Key(connection, topic, qos == MqttQoS.EXACTLY_ONCE);
+        Entry entry = this.publishers.get(key);
+
+        if (entry == null || !entry.sender.isOpen()) {
+
+            ProtonSender sender = connection.createSender(topic);
+            if (!key.exactlyOnce) {
+                sender.setQoS(ProtonQoS.AT_LEAST_ONCE);
+            }
+            // TODO: Vert.x Proton doesn't support EXACTLY_ONCE
+
+            Entry created = new Entry(sender);
+            this.senders.put(sender, created);
+
+            long attachStart = System.nanoTime();
+            sender.openHandler(ar -> {
+                if (ar.succeeded()) {
+                    this.attachLatency.observe((System.nanoTime() - attachStart) / 1_000_000_000.0);
+                } else {
+                    LOG.warn("Error attaching publisher on {}", topic, ar.cause());
+                }
+            });
+            // link closed or detached by the remote side, i.e. address not available
+            sender.closeHandler(ar -> this.remoteClosed(key, created));
+            sender.detachHandler(ar -> this.remoteClosed(key, created));
+            // the single drain handler on the link is shared by all the clients waiting for credit
+            sender.sendQueueDrainHandler(s -> created.notifyCreditWaiters(Future.succeededFuture()));
+            sender.open();
+
+            entry = created;
+            this.publishers.put(key, entry);
+            this.openLinks = this.publishers.size();
+        }
+
+        entry.lastUsed = System.currentTimeMillis();
+        return entry.sender;
+    }
+
+    private void remoteClosed(Key key, Entry entry) {
+
+        if (this.publishers.remove(key, entry)) {
+            this.openLinks = this.publishers.size();
+        }
+        entry.close();
+    }
+
+    /**
+     * Set a one-shot handler called when the link for publishing on the topic with the provided QoS
+     * gets credit. The handler fails if the link is closed or detached in the meantime
+     *
+     * @param connection    connection on which the link is attached
+     * @param topic topic for publishing
+     * @param qos   QoS level of the message to publish
+     * @param handler   handler called when the link gets credit
+     */
+    public void creditHandler(ProtonConnection connection, String topic, MqttQoS qos, Handler<AsyncResult<Void>> handler) {
+
+        Entry entry = this.publishers.get(new Key(connection, topic, qos == MqttQoS.EXACTLY_ONCE));
+        if (entry == null) {
+            this.vertx.runOnContext(v -> handler.handle(Future.failedFuture("AMQP publisher on " + topic + " not attached")));
+        } else {
+            entry.creditWaiters.add(handler);
+        }
+    }
+
+    /**
+     * Hold the link used for sending a delivery which isn't settled yet by the client (waiting for
+     * the disposition for QoS 1 or for the PUBREL for QoS 2). The link isn't evicted until it's released.
+     * If the link is closed or detached before, the delivery won't be settled anymore and the provided
+     * handler is called
+     *
+     * @param sender    link got from the cache
+     * @param closeHandler  handler called if the link is closed or detached while held
+     */
+    public void hold(ProtonSender sender, Handler<Void> closeHandler) {
+
+        Entry entry = this.senders.get(sender);
+        if (entry == null) {
+            this.vertx.runOnContext(closeHandler);
+        } else {
+            entry.holders.add(closeHandler);
+        }
+    }
+
+    /**
+     * Release the link used for sending a delivery, once settled. Releasing a link already closed
+     * or detached has no effect, as its deliveries are released on close
+     *
+     * @param sender    link got from the cache
+     * @param closeHandler  handler provided when holding the link
+     */
+    public void release(ProtonSender sender, Handler<Void> closeHandler) {
+
+        Entry entry = this.senders.get(sender);
+        if (entry != null) {
+            entry.holders.remove(closeHandler);
+        }
+    }
+
+    /**
+     * Remove all the links attached on the provided connection, i.e. on connection closed or lost
+     *
+     * @param connection    connection on which the links are attached
+     */
+    public void evict(ProtonConnection connection) {
+
+        Iterator<Map.Entry<Key, Entry>> it = this.publishers.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (entry.getKey().connection == connection) {
+                entry.getValue().close();
+                it.remove();
+            }
+        }
+        this.openLinks = this.publishers.size();
+    }
+
+    private void evictUnused() {
+
+        // in access order, from the least recently used link
+        Iterator<Map.Entry<Key, Entry>> it = this.publishers.entrySet().iterator();
+        while (this.publishers.size() > this.maxSize && it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (!entry.getValue().inUse()) {
+                LOG.debug("Evicting least recently used publisher on {}", entry.getKey().topic);
+                entry.getValue().close();
+                it.remove();
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void evictIdle() {
+
+        long now = System.currentTimeMillis();
+
+        // in access order, so stop at the first link which isn't idle
+        Iterator<Entry> it = this.publishers.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (now - entry.lastUsed < this.idleTimeout) {
+                break;
+            }
+            if (!entry.inUse()) {
+                entry.close();
+                it.remove();
+                this.evictions.incrementAndGet();
+            }
+        }
+        this.openLinks = this.publishers.size();
+    }
+
+    /**
+     * Cache key with connection (by identity), topic and QoS class
+     */
+    private static final class Key {
+
+        private final ProtonConnection connection;
+        private final String topic;
+        private final boolean exactlyOnce;
+
+        Key(ProtonConnection connection, String topic, boolean exactlyOnce) {
+            this.connection = connection;
+            this.topic = topic;
+            this.exactlyOnce = exactlyOnce;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return this.connection == key.connection &&
+                    this.exactlyOnce == key.exactlyOnce &&
+                    this.topic.equals(key.topic);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(this.connection), this.topic, this.exactlyOnce);
+        }
+    }
+
+    /**
+     * Cached link with the last time it was used, the clients holding deliveries and the clients waiting for credit on it
+     */
+    private final class Entry {
+
+        private final ProtonSender sender;
+        private final List<Handler<AsyncResult<Void>>> creditWaiters = new ArrayList<>();
+        private final Set<Handler<Void>> holders = Collections.newSetFromMap(new IdentityHashMap<>());
+        private long lastUsed;
+
+        Entry(ProtonSender sender) {
+            this.sender = sender;
+        }
+
+        void notifyCreditWaiters(AsyncResult<Void> result) {
+
+            if (!this.creditWaiters.isEmpty()) {
+                List<Handler<AsyncResult<Void>>> waiters = new ArrayList<>(this.creditWaiters);
+                this.creditWaiters.clear();
+                waiters.forEach(waiter -> waiter.handle(result));
+            }
+        }
+
+        boolean inUse() {
+            return !this.holders.isEmpty() || !this.creditWaiters.isEmpty();
+        }
+
+        void close() {
+
+            senders.remove(this.sender);
+            if (this.sender.isOpen()) {
+                this.sender.close();
+            }
+            // the deliveries held won't get their outcome anymore
+            if (!this.holders.isEmpty()) {
+                List<Handler<Void>> holders = new ArrayList<>(this.holders);
+                this.holders.clear();
+                vertx.runOnContext(v -> holders.forEach(holder -> holder.handle(null)));
+            }
+            // waiting clients fail instead of attaching the link again, not while the cache is updated
+            if (!this.creditWaiters.isEmpty()) {
+                vertx.runOnContext(v -> this.notifyCreditWaiters(Future.failedFuture("AMQP publisher closed")));
+            }
+        }
+    }
+}
@@ -8,7 +8,9 @@ package enmasse.mqtt.endpoints;
 import enmasse.mqtt.messages.AmqpPublishMessage;
 import enmasse.mqtt.messages.AmqpPubrelMessage;
 import enmasse.mqtt.messages.AmqpSubscriptionsMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.proton.ProtonDelivery;
 import io.vertx.proton.ProtonQoS;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
@@ -16,7 +18,9 @@ import org.apache.qpid.proton.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -29,6 +33,10 @@ public class AmqpReceiverEndpoint {
     public static final String CLIENT_CONTROL_ENDPOINT_TEMPLATE = "$mqtt.to.%s.control";
     public static final String CLIENT_PUBLISH_ENDPOINT_TEMPLATE = "$mqtt.to.%s.publish";
 
+    // no in-flight window, deliveries are auto accepted with the link default prefetch
+    public static final int DEFAULT_IN_FLIGHT_WINDOW = 0;
+
+    private final Vertx vertx;
     private AmqpReceiver receiver;
 
     // handler called when AMQP_SUBSCRIPTIONS is received
@@ -40,15 +48,42 @@ public class AmqpReceiverEndpoint {
     // all delivery for received messages if they need settlement (messageId -> delivery)
     private Map<Object, ProtonDelivery> deliveries;
 
+    // max number of unsettled deliveries on the publish link (0 for no window)
+    private int inFlightWindow = DEFAULT_IN_FLIGHT_WINDOW;
+    // deliveries settled in the current event loop tick, flushed all together with the related credit
+    private final List<ProtonDelivery> pendingSettlements = new ArrayList<>();
+    // credit to give back for deliveries already settled by the sender
+    private int pendingCredit;
+    private boolean flushScheduled;
+
     /**
      * Constructor
      *
+     * @param vertx Vert.x instance
      * @param receiver  receiver instance related to unique client addresses
      */
-    public AmqpReceiverEndpoint(AmqpReceiver receiver) {
+    public AmqpReceiverEndpoint(Vertx vertx, AmqpReceiver receiver) {
+        this.vertx = vertx;
         this.receiver = receiver;
     }
 
+    /**
+     * Set the window of unsettled deliveries on the publish link. With a window, the deliveries are
+     * settled only when acknowledged by the MQTT client, and settlements and credit are flushed
+     * once per event loop tick
+     *
+     * @param inFlightWindow    max number of unsettled deliveries (0 for no window)
+     * @return  the current AmqpReceiverEndpoint instance
+     */
+    public AmqpReceiverEndpoint inFlightWindow(int inFlightWindow) {
+
+        if (inFlightWindow < 0) {
+            throw new IllegalArgumentException("In-flight window must not be negative");
+        }
+        this.inFlightWindow = inFlightWindow;
+        return this;
+    }
+
     /**
      * Set the session handler called when AMQP_SUBSCRIPTIONS is received
      *
@@ -105,7 +140,13 @@ public class AmqpReceiverEndpoint {
             this.handlePublish(amqpPublishData);
             // settlement depends on the QoS levels that could be different from the current one in the
             // publish message. The AMQP bridge checks the granted QoS as well (MQTT 3.1.1)
-            if (!delivery.remotelySettled()) {
+            if (delivery.remotelySettled()) {
+                this.releaseCredit();
+            } else if (amqpPublishData.messageId() == null || amqpPublishData.qos() == MqttQoS.AT_MOST_ONCE) {
+                // not published to the MQTT client (no matching subscription) or published with QoS 0,
+                // nothing to wait for
+                this.settleDelivery(delivery);
+            } else {
                 this.deliveries.put(amqpPublishData.messageId(), delivery);
             }
 
@@ -122,7 +163,9 @@ public class AmqpReceiverEndpoint {
 
                 case AmqpPubrelMessage.AMQP_SUBJECT:
 
-                    if (!delivery.remotelySettled()) {
+                    if (delivery.remotelySettled()) {
+                        this.releaseCredit();
+                    } else {
                         this.deliveries.put(message.getMessageId(), delivery);
                     }
                     this.handlePubrel(AmqpPubrelMessage.from(message));
@@ -161,8 +204,18 @@ public class AmqpReceiverEndpoint {
         // - AMQP_PUBREL for handling QoS 2
         this.receiver.receiverPublish()
                 .setQoS(ProtonQoS.AT_LEAST_ONCE)
-                .handler(this::messageHandler)
-                .open();
+                .handler(this::messageHandler);
+
+        if (this.inFlightWindow > 0) {
+            // deliveries are settled on MQTT client acknowledgement, credit is given back on settlement
+            this.receiver.receiverPublish()
+                    .setAutoAccept(false)
+                    .setPrefetch(0)
+                    .open()
+                    .flow(this.inFlightWindow);
+        } else {
+            this.receiver.receiverPublish().open();
+        }
     }
 
     /**
@@ -176,6 +229,8 @@ public class AmqpReceiverEndpoint {
         }
 
         this.deliveries.clear();
+        this.pendingSettlements.clear();
+        this.pendingCredit = 0;
     }
 
     /**
@@ -187,11 +242,55 @@ public class AmqpReceiverEndpoint {
 
         if (this.deliveries.containsKey(messageId)) {
             ProtonDelivery delivery = this.deliveries.remove(messageId);
-            delivery.disposition(Accepted.getInstance(), true);
+            this.settleDelivery(delivery);
             LOG.info("AMQP message [{}] settled", messageId);
         }
     }
 
+    private void settleDelivery(ProtonDelivery delivery) {
+
+        if (this.inFlightWindow > 0) {
+            this.pendingSettlements.add(delivery);
+            this.scheduleFlush();
+        } else {
+            delivery.disposition(Accepted.getInstance(), true);
+        }
+    }
+
+    private void releaseCredit() {
+
+        if (this.inFlightWindow > 0) {
+            this.pendingCredit++;
+            this.scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+
+        if (!this.flushScheduled) {
+            this.flushScheduled = true;
+            this.vertx.runOnContext(v -> this.flush());
+        }
+    }
+
+    /**
+     * Flush the settlements and give back the related credit on the publish link, all together
+     * for the deliveries settled in the previous event loop tick
+     */
+    private void flush() {
+
+        this.flushScheduled = false;
+
+        int credit = this.pendingCredit + this.pendingSettlements.size();
+        this.pendingSettlements.forEach(delivery -> delivery.disposition(Accepted.getInstance(), true));
+        this.pendingSettlements.clear();
+        this.pendingCredit = 0;
+
+        if (credit > 0 && this.receiver.receiverPublish().isOpen()) {
+            this.receiver.receiverPublish().flow(credit);
+        }
+    }
+
     /**
      * Used for calling the session handler when AMQP_SUBSCRIPTIONS is received
      *
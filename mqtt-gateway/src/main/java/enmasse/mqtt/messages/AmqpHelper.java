@@ -5,6 +5,11 @@
 
 package enmasse.mqtt.messages;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import org.apache.qpid.proton.amqp.Binary;
+
 /**
  * Helper class for AMQP side
  */
@@ -68,4 +73,34 @@ public final class AmqpHelper {
 
         return address.substring(address.indexOf("$mqtt.") + "$mqtt.".length(), address.indexOf(".pubrel"));
     }
+
+    /**
+     * Return the AMQP binary for a message payload, wrapping the payload bytes without
+     * copying them when they are in a heap buffer
+     *
+     * @param payload   the message payload
+     * @return  the AMQP binary
+     */
+    public static Binary toBinary(Buffer payload) {
+
+        ByteBuf byteBuf = payload.getByteBuf();
+        if (byteBuf.hasArray()) {
+            return new Binary(byteBuf.array(), byteBuf.arrayOffset() + byteBuf.readerIndex(), byteBuf.readableBytes());
+        }
+
+        byte[] bytes = new byte[byteBuf.readableBytes()];
+        byteBuf.getBytes(byteBuf.readerIndex(), bytes);
+        return new Binary(bytes);
+    }
+
+    /**
+     * Return the message payload for an AMQP binary, as a slice of the binary bytes (without copying them)
+     *
+     * @param binary    the AMQP binary
+     * @return  the message payload
+     */
+    public static Buffer toBuffer(Binary binary) {
+
+        return Buffer.buffer(Unpooled.wrappedBuffer(binary.getArray(), binary.getArrayOffset(), binary.getLength()));
+    }
 }
@@ -8,7 +8,6 @@ package enmasse.mqtt.messages;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.proton.ProtonHelper;
-import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
 import org.apache.qpid.proton.amqp.messaging.Data;
@@ -117,7 +116,7 @@ public class AmqpPublishMessage {
         Section section = message.getBody();
         if ((section != null) && (section instanceof Data)) {
 
-            Buffer payload = Buffer.buffer(((Data) section).getValue().getArray());
+            Buffer payload = AmqpHelper.toBuffer(((Data) section).getValue());
             return new AmqpPublishMessage(message.getMessageId(), qos, isDup, isRetain, topic, payload);
 
         } else {
@@ -152,7 +151,7 @@ public class AmqpPublishMessage {
 
         // the payload could be null (or empty)
         if (this.payload != null)
-            message.setBody(new Data(new Binary(this.payload.getBytes())));
+            message.setBody(new Data(AmqpHelper.toBinary(this.payload)));
 
         return message;
     }
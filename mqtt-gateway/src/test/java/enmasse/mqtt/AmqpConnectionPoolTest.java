@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.net.NetSocket;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonServer;
+import io.vertx.proton.sasl.ProtonSaslAuthenticator;
+import org.apache.qpid.proton.engine.Sasl;
+import org.apache.qpid.proton.engine.Transport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AmqpConnectionPoolTest {
+
+    private static final Handler<ProtonConnection> NO_OP = connection -> { };
+
+    private Vertx vertx;
+    private Context context;
+    private ProtonServer server;
+    private AmqpConnectionPool pool;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @BeforeEach
+    public void setup() throws InterruptedException {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        server = ProtonServer.create(vertx);
+        CountDownLatch latch = new CountDownLatch(1);
+        server.saslAuthenticatorFactory(PlainAuthenticator::new)
+                .connectHandler(conn -> {
+                    connections.incrementAndGet();
+                    conn.closeHandler(c -> {
+                        conn.close();
+                        conn.disconnect();
+                    });
+                    conn.disconnectHandler(c -> conn.disconnect()).open();
+                }).listen(0, res -> latch.countDown());
+        latch.await();
+        pool = new AmqpConnectionPool(vertx, "127.0.0.1", server.actualPort(), 1);
+    }
+
+    @AfterEach
+    public void teardown() {
+        context.runOnContext(v -> pool.close());
+        server.close();
+        vertx.close();
+    }
+
+    @Test
+    public void testBadCredentialsAreRefused() throws Exception {
+        ProtonConnection connection = acquire("user", "secret");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> acquire("user", "wrong"));
+        assertTrue(e.getCause() instanceof SecurityException);
+        e = assertThrows(ExecutionException.class, () -> acquire(null, null));
+        assertTrue(e.getCause() instanceof SecurityException);
+
+        assertSame(connection, acquire("user", "secret"));
+        assertEquals(1, onContext(() -> pool.credentialsCount()));
+    }
+
+    @Test
+    public void testConnectionsAreSharedByCredentials() throws Exception {
+        ProtonConnection first = acquire("user", "secret");
+        ProtonConnection second = acquire("user", "secret");
+        ProtonConnection other = acquire("other", "secret");
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, connections.get());
+
+        assertEquals(false, onContext(() -> pool.release(first, NO_OP)));
+        assertEquals(true, onContext(() -> pool.release(other, NO_OP)));
+        assertEquals(1, onContext(() -> pool.credentialsCount()));
+    }
+
+    private ProtonConnection acquire(String userName, String password) throws Exception {
+        CompletableFuture<ProtonConnection> future = new CompletableFuture<>();
+        context.runOnContext(v -> pool.acquire(userName, password, NO_OP, (AsyncResult<ProtonConnection> done) -> {
+            if (done.succeeded()) {
+                future.complete(done.result());
+            } else {
+                future.completeExceptionally(done.cause());
+            }
+        }));
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    private <T> T onContext(Supplier<T> supplier) throws Exception {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        context.runOnContext(v -> future.complete(supplier.get()));
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Accepts only SASL PLAIN with user/secret or other/secret
+     */
+    private static class PlainAuthenticator implements ProtonSaslAuthenticator {
+
+        private Sasl sasl;
+        private boolean succeeded;
+
+        @Override
+        public void init(NetSocket socket, ProtonConnection protonConnection, Transport transport) {
+            this.sasl = transport.sasl();
+            this.sasl.server();
+            this.sasl.allowSkip(false);
+            this.sasl.setMechanisms("PLAIN");
+        }
+
+        @Override
+        public void process(Handler<Boolean> completionHandler) {
+            String[] remoteMechanisms = this.sasl.getRemoteMechanisms();
+            if (remoteMechanisms.length == 0) {
+                completionHandler.handle(false);
+                return;
+            }
+            byte[] response = new byte[this.sasl.pending()];
+            this.sasl.recv(response, 0, response.length);
+            // PLAIN response is [authzid] NUL authcid NUL passwd
+            String[] fields = new String(response, StandardCharsets.UTF_8).split("\0", -1);
+            this.succeeded = "PLAIN".equals(remoteMechanisms[0]) && fields.length == 3 &&
+                    ("user".equals(fields[1]) || "other".equals(fields[1])) && "secret".equals(fields[2]);
+            this.sasl.done(this.succeeded ? Sasl.SaslOutcome.PN_SASL_OK : Sasl.SaslOutcome.PN_SASL_AUTH);
+            completionHandler.handle(true);
+        }
+
+        @Override
+        public boolean succeeded() {
+            return this.succeeded;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import enmasse.mqtt.endpoints.AmqpPublishEndpoint;
+import enmasse.mqtt.endpoints.AmqpPublisherCache;
+import enmasse.mqtt.messages.AmqpPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.proton.ProtonClient;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonDelivery;
+import io.vertx.proton.ProtonServer;
+import io.vertx.proton.ProtonSession;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.transport.AmqpError;
+import org.apache.qpid.proton.amqp.transport.ErrorCondition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AmqpPublishEndpointTest {
+
+    private static final String CLIENT_ID = "my_client";
+    private static final String REFUSED_TOPIC = "refused_topic";
+    private static final String DETACHED_TOPIC = "detached_topic";
+
+    private Vertx vertx;
+    private ProtonServer server;
+    private AmqpPublisherCache publisherCache;
+    private final AtomicInteger attached = new AtomicInteger();
+    private final List<ProtonDelivery> received = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setup() throws InterruptedException {
+        vertx = Vertx.vertx();
+        publisherCache = new AmqpPublisherCache(vertx, 10, 60_000);
+        server = ProtonServer.create(vertx);
+        CountDownLatch latch = new CountDownLatch(1);
+        server.connectHandler(conn -> {
+            conn.closeHandler(c -> {
+                conn.close();
+                conn.disconnect();
+            });
+            conn.disconnectHandler(c -> conn.disconnect()).open();
+            conn.sessionOpenHandler(ProtonSession::open);
+            conn.receiverOpenHandler(receiver -> {
+                attached.incrementAndGet();
+                if (REFUSED_TOPIC.equals(receiver.getRemoteTarget().getAddress())) {
+                    receiver.setCondition(new ErrorCondition(AmqpError.NOT_FOUND, "topic not found"));
+                    receiver.close();
+                    return;
+                }
+                receiver.setTarget(receiver.getRemoteTarget());
+                receiver.setAutoAccept(false);
+                if (DETACHED_TOPIC.equals(receiver.getRemoteTarget().getAddress())) {
+                    // the link is closed without giving an outcome to the delivery
+                    receiver.handler((delivery, message) -> receiver.close());
+                    receiver.open();
+                    return;
+                }
+                // the outcome is given without settling the delivery
+                receiver.handler((delivery, message) -> {
+                    received.add(delivery);
+                    delivery.disposition(Accepted.getInstance(), false);
+                });
+                receiver.open();
+            });
+        }).listen(0, res -> latch.countDown());
+        latch.await();
+    }
+
+    @AfterEach
+    public void teardown() {
+        server.close();
+        vertx.close();
+    }
+
+    @Test
+    public void testOutcomeWithoutSettlementCompletesThePublish() throws InterruptedException {
+        List<AsyncResult<ProtonDelivery>> results = publish("my_topic", 3);
+
+        waitFor(() -> results.size() == 3);
+        assertTrue(results.stream().allMatch(AsyncResult::succeeded));
+        // settled by the publisher once the outcome is received
+        waitFor(() -> received.size() == 3 && received.stream().allMatch(ProtonDelivery::remotelySettled));
+        Thread.sleep(500);
+        assertEquals(3, results.size());
+    }
+
+    @Test
+    public void testRefusedTopicIsNotAttachedAgain() throws InterruptedException {
+        List<AsyncResult<ProtonDelivery>> results = publish(REFUSED_TOPIC, 3);
+
+        waitFor(() -> results.size() == 3);
+        assertTrue(results.stream().allMatch(AsyncResult::failed));
+        Thread.sleep(500);
+        assertEquals(1, attached.get());
+    }
+
+    @Test
+    public void testDeliveryFailsWhenLinkIsClosedBeforeOutcome() throws InterruptedException {
+        List<AsyncResult<ProtonDelivery>> results = publish(DETACHED_TOPIC, 1);
+
+        waitFor(() -> results.size() == 1);
+        assertTrue(results.get(0).failed());
+    }
+
+    private List<AsyncResult<ProtonDelivery>> publish(String topic, int messages) {
+        List<AsyncResult<ProtonDelivery>> results = new CopyOnWriteArrayList<>();
+        vertx.runOnContext(v -> ProtonClient.create(vertx).connect("127.0.0.1", server.actualPort(), ar -> {
+            ProtonConnection connection = ar.result();
+            connection.open();
+
+            AmqpPublishEndpoint endpoint = new AmqpPublishEndpoint(
+                    connection.createSender(String.format(AmqpPublishEndpoint.AMQP_CLIENT_PUBREL_ENDPOINT_TEMPLATE, CLIENT_ID)),
+                    publisherCache, connection);
+            endpoint.open();
+            for (int i = 1; i <= messages; i++) {
+                endpoint.publish(new AmqpPublishMessage(null, MqttQoS.AT_LEAST_ONCE, false, false, topic,
+                        Buffer.buffer("message")), i, results::add);
+            }
+        }));
+        return results;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long endTime = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < endTime) {
+            Thread.sleep(100);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
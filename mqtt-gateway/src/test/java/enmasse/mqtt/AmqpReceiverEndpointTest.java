@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import enmasse.mqtt.endpoints.AmqpReceiver;
+import enmasse.mqtt.endpoints.AmqpReceiverEndpoint;
+import enmasse.mqtt.messages.AmqpPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.proton.ProtonClient;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonServer;
+import io.vertx.proton.ProtonSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AmqpReceiverEndpointTest {
+
+    private static final String CLIENT_ID = "my_client";
+    private static final int IN_FLIGHT_WINDOW = 5;
+    private static final int MESSAGES = 10 * IN_FLIGHT_WINDOW;
+
+    private Vertx vertx;
+    private ProtonServer server;
+    private final AtomicInteger sent = new AtomicInteger();
+
+    @BeforeEach
+    public void setup() throws InterruptedException {
+        vertx = Vertx.vertx();
+        server = ProtonServer.create(vertx);
+        CountDownLatch latch = new CountDownLatch(1);
+        server.connectHandler(conn -> {
+            conn.closeHandler(c -> {
+                conn.close();
+                conn.disconnect();
+            });
+            conn.disconnectHandler(c -> conn.disconnect()).open();
+            conn.sessionOpenHandler(ProtonSession::open);
+            conn.senderOpenHandler(sender -> {
+                sender.setSource(sender.getRemoteSource());
+                if (String.format(AmqpReceiverEndpoint.CLIENT_PUBLISH_ENDPOINT_TEMPLATE, CLIENT_ID).equals(sender.getRemoteSource().getAddress())) {
+                    // as much messages as the credit given by the receiver allows
+                    sender.sendQueueDrainHandler(s -> {
+                        while (!s.sendQueueFull() && sent.get() < MESSAGES) {
+                            sent.incrementAndGet();
+                            s.send(new AmqpPublishMessage(null, MqttQoS.AT_MOST_ONCE, false, false, "my_topic",
+                                    Buffer.buffer("message")).toAmqp());
+                        }
+                    });
+                }
+                sender.open();
+            });
+        }).listen(0, res -> latch.countDown());
+        latch.await();
+    }
+
+    @AfterEach
+    public void teardown() {
+        server.close();
+        vertx.close();
+    }
+
+    @Test
+    public void testQoS0DeliveriesDontHoldTheInFlightWindow() throws InterruptedException {
+        CountDownLatch received = new CountDownLatch(MESSAGES);
+        AtomicInteger messageId = new AtomicInteger();
+
+        vertx.runOnContext(v -> ProtonClient.create(vertx).connect("127.0.0.1", server.actualPort(), ar -> {
+            ProtonConnection connection = ar.result();
+            connection.open();
+
+            AmqpReceiverEndpoint endpoint = new AmqpReceiverEndpoint(vertx, new AmqpReceiver(
+                    connection.createReceiver(String.format(AmqpReceiverEndpoint.CLIENT_CONTROL_ENDPOINT_TEMPLATE, CLIENT_ID)),
+                    connection.createReceiver(String.format(AmqpReceiverEndpoint.CLIENT_PUBLISH_ENDPOINT_TEMPLATE, CLIENT_ID))))
+                    .inFlightWindow(IN_FLIGHT_WINDOW);
+
+            // as the AMQP bridge does, publishing to the MQTT client with QoS 0
+            endpoint.publishHandler(amqpPublishData -> {
+                amqpPublishData.setPublished(messageId.incrementAndGet(), MqttQoS.AT_MOST_ONCE);
+                received.countDown();
+            });
+            endpoint.openControl();
+            endpoint.openPublish();
+        }));
+
+        assertTrue(received.await(10, TimeUnit.SECONDS), "Received " + messageId.get() + " of " + MESSAGES + " messages");
+        assertEquals(MESSAGES, sent.get());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-2018, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import enmasse.mqtt.messages.AmqpTopicSubscription;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests related to the gateway local cache of the subscriptions
+ */
+public class SubscriptionCacheTest {
+
+    private static final String CLIENT_ID = "client_id";
+
+    @Test
+    public void testPutAndGet() {
+
+        SubscriptionCache cache = new SubscriptionCache(60_000, 10);
+        assertNull(cache.get(CLIENT_ID));
+
+        cache.put(CLIENT_ID, Collections.emptyList());
+        assertTrue(cache.get(CLIENT_ID).isEmpty());
+
+        cache.put(CLIENT_ID, Arrays.asList(new AmqpTopicSubscription("mytopic", MqttQoS.AT_LEAST_ONCE)));
+        List<AmqpTopicSubscription> subscriptions = cache.get(CLIENT_ID);
+        assertEquals(1, subscriptions.size());
+        assertEquals("mytopic", subscriptions.get(0).topic());
+        assertEquals(MqttQoS.AT_LEAST_ONCE, subscriptions.get(0).qos());
+    }
+
+    @Test
+    public void testSubscribeAndUnsubscribe() {
+
+        SubscriptionCache cache = new SubscriptionCache(60_000, 10);
+
+        // not cached, nothing to update
+        cache.subscribed(CLIENT_ID, Arrays.asList(new AmqpTopicSubscription("mytopic", MqttQoS.AT_LEAST_ONCE)));
+        assertNull(cache.get(CLIENT_ID));
+
+        cache.put(CLIENT_ID, Arrays.asList(new AmqpTopicSubscription("mytopic", MqttQoS.AT_MOST_ONCE)));
+        cache.subscribed(CLIENT_ID, Arrays.asList(new AmqpTopicSubscription("mytopic", MqttQoS.AT_LEAST_ONCE),
+                                                  new AmqpTopicSubscription("myothertopic/#", MqttQoS.AT_MOST_ONCE)));
+        List<AmqpTopicSubscription> subscriptions = cache.get(CLIENT_ID);
+        assertEquals(2, subscriptions.size());
+        assertEquals(MqttQoS.AT_LEAST_ONCE, subscriptions.get(0).qos());
+
+        cache.unsubscribed(CLIENT_ID, Arrays.asList("mytopic"));
+        subscriptions = cache.get(CLIENT_ID);
+        assertEquals(1, subscriptions.size());
+        assertEquals("myothertopic/#", subscriptions.get(0).topic());
+
+        cache.invalidate(CLIENT_ID);
+        assertNull(cache.get(CLIENT_ID));
+    }
+
+    @Test
+    public void testExpiration() {
+
+        SubscriptionCache cache = new SubscriptionCache(0, 10);
+        cache.put(CLIENT_ID, Arrays.asList(new AmqpTopicSubscription("mytopic", MqttQoS.AT_LEAST_ONCE)));
+        assertNull(cache.get(CLIENT_ID));
+    }
+
+    @Test
+    public void testEviction() {
+
+        SubscriptionCache cache = new SubscriptionCache(60_000, 2);
+        cache.put("client_id_1", Collections.emptyList());
+        cache.put("client_id_2", Collections.emptyList());
+        // client_id_2 is now the least recently used
+        cache.get("client_id_1");
+        cache.put("client_id_3", Collections.emptyList());
+
+        assertNull(cache.get("client_id_2"));
+        assertTrue(cache.get("client_id_1").isEmpty());
+        assertTrue(cache.get("client_id_3").isEmpty());
+    }
+}
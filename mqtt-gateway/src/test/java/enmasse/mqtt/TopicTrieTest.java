@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016-2018, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests related to the topic subscriptions index
+ */
+public class TopicTrieTest {
+
+    @Test
+    public void testFixedTopicMatch() {
+
+        TopicTrie trie = new TopicTrie();
+        trie.add("mytopic/foo", MqttQoS.AT_LEAST_ONCE);
+
+        TopicTrie.Subscription subscription = trie.match("mytopic/foo");
+        assertEquals("mytopic/foo", subscription.topicFilter());
+        assertEquals(MqttQoS.AT_LEAST_ONCE, subscription.qos());
+
+        assertNull(trie.match("mytopic/bar"));
+        assertNull(trie.match("mytopic"));
+        assertNull(trie.match("mytopic/foo/bar"));
+    }
+
+    @Test
+    public void testSharpWildcardMatch() {
+
+        TopicTrie trie = new TopicTrie();
+        trie.add("mytopic/#", MqttQoS.AT_MOST_ONCE);
+
+        assertEquals("mytopic/#", trie.match("mytopic/foo").topicFilter());
+        assertEquals("mytopic/#", trie.match("mytopic/foo/bar").topicFilter());
+        assertNull(trie.match("mytopic"));
+        assertNull(trie.match("anothertopic/foo"));
+
+        trie.add("#", MqttQoS.AT_MOST_ONCE);
+        assertEquals("#", trie.match("anothertopic/foo").topicFilter());
+    }
+
+    @Test
+    public void testPlusWildcardMatch() {
+
+        TopicTrie trie = new TopicTrie();
+        trie.add("mytopic/+/bar/+/foo", MqttQoS.AT_LEAST_ONCE);
+
+        assertEquals("mytopic/+/bar/+/foo", trie.match("mytopic/a/bar/b/foo").topicFilter());
+        assertNull(trie.match("mytopic/a/bar/b/foo/c"));
+        assertNull(trie.match("mytopic/a/bar/b"));
+    }
+
+    @Test
+    public void testOverlappingSubscriptionsMaxQoS() {
+
+        TopicTrie trie = new TopicTrie();
+        trie.add("mytopic/#", MqttQoS.AT_MOST_ONCE);
+        trie.add("mytopic/+", MqttQoS.EXACTLY_ONCE);
+        trie.add("mytopic/foo", MqttQoS.AT_LEAST_ONCE);
+
+        TopicTrie.Subscription subscription = trie.match("mytopic/foo");
+        assertEquals("mytopic/+", subscription.topicFilter());
+        assertEquals(MqttQoS.EXACTLY_ONCE, subscription.qos());
+
+        assertEquals("mytopic/#", trie.match("mytopic/foo/bar").topicFilter());
+    }
+
+    @Test
+    public void testAddReplacesGrantedQoS() {
+
+        TopicTrie trie = new TopicTrie();
+        trie.add("mytopic/+", MqttQoS.AT_MOST_ONCE);
+        trie.add("mytopic/+", MqttQoS.AT_LEAST_ONCE);
+
+        assertEquals(1, trie.size());
+        assertEquals(MqttQoS.AT_LEAST_ONCE, trie.match("mytopic/foo").qos());
+    }
+
+    @Test
+    public void testRemove() {
+
+        TopicTrie trie = new TopicTrie();
+        trie.add("mytopic/foo", MqttQoS.AT_LEAST_ONCE);
+        trie.add("mytopic/+", MqttQoS.AT_MOST_ONCE);
+        trie.add("mytopic/#", MqttQoS.AT_MOST_ONCE);
+
+        assertFalse(trie.remove("mytopic"));
+        assertFalse(trie.remove("mytopic/bar"));
+
+        assertTrue(trie.remove("mytopic/foo"));
+        assertEquals(2, trie.size());
+        assertEquals("mytopic/+", trie.match("mytopic/foo").topicFilter());
+
+        assertTrue(trie.remove("mytopic/+"));
+        assertEquals("mytopic/#", trie.match("mytopic/foo").topicFilter());
+
+        assertTrue(trie.remove("mytopic/#"));
+        assertTrue(trie.isEmpty());
+        assertNull(trie.match("mytopic/foo"));
+    }
+
+    @Test
+    public void testClear() {
+
+        TopicTrie trie = new TopicTrie();
+        trie.add("mytopic/foo", MqttQoS.AT_LEAST_ONCE);
+        trie.add("mytopic/#", MqttQoS.AT_MOST_ONCE);
+
+        trie.clear();
+        assertTrue(trie.isEmpty());
+        assertNull(trie.match("mytopic/foo"));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016-2018, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt.messages;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.buffer.Buffer;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the payload copy path with the wrapping/slicing one, from MQTT PUBLISH
+ * to AMQP Data section (encode) and back (decode).
+ *
+ * Not run as part of the tests, run it through the main method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AmqpPublishMessageBenchmark {
+
+    @Param({"64", "1024", "65536"})
+    private int payloadSize;
+
+    private AmqpPublishMessage amqpPublishMessage;
+    private byte[] encodeBuffer;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+
+        byte[] bytes = new byte[this.payloadSize];
+        new Random(0).nextBytes(bytes);
+
+        this.amqpPublishMessage = new AmqpPublishMessage(null, MqttQoS.AT_LEAST_ONCE, false, false, "mytopic", Buffer.buffer(bytes));
+        this.encodeBuffer = new byte[this.payloadSize + 1024];
+        int length = this.amqpPublishMessage.toAmqp().encode(this.encodeBuffer, 0, this.encodeBuffer.length);
+        this.encoded = Arrays.copyOf(this.encodeBuffer, length);
+    }
+
+    @Benchmark
+    public int encodeCopy() {
+
+        Message message = this.amqpPublishMessage.toAmqp();
+        message.setBody(new Data(new Binary(this.amqpPublishMessage.payload().getBytes())));
+        return message.encode(this.encodeBuffer, 0, this.encodeBuffer.length);
+    }
+
+    @Benchmark
+    public int encodeWrap() {
+
+        Message message = this.amqpPublishMessage.toAmqp();
+        return message.encode(this.encodeBuffer, 0, this.encodeBuffer.length);
+    }
+
+    @Benchmark
+    public Buffer decodeCopy() {
+
+        Message message = Message.Factory.create();
+        message.decode(this.encoded, 0, this.encoded.length);
+        return Buffer.buffer(((Data) message.getBody()).getValue().getArray());
+    }
+
+    @Benchmark
+    public Buffer decodeSlice() {
+
+        Message message = Message.Factory.create();
+        message.decode(this.encoded, 0, this.encoded.length);
+        return AmqpHelper.toBuffer(((Data) message.getBody()).getValue());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+
+        Options options = new OptionsBuilder()
+                .include(AmqpPublishMessageBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
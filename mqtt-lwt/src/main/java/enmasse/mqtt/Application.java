@@ -5,6 +5,8 @@
 
 package enmasse.mqtt;
 
+import io.enmasse.metrics.api.Metrics;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -12,6 +14,9 @@ import io.vertx.core.logging.SLF4JLogDelegateFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -28,13 +33,13 @@ public class Application {
 
     private final Vertx vertx = Vertx.vertx();
     private final MqttLwtOptions options;
-    private final MqttLwt mqttLwt;
+    private final List<MqttLwt> mqttLwts;
 
     private AtomicBoolean running = new AtomicBoolean();
 
-    public Application(MqttLwtOptions options, MqttLwt mqttLwt) {
+    public Application(MqttLwtOptions options, List<MqttLwt> mqttLwts) {
         this.options = options;
-        this.mqttLwt = mqttLwt;
+        this.mqttLwts = mqttLwts;
     }
 
     public void registerVerticles() {
@@ -55,7 +60,7 @@ public class Application {
                 });
 
                 // start deploying more verticle instances
-                this.deployVerticles(1, startFuture);
+                this.deployVerticles(this.mqttLwts.size(), startFuture);
 
                 // wait for deploying end
                 long startupTimeout = this.options.getStartupTimeout().getSeconds();
@@ -84,20 +89,25 @@ public class Application {
 
         LOG.debug("Starting up {} instances of MQTT LWT service verticle", instanceCount);
 
-        Future<Void> result = Future.future();
+        List<Future> results = new ArrayList<>();
 
-        this.vertx.deployVerticle(this.mqttLwt, done -> {
-            if (done.succeeded()) {
-                LOG.debug("Verticle instance deployed [{}]", done.result());
-                result.complete();
-            } else {
-                LOG.debug("Failed to deploy verticle instance {}", done.cause());
-                result.fail(done.cause());
-            }
-        });
+        for (int i = 0; i < instanceCount; i++) {
+
+            Future<Void> result = Future.future();
+            this.vertx.deployVerticle(this.mqttLwts.get(i), done -> {
+                if (done.succeeded()) {
+                    LOG.debug("Verticle instance deployed [{}]", done.result());
+                    result.complete();
+                } else {
+                    LOG.debug("Failed to deploy verticle instance {}", done.cause());
+                    result.fail(done.cause());
+                }
+            });
+            results.add(result);
+        }
 
         // combine all futures related to verticle instances deploy
-        result.setHandler(done -> {
+        CompositeFuture.all(results).setHandler(done -> {
            if (done.succeeded()) {
                resultHandler.complete();
            } else {
@@ -160,17 +170,38 @@ public class Application {
 
         LOG.info("MQTT LWT starting with options: {}", options);
 
-        MqttLwt mqttLwt = new MqttLwt(options);
+        Metrics metrics = new Metrics();
+        LwtShards shards = new LwtShards(options.getShards());
+        shards.registerMetrics(metrics);
 
-        Application app = new Application(options, mqttLwt);
+        List<MqttLwt> mqttLwts = new ArrayList<>();
+        for (int i = 0; i < shards.count(); i++) {
+            mqttLwts.add(new MqttLwt(options, shards, i));
+        }
+
+        Application app = new Application(options, mqttLwts);
         app.registerVerticles();
 
+        HTTPServer httpServer = null;
+        if (options.getMetricsPort() > 0) {
+            try {
+                httpServer = new HTTPServer(options.getMetricsPort(), metrics);
+                httpServer.start();
+            } catch (IOException e) {
+                LOG.error("Could not start metrics HTTP server on port {}", options.getMetricsPort(), e);
+            }
+        }
+        final HTTPServer metricsServer = httpServer;
+
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 super.run();
                 LOG.info("MQTT LWT shutdown");
                 app.shutdown();
+                if (metricsServer != null) {
+                    metricsServer.stop();
+                }
             }
         });
     }
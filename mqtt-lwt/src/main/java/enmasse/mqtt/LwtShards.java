@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import io.enmasse.metrics.api.HistogramRecorder;
+import io.enmasse.metrics.api.Metrics;
+
+/**
+ * Shards of the MQTT LWT service, partitioning the clients by client identifier hash.
+ *
+ * Each shard is a MQTT LWT service verticle with its own storage and publisher link, so all the
+ * wills and disconnections of a client are handled on the event loop of the owning shard.
+ */
+public class LwtShards {
+
+    private final MqttLwt[] shards;
+
+    private final HistogramRecorder willDeliveryLatency = new HistogramRecorder(0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1.0, 5.0, 10.0, 60.0);
+
+    /**
+     * Constructor
+     *
+     * @param count number of shards
+     */
+    public LwtShards(int count) {
+
+        if (count <= 0) {
+            throw new IllegalArgumentException("Number of shards must be greater than 0");
+        }
+        this.shards = new MqttLwt[count];
+    }
+
+    /**
+     * Register the shards metrics
+     *
+     * @param metrics   metrics registry
+     */
+    public void registerMetrics(Metrics metrics) {
+
+        metrics.registerMetric(this.willDeliveryLatency.toMetric(
+                "mqtt_lwt_will_delivery_duration_seconds",
+                "Time from the brute disconnection of a client to the delivery of its will"));
+    }
+
+    /**
+     * Register the MQTT LWT service verticle for a shard
+     *
+     * @param shard shard index
+     * @param mqttLwt   MQTT LWT service verticle handling the shard
+     */
+    void register(int shard, MqttLwt mqttLwt) {
+        this.shards[shard] = mqttLwt;
+    }
+
+    /**
+     * Get the shard owning the provided client
+     *
+     * @param clientId  client identifier
+     * @return  MQTT LWT service verticle handling the shard
+     */
+    MqttLwt owner(String clientId) {
+        return this.shards[Math.floorMod(clientId.hashCode(), this.shards.length)];
+    }
+
+    /**
+     * Number of shards
+     *
+     * @return  number of shards
+     */
+    public int count() {
+        return this.shards.length;
+    }
+
+    /**
+     * Record the delivery of a will
+     *
+     * @param latency   time (in seconds) from the disconnection to the delivery
+     */
+    void willDelivered(double latency) {
+        this.willDeliveryLatency.observe(latency);
+    }
+}
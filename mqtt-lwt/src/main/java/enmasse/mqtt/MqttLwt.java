@@ -11,8 +11,12 @@ import enmasse.mqtt.messages.AmqpPublishMessage;
 import enmasse.mqtt.messages.AmqpWillMessage;
 import enmasse.mqtt.storage.LwtStorage;
 import enmasse.mqtt.storage.impl.InMemoryLwtStorage;
+import enmasse.mqtt.storage.impl.MappedFileLwtStorage;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.core.net.PemKeyCertOptions;
 import io.vertx.core.net.PemTrustOptions;
 import io.vertx.proton.ProtonClient;
@@ -22,6 +26,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Vert.x based MQTT Last Will and Testament service for EnMasse
@@ -34,25 +42,89 @@ public class MqttLwt extends AbstractVerticle {
     private final MqttLwtOptions options;
     private final LwtStorage lwtStorage;
 
+    // all the shards, for dispatching wills and disconnections to the one owning the client
+    private final LwtShards shards;
+    private final int shard;
+    private Context shardContext;
+    // wills and disconnections dispatched to this shard before its storage was open
+    private final List<Handler<Void>> pendingTasks = new ArrayList<>();
 
     private ProtonClient client;
 
     private AmqpLwtEndpoint lwtEndpoint;
     private AmqpPublishEndpoint publishEndpoint;
 
-    public MqttLwt(MqttLwtOptions options) {
+    /**
+     * Constructor
+     *
+     * @param options   MQTT LWT service options
+     * @param shards    all the shards of the service
+     * @param shard index of the shard handled by this instance
+     */
+    public MqttLwt(MqttLwtOptions options, LwtShards shards, int shard) {
 
         this.options = options;
-        this.lwtStorage = new InMemoryLwtStorage();
+        this.shards = shards;
+        this.shard = shard;
+        this.shards.register(shard, this);
+
+        if (options.getStorageDir() != null) {
+            Path storageDir = Paths.get(options.getStorageDir());
+            if (shards.count() > 1) {
+                storageDir = storageDir.resolve("shard-" + shard);
+            }
+            this.lwtStorage = new MappedFileLwtStorage(storageDir);
+        } else {
+            this.lwtStorage = new InMemoryLwtStorage();
+        }
     }
 
     @Override
     public void start(Future<Void> startFuture) throws Exception {
 
-        LOG.info("Starting MQTT LWT service verticle...");
+        LOG.info("Starting MQTT LWT service verticle [shard {}]...", this.shard);
+
         this.connect(startFuture);
     }
 
+    /**
+     * Execute a task on the event loop of this shard, once its storage is open
+     *
+     * @param task  task to execute
+     */
+    private void execute(Handler<Void> task) {
+
+        Context context;
+        synchronized (this.pendingTasks) {
+            if (this.shardContext == null) {
+                this.pendingTasks.add(task);
+                return;
+            }
+            context = this.shardContext;
+        }
+
+        if (Vertx.currentContext() == context) {
+            task.handle(null);
+        } else {
+            context.runOnContext(task);
+        }
+    }
+
+    /**
+     * Start executing the tasks on the event loop of this shard, the ones already dispatched first
+     */
+    private void storageOpened() {
+
+        List<Handler<Void>> tasks;
+        synchronized (this.pendingTasks) {
+            this.shardContext = this.context;
+            tasks = new ArrayList<>(this.pendingTasks);
+            this.pendingTasks.clear();
+        }
+        // on the event loop of this shard, so before any task dispatched from now on
+        tasks.forEach(task -> task.handle(null));
+    }
+
     @Override
     public void stop(Future<Void> stopFuture) throws Exception {
 
@@ -88,8 +160,8 @@ public class MqttLwt extends AbstractVerticle {
                 // TODO
                 this.lwtEndpoint = new AmqpLwtEndpoint(connection);
                 this.lwtEndpoint
-                        .willHandler(this::handleWill)
-                        .disconnectionHandler(this::handleDisconnection);
+                        .willHandler(this::dispatchWill)
+                        .disconnectionHandler(this::dispatchDisconnection);
                 this.lwtEndpoint.open();
 
                 connection.openHandler(o -> {
@@ -149,8 +221,7 @@ public class MqttLwt extends AbstractVerticle {
 
                     LOG.info("MQTT LWT service connected to the storage service ...");
 
-                    // TODO
-
+                    this.storageOpened();
                     startFuture.complete();
 
                 } else {
@@ -190,6 +261,19 @@ public class MqttLwt extends AbstractVerticle {
         return options;
     }
 
+    private void dispatchWill(WillData willData) {
+
+        MqttLwt owner = this.shards.owner(willData.clientId());
+        owner.execute(v -> owner.handleWill(willData));
+    }
+
+    private void dispatchDisconnection(DisconnectionData disconnectionData) {
+
+        long disconnectedAt = System.nanoTime();
+        MqttLwt owner = this.shards.owner(disconnectionData.clientId());
+        owner.execute(v -> owner.handleDisconnection(disconnectionData, disconnectedAt));
+    }
+
     private void handleWill(WillData willData) {
 
         // will message received, check for updating or adding
@@ -209,7 +293,7 @@ public class MqttLwt extends AbstractVerticle {
         });
     }
 
-    private void handleDisconnection(DisconnectionData disconnectionData) {
+    private void handleDisconnection(DisconnectionData disconnectionData, long disconnectedAt) {
 
         // clean disconnection, just delete will message
         if (!disconnectionData.isError()) {
@@ -235,6 +319,7 @@ public class MqttLwt extends AbstractVerticle {
                         if (ar1.succeeded()) {
 
                             LOG.info("Published will message for client {}", disconnectionData.clientId());
+                            this.shards.willDelivered((System.nanoTime() - disconnectedAt) / 1_000_000_000.0);
 
                             this.lwtStorage.delete(disconnectionData.clientId(), ar2 -> {
 
@@ -15,6 +15,12 @@ public class MqttLwtOptions {
     private int routeContainerPort;
     private String certDir;
     private Duration startupTimeout;
+    // directory for the durable will storage (in memory storage if not set)
+    private String storageDir;
+    // number of verticle instances, partitioning the clients by client identifier hash
+    private int shards;
+    // port for exposing metrics
+    private int metricsPort;
 
     public String getMessagingServiceHost() {
         return messagingServiceHost;
@@ -56,6 +62,30 @@ public class MqttLwtOptions {
         this.startupTimeout = startupTimeout;
     }
 
+    public String getStorageDir() {
+        return storageDir;
+    }
+
+    public void setStorageDir(String storageDir) {
+        this.storageDir = storageDir;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
     private static Optional<String> getEnv(Map<String, String> env, String envVar) {
         return Optional.ofNullable(env.get(envVar));
     }
@@ -79,6 +109,17 @@ public class MqttLwtOptions {
                 .map(i -> Duration.ofSeconds(Long.parseLong(i)))
                 .orElse(Duration.ofMinutes(5)));
 
+        options.setStorageDir(getEnv(env, "ENMASSE_MQTT_STORAGEDIR")
+                .orElse(null));
+
+        options.setShards(getEnv(env, "ENMASSE_MQTT_SHARDS")
+                .map(Integer::parseInt)
+                .orElse(1));
+
+        options.setMetricsPort(getEnv(env, "ENMASSE_MQTT_METRICSPORT")
+                .map(Integer::parseInt)
+                .orElse(8080));
+
         options.setCertDir(getEnv(env, "CERT_DIR")
                 .orElseThrow(() -> new IllegalArgumentException("CERT_DIR is required")));
 
@@ -93,6 +134,9 @@ public class MqttLwtOptions {
                 ", routeContainerPort=" + routeContainerPort +
                 ", certDir='" + certDir + '\'' +
                 ", startupTimeout=" + startupTimeout +
+                ", storageDir='" + storageDir + '\'' +
+                ", shards=" + shards +
+                ", metricsPort=" + metricsPort +
                 '}';
     }
 }
@@ -15,9 +15,14 @@ import io.vertx.proton.ProtonDelivery;
 import io.vertx.proton.ProtonQoS;
 import io.vertx.proton.ProtonSender;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Outcome;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Publisher endpoint
  */
@@ -25,7 +30,13 @@ public class AmqpPublishEndpoint {
 
     private static final Logger LOG = LoggerFactory.getLogger(AmqpPublishEndpoint.class);
 
+    public static final int DEFAULT_MAX_PUBLISHERS = 100;
+
     private ProtonConnection connection;
+    // links for publishing wills by topic, as the router link routes topics they can't be sent on an anonymous link.
+    // In access order and bounded, evicting the least recently used links without deliveries waiting for the outcome
+    private final LinkedHashMap<String, Publisher> publishers;
+    private final int maxPublishers;
 
     /**
      * Constructor
@@ -33,7 +44,28 @@ public class AmqpPublishEndpoint {
      * @param connection    ProtonConnection instance
      */
     public AmqpPublishEndpoint(ProtonConnection connection) {
+        this(connection, DEFAULT_MAX_PUBLISHERS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param connection    ProtonConnection instance
+     * @param maxPublishers max number of links for publishing kept attached
+     */
+    public AmqpPublishEndpoint(ProtonConnection connection, int maxPublishers) {
         this.connection = connection;
+        this.maxPublishers = maxPublishers;
+        this.publishers = new LinkedHashMap<String, Publisher>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Publisher> eldest) {
+
+                if (size() > AmqpPublishEndpoint.this.maxPublishers) {
+                    evictUnused();
+                }
+                return false;
+            }
+        };
     }
 
     /**
@@ -46,6 +78,50 @@ public class AmqpPublishEndpoint {
                 .open();
     }
 
+    /**
+     * Get the link for publishing on the topic, attaching it if needed (i.e. on first publish or after detach)
+     *
+     * @param topic topic for publishing
+     * @return  the link for publishing
+     */
+    private Publisher publisher(String topic) {
+
+        Publisher publisher = this.publishers.get(topic);
+        if (publisher == null || !publisher.sender.isOpen()) {
+
+            ProtonSender sender = this.connection.createSender(topic);
+            Publisher created = new Publisher(sender);
+            // link closed or detached by the remote side, i.e. address not available
+            sender.setQoS(ProtonQoS.AT_LEAST_ONCE)
+                    .closeHandler(ar -> this.remoteClosed(topic, created, ar))
+                    .detachHandler(ar -> this.remoteClosed(topic, created, ar))
+                    .open();
+            this.publishers.put(topic, created);
+            publisher = created;
+        }
+        return publisher;
+    }
+
+    private void remoteClosed(String topic, Publisher publisher, AsyncResult<ProtonSender> ar) {
+
+        LOG.info("Publisher link on {} detached", topic, ar.cause());
+        this.publishers.remove(topic, publisher);
+        publisher.sender.close();
+    }
+
+    private void evictUnused() {
+
+        // in access order, from the least recently used link
+        Iterator<Publisher> it = this.publishers.values().iterator();
+        while (this.publishers.size() > this.maxPublishers && it.hasNext()) {
+            Publisher publisher = it.next();
+            if (publisher.unsettled == 0) {
+                publisher.sender.close();
+                it.remove();
+            }
+        }
+    }
+
     /**
      * Send the AMQP_PUBLISH to the attached topic/address
      *
@@ -60,31 +136,37 @@ public class AmqpPublishEndpoint {
         // use sender for QoS 0/1 messages
         if (amqpPublishMessage.qos() != MqttQoS.EXACTLY_ONCE) {
 
-            ProtonSender sender = this.connection.createSender(amqpPublishMessage.topic());
-
-            sender.setQoS(ProtonQoS.AT_LEAST_ONCE)
-                  .open();
+            Publisher publisher = this.publisher(amqpPublishMessage.topic());
 
             if (amqpPublishMessage.qos() == MqttQoS.AT_MOST_ONCE) {
 
-                sender.send(amqpPublishMessage.toAmqp());
-                sender.close();
+                publisher.sender.send(amqpPublishMessage.toAmqp());
                 LOG.info("AMQP published on {}", amqpPublishMessage.topic());
 
                 handler.handle(Future.succeededFuture(null));
 
             } else {
 
-                sender.send(amqpPublishMessage.toAmqp(), delivery -> {
+                // the link isn't evicted while waiting for the outcome
+                publisher.unsettled++;
+                boolean[] done = new boolean[1];
+                publisher.sender.send(amqpPublishMessage.toAmqp(), delivery -> {
 
+                    // the outcome may come without settlement, the delivery is done either way
+                    if (done[0] || !(delivery.remotelySettled() || delivery.getRemoteState() instanceof Outcome)) {
+                        return;
+                    }
+                    done[0] = true;
+                    if (!delivery.remotelySettled()) {
+                        delivery.settle();
+                    }
+                    publisher.unsettled--;
                     if (delivery.getRemoteState() == Accepted.getInstance()) {
                         LOG.info("AMQP publish delivery {}", delivery.getRemoteState());
                         handler.handle(Future.succeededFuture(delivery));
                     } else {
                         handler.handle(Future.failedFuture(String.format("AMQP publish delivery %s", delivery.getRemoteState())));
                     }
-
-                    sender.close();
                 });
             }
 
@@ -101,8 +183,22 @@ public class AmqpPublishEndpoint {
     public void close() {
 
         // TODO : check what to close other than connection while this class evolves
+        this.publishers.clear();
         if (this.connection != null) {
             this.connection.close();
         }
     }
+
+    /**
+     * Link for publishing on a topic, with the number of deliveries waiting for the outcome
+     */
+    private static class Publisher {
+
+        private final ProtonSender sender;
+        private int unsettled;
+
+        Publisher(ProtonSender sender) {
+            this.sender = sender;
+        }
+    }
 }
@@ -0,0 +1,464 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt.storage.impl;
+
+import enmasse.mqtt.messages.AmqpWillMessage;
+import enmasse.mqtt.storage.LwtStorage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Durable implementation of the LWT Storage service, backed by an append-only memory-mapped log.
+ *
+ * Every add/update appends the will to the log and every delete appends a tombstone, while an in-memory
+ * index keeps the position of the last will for each client. On open, the index is rebuilt replaying
+ * the log in a single sequential pass, stopping at the first incomplete or corrupted record (i.e. written
+ * during a crash). The log is compacted, rewriting only the live wills, when the stale records are
+ * more than the live ones.
+ *
+ * Written records survive a restart of the service as soon as they are appended; the log is
+ * forced to the storage device on compaction and close.
+ */
+public class MappedFileLwtStorage implements LwtStorage {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedFileLwtStorage.class);
+
+    public static final String LOG_FILE_NAME = "wills.log";
+    private static final String COMPACT_FILE_NAME = LOG_FILE_NAME + ".compact";
+
+    public static final int DEFAULT_INITIAL_SIZE = 16 * 1024 * 1024;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+
+    // record header : body length + body CRC32
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final int initialSize;
+
+    private FileChannel channel;
+    private MappedByteBuffer log;
+    private int position;
+
+    // client identifier -> position of the record with the last will
+    private final Map<String, Integer> index = new HashMap<>();
+    // bytes of the records referenced by the index, the others are stale
+    private long liveBytes;
+
+    /**
+     * Constructor
+     *
+     * @param directory directory for the log file
+     */
+    public MappedFileLwtStorage(Path directory) {
+        this(directory, DEFAULT_INITIAL_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param directory directory for the log file
+     * @param initialSize   initial size (in bytes) of the mapped log, doubled when full
+     */
+    public MappedFileLwtStorage(Path directory, int initialSize) {
+        this.directory = directory;
+        this.initialSize = initialSize;
+    }
+
+    @Override
+    public synchronized void open(Handler<AsyncResult<Void>> handler) {
+
+        try {
+            Files.createDirectories(this.directory);
+            // a compaction interrupted before the rename, the log is still the valid one
+            Files.deleteIfExists(this.directory.resolve(COMPACT_FILE_NAME));
+
+            this.map(this.directory.resolve(LOG_FILE_NAME));
+            this.replay();
+
+            LOG.info("Will storage opened with {} wills in {} bytes", this.index.size(), this.position);
+            handler.handle(Future.succeededFuture());
+
+        } catch (IOException e) {
+            LOG.error("Error opening the will storage in {}", this.directory, e);
+            handler.handle(Future.failedFuture(e));
+        }
+    }
+
+    @Override
+    public synchronized void add(String clientId, AmqpWillMessage willMessage, Handler<AsyncResult<Integer>> handler) {
+
+        if (this.index.containsKey(clientId)) {
+            LOG.warn("Will already existing for the client {}", clientId);
+            handler.handle(Future.failedFuture(new IllegalArgumentException("Will already existing for the client")));
+        } else {
+            this.put(clientId, willMessage, handler);
+            LOG.info("Will added for the client {}", clientId);
+        }
+    }
+
+    @Override
+    public synchronized void get(String clientId, Handler<AsyncResult<AmqpWillMessage>> handler) {
+
+        Integer recordPosition = this.index.get(clientId);
+        if (recordPosition == null) {
+            LOG.warn("No will for the client {}", clientId);
+            handler.handle(Future.failedFuture(new IllegalArgumentException("No will for the client")));
+        } else {
+            LOG.info("Will retrieved for the client {}", clientId);
+            handler.handle(Future.succeededFuture(this.readWill(recordPosition)));
+        }
+    }
+
+    @Override
+    public synchronized void update(String clientId, AmqpWillMessage willMessage, Handler<AsyncResult<Integer>> handler) {
+
+        if (!this.index.containsKey(clientId)) {
+            LOG.warn("No will for the client {}", clientId);
+            handler.handle(Future.failedFuture(new IllegalArgumentException("No will for the client")));
+        } else {
+            this.put(clientId, willMessage, handler);
+            LOG.info("Will updated for the client {}", clientId);
+        }
+    }
+
+    @Override
+    public synchronized void delete(String clientId, Handler<AsyncResult<Integer>> handler) {
+
+        if (!this.index.containsKey(clientId)) {
+            LOG.warn("No will for the client {}", clientId);
+            handler.handle(Future.failedFuture(new IllegalArgumentException("No will for the client")));
+        } else {
+            try {
+                byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer body = ByteBuffer.allocate(Byte.BYTES + Short.BYTES + id.length);
+                body.put(OP_DELETE).putShort((short) id.length).put(id);
+                this.append(body);
+
+                this.liveBytes -= this.recordSize(this.index.remove(clientId));
+                this.compactIfNeeded();
+
+                LOG.info("Will deleted for the client {}", clientId);
+                handler.handle(Future.succeededFuture());
+
+            } catch (IOException e) {
+                LOG.error("Error deleting will for the client {}", clientId, e);
+                handler.handle(Future.failedFuture(e));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+
+        if (this.channel != null) {
+            try {
+                this.log.force();
+                this.channel.close();
+            } catch (IOException e) {
+                LOG.error("Error closing the will storage", e);
+            }
+            this.channel = null;
+            this.log = null;
+        }
+        this.index.clear();
+        this.liveBytes = 0;
+        this.position = 0;
+    }
+
+    /**
+     * Number of wills in the storage
+     *
+     * @return  number of wills
+     */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    private void put(String clientId, AmqpWillMessage willMessage, Handler<AsyncResult<Integer>> handler) {
+
+        try {
+            byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+            byte[] topic = willMessage.topic().getBytes(StandardCharsets.UTF_8);
+            byte[] payload = (willMessage.payload() != null) ? willMessage.payload().getBytes() : null;
+
+            ByteBuffer body = ByteBuffer.allocate(Byte.BYTES + Short.BYTES + id.length +
+                    Byte.BYTES + Byte.BYTES + Short.BYTES + topic.length +
+                    Integer.BYTES + ((payload != null) ? payload.length : 0));
+            body.put(OP_PUT).putShort((short) id.length).put(id)
+                    .put((byte) (willMessage.isRetain() ? 1 : 0))
+                    .put((byte) willMessage.qos().value())
+                    .putShort((short) topic.length).put(topic);
+            if (payload != null) {
+                body.putInt(payload.length).put(payload);
+            } else {
+                body.putInt(-1);
+            }
+
+            int recordPosition = this.append(body);
+
+            Integer previous = this.index.put(clientId, recordPosition);
+            if (previous != null) {
+                this.liveBytes -= this.recordSize(previous);
+            }
+            this.liveBytes += this.recordSize(recordPosition);
+            this.compactIfNeeded();
+
+            handler.handle(Future.succeededFuture());
+
+        } catch (IOException e) {
+            LOG.error("Error storing will for the client {}", clientId, e);
+            handler.handle(Future.failedFuture(e));
+        }
+    }
+
+    /**
+     * Append a record with the provided body at the end of the log
+     *
+     * @param body  record body
+     * @return  position of the appended record
+     */
+    private int append(ByteBuffer body) throws IOException {
+
+        body.flip();
+        int size = HEADER_SIZE + body.remaining();
+        // the record is always followed by at least the zero length marking the end of the log
+        if ((long) this.position + size + Integer.BYTES > this.log.capacity()) {
+            this.grow(this.position + size + Integer.BYTES);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+
+        int recordPosition = this.position;
+        // body and CRC first, the length last, so a partially written record is never replayed
+        this.log.position(recordPosition + HEADER_SIZE);
+        this.log.put(body);
+        this.log.putInt(recordPosition + Integer.BYTES, (int) crc.getValue());
+        this.log.putInt(recordPosition, size - HEADER_SIZE);
+        this.position += size;
+        return recordPosition;
+    }
+
+    private int recordSize(int recordPosition) {
+        return HEADER_SIZE + this.log.getInt(recordPosition);
+    }
+
+    private String readClientId(int recordPosition) {
+
+        int idPosition = recordPosition + HEADER_SIZE + Byte.BYTES;
+        int length = this.log.getShort(idPosition) & 0xFFFF;
+        return this.readString(idPosition + Short.BYTES, length);
+    }
+
+    private AmqpWillMessage readWill(int recordPosition) {
+
+        int p = recordPosition + HEADER_SIZE + Byte.BYTES;
+        p += Short.BYTES + (this.log.getShort(p) & 0xFFFF);
+
+        boolean isRetain = this.log.get(p++) != 0;
+        MqttQoS qos = MqttQoS.valueOf(this.log.get(p++));
+
+        int topicLength = this.log.getShort(p) & 0xFFFF;
+        p += Short.BYTES;
+        String topic = this.readString(p, topicLength);
+        p += topicLength;
+
+        int payloadLength = this.log.getInt(p);
+        p += Integer.BYTES;
+        Buffer payload = null;
+        if (payloadLength >= 0) {
+            byte[] bytes = new byte[payloadLength];
+            ByteBuffer slice = this.log.duplicate();
+            slice.position(p);
+            slice.get(bytes);
+            payload = Buffer.buffer(bytes);
+        }
+
+        return new AmqpWillMessage(isRetain, topic, qos, payload);
+    }
+
+    private String readString(int position, int length) {
+
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = this.log.duplicate();
+        slice.position(position);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rebuild the index with a single sequential pass on the log
+     */
+    private void replay() {
+
+        this.index.clear();
+        this.liveBytes = 0;
+        this.position = 0;
+
+        CRC32 crc = new CRC32();
+        int capacity = this.log.capacity();
+
+        while (this.position + HEADER_SIZE <= capacity) {
+
+            int length = this.log.getInt(this.position);
+            if (length <= 0) {
+                break;
+            }
+            if ((long) this.position + HEADER_SIZE + length > capacity) {
+                LOG.warn("Will storage log truncated at {}, ignoring the last record", this.position);
+                this.discardTail();
+                break;
+            }
+
+            ByteBuffer body = this.log.duplicate();
+            body.position(this.position + HEADER_SIZE).limit(this.position + HEADER_SIZE + length);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != this.log.getInt(this.position + Integer.BYTES)) {
+                LOG.warn("Will storage log corrupted at {}, ignoring the following records", this.position);
+                this.discardTail();
+                break;
+            }
+
+            String clientId = this.readClientId(this.position);
+            Integer previous;
+            if (this.log.get(this.position + HEADER_SIZE) == OP_PUT) {
+                previous = this.index.put(clientId, this.position);
+                this.liveBytes += HEADER_SIZE + length;
+            } else {
+                previous = this.index.remove(clientId);
+            }
+            if (previous != null) {
+                this.liveBytes -= this.recordSize(previous);
+            }
+
+            this.position += HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * Zero the log from the current position, so that stale bytes can't be replayed after new records
+     */
+    private void discardTail() {
+
+        for (int p = this.position; p < this.log.capacity(); p++) {
+            this.log.put(p, (byte) 0);
+        }
+    }
+
+    private void compactIfNeeded() {
+
+        long staleBytes = this.position - this.liveBytes;
+        if (this.position > this.initialSize / 2 && staleBytes > this.liveBytes) {
+            try {
+                this.compact();
+            } catch (IOException e) {
+                LOG.error("Error compacting the will storage, keeping the current log", e);
+            }
+        }
+    }
+
+    /**
+     * Rewrite the live records in a new log, replacing the current one
+     */
+    private void compact() throws IOException {
+
+        long start = System.nanoTime();
+        int previousSize = this.position;
+
+        Path compactFile = this.directory.resolve(COMPACT_FILE_NAME);
+        int capacity = this.initialSize;
+        while (capacity < this.liveBytes * 2 + Integer.BYTES) {
+            capacity = nextCapacity(capacity);
+        }
+
+        Map<String, Integer> compacted = new HashMap<>(this.index.size() * 2);
+        try (FileChannel compactChannel = FileChannel.open(compactFile,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            MappedByteBuffer compactLog = compactChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            for (Map.Entry<String, Integer> entry : this.index.entrySet()) {
+                int recordPosition = entry.getValue();
+                ByteBuffer record = this.log.duplicate();
+                record.position(recordPosition).limit(recordPosition + this.recordSize(recordPosition));
+                compacted.put(entry.getKey(), compactLog.position());
+                compactLog.put(record);
+            }
+            compactLog.force();
+        } catch (IOException e) {
+            Files.deleteIfExists(compactFile);
+            throw e;
+        }
+
+        Path logFile = this.directory.resolve(LOG_FILE_NAME);
+        try {
+            Files.move(compactFile, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(compactFile);
+            throw e;
+        }
+        this.channel.close();
+        this.map(logFile);
+
+        this.index.clear();
+        this.index.putAll(compacted);
+        this.position = (int) this.liveBytes;
+
+        LOG.info("Will storage compacted from {} to {} bytes in {} ms",
+                previousSize, this.position, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Grow the mapped log so that it can contain at least the required bytes
+     */
+    private void grow(long required) throws IOException {
+
+        int capacity = this.log.capacity();
+        while (capacity < required) {
+            if (capacity == Integer.MAX_VALUE) {
+                throw new IOException("Will storage log is full");
+            }
+            capacity = nextCapacity(capacity);
+        }
+        this.log.force();
+        this.log = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void map(Path logFile) throws IOException {
+
+        this.channel = FileChannel.open(logFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(this.channel.size(), this.initialSize);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Will storage log too big: " + size);
+        }
+        this.log = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static int nextCapacity(int capacity) {
+        return (int) Math.min((long) capacity * 2, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.mqtt;
+
+import enmasse.mqtt.messages.AmqpWillMessage;
+import enmasse.mqtt.storage.impl.MappedFileLwtStorage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests related to the durable LWT storage service
+ */
+public class MappedFileLwtStorageTest {
+
+    private static final String CLIENT_ID = "client_id";
+
+    @TempDir
+    Path directory;
+
+    private MappedFileLwtStorage lwtStorage;
+
+    @AfterEach
+    public void after() {
+        if (this.lwtStorage != null) {
+            this.lwtStorage.close();
+        }
+    }
+
+    @Test
+    public void willsSurviveRestart() {
+
+        this.lwtStorage = open(4096);
+        add(CLIENT_ID, new AmqpWillMessage(true, "will_topic", MqttQoS.AT_LEAST_ONCE, Buffer.buffer("Hello")));
+        add("client_id_1", new AmqpWillMessage(false, "will_topic_1", MqttQoS.AT_MOST_ONCE, null));
+        add("client_id_2", new AmqpWillMessage(false, "will_topic_2", MqttQoS.AT_MOST_ONCE, Buffer.buffer("Bye")));
+        this.lwtStorage.update(CLIENT_ID, new AmqpWillMessage(false, "will_topic", MqttQoS.EXACTLY_ONCE, Buffer.buffer("Hello_1")), this::assertSucceeded);
+        this.lwtStorage.delete("client_id_2", this::assertSucceeded);
+        this.lwtStorage.close();
+
+        this.lwtStorage = open(4096);
+        assertEquals(2, this.lwtStorage.size());
+
+        AmqpWillMessage will = get(CLIENT_ID);
+        assertFalse(will.isRetain());
+        assertEquals("will_topic", will.topic());
+        assertEquals(MqttQoS.EXACTLY_ONCE, will.qos());
+        assertEquals(Buffer.buffer("Hello_1"), will.payload());
+
+        AmqpWillMessage willWithoutPayload = get("client_id_1");
+        assertEquals("will_topic_1", willWithoutPayload.topic());
+        assertNull(willWithoutPayload.payload());
+
+        this.lwtStorage.get("client_id_2", done -> assertTrue(done.failed()));
+        this.lwtStorage.add(CLIENT_ID, will, done -> assertTrue(done.failed()));
+    }
+
+    @Test
+    public void compactionKeepsLiveWills() {
+
+        this.lwtStorage = open(1024);
+        for (int i = 0; i < 1000; i++) {
+            String clientId = "client_id_" + (i % 10);
+            AmqpWillMessage will = new AmqpWillMessage(false, "will_topic", MqttQoS.AT_LEAST_ONCE, Buffer.buffer("Hello_" + i));
+            if (i < 10) {
+                add(clientId, will);
+            } else {
+                this.lwtStorage.update(clientId, will, this::assertSucceeded);
+            }
+        }
+        this.lwtStorage.delete("client_id_0", this::assertSucceeded);
+        this.lwtStorage.close();
+
+        // only the live wills are kept, so the log didn't grow with the updates
+        assertTrue(this.directory.resolve(MappedFileLwtStorage.LOG_FILE_NAME).toFile().length() <= 2048);
+
+        this.lwtStorage = open(1024);
+        assertEquals(9, this.lwtStorage.size());
+        for (int i = 1; i < 10; i++) {
+            assertEquals(Buffer.buffer("Hello_" + (990 + i)), get("client_id_" + i).payload());
+        }
+    }
+
+    @Test
+    public void corruptedRecordIsIgnored() throws IOException {
+
+        this.lwtStorage = open(4096);
+        add(CLIENT_ID, new AmqpWillMessage(true, "will_topic", MqttQoS.AT_LEAST_ONCE, Buffer.buffer("Hello")));
+        add("client_id_1", new AmqpWillMessage(false, "will_topic_1", MqttQoS.AT_LEAST_ONCE, Buffer.buffer("Hello_1")));
+        this.lwtStorage.close();
+
+        // corrupt the last byte of the second record, as a partially written one
+        try (FileChannel channel = FileChannel.open(this.directory.resolve(MappedFileLwtStorage.LOG_FILE_NAME), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int second = 8 + log.getInt(0);
+            int end = second + 8 + log.getInt(second);
+            log.put(end - 1, (byte) ~log.get(end - 1));
+            log.force();
+        }
+
+        this.lwtStorage = open(4096);
+        assertEquals(1, this.lwtStorage.size());
+        assertEquals(Buffer.buffer("Hello"), get(CLIENT_ID).payload());
+
+        // new records are appended in place of the corrupted one
+        add("client_id_2", new AmqpWillMessage(false, "will_topic_2", MqttQoS.AT_LEAST_ONCE, Buffer.buffer("Hello_2")));
+        this.lwtStorage.close();
+
+        this.lwtStorage = open(4096);
+        assertEquals(2, this.lwtStorage.size());
+        assertEquals(Buffer.buffer("Hello_2"), get("client_id_2").payload());
+    }
+
+    private MappedFileLwtStorage open(int initialSize) {
+
+        MappedFileLwtStorage storage = new MappedFileLwtStorage(this.directory, initialSize);
+        storage.open(this::assertSucceeded);
+        return storage;
+    }
+
+    private void add(String clientId, AmqpWillMessage will) {
+        this.lwtStorage.add(clientId, will, this::assertSucceeded);
+    }
+
+    private AmqpWillMessage get(String clientId) {
+
+        AtomicReference<AmqpWillMessage> will = new AtomicReference<>();
+        this.lwtStorage.get(clientId, done -> {
+            assertSucceeded(done);
+            will.set(done.result());
+        });
+        return will.get();
+    }
+
+    private void assertSucceeded(AsyncResult<?> done) {
+        assertTrue(done.succeeded(), () -> String.valueOf(done.cause()));
+    }
+}
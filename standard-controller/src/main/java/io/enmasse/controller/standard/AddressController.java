@@ -35,6 +35,7 @@ import io.enmasse.k8s.api.ResourceChecker;
 import io.enmasse.k8s.api.SchemaProvider;
 import io.enmasse.k8s.api.Watch;
 import io.enmasse.k8s.api.Watcher;
+import io.enmasse.metrics.api.HistogramRecorder;
 import io.enmasse.metrics.api.MetricLabel;
 import io.enmasse.metrics.api.MetricType;
 import io.enmasse.metrics.api.MetricValue;
@@ -53,6 +54,7 @@ import io.vertx.core.Vertx;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -92,7 +94,13 @@ public class AddressController implements Watcher<Address> {
     private final BrokerIdGenerator brokerIdGenerator;
     private final BrokerClientFactory brokerClientFactory;
     private final RouterStatusCache statusCollector;
+    private final RouterManagement routerManagement;
     private final ResourceChecker<Address> reconciler;
+    private final AddressUsageCache usageCache;
+    // Result of the last validation of each address, by name, with incremental reconcile only
+    private final Map<String, Validation> validations;
+    private Schema validatedSchema;
+    private final AddressStatusWriter statusWriter;
 
     // Metrics
     private volatile Long readyAddressCount;
@@ -103,6 +111,7 @@ public class AddressController implements Watcher<Address> {
     private volatile Long numForwarders;
     private volatile Long totalTime;
     private volatile Map<Phase, Long> countByPhase = new HashMap<>();
+    private final HistogramRecorder routerQueryLatency = new HistogramRecorder(0.01, 0.05, 0.1, 0.5, 1.0, 5.0, 10.0, 30.0);
 
     public AddressController(StandardControllerOptions options, AddressSpaceApi addressSpaceApi, AddressApi addressApi, Kubernetes kubernetes, BrokerSetGenerator clusterGenerator, EventLogger eventLogger, SchemaProvider schemaProvider, Vertx vertx, Metrics metrics, BrokerIdGenerator brokerIdGenerator, BrokerClientFactory brokerClientFactory) {
         this.options = options;
@@ -115,9 +124,15 @@ public class AddressController implements Watcher<Address> {
         this.vertx = vertx;
         this.brokerIdGenerator = brokerIdGenerator;
         this.brokerClientFactory = brokerClientFactory;
-        RouterManagement routerManagement = RouterManagement.withCertsInDir(vertx, "standard-controller", options.getManagementConnectTimeout(), options.getManagementQueryTimeout(), options.getCertDir());
-        this.statusCollector = new RouterStatusCache(routerManagement, kubernetes, eventLogger, options.getAddressSpace(), options.getStatusCheckInterval());
+        this.routerManagement = RouterManagement.withCertsInDir(vertx, "standard-controller", options.getManagementConnectTimeout(), options.getManagementQueryTimeout(), options.getCertDir());
+        this.routerManagement.setQueryLatencyObserver(routerQueryLatency::observe);
+        this.routerManagement.setPageSize(options.getManagementQueryPageSize());
+        this.statusCollector = new RouterStatusCache(routerManagement, kubernetes, eventLogger, options.getAddressSpace(), options.getStatusCheckInterval(), options.isRouterStatusDeltaQueries(),
+                options.getRouterStatusTimeout(), options.getRouterStatusMaxAge(), Clock.systemUTC());
         reconciler = new ResourceChecker<>(this, options.getRecheckInterval());
+        this.statusWriter = new AddressStatusWriter(addressApi, options.getStatusWriteConcurrency(), options.getStatusWriteRate());
+        this.usageCache = options.isIncrementalReconcile() ? new AddressUsageCache(options.getFullReconcileInterval(), Clock.systemUTC()) : null;
+        this.validations = options.isIncrementalReconcile() ? new HashMap<>() : null;
         registerMetrics(metrics);
     }
 
@@ -207,6 +222,48 @@ public class AddressController implements Watcher<Address> {
                 "Number of RouterCheckFailures",
                 MetricType.counter,
                 () -> Collections.singletonList(new MetricValue(statusCollector.getRouterCheckFailures(), metricLabels))));
+
+        metrics.registerMetric(new ScalarMetric(
+                "standard_controller_router_check_timeouts_total",
+                "Number of routers that did not answer a status check in time",
+                MetricType.counter,
+                () -> Collections.singletonList(new MetricValue(statusCollector.getRouterCheckTimeouts(), metricLabels))));
+
+        metrics.registerMetric(new ScalarMetric(
+                "standard_controller_router_status_age_seconds",
+                "Age of the oldest router status used to check addresses",
+                MetricType.gauge,
+                () -> statusCollector.getLatestResultsAge()
+                        .map(age -> Collections.singletonList(new MetricValue((double) age.toMillis() / 1000.0, metricLabels)))
+                        .orElse(Collections.emptyList())));
+
+        metrics.registerMetric(routerQueryLatency.toMetric(
+                "standard_controller_router_query_duration_seconds",
+                "Time spent querying the status of a router",
+                metricLabels));
+
+        metrics.registerMetric(new ScalarMetric(
+                "standard_controller_address_status_writes_pending",
+                "Number of addresses with a status waiting to be written",
+                MetricType.gauge,
+                () -> Collections.singletonList(new MetricValue(statusWriter.getPending(), metricLabels))));
+
+        metrics.registerMetric(new ScalarMetric(
+                "standard_controller_address_status_write_conflicts_total",
+                "Number of address status writes conflicting with a newer version of the address",
+                MetricType.counter,
+                () -> Collections.singletonList(new MetricValue(statusWriter.getConflicts(), metricLabels))));
+
+        metrics.registerMetric(new ScalarMetric(
+                "standard_controller_address_status_write_failures_total",
+                "Number of address status writes that failed",
+                MetricType.counter,
+                () -> Collections.singletonList(new MetricValue(statusWriter.getFailures(), metricLabels))));
+
+        metrics.registerMetric(statusWriter.getWriteLatency().toMetric(
+                "standard_controller_address_status_write_duration_seconds",
+                "Time spent writing the status of an address",
+                metricLabels));
     }
 
     public void start() throws Exception {
@@ -223,6 +280,8 @@ public class AddressController implements Watcher<Address> {
         }
         statusCollector.stop();
         reconciler.stop();
+        statusWriter.stop();
+        routerManagement.close();
     }
 
     @Override
@@ -262,6 +321,15 @@ public class AddressController implements Watcher<Address> {
 
         AddressProvisioner provisioner = new AddressProvisioner(addressSpaceResolver, addressResolver, addressSpacePlan, clusterGenerator, kubernetes, eventLogger, options.getInfraUuid(), brokerIdGenerator);
 
+        if (validations != null) {
+            if (schema != validatedSchema) {
+                validations.clear();
+                validatedSchema = schema;
+            } else if (validations.size() > addressList.size()) {
+                validations.keySet().retainAll(addressList.stream().map(a -> a.getMetadata().getName()).collect(Collectors.toSet()));
+            }
+        }
+
         Map<String, Address> validAddresses = new HashMap<>();
         List<Phase> readyPhases = Arrays.asList(Configuring, Active);
         for (Address address : addressList) {
@@ -281,7 +349,7 @@ public class AddressController implements Watcher<Address> {
                 address.getStatus().setForwarders(forwarderStatuses);
             }
 
-            if (!validateAddress(address, addressSpace, addressResolver)) {
+            if (!checkValid(address, addressSpace, addressResolver)) {
                 continue;
             }
 
@@ -309,7 +377,10 @@ public class AddressController implements Watcher<Address> {
         Map<Phase, Long> countByPhase = countPhases(addressSet);
         log.info("Total: {}, Active: {}, Configuring: {}, Pending: {}, Terminating: {}, Failed: {}", addressSet.size(), countByPhase.get(Active), countByPhase.get(Configuring), countByPhase.get(Pending), countByPhase.get(Terminating), countByPhase.get(Failed));
 
-        Map<String, Map<String, UsageInfo>> usageMap = provisioner.checkUsage(filterByNotPhases(addressSet, EnumSet.of(Pending)));
+        Set<Address> provisionedAddresses = filterByNotPhases(addressSet, EnumSet.of(Pending));
+        Map<String, Map<String, UsageInfo>> usageMap = usageCache != null ?
+                usageCache.update(provisioner, schema, provisionedAddresses) :
+                provisioner.checkUsage(provisionedAddresses);
 
         log.info("Usage: {}", usageMap);
 
@@ -342,13 +413,13 @@ public class AddressController implements Watcher<Address> {
                 .anyMatch(a -> Arrays.asList("queue", "subscription").contains(a.getSpec().getType()) &&
                         a.getSpec().getForwarders() != null && !a.getSpec().getForwarders().isEmpty());
 
-        List<RouterStatus> routerStatusList = checkRouterStatuses(checkRouterLinks);
+        RouterStatusSnapshot routerStatus = checkRouterStatuses(checkRouterLinks);
 
         Set<String> subserveTopics = Collections.emptySet();
         if (withMqtt) {
             subserveTopics = checkRegisteredSubserveTopics();
         }
-        checkAddressStatuses(liveAddresses, addressResolver, routerStatusList, subserveTopics, withMqtt);
+        checkAddressStatuses(liveAddresses, addressResolver, routerStatus, subserveTopics, withMqtt);
 
         long checkStatuses = System.nanoTime();
         for (Address address : liveAddresses) {
@@ -372,37 +443,27 @@ public class AddressController implements Watcher<Address> {
 
         long upgradeClusters = System.nanoTime();
 
-        int staleCount = 0;
+        int changedCount = 0;
         for (Address address : addressList) {
             ProvisionState previous = previousStatus.get(address.getMetadata().getName());
             ProvisionState current = new ProvisionState(address.getStatus(), address.getAnnotation(AnnotationKeys.APPLIED_PLAN));
             if (!current.equals(previous)) {
-                try {
-                    addressApi.replaceAddress(address);
-                } catch (KubernetesClientException e) {
-                    if (e.getStatus().getCode() == 409) {
-                        // The address record is stale.  The address controller will be notified again by the watcher,
-                        // so safe ignore the stale record.
-                        log.debug("Address {} has stale resource version {}", address.getMetadata().getName(), address.getMetadata().getResourceVersion());
-                        staleCount++;
-                    } else {
-                        throw e;
-                    }
-                }
+                statusWriter.submit(address);
+                changedCount++;
             }
         }
 
-        if (staleCount > 0) {
-            log.info("{} address(es) were stale.", staleCount);
+        if (changedCount > 0) {
+            log.info("{} address(es) changed, {} pending write.", changedCount, statusWriter.getPending());
         }
 
         long replaceAddresses = System.nanoTime();
-        garbageCollectTerminating(filterByPhases(addressSet, EnumSet.of(Terminating)), addressResolver, routerStatusList, subserveTopics, withMqtt);
+        garbageCollectTerminating(filterByPhases(addressSet, EnumSet.of(Terminating)), addressResolver, routerStatus, subserveTopics, withMqtt);
         long gcTerminating = System.nanoTime();
 
         log.info("Time spent: Total: {} ns, resolvedPlan: {} ns, calculatedUsage: {} ns, checkedQuota: {} ns, listClusters: {} ns, provisionResources: {} ns, checkStatuses: {} ns, deprovisionUnused: {} ns, upgradeClusters: {} ns, replaceAddresses: {} ns, gcTerminating: {} ns", gcTerminating - start, resolvedPlan - start, calculatedUsage - resolvedPlan, checkedQuota - calculatedUsage, listClusters - checkedQuota, provisionResources - listClusters, checkStatuses - provisionResources, deprovisionUnused - checkStatuses, upgradeClusters - deprovisionUnused, replaceAddresses - upgradeClusters, gcTerminating - replaceAddresses);
 
-        if (routerStatusList.isEmpty()) {
+        if (routerStatus.isEmpty()) {
             readyAddressCount = null;
             notReadyAddressCount = null;
             notReadyForwarders = null;
@@ -615,11 +676,12 @@ public class AddressController implements Watcher<Address> {
                 .collect(Collectors.toSet());
     }
 
-    private void garbageCollectTerminating(Set<Address> addresses, AddressResolver addressResolver, List<RouterStatus> routerStatusList, Set<String> subserveTopics, boolean withMqtt) throws Exception {
-        Map<Address, Integer> okMap = checkAddressStatuses(addresses, addressResolver, routerStatusList, subserveTopics, withMqtt);
+    private void garbageCollectTerminating(Set<Address> addresses, AddressResolver addressResolver, RouterStatusSnapshot routerStatus, Set<String> subserveTopics, boolean withMqtt) throws Exception {
+        Map<Address, Integer> okMap = checkAddressStatuses(addresses, addressResolver, routerStatus, subserveTopics, withMqtt);
         for (Map.Entry<Address, Integer> entry : okMap.entrySet()) {
             if (entry.getValue() == 0) {
                 log.info("Garbage collecting {}", entry.getKey());
+                statusWriter.cancel(entry.getKey());
                 addressApi.deleteAddress(entry.getKey());
             }
         }
@@ -674,14 +736,14 @@ public class AddressController implements Watcher<Address> {
         }
     }
 
-    private List<RouterStatus> checkRouterStatuses(boolean checkRouterLinks) throws Exception {
+    private RouterStatusSnapshot checkRouterStatuses(boolean checkRouterLinks) throws Exception {
 
         statusCollector.setCheckRouterLinks(checkRouterLinks);
 
         return statusCollector.getLatestResults();
     }
 
-    private Map<Address, Integer> checkAddressStatuses(Set<Address> addresses, AddressResolver addressResolver, List<RouterStatus> routerStatusList, Set<String> subserveTopics, boolean withMqtt) throws Exception {
+    private Map<Address, Integer> checkAddressStatuses(Set<Address> addresses, AddressResolver addressResolver, RouterStatusSnapshot routerStatus, Set<String> subserveTopics, boolean withMqtt) throws Exception {
 
         Map<Address, Integer> numOk = new HashMap<>();
         if (addresses.isEmpty()) {
@@ -696,25 +758,21 @@ public class AddressController implements Watcher<Address> {
             switch (addressType.getName()) {
                 case "queue":
                     ok += checkBrokerStatus(address, clusterOk);
-                    for (RouterStatus routerStatus : routerStatusList) {
-                        ok += routerStatus.checkAddress(address);
-                        ok += routerStatus.checkAutoLinks(address);
-                    }
-                    ok += RouterStatus.checkActiveAutoLink(address, routerStatusList);
-                    ok += RouterStatus.checkForwarderLinks(address, routerStatusList);
+                    ok += routerStatus.checkAddress(address);
+                    ok += routerStatus.checkAutoLinks(address);
+                    ok += routerStatus.checkActiveAutoLink(address);
+                    ok += routerStatus.checkForwarderLinks(address);
                     break;
                 case "subscription":
-                    ok += RouterStatus.checkForwarderLinks(address, routerStatusList);
+                    ok += routerStatus.checkForwarderLinks(address);
                     break;
                 case "topic":
                     ok += checkBrokerStatus(address, clusterOk);
-                    for (RouterStatus routerStatus : routerStatusList) {
-                        ok += routerStatus.checkLinkRoutes(address);
-                    }
+                    ok += routerStatus.checkLinkRoutes(address);
                     if (isPooled(addressPlan)) {
-                        ok += RouterStatus.checkActiveLinkRoute(address, routerStatusList);
+                        ok += routerStatus.checkActiveLinkRoute(address);
                     } else {
-                        ok += RouterStatus.checkConnection(address, routerStatusList);
+                        ok += routerStatus.checkConnection(address);
                         if (withMqtt) {
                             SubserveStatusCollector.checkTopicRegistration(subserveTopics, address, addressPlan);
                         }
@@ -722,9 +780,7 @@ public class AddressController implements Watcher<Address> {
                     break;
                 case "anycast":
                 case "multicast":
-                    for (RouterStatus routerStatus : routerStatusList) {
-                        ok += routerStatus.checkAddress(address);
-                    }
+                    ok += routerStatus.checkAddress(address);
                     break;
             }
             numOk.put(address, ok);
@@ -752,6 +808,33 @@ public class AddressController implements Watcher<Address> {
         return numOk;
     }
 
+    /**
+     * Validate an address. With incremental reconcile, the result of its last validation is applied instead if neither
+     * the address nor the connectors of the address space have changed since.
+     */
+    private boolean checkValid(Address address, AddressSpace addressSpace, AddressResolver addressResolver) {
+        String resourceVersion = address.getMetadata().getResourceVersion();
+        if (validations == null || resourceVersion == null) {
+            return validateAddress(address, addressSpace, addressResolver);
+        }
+
+        List<Object> key = Arrays.asList(resourceVersion,
+                addressSpace != null ? addressSpace.getMetadata().getName() : null,
+                addressSpace != null ? addressSpace.getSpec().getConnectors() : null);
+        Validation validation = validations.get(address.getMetadata().getName());
+        if (validation != null && validation.key.equals(key)) {
+            validation.messages.forEach(address.getStatus()::appendMessage);
+            if (!validation.valid) {
+                address.getStatus().setReady(false);
+            }
+        } else {
+            boolean valid = validateAddress(address, addressSpace, addressResolver);
+            validation = new Validation(key, valid, new ArrayList<>(address.getStatus().getMessages()));
+            validations.put(address.getMetadata().getName(), validation);
+        }
+        return validation.valid;
+    }
+
     private boolean validateAddress(Address address, AddressSpace addressSpace, AddressResolver addressResolver) {
         if (!addressResolver.validate(address)) {
             return false;
@@ -808,6 +891,19 @@ public class AddressController implements Watcher<Address> {
         return false;
     }
 
+    private static class Validation {
+        private final List<Object> key;
+        private final boolean valid;
+        // Messages set on the address status by the validation
+        private final List<String> messages;
+
+        private Validation(List<Object> key, boolean valid, List<String> messages) {
+            this.key = key;
+            this.valid = valid;
+            this.messages = messages;
+        }
+    }
+
     private class ProvisionState {
         private final AddressStatus status;
         private final String plan;
@@ -114,60 +114,64 @@ public class AddressProvisioner {
         info.addUsed(credit);
     }
 
+    /**
+     * Computes the resource usage after placing the pending addresses that fit within the limits of the address space
+     * plan. The usage map passed in is not modified.
+     */
     public Map<String, Map<String, UsageInfo>> checkQuota(Map<String, Map<String, UsageInfo>> usageMap, Set<Address> pending, Set<Address> all) {
-        Map<String, Map<String, UsageInfo>> newUsageMap = usageMap;
+        PlacementEngine placement = new PlacementEngine(usageMap, pooledPattern);
         Map<String, Double> limits = addressSpacePlan.getResourceLimits();
+        Map<String, Address> addressesByName = indexByAddress(all);
 
-        Set<Address> pendingSubscriptionsWithConfiguredTopics = filterSubscriptionsWithConfiguredTopics(pending, all);
-        Set<Address> pendingSubscriptionsWithPendingTopics = filterSubscriptionsWithPendingTopics(pending, all);
+        Set<Address> pendingSubscriptionsWithConfiguredTopics = filterSubscriptionsWithConfiguredTopics(pending, addressesByName);
+        Set<Address> pendingSubscriptionsWithPendingTopics = filterSubscriptionsWithPendingTopics(pending, addressesByName);
         Set<Address> pendingNonSubscriptions = filterByNotType(pending, "subscription");
 
-        newUsageMap = addQuotaForAddress(pendingSubscriptionsWithConfiguredTopics , all, newUsageMap, limits);
+        addQuotaForAddress(pendingSubscriptionsWithConfiguredTopics, addressesByName, placement, limits);
 
         while(!pendingSubscriptionsWithPendingTopics.isEmpty()) {
             Address address = pendingSubscriptionsWithPendingTopics.iterator().next();
-            Address topic = findAddress(address.getSpec().getTopic(), all);
-            newUsageMap = addQuotaForAddress(new HashSet<>(Arrays.asList(topic)), all, newUsageMap, limits);
+            Address topic = addressesByName.get(address.getSpec().getTopic());
+            addQuotaForAddress(new HashSet<>(Arrays.asList(topic)), addressesByName, placement, limits);
             pendingNonSubscriptions.remove(topic);
 
-            Set<Address> subscriptionsWithNewlyConfiguredTopics = filterSubscriptionsWithConfiguredTopics(pendingSubscriptionsWithPendingTopics, all);
-            newUsageMap = addQuotaForAddress(subscriptionsWithNewlyConfiguredTopics, all, newUsageMap, limits);
+            Set<Address> subscriptionsWithNewlyConfiguredTopics = filterSubscriptionsWithConfiguredTopics(pendingSubscriptionsWithPendingTopics, addressesByName);
+            addQuotaForAddress(subscriptionsWithNewlyConfiguredTopics, addressesByName, placement, limits);
             pendingSubscriptionsWithPendingTopics.removeAll(subscriptionsWithNewlyConfiguredTopics);
         }
-        newUsageMap = addQuotaForAddress(pendingNonSubscriptions, all, newUsageMap, limits);
+        addQuotaForAddress(pendingNonSubscriptions, addressesByName, placement, limits);
 
-        return newUsageMap;
+        return placement.getUsage();
     }
 
-    private Map<String, Map<String, UsageInfo>> addQuotaForAddress(Set<Address> pending, Set<Address> all,
-            Map<String, Map<String, UsageInfo>> newUsageMap, Map<String, Double> limits) {
+    private void addQuotaForAddress(Set<Address> pending, Map<String, Address> addressesByName,
+            PlacementEngine placement, Map<String, Double> limits) {
         for (Address address : pending) {
             if (!Phase.Configuring.equals(address.getStatus().getPhase())) {
                 AddressStatus previousStatus = new AddressStatus(address.getStatus());
 
-                Map<String, Map<String, UsageInfo>> neededMap = checkQuotaForAddress(limits, newUsageMap, address, all);
-                if (neededMap != null) {
-                    newUsageMap = neededMap;
+                if (checkQuotaForAddress(limits, placement, address, addressesByName)) {
+                    placement.commit();
                     AddressPlan addressPlan = addressResolver.getDesiredPlan(address);
                     address.getStatus().setPhase(Phase.Configuring);
                     address.getStatus().setPlanStatus(AddressPlanStatus.fromAddressPlan(addressPlan));
                     address.putAnnotation(AnnotationKeys.APPLIED_PLAN, address.getSpec().getPlan());
                 } else {
+                    placement.rollback();
                     address.getStatus().setBrokerStatuses(previousStatus.getBrokerStatuses());
                 }
             }
         }
-        return newUsageMap;
     }
 
-    private Set<Address> filterSubscriptionsWithConfiguredTopics(Set<Address> addressSet, Set<Address> all) {
+    private Set<Address> filterSubscriptionsWithConfiguredTopics(Set<Address> addressSet, Map<String, Address> addressesByName) {
         return addressSet.stream()
-                .filter(address -> "subscription".equals(address.getSpec().getType()) && Arrays.asList(Phase.Configuring, Phase.Active).contains(findAddress(address.getSpec().getTopic(), all).getStatus().getPhase()))
+                .filter(address -> "subscription".equals(address.getSpec().getType()) && Arrays.asList(Phase.Configuring, Phase.Active).contains(addressesByName.get(address.getSpec().getTopic()).getStatus().getPhase()))
                 .collect(Collectors.toSet());
     }
-    private Set<Address> filterSubscriptionsWithPendingTopics(Set<Address> addressSet, Set<Address> all) {
+    private Set<Address> filterSubscriptionsWithPendingTopics(Set<Address> addressSet, Map<String, Address> addressesByName) {
         return addressSet.stream()
-                .filter(address -> "subscription".equals(address.getSpec().getType()) && Arrays.asList(Phase.Pending).contains(findAddress(address.getSpec().getTopic(), all).getStatus().getPhase()))
+                .filter(address -> "subscription".equals(address.getSpec().getType()) && Arrays.asList(Phase.Pending).contains(addressesByName.get(address.getSpec().getTopic()).getStatus().getPhase()))
                 .collect(Collectors.toSet());
     }
     private Set<Address> filterByNotType(Set<Address> addressSet, String type) {
@@ -176,27 +180,15 @@ public class AddressProvisioner {
                 .collect(Collectors.toSet());
     }
 
-    private static Map<String, Map<String, UsageInfo>> copyUsageMap(Map<String, Map<String, UsageInfo>> usageMap) {
-        Map<String, Map<String, UsageInfo>> newUsageMap = new HashMap<>();
-        for (Map.Entry<String, Map<String, UsageInfo>> entry : usageMap.entrySet()) {
-            newUsageMap.put(entry.getKey(), new HashMap<>());
-            for (Map.Entry<String, UsageInfo> innerEntry : entry.getValue().entrySet()) {
-                newUsageMap.get(entry.getKey()).put(innerEntry.getKey(), new UsageInfo(innerEntry.getValue()));
-            }
-        }
-        return newUsageMap;
-    }
-
-    private Address findAddress(String name, Set<Address> addressSet) {
+    private static Map<String, Address> indexByAddress(Set<Address> addressSet) {
+        Map<String, Address> addressesByName = new HashMap<>(addressSet.size());
         for (Address address : addressSet) {
-            if (name.equals(address.getSpec().getAddress())) {
-                return address;
-            }
+            addressesByName.putIfAbsent(address.getSpec().getAddress(), address);
         }
-        return null;
+        return addressesByName;
     }
 
-    private boolean scheduleSubscription(Address subscription, Address topic, Map<String, UsageInfo> brokerUsage, Map<String, UsageInfo> subscriptionUsage, double requestedValue) {
+    private boolean scheduleSubscription(Address subscription, Address topic, PlacementEngine placement, double requestedValue) {
         if (topic.getStatus().getBrokerStatuses().isEmpty()) {
             log.warn("Unexpected empty list of brokers for topic {}", topic);
             return false;
@@ -214,9 +206,9 @@ public class AddressProvisioner {
         }
 
         if (isPooled) {
-            UsageInfo usageInfo = subscriptionUsage.computeIfAbsent(brokerStatus.getContainerId(), k -> new UsageInfo());
+            UsageInfo usageInfo = placement.computeIfAbsent("subscription", brokerStatus.getContainerId());
             if (usageInfo.getUsed() + requestedValue <= 1) {
-                usageInfo.addUsed(requestedValue);
+                placement.addUsed("subscription", brokerStatus.getContainerId(), requestedValue);
 
                 subscription.getStatus().setBrokerStatuses(Collections.singletonList(brokerStatus));
             } else {
@@ -224,27 +216,26 @@ public class AddressProvisioner {
             }
         } else {
             List<BrokerInfo> shardedBrokers = new ArrayList<>();
-            for (String host : brokerUsage.keySet()) {
-                if (host.equals(brokerStatus.getClusterId())) {
-                    UsageInfo brokerUsageInfo = brokerUsage.get(host);
-                    int replicas = brokerUsageInfo.getNeeded();
-                    for (String container : subscriptionUsage.keySet()) {
-                        shardedBrokers.add(new BrokerInfo(container, subscriptionUsage.get(container).getUsed()));
-                    }
-                    shardedBrokers.sort(Comparator.comparingDouble(BrokerInfo::getCredit));
-                    if (shardedBrokers.size() < replicas) {
-                        shardedBrokers.add(0, new BrokerInfo(brokerStatus.getClusterId()+"-"+shardedBrokers.size(), 0));
-                    }
+            UsageInfo brokerUsageInfo = placement.getResource("broker").get(brokerStatus.getClusterId());
+            if (brokerUsageInfo != null) {
+                int replicas = brokerUsageInfo.getNeeded();
+                Map<String, UsageInfo> subscriptionUsage = placement.getResource("subscription");
+                for (String container : subscriptionUsage.keySet()) {
+                    shardedBrokers.add(new BrokerInfo(container, subscriptionUsage.get(container).getUsed()));
+                }
+                shardedBrokers.sort(Comparator.comparingDouble(BrokerInfo::getCredit));
+                if (shardedBrokers.size() < replicas) {
+                    shardedBrokers.add(0, new BrokerInfo(brokerStatus.getClusterId()+"-"+shardedBrokers.size(), 0));
                 }
             }
             for (BrokerInfo brokerInfo : shardedBrokers) {
-                UsageInfo usageInfo = subscriptionUsage.computeIfAbsent(brokerInfo.getBrokerId(), k -> new UsageInfo());
+                placement.computeIfAbsent("subscription", brokerInfo.getBrokerId());
                 if (brokerInfo.getCredit() + requestedValue <= 1) {
 
                     BrokerStatus newBrokerStatus = new BrokerStatus(brokerStatus.getClusterId(), brokerInfo.getBrokerId());
                     brokerStatus.setState(BrokerState.Active);
                     subscription.getStatus().setBrokerStatuses(Collections.singletonList(newBrokerStatus));
-                    usageInfo.addUsed(requestedValue);
+                    placement.addUsed("subscription", brokerInfo.getBrokerId(), requestedValue);
                     break;
                 }
             }
@@ -252,34 +243,35 @@ public class AddressProvisioner {
         return !subscription.getStatus().getBrokerStatuses().isEmpty();
     }
 
-    private Map<String, Map<String, UsageInfo>> checkQuotaForAddress(Map<String, Double> limits, Map<String, Map<String, UsageInfo>> usage, Address address, Set<Address> addressSet) {
+    /**
+     * Place an address and check that the resources needed are within the limits. The changes to the usage are not
+     * committed or rolled back.
+     */
+    private boolean checkQuotaForAddress(Map<String, Double> limits, PlacementEngine placement, Address address, Map<String, Address> addressesByName) {
         AddressPlan desiredPlan = addressResolver.getDesiredPlan(address);
         AddressPlanStatus appliedPlan = Optional.ofNullable(address.getStatus()).map(AddressStatus::getPlanStatus).orElse(null);
 
-        Map<String, Map<String, UsageInfo>> needed = copyUsageMap(usage);
-
         for (Map.Entry<String, Double> resourceRequest : desiredPlan.getResources().entrySet()) {
 
             String resourceName = resourceRequest.getKey();
-            Map<String, UsageInfo> resourceUsage = needed.computeIfAbsent(resourceName, k -> new HashMap<>());
+            Map<String, UsageInfo> resourceUsage = placement.getResource(resourceName);
             if ("router".equals(resourceName)) {
-                UsageInfo info = resourceUsage.computeIfAbsent("all", k -> new UsageInfo());
-
                 // Remove existing usage
                 if (appliedPlan != null && appliedPlan.getResources().get(resourceName) != null) {
-                    info.subUsed(appliedPlan.getResources().get(resourceName));
+                    placement.subUsed(resourceName, "all", appliedPlan.getResources().get(resourceName));
                 }
 
                 // Add new usage
-                info.addUsed(resourceRequest.getValue());
+                placement.addUsed(resourceName, "all", resourceRequest.getValue());
             } else if ("broker".equals(resourceName)) {
                 if ("subscription".equals(address.getSpec().getType())) {
-                    Map<String, UsageInfo> subscriptionUsage = needed.computeIfAbsent("subscription", k -> new HashMap<>());
+                    // Subscriptions are accounted per broker container, in addition to the broker of the topic
+                    placement.getResource("subscription");
                     if (address.getSpec().getTopic() != null ) {
-                        Address topic = findAddress(address.getSpec().getTopic(), addressSet);
-                        if (!scheduleSubscription(address, topic, resourceUsage, subscriptionUsage, resourceRequest.getValue())) {
+                        Address topic = addressesByName.get(address.getSpec().getTopic());
+                        if (!scheduleSubscription(address, topic, placement, resourceRequest.getValue())) {
                             log.warn("Unable to find broker for scheduling subscription: {}", address);
-                            return null;
+                            return false;
                         }
                     } else {
                         log.warn("No topic specified for subscription {}", address.getSpec().getAddress());
@@ -288,9 +280,8 @@ public class AddressProvisioner {
                     // Remove existing usage
                     if (appliedPlan != null && appliedPlan.getResources().get(resourceName) != null && address.getStatus() != null) {
                         for (BrokerStatus brokerStatus : address.getStatus().getBrokerStatuses()) {
-                            UsageInfo info = resourceUsage.get(brokerStatus.getClusterId());
-                            if (info != null) {
-                                info.subUsed(appliedPlan.getResources().get(resourceName));
+                            if (resourceUsage.containsKey(brokerStatus.getClusterId())) {
+                                placement.subUsed(resourceName, brokerStatus.getClusterId(), appliedPlan.getResources().get(resourceName));
                             }
                         }
                     }
@@ -299,20 +290,20 @@ public class AddressProvisioner {
                     boolean scheduled = false;
                     int partitions = getQueuePartitions(resourceRequest.getValue(), desiredPlan.getPartitions());
                     for (int retry = 0; !scheduled && retry < partitions + 1; retry++) {
-                        scheduled = scheduleAddress(resourceUsage, address, resourceRequest.getValue(), partitions);
+                        scheduled = scheduleAddress(placement, address, resourceRequest.getValue(), partitions);
                         if (!scheduled) {
-                            allocateBroker(resourceUsage, pooledClusterIdPrefix);
+                            allocateBroker(placement, pooledClusterIdPrefix);
                         }
                     }
                     if (!scheduled) {
                         log.warn("Unable to find broker for scheduling {}", address);
-                        return null;
+                        return false;
                     }
                 } else {
                     String clusterId = getShardedClusterId(address);
                     UsageInfo info = new UsageInfo();
                     info.addUsed(resourceRequest.getValue());
-                    resourceUsage.put(clusterId, info);
+                    placement.put(resourceName, clusterId, info);
 
 	                List<BrokerInfo> brokers = new ArrayList<>();
                     for (String host : resourceUsage.keySet()) {
@@ -330,8 +321,7 @@ public class AddressProvisioner {
 
                     for (BrokerInfo brokerInfo : brokers) {
                         if (brokerInfo.getCredit() + resourceRequest.getValue() < 1) {
-                            UsageInfo used = resourceUsage.get(brokerInfo.getBrokerId());
-                            used.addUsed(resourceRequest.getValue());
+                            placement.addUsed(resourceName, brokerInfo.getBrokerId(), resourceRequest.getValue());
                             break;
                         } else {
                             log.warn("not enough credit on {} for {} ",brokerInfo.getBrokerId(), address.getSpec().getAddress() );
@@ -342,23 +332,23 @@ public class AddressProvisioner {
                 log.warn("should not be called with: {}", resourceName);
             }
 
-            double resourceNeeded = sumNeeded(resourceUsage);
+            double resourceNeeded = placement.sumNeeded(resourceName);
             if (resourceNeeded > limits.get(resourceName)) {
                 log.info("address {} for {} needed {} > limit {}", address.getSpec().getAddress(), resourceName, resourceNeeded, limits.get(resourceRequest.getKey()));
                 address.getStatus().appendMessage("Quota exceeded");
-                return null;
+                return false;
             }
         }
 
-        log.debug("address: {}, usage {}, needed: {}, aggregate: {}", address.getSpec().getAddress(), usage, needed, limits);
+        log.debug("address: {}, needed: {}, aggregate: {}", address.getSpec().getAddress(), placement.getUsage(), limits);
 
-        double totalNeeded = sumTotalNeeded(needed);
+        double totalNeeded = placement.sumTotalNeeded();
         if (totalNeeded > limits.get("aggregate")) {
-            log.info("address {} usage {}, total needed {} > limit {}", address.getSpec().getAddress(), usage, totalNeeded, limits.get("aggregate"));
+            log.info("address {} total needed {} > limit {}", address.getSpec().getAddress(), totalNeeded, limits.get("aggregate"));
             address.getStatus().appendMessage("Quota exceeded");
-            return null;
+            return false;
         }
-        return needed;
+        return true;
     }
 
     static double getPartitionedCredits(double credits, int partitions) {
@@ -505,52 +495,32 @@ public class AddressProvisioner {
     }
 
     private final Pattern pooledPattern;
-    private boolean scheduleAddress(Map<String, UsageInfo> usageMap, Address address, double credit, int partitions) {
-
-        List<BrokerInfo> brokers = new ArrayList<>();
-        for (String host : usageMap.keySet()) {
-            if (pooledPattern.matcher(host).matches()) {
-                brokers.add(new BrokerInfo(host, usageMap.get(host).getUsed()));
-            }
-        }
-
-        brokers.sort(Comparator.comparing(BrokerInfo::getBrokerId));
-
+    private boolean scheduleAddress(PlacementEngine placement, Address address, double credit, int partitions) {
+        // The first pooled brokers in order of id with enough credit left, one per partition
         double partitionCredit = credit / partitions;
-        List<BrokerInfo> selectedBrokers = new ArrayList<>();
-        List<BrokerStatus> brokerStatuses = new ArrayList<>();
-        for (BrokerInfo brokerInfo : brokers) {
-            if (partitions <= 0) {
-                break;
-            }
-            if (brokerInfo.getCredit() + partitionCredit <= 1) {
-                BrokerStatus brokerStatus = new BrokerStatus(brokerInfo.getBrokerId(), brokerInfo.getBrokerId() + "-0");
-                brokerStatus.setState(BrokerState.Active);
-                brokerStatuses.add(brokerStatus);
-
-                selectedBrokers.add(brokerInfo);
-                partitions--;
-            }
-        }
+        List<String> selectedBrokers = placement.findPooledBrokers(Math.max(0, partitions), partitionCredit);
 
         // Unable to find enough brokers for all partition
-        if (partitions > 0) {
+        if (selectedBrokers.size() < partitions) {
             return false;
         }
 
-        for (BrokerInfo brokerInfo : selectedBrokers) {
-            UsageInfo used = usageMap.get(brokerInfo.getBrokerId());
-            used.addUsed(partitionCredit);
+        List<BrokerStatus> brokerStatuses = new ArrayList<>();
+        for (String brokerId : selectedBrokers) {
+            BrokerStatus brokerStatus = new BrokerStatus(brokerId, brokerId + "-0");
+            brokerStatus.setState(BrokerState.Active);
+            brokerStatuses.add(brokerStatus);
+            placement.addUsed("broker", brokerId, partitionCredit);
         }
 
         updateBrokerStatus(address, brokerStatuses);
         return true;
     }
 
-    private String allocateBroker(Map<String, UsageInfo> resourceNeeded, String clusterIdPrefix) {
+    private String allocateBroker(PlacementEngine placement, String clusterIdPrefix) {
         String randomId = brokerIdGenerator.generateBrokerId();
         String clusterId = clusterIdPrefix + randomId;
-        resourceNeeded.put(clusterId, new UsageInfo());
+        placement.put("broker", clusterId, new UsageInfo());
         return clusterId;
     }
 
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import io.enmasse.address.model.Address;
+import io.enmasse.address.model.AddressBuilder;
+import io.enmasse.address.model.AddressSpec;
+import io.enmasse.address.model.AddressSpecForwarder;
+import io.enmasse.address.model.AddressStatus;
+import io.enmasse.config.AnnotationKeys;
+import io.enmasse.k8s.api.AddressApi;
+import io.enmasse.metrics.api.HistogramRecorder;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes the status of addresses back to the API server without blocking the address controller.
+ *
+ * Writes are spread over a fixed number of threads by address name, so that the writes of an address are never
+ * concurrent. Only the latest status submitted for an address is written, and the writes of all threads are limited
+ * to a maximum rate. A write that conflicts with a newer version of the address is retried on that version if its spec
+ * is unchanged, otherwise it is dropped, as the controller will compute the status of the new version. A write that
+ * fails with a connection or server error is retried with backoff. If it still fails, or fails with another error, it
+ * is counted as failed and left to the controller, which submits the status again as long as it differs from the one
+ * stored. Writes not started yet for an address being deleted are dropped.
+ */
+class AddressStatusWriter {
+    private static final Logger log = LoggerFactory.getLogger(AddressStatusWriter.class);
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+
+    private final AddressApi addressApi;
+    private final ExecutorService[] writers;
+    private final long writeIntervalNanos;
+    private final Map<String, Address> pending = new ConcurrentHashMap<>();
+    private final HistogramRecorder writeLatency = new HistogramRecorder(0.005, 0.01, 0.05, 0.1, 0.5, 1.0, 5.0, 10.0);
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private long nextWrite = System.nanoTime();
+
+    /**
+     * @param concurrency number of writes in flight at most
+     * @param writesPerSecond maximum rate of writes, or 0 for no limit
+     */
+    AddressStatusWriter(AddressApi addressApi, int concurrency, double writesPerSecond) {
+        this.addressApi = addressApi;
+        this.writers = new ExecutorService[Math.max(1, concurrency)];
+        for (int i = 0; i < writers.length; i++) {
+            String name = "address-status-writer-" + i;
+            writers[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.writeIntervalNanos = writesPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / writesPerSecond) : 0;
+    }
+
+    /**
+     * Write an address, replacing any previous version of it not written yet. The address is copied, so it can be
+     * changed once submitted.
+     */
+    void submit(Address address) {
+        String name = address.getMetadata().getName();
+        if (pending.put(name, copy(address)) == null) {
+            writers[(name.hashCode() & 0x7fffffff) % writers.length].execute(() -> write(name));
+        }
+    }
+
+    /**
+     * Drop the write of an address not started yet, as the address is being deleted.
+     */
+    void cancel(Address address) {
+        pending.remove(address.getMetadata().getName());
+    }
+
+    int getPending() {
+        return pending.size();
+    }
+
+    HistogramRecorder getWriteLatency() {
+        return writeLatency;
+    }
+
+    long getConflicts() {
+        return conflicts.sum();
+    }
+
+    long getFailures() {
+        return failures.sum();
+    }
+
+    void stop() throws InterruptedException {
+        for (ExecutorService writer : writers) {
+            writer.shutdown();
+        }
+        for (ExecutorService writer : writers) {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private void write(String name) {
+        Address address = pending.remove(name);
+        if (address == null) {
+            return;
+        }
+        try {
+            for (int attempt = 0; address != null; attempt++) {
+                acquire();
+                long start = System.nanoTime();
+                long backoff = 0;
+                try {
+                    addressApi.replaceAddress(address);
+                    address = null;
+                } catch (KubernetesClientException e) {
+                    if (isConflict(e)) {
+                        conflicts.increment();
+                        address = attempt < MAX_RETRIES ? rebase(address) : null;
+                    } else if (isTransient(e) && attempt < MAX_RETRIES) {
+                        if (pending.containsKey(name)) {
+                            log.debug("Not retrying write of address {}, newer status pending", name);
+                            address = null;
+                        } else {
+                            log.debug("Retrying write of address {}: {}", name, e.getMessage());
+                            backoff = RETRY_BACKOFF_MILLIS << attempt;
+                        }
+                    } else {
+                        throw e;
+                    }
+                } finally {
+                    writeLatency.observe((double) (System.nanoTime() - start) / TimeUnit.SECONDS.toNanos(1));
+                }
+                if (backoff > 0) {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failures.increment();
+            log.warn("Error writing status of address {}", name, e);
+        }
+    }
+
+    private static boolean isConflict(KubernetesClientException e) {
+        return statusCode(e) == 409;
+    }
+
+    /**
+     * Whether the error may go away by itself: no response, too many requests or a server error.
+     */
+    private static boolean isTransient(KubernetesClientException e) {
+        int code = statusCode(e);
+        return code == 0 || code == 429 || code >= 500;
+    }
+
+    private static int statusCode(KubernetesClientException e) {
+        return e.getStatus() != null && e.getStatus().getCode() != null ? e.getStatus().getCode() : e.getCode();
+    }
+
+    /**
+     * The status of an address applied to the latest version of it, or null if it should not be written anymore.
+     */
+    private Address rebase(Address address) {
+        String name = address.getMetadata().getName();
+        if (pending.containsKey(name)) {
+            log.debug("Address {} is stale, newer status pending", name);
+            return null;
+        }
+        Optional<Address> latest = addressApi.getAddressWithName(address.getMetadata().getNamespace(), name);
+        if (!latest.isPresent() || !sameSpec(latest.get().getSpec(), address.getSpec())) {
+            // The address controller will be notified of the new version by the watcher
+            log.debug("Address {} has stale resource version {}", name, address.getMetadata().getResourceVersion());
+            return null;
+        }
+        Address rebased = copy(latest.get());
+        rebased.setStatus(copyStatus(address.getStatus()));
+        String appliedPlan = address.getAnnotation(AnnotationKeys.APPLIED_PLAN);
+        if (appliedPlan != null) {
+            rebased.putAnnotation(AnnotationKeys.APPLIED_PLAN, appliedPlan);
+        }
+        return rebased;
+    }
+
+    private static boolean sameSpec(AddressSpec a, AddressSpec b) {
+        return Objects.equals(a.getAddress(), b.getAddress()) &&
+                Objects.equals(a.getType(), b.getType()) &&
+                Objects.equals(a.getPlan(), b.getPlan()) &&
+                Objects.equals(a.getTopic(), b.getTopic()) &&
+                Objects.equals(forwarders(a), forwarders(b));
+    }
+
+    private static List<List<Object>> forwarders(AddressSpec spec) {
+        List<List<Object>> forwarders = new ArrayList<>();
+        if (spec.getForwarders() != null) {
+            for (AddressSpecForwarder forwarder : spec.getForwarders()) {
+                forwarders.add(Arrays.asList(forwarder.getName(), forwarder.getRemoteAddress(), forwarder.getDirection()));
+            }
+        }
+        return forwarders;
+    }
+
+    /**
+     * Wait until the rate limit allows the next write.
+     */
+    private void acquire() throws InterruptedException {
+        if (writeIntervalNanos == 0) {
+            return;
+        }
+        long delay;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long next = Math.max(now, nextWrite);
+            nextWrite = next + writeIntervalNanos;
+            delay = next - now;
+        }
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+
+    private static Address copy(Address address) {
+        Address copy = new AddressBuilder(address).build();
+        copy.setStatus(copyStatus(address.getStatus()));
+        return copy;
+    }
+
+    private static AddressStatus copyStatus(AddressStatus status) {
+        AddressStatus copy = new AddressStatus(status);
+        copy.setPlanStatus(status.getPlanStatus());
+        return copy;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import io.enmasse.address.model.Address;
+import io.enmasse.address.model.AddressPlanStatus;
+import io.enmasse.address.model.BrokerStatus;
+import io.enmasse.config.AnnotationKeys;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The resource usage of the addresses of the address space, kept between passes of the address controller.
+ *
+ * The usage of each address is computed when the address is first seen, and again only if what it depends on (type,
+ * plan and broker statuses) has changed. The usage of each resource is a running total, to which the usage of an
+ * address is added when it is computed and from which it is subtracted when the address changes or is deleted, so
+ * that resources shared by all addresses, like the router, are not summed again over all addresses on every change.
+ * Everything is computed from scratch when the schema changes, and at a fixed interval, which also drops any rounding
+ * error accumulated in the totals.
+ *
+ * Not thread safe, it is used from the address controller thread only.
+ */
+class AddressUsageCache {
+    private final Duration fullUpdateInterval;
+    private final Clock clock;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Map<String, Total>> totals = new HashMap<>();
+    private Object schema;
+    private Instant lastFullUpdate;
+
+    AddressUsageCache(Duration fullUpdateInterval, Clock clock) {
+        this.fullUpdateInterval = fullUpdateInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Update the usage with the current addresses and return it. The returned map is a copy that may be modified.
+     *
+     * @param schema the schema the addresses are resolved with, everything is computed again when it is not the same
+     */
+    Map<String, Map<String, UsageInfo>> update(AddressProvisioner provisioner, Object schema, Set<Address> addresses) {
+        Instant now = clock.instant();
+        if (schema != this.schema || lastFullUpdate == null || lastFullUpdate.plus(fullUpdateInterval).isBefore(now)) {
+            entries.clear();
+            totals.clear();
+            this.schema = schema;
+            lastFullUpdate = now;
+        }
+
+        Set<String> names = new HashSet<>(addresses.size());
+        for (Address address : addresses) {
+            String name = address.getMetadata().getName();
+            names.add(name);
+            List<Object> key = usageKey(address);
+            Entry entry = entries.get(name);
+            if (entry == null || !entry.key.equals(key)) {
+                if (entry != null) {
+                    subtract(entry);
+                }
+                entry = new Entry(key, provisioner.checkUsage(Collections.singleton(address)));
+                entries.put(name, entry);
+                add(entry);
+            }
+        }
+
+        if (entries.size() > names.size()) {
+            for (String name : new ArrayList<>(entries.keySet())) {
+                if (!names.contains(name)) {
+                    subtract(entries.remove(name));
+                }
+            }
+        }
+
+        return copy();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * What the usage of an address depends on.
+     */
+    private static List<Object> usageKey(Address address) {
+        List<List<Object>> brokerStatuses = new ArrayList<>(address.getStatus().getBrokerStatuses().size());
+        for (BrokerStatus brokerStatus : address.getStatus().getBrokerStatuses()) {
+            brokerStatuses.add(Arrays.asList(brokerStatus.getClusterId(), brokerStatus.getContainerId(), brokerStatus.getState()));
+        }
+        AddressPlanStatus planStatus = address.getStatus().getPlanStatus();
+        List<Object> appliedPlan = null;
+        if (planStatus != null) {
+            appliedPlan = Arrays.asList(planStatus.getName(), planStatus.getResources() != null ? new HashMap<>(planStatus.getResources()) : null, planStatus.getPartitions());
+        }
+        return Arrays.asList(
+                address.getSpec().getType(),
+                address.getSpec().getPlan(),
+                address.getAnnotation(AnnotationKeys.APPLIED_PLAN),
+                appliedPlan,
+                brokerStatuses);
+    }
+
+    private void add(Entry entry) {
+        entry.usage.forEach((resourceName, byId) -> byId.forEach((id, info) -> {
+            Total total = totals.computeIfAbsent(resourceName, r -> new HashMap<>()).computeIfAbsent(id, i -> new Total());
+            total.users++;
+            total.usage.addUsed(info.getUsed());
+        }));
+    }
+
+    private void subtract(Entry entry) {
+        entry.usage.forEach((resourceName, byId) -> byId.forEach((id, info) -> {
+            Map<String, Total> resourceTotals = totals.get(resourceName);
+            Total total = resourceTotals != null ? resourceTotals.get(id) : null;
+            if (total == null) {
+                return;
+            }
+            if (--total.users == 0) {
+                resourceTotals.remove(id);
+                if (resourceTotals.isEmpty()) {
+                    totals.remove(resourceName);
+                }
+            } else {
+                total.usage.subUsed(info.getUsed());
+            }
+        }));
+    }
+
+    private Map<String, Map<String, UsageInfo>> copy() {
+        Map<String, Map<String, UsageInfo>> copy = new HashMap<>();
+        for (Map.Entry<String, Map<String, Total>> resourceTotals : totals.entrySet()) {
+            Map<String, UsageInfo> byId = new HashMap<>();
+            for (Map.Entry<String, Total> idTotal : resourceTotals.getValue().entrySet()) {
+                byId.put(idTotal.getKey(), new UsageInfo(idTotal.getValue().usage));
+            }
+            copy.put(resourceTotals.getKey(), byId);
+        }
+        return copy;
+    }
+
+    private static class Entry {
+        private final List<Object> key;
+        private final Map<String, Map<String, UsageInfo>> usage;
+
+        private Entry(List<Object> key, Map<String, Map<String, UsageInfo>> usage) {
+            this.key = key;
+            this.usage = usage;
+        }
+    }
+
+    /**
+     * Running total of the usage of a resource, with the number of addresses using it.
+     */
+    private static class Total {
+        private final UsageInfo usage = new UsageInfo();
+        private int users;
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The resource usage of the address space while the pending addresses are placed, in one pass of the address
+ * provisioner.
+ *
+ * The changes made while placing an address are recorded until they are committed, so that they can be rolled back if
+ * the address can not be placed, without copying the usage for every address. The needed resources are summed in the
+ * same way, from the committed sums and the changes of the address being placed.
+ *
+ * Pooled brokers are kept in a tree ordered by broker id, where every node holds the most remaining credit of the
+ * brokers below it. The first brokers with enough remaining credit for an address are found without going through all
+ * brokers, and are the same as the ones found by going through the brokers in order of id.
+ *
+ * Usage must only be changed through this class, so that the sums and the tree are kept up to date.
+ */
+class PlacementEngine {
+    private static final String BROKER = "broker";
+
+    private final Map<String, Map<String, UsageInfo>> usage = new HashMap<>();
+    private final Pattern pooledPattern;
+    private final Map<String, Integer> committedNeeded = new HashMap<>();
+
+    // Usage before the changes of the address being placed, by resource and id, null if absent
+    private final Map<String, Map<String, UsageInfo>> changes = new HashMap<>();
+    private final Set<String> createdResources = new HashSet<>();
+
+    // Pooled brokers ordered by id, and a tree of the least credit used by the brokers below each node
+    private final List<String> pooledBrokers = new ArrayList<>();
+    private double[] minUsed;
+    private int leaves;
+
+    /**
+     * @param usageMap the usage to start from, it is copied and not modified
+     */
+    PlacementEngine(Map<String, Map<String, UsageInfo>> usageMap, Pattern pooledPattern) {
+        this.pooledPattern = pooledPattern;
+        for (Map.Entry<String, Map<String, UsageInfo>> resourceUsage : usageMap.entrySet()) {
+            Map<String, UsageInfo> byId = new HashMap<>();
+            int needed = 0;
+            for (Map.Entry<String, UsageInfo> idUsage : resourceUsage.getValue().entrySet()) {
+                byId.put(idUsage.getKey(), new UsageInfo(idUsage.getValue()));
+                needed += idUsage.getValue().getNeeded();
+                if (BROKER.equals(resourceUsage.getKey()) && pooledPattern.matcher(idUsage.getKey()).matches()) {
+                    pooledBrokers.add(idUsage.getKey());
+                }
+            }
+            usage.put(resourceUsage.getKey(), byId);
+            committedNeeded.put(resourceUsage.getKey(), needed);
+        }
+        Collections.sort(pooledBrokers);
+        buildTree();
+    }
+
+    /**
+     * The current usage, including changes not committed.
+     */
+    Map<String, Map<String, UsageInfo>> getUsage() {
+        return usage;
+    }
+
+    /**
+     * The usage of a resource by id, created if absent. It must not be modified.
+     */
+    Map<String, UsageInfo> getResource(String resourceName) {
+        Map<String, UsageInfo> resourceUsage = usage.get(resourceName);
+        if (resourceUsage == null) {
+            resourceUsage = new HashMap<>();
+            usage.put(resourceName, resourceUsage);
+            createdResources.add(resourceName);
+        }
+        return resourceUsage;
+    }
+
+    /**
+     * The usage of a resource id, created if absent. It must not be modified.
+     */
+    UsageInfo computeIfAbsent(String resourceName, String id) {
+        Map<String, UsageInfo> resourceUsage = getResource(resourceName);
+        UsageInfo info = resourceUsage.get(id);
+        if (info == null) {
+            record(resourceName, id, null);
+            info = new UsageInfo();
+            resourceUsage.put(id, info);
+            updateTree(resourceName, id, info);
+        }
+        return info;
+    }
+
+    void put(String resourceName, String id, UsageInfo info) {
+        Map<String, UsageInfo> resourceUsage = getResource(resourceName);
+        record(resourceName, id, resourceUsage.get(id));
+        resourceUsage.put(id, info);
+        updateTree(resourceName, id, info);
+    }
+
+    void addUsed(String resourceName, String id, double credit) {
+        UsageInfo info = computeIfAbsent(resourceName, id);
+        record(resourceName, id, info);
+        info.addUsed(credit);
+        updateTree(resourceName, id, info);
+    }
+
+    void subUsed(String resourceName, String id, double credit) {
+        UsageInfo info = computeIfAbsent(resourceName, id);
+        record(resourceName, id, info);
+        info.subUsed(credit);
+        updateTree(resourceName, id, info);
+    }
+
+    /**
+     * The first pooled brokers in order of id with room for a credit, at most count of them.
+     */
+    List<String> findPooledBrokers(int count, double credit) {
+        List<String> found = new ArrayList<>(count);
+        int from = 0;
+        while (found.size() < count) {
+            int index = findFirst(1, 0, leaves, from, credit);
+            if (index < 0) {
+                break;
+            }
+            found.add(pooledBrokers.get(index));
+            from = index + 1;
+        }
+        return found;
+    }
+
+    int sumNeeded(String resourceName) {
+        int needed = committedNeeded.getOrDefault(resourceName, 0);
+        Map<String, UsageInfo> before = changes.get(resourceName);
+        if (before != null) {
+            Map<String, UsageInfo> resourceUsage = usage.get(resourceName);
+            for (Map.Entry<String, UsageInfo> change : before.entrySet()) {
+                needed += needed(resourceUsage.get(change.getKey())) - needed(change.getValue());
+            }
+        }
+        return needed;
+    }
+
+    int sumTotalNeeded() {
+        int totalNeeded = 0;
+        for (String resourceName : usage.keySet()) {
+            if (!"subscription".equals(resourceName)) {
+                totalNeeded += sumNeeded(resourceName);
+            }
+        }
+        return totalNeeded;
+    }
+
+    /**
+     * Keep the changes made since the last commit or rollback.
+     */
+    void commit() {
+        for (String resourceName : changes.keySet()) {
+            committedNeeded.put(resourceName, sumNeeded(resourceName));
+        }
+        changes.clear();
+        createdResources.clear();
+    }
+
+    /**
+     * Undo the changes made since the last commit or rollback.
+     */
+    void rollback() {
+        for (Map.Entry<String, Map<String, UsageInfo>> resourceChanges : changes.entrySet()) {
+            String resourceName = resourceChanges.getKey();
+            Map<String, UsageInfo> resourceUsage = usage.get(resourceName);
+            for (Map.Entry<String, UsageInfo> change : resourceChanges.getValue().entrySet()) {
+                if (change.getValue() == null) {
+                    resourceUsage.remove(change.getKey());
+                } else {
+                    resourceUsage.put(change.getKey(), change.getValue());
+                }
+                updateTree(resourceName, change.getKey(), change.getValue());
+            }
+        }
+        for (String resourceName : createdResources) {
+            usage.remove(resourceName);
+        }
+        changes.clear();
+        createdResources.clear();
+    }
+
+    private void record(String resourceName, String id, UsageInfo current) {
+        Map<String, UsageInfo> before = changes.computeIfAbsent(resourceName, r -> new HashMap<>());
+        if (!before.containsKey(id)) {
+            before.put(id, current != null ? new UsageInfo(current) : null);
+        }
+    }
+
+    private static int needed(UsageInfo info) {
+        return info != null ? info.getNeeded() : 0;
+    }
+
+    private void updateTree(String resourceName, String id, UsageInfo info) {
+        if (!BROKER.equals(resourceName) || !pooledPattern.matcher(id).matches()) {
+            return;
+        }
+        int index = Collections.binarySearch(pooledBrokers, id);
+        if (info == null) {
+            if (index >= 0) {
+                pooledBrokers.remove(index);
+                buildTree();
+            }
+        } else if (index < 0) {
+            pooledBrokers.add(-index - 1, id);
+            buildTree();
+        } else {
+            int node = leaves + index;
+            minUsed[node] = info.getUsed();
+            for (node /= 2; node >= 1; node /= 2) {
+                minUsed[node] = Math.min(minUsed[2 * node], minUsed[2 * node + 1]);
+            }
+        }
+    }
+
+    private void buildTree() {
+        leaves = 1;
+        while (leaves < pooledBrokers.size()) {
+            leaves *= 2;
+        }
+        minUsed = new double[2 * leaves];
+        Arrays.fill(minUsed, Double.POSITIVE_INFINITY);
+        Map<String, UsageInfo> brokerUsage = usage.get(BROKER);
+        for (int i = 0; i < pooledBrokers.size(); i++) {
+            minUsed[leaves + i] = brokerUsage.get(pooledBrokers.get(i)).getUsed();
+        }
+        for (int node = leaves - 1; node >= 1; node--) {
+            minUsed[node] = Math.min(minUsed[2 * node], minUsed[2 * node + 1]);
+        }
+    }
+
+    /**
+     * The index of the first broker from an index with room for a credit, among the brokers below a node, or -1.
+     */
+    private int findFirst(int node, int low, int high, int from, double credit) {
+        // Same comparison as done for a single broker, so that a rounding difference can not change the result
+        if (high <= from || !(minUsed[node] + credit <= 1)) {
+            return -1;
+        }
+        if (high - low == 1) {
+            return low;
+        }
+        int middle = (low + high) >>> 1;
+        int index = findFirst(2 * node, low, middle, from, credit);
+        return index >= 0 ? index : findFirst(2 * node + 1, middle, high, from, credit);
+    }
+}
@@ -4,12 +4,18 @@
  */
 package io.enmasse.controller.standard;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import io.enmasse.address.model.*;
 
+/**
+ * The entities of one router. The addresses, autoLinks and linkRoutes are indexed by address when collected, so that
+ * checking an address is a lookup rather than a scan. Checks across routers are done by {@link RouterStatusSnapshot}.
+ */
 class RouterStatus {
     private final String routerId;
     private final List<String> addresses;
@@ -18,6 +24,10 @@ class RouterStatus {
     private final List<String> connections;
     private final List<List<String>> links;
 
+    private final Set<String> addressIndex;
+    private final Map<String, Integer> autoLinkCounts = new HashMap<>();
+    private final Map<String, Integer> linkRouteCounts = new HashMap<>();
+
     RouterStatus(String routerId, List<String> addresses, List<List<String>> autoLinks, List<List<String>> linkRoutes, List<String> connections, List<List<String>> links) {
         this.routerId = routerId;
         this.addresses = addresses;
@@ -25,15 +35,45 @@ class RouterStatus {
         this.linkRoutes = linkRoutes;
         this.connections = connections;
         this.links = links;
+
+        this.addressIndex = new HashSet<>(addresses);
+        for (List<String> autoLink : autoLinks) {
+            autoLinkCounts.merge(autoLink.get(0), 1, Integer::sum);
+        }
+        for (List<String> linkRoute : linkRoutes) {
+            if (linkRoute.size() > 0) {
+                linkRouteCounts.merge(linkRoute.get(0), 1, Integer::sum);
+            }
+        }
     }
 
     public String getRouterId() {
         return routerId;
     }
 
+    List<String> getAddresses() {
+        return addresses;
+    }
+
+    List<List<String>> getAutoLinks() {
+        return autoLinks;
+    }
+
+    List<List<String>> getLinkRoutes() {
+        return linkRoutes;
+    }
+
+    List<String> getConnections() {
+        return connections;
+    }
+
+    List<List<String>> getLinks() {
+        return links;
+    }
+
     public int checkAddress(Address address) {
         int ok = 0;
-        boolean found = addresses.contains(address.getSpec().getAddress());
+        boolean found = addressIndex.contains(address.getSpec().getAddress());
         if (!found) {
             address.getStatus().setReady(false).appendMessage("Address " + address.getSpec().getAddress() + " not found on " + routerId);
         } else {
@@ -43,15 +83,7 @@ class RouterStatus {
     }
 
     public int checkAutoLinks(Address address) {
-
-        int ok = 0;
-        for (List<String> autoLink : autoLinks) {
-            String addr = autoLink.get(0);
-
-            if (addr.equals(address.getSpec().getAddress())) {
-                ok++;
-            }
-        }
+        int ok = autoLinkCounts.getOrDefault(address.getSpec().getAddress(), 0);
 
         if (ok < 2) {
             address.getStatus().setReady(false).appendMessage("Address " + address.getSpec().getAddress() + " is missing autoLinks on " + routerId);
@@ -61,18 +93,8 @@ class RouterStatus {
     }
 
     public int checkLinkRoutes(Address address) {
-        int ok = 0;
-
-        for (List<String> linkRoute : linkRoutes) {
-            if (linkRoute.size() > 0) {
-                String prefix = linkRoute.get(0);
-
-                // Pooled topics have active link routes
-                if (prefix.equals(address.getSpec().getAddress())) {
-                    ok++;
-                }
-            }
-        }
+        // Pooled topics have active link routes
+        int ok = linkRouteCounts.getOrDefault(address.getSpec().getAddress(), 0);
 
         if (ok < 2) {
             address.getStatus().setReady(false).appendMessage("Address " + address.getSpec().getAddress() + " is missing linkRoutes on " + routerId);
@@ -81,130 +103,6 @@ class RouterStatus {
         return ok;
     }
 
-    public static int checkActiveAutoLink(Address address, List<RouterStatus> routerStatusList) {
-        int ok = 0;
-        Set<String> active = new HashSet<>();
-
-        for (RouterStatus routerStatus : routerStatusList) {
-
-            for (List<String> autoLink : routerStatus.autoLinks) {
-                if (autoLink.size() > 3) {
-                    String addr = autoLink.get(0);
-                    String dir = autoLink.get(2);
-                    String operStatus = autoLink.get(3);
-
-                    if (addr.equals(address.getSpec().getAddress()) && operStatus.equals("active")) {
-                        active.add(dir);
-                    }
-                }
-            }
-        }
-
-        if (active.size() < 2) {
-            address.getStatus().setReady(false).appendMessage("Address " + address.getSpec().getAddress() + " is missing active autoLink (active in dirs: " + active + ")");
-        } else {
-            ok++;
-        }
-        return ok;
-    }
-
-    public static int checkActiveLinkRoute(Address address, List<RouterStatus> routerStatusList) {
-        int ok = 0;
-        Set<String> active = new HashSet<>();
-
-        for (RouterStatus routerStatus : routerStatusList) {
-
-            for (List<String> linkRoute : routerStatus.linkRoutes) {
-                if (linkRoute.size() > 3) {
-                    String addr = linkRoute.get(0);
-                    @SuppressWarnings("unused")
-                    String containerId = linkRoute.get(1);
-                    String dir = linkRoute.get(2);
-                    String operStatus = linkRoute.get(3);
-
-                    if (addr.equals(address.getSpec().getAddress()) && operStatus.equals("active")) {
-                        active.add(dir);
-                    }
-                }
-            }
-        }
-
-        if (active.size() < 2) {
-            address.getStatus().setReady(false).appendMessage("Address " + address.getSpec().getAddress() + " is missing active linkRoute (active in dirs: " + active + ")");
-        } else {
-            ok++;
-        }
-        return ok;
-    }
-
-    public static int checkConnection(Address address, List<RouterStatus> routerStatusList) {
-        int ok = 0;
-        for (RouterStatus routerStatus : routerStatusList) {
-            for (String containerId : routerStatus.connections) {
-                boolean found = false;
-                for (BrokerStatus brokerStatus : address.getStatus().getBrokerStatuses()) {
-                    if (containerId.startsWith(brokerStatus.getClusterId())) {
-                        ok++;
-                        found = true;
-                        break;
-                    }
-                }
-                if (found) {
-                    break;
-                }
-            }
-        }
-
-        if (ok == 0) {
-            address.getStatus().setReady(false).appendMessage("Address " + address.getSpec().getAddress() + " is missing connection from broker");
-        }
-        return ok;
-    }
-
-    public static int checkForwarderLinks(Address address, List<RouterStatus> routerStatusList) {
-        if (address.getSpec().getForwarders() == null || address.getSpec().getForwarders().isEmpty()) {
-            return 0;
-        }
-
-        int ok = 0;
-        for (AddressSpecForwarder forwarder : address.getSpec().getForwarders()) {
-            boolean found = false;
-            boolean isUp = false;
-            for (RouterStatus routerStatus : routerStatusList) {
-                for (List<String> entry : routerStatus.links) {
-                    String linkName = entry.get(0);
-                    if (linkName.equals(address.getForwarderLinkName(forwarder))) {
-                        found = true;
-                        String operStatus = entry.get(1);
-
-                        if ("up".equals(operStatus)) {
-                            isUp = true;
-                        }
-                        break;
-                    }
-                }
-            }
-
-            if (!found) {
-                updateForwarderStatus(forwarder.getName(), false, "Unable to find link for forwarder '" + forwarder.getName() + "'", address.getStatus().getForwarders());
-            } else if (!isUp) {
-                updateForwarderStatus(forwarder.getName(), false, "Unable to find link in the up state for forwarder '" + forwarder.getName() + "'", address.getStatus().getForwarders());
-            } else {
-                ok++;
-            }
-        }
-        return ok;
-    }
-
-    private static void updateForwarderStatus(String name, boolean isReady, String message, List<AddressStatusForwarder> forwarderStatuses) {
-        forwarderStatuses.stream()
-                .filter(c -> c.getName().equals(name))
-                .findFirst().ifPresent(s -> {
-            s.setReady(isReady);
-            s.appendMessage(message);
-        });
-    }
-
     @Override
     public String toString() {
         return new StringBuilder()
@@ -11,12 +11,21 @@ import io.fabric8.kubernetes.client.internal.readiness.Readiness;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ForkJoinPool;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -24,6 +33,14 @@ import static io.enmasse.controller.standard.ControllerKind.AddressSpace;
 import static io.enmasse.controller.standard.ControllerReason.RouterCheckFailed;
 import static io.enmasse.k8s.api.EventLogger.Type.Warning;
 
+/**
+ * Collects the status of all routers of the address space at an interval, or when woken up.
+ *
+ * Routers are queried in parallel without blocking, and each router must answer before a deadline, otherwise its
+ * query is cancelled: it is not retried anymore and its pending requests are dropped. A router is not queried again
+ * until its previous query has completed. The latest status of a router that did not answer is kept, until it is older
+ * than a maximum age, so that a slow router does not hold back the status of addresses on the others. The snapshot published holds the time of the oldest status in it.
+ */
 public class RouterStatusCache implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(RouterStatusCache.class);
     private final RouterManagement routerManagement;
@@ -37,49 +54,128 @@ public class RouterStatusCache implements Runnable {
     private final Object monitor = new Object();
     private boolean needCheck = false;
 
+    private final Duration routerTimeout;
+    private final Duration maxStatusAge;
+    private final Clock clock;
+
     private AtomicInteger routerCheckFailures = new AtomicInteger(0);
+    private AtomicInteger routerCheckTimeouts = new AtomicInteger(0);
     private volatile boolean checkRouterLinks = false;
-    private volatile List<RouterStatus> latestResult = Collections.emptyList();
+    private volatile RouterStatusSnapshot latestResult = RouterStatusSnapshot.EMPTY;
+    // Results of the previous check, by router, used as base for querying only the entities added since
+    private final Map<String, RouterStatusCollector.PreviousTables> previousTables;
+    // Latest status of each router, with the time it was collected
+    private final Map<String, CollectedStatus> collectedStatuses = new HashMap<>();
+    // Routers being queried, a router is left out of a check while its previous query has not completed
+    private final Set<String> querying = ConcurrentHashMap.newKeySet();
 
-    RouterStatusCache(RouterManagement routerManagement, Kubernetes kubernetes, EventLogger eventLogger, String addressSpace, Duration checkInterval)
+    /**
+     * @param routerTimeout time given to each router to answer, from the start of a check
+     * @param maxStatusAge maximum age of the status of a router that did not answer, before it is dropped
+     */
+    RouterStatusCache(RouterManagement routerManagement, Kubernetes kubernetes, EventLogger eventLogger, String addressSpace, Duration checkInterval, boolean deltaQueries,
+                      Duration routerTimeout, Duration maxStatusAge, Clock clock)
     {
         this.routerManagement = routerManagement;
         this.kubernetes = kubernetes;
         this.eventLogger = eventLogger;
         this.addressSpace = addressSpace;
         this.checkInterval = checkInterval;
+        this.previousTables = deltaQueries ? new ConcurrentHashMap<>() : null;
+        this.routerTimeout = routerTimeout;
+        this.maxStatusAge = maxStatusAge;
+        this.clock = clock;
     }
 
-    List<RouterStatus> getLatestResults() {
+    RouterStatusSnapshot getLatestResults() {
         return latestResult;
     }
 
-    void checkRouterStatus() {
-        RouterStatusCollector routerStatusCollector = new RouterStatusCollector(routerManagement, checkRouterLinks);
+    synchronized void checkRouterStatus() {
+        RouterStatusCollector routerStatusCollector = new RouterStatusCollector(routerManagement, checkRouterLinks, previousTables);
         List<Pod> routers = kubernetes.listRouters().stream()
                 .filter(Readiness::isPodReady)
                 .collect(Collectors.toList());
 
+        Set<String> routerNames = routers.stream().map(router -> router.getMetadata().getName()).collect(Collectors.toSet());
+        if (previousTables != null) {
+            previousTables.keySet().retainAll(routerNames);
+        }
+        collectedStatuses.keySet().retainAll(routerNames);
+
         log.info("Collecting status from {} routers", routers.size());
 
-        ExecutorCompletionService<RouterStatus> service = new ExecutorCompletionService<>(ForkJoinPool.commonPool());
+        Instant checkTime = clock.instant();
+        long deadline = System.nanoTime() + routerTimeout.toNanos();
+        Map<String, CompletableFuture<RouterStatus>> queries = new LinkedHashMap<>();
         for (Pod router : routers) {
-            service.submit(() -> routerStatusCollector.collect(router));
+            String name = router.getMetadata().getName();
+            if (!querying.add(name)) {
+                log.warn("Previous query of router {} has not completed, not querying it again", name);
+                continue;
+            }
+            CompletableFuture<RouterStatus> query;
+            try {
+                query = routerStatusCollector.collect(router);
+            } catch (RuntimeException e) {
+                query = new CompletableFuture<>();
+                query.completeExceptionally(e);
+            }
+            query.whenComplete((status, error) -> querying.remove(name));
+            queries.put(name, query);
         }
-        List<RouterStatus> routerStatusList = new ArrayList<>(routers.size());
-        for (int i = 0; i < routers.size(); i++) {
+
+        for (Map.Entry<String, CompletableFuture<RouterStatus>> query : queries.entrySet()) {
+            String name = query.getKey();
             try {
-                RouterStatus status = service.take().get();
+                RouterStatus status = query.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
                 if (status != null) {
-                    routerStatusList.add(status);
+                    collectedStatuses.put(name, new CollectedStatus(status, checkTime));
+                } else {
+                    collectedStatuses.remove(name);
                 }
-            } catch (Exception e) {
-                log.info("Error requesting router status. Ignoring", e);
-                eventLogger.log(RouterCheckFailed, e.getMessage(), Warning, AddressSpace, addressSpace);
+            } catch (TimeoutException e) {
+                query.getValue().cancel(false);
+                log.warn("Timed out after {} requesting status of router {}", routerTimeout, name);
+                eventLogger.log(RouterCheckFailed, "Timed out requesting status of router " + name, Warning, AddressSpace, addressSpace);
+                routerCheckTimeouts.incrementAndGet();
+            } catch (InterruptedException e) {
+                queries.values().forEach(future -> future.cancel(false));
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.info("Error requesting router status. Ignoring", e.getCause());
+                eventLogger.log(RouterCheckFailed, e.getCause().getMessage(), Warning, AddressSpace, addressSpace);
                 routerCheckFailures.incrementAndGet();
             }
         }
-        this.latestResult = routerStatusList;
+
+        List<RouterStatus> routerStatusList = new ArrayList<>(routers.size());
+        Instant oldest = checkTime;
+        int stale = 0;
+        for (Pod router : routers) {
+            String name = router.getMetadata().getName();
+            CollectedStatus collected = collectedStatuses.get(name);
+            if (collected == null) {
+                continue;
+            }
+            if (collected.time.plus(maxStatusAge).isBefore(checkTime)) {
+                log.warn("Status of router {} collected at {} is too old, dropping it", name, collected.time);
+                collectedStatuses.remove(name);
+                continue;
+            }
+            if (collected.time.isBefore(oldest)) {
+                oldest = collected.time;
+            }
+            if (!collected.time.equals(checkTime)) {
+                stale++;
+            }
+            routerStatusList.add(collected.status);
+        }
+        if (stale > 0) {
+            log.info("Using previous status of {} routers, collected since {}", stale, oldest);
+        }
+        this.latestResult = new RouterStatusSnapshot(routerStatusList, oldest);
     }
 
     public void setCheckRouterLinks(boolean checkRouterLinks) {
@@ -90,6 +186,21 @@ public class RouterStatusCache implements Runnable {
         return routerCheckFailures.get();
     }
 
+    public int getRouterCheckTimeouts() {
+        return routerCheckTimeouts.get();
+    }
+
+    /**
+     * Age of the oldest router status of the latest results, or empty until the routers are first checked.
+     */
+    public Optional<Duration> getLatestResultsAge() {
+        RouterStatusSnapshot result = latestResult;
+        if (result == RouterStatusSnapshot.EMPTY) {
+            return Optional.empty();
+        }
+        return Optional.of(Duration.between(result.getCollected(), clock.instant()));
+    }
+
     public void start() {
         running = true;
         thread = new Thread(this);
@@ -101,8 +212,10 @@ public class RouterStatusCache implements Runnable {
     public void stop() {
         try {
             running = false;
-            thread.interrupt();
-            thread.join();
+            if (thread != null) {
+                thread.interrupt();
+                thread.join();
+            }
         } catch (InterruptedException ignored) {
             log.warn("Interrupted while stopping", ignored);
         }
@@ -133,4 +246,14 @@ public class RouterStatusCache implements Runnable {
             monitor.notifyAll();
         }
     }
+
+    private static class CollectedStatus {
+        private final RouterStatus status;
+        private final Instant time;
+
+        private CollectedStatus(RouterStatus status, Instant time) {
+            this.status = status;
+            this.time = time;
+        }
+    }
 }
@@ -5,29 +5,44 @@
 package io.enmasse.controller.standard;
 
 import io.enmasse.amqp.RouterEntity;
+import io.enmasse.amqp.RouterEntityTable;
 import io.enmasse.amqp.RouterManagement;
 import io.fabric8.kubernetes.api.model.Container;
 import io.fabric8.kubernetes.api.model.ContainerPort;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
 import io.fabric8.kubernetes.api.model.Pod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 class RouterStatusCollector {
     private static final Logger log = LoggerFactory.getLogger(RouterStatusCollector.class);
     private final RouterManagement routerManagement;
     private final boolean checkRouterLinks;
+    private final Map<String, PreviousTables> previousTables;
 
-    public RouterStatusCollector(RouterManagement routerManagement, boolean checkRouterLinks) {
+    /**
+     * @param previousTables results of the previous collection by router, updated with the new ones. When set, the
+     *                       addresses and connections are queried only when added since the previous collection, unless
+     *                       the router has been restarted since.
+     */
+    public RouterStatusCollector(RouterManagement routerManagement, boolean checkRouterLinks, Map<String, PreviousTables> previousTables) {
         this.routerManagement = routerManagement;
         this.checkRouterLinks = checkRouterLinks;
+        this.previousTables = previousTables;
     }
 
-    public RouterStatus collect(Pod router) throws Exception {
+    /**
+     * Collect the status of the router, or null if it has no port to query. Cancelling the returned future cancels
+     * the query of the router.
+     */
+    public CompletableFuture<RouterStatus> collect(Pod router) {
         int port = 0;
         for (Container container : router.getSpec().getContainers()) {
             if (container.getName().equals("router")) {
@@ -43,7 +58,7 @@ class RouterStatusCollector {
             return doCollectStatus(router, port);
         } else {
             log.info("Unable to find appropriate port for router {}, skipping address check", router.getMetadata().getName());
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
     }
 
@@ -55,42 +70,102 @@ class RouterStatusCollector {
 
     private static final RouterEntity link = new RouterEntity("org.apache.qpid.dispatch.router.link", "linkName", "operStatus", "linkDir");
 
-    private RouterStatus doCollectStatus(Pod router, int port) throws Exception {
+    private CompletableFuture<RouterStatus> doCollectStatus(Pod router, int port) {
         String host = router.getStatus().getPodIP();
         log.debug("Collecting router status of router : {}", router.getMetadata().getName());
 
-        Map<RouterEntity, List<List<?>>> results;
+        String routerId = router.getMetadata().getName();
+        String instance = routerInstance(router);
+        Map<RouterEntity, RouterEntityTable> previous = Collections.emptyMap();
+        if (previousTables != null) {
+            PreviousTables previousOfRouter = previousTables.get(routerId);
+            // A router restarted with the same pod name has none of the entities of the previous one
+            if (previousOfRouter != null && previousOfRouter.instance.equals(instance)) {
+                previous = previousOfRouter.tables;
+            } else if (previousOfRouter != null) {
+                log.info("Router {} has been restarted, querying all its entities", routerId);
+            }
+        }
+
+        CompletableFuture<Map<RouterEntity, RouterEntityTable>> query;
         if (checkRouterLinks) {
-            results = routerManagement.query(host, port, address, autoLink, linkRoute, connection, link);
+            query = routerManagement.queryTablesAsync(host, port, previous, address, autoLink, linkRoute, connection, link);
         } else {
-            results = routerManagement.query(host, port, address, autoLink, linkRoute, connection);
+            query = routerManagement.queryTablesAsync(host, port, previous, address, autoLink, linkRoute, connection);
         }
 
-        String routerId = router.getMetadata().getName();
-        return new RouterStatus(routerId,
-                filterOnAttribute(String.class, 0, results.get(address)),
-                toTyped(String.class, results.get(autoLink)),
-                toTyped(String.class, results.get(linkRoute)),
-                filterOnAttribute(String.class, 0, results.get(connection)),
-                toTyped(String.class, results.getOrDefault(link, Collections.emptyList())));
+        CompletableFuture<RouterStatus> status = query.thenApply(results -> {
+            if (previousTables != null) {
+                // The attributes of autoLinks, linkRoutes and links change (i.e. operStatus), so they are always queried
+                Map<RouterEntity, RouterEntityTable> next = new HashMap<>();
+                next.put(address, results.get(address));
+                next.put(connection, results.get(connection));
+                previousTables.put(routerId, new PreviousTables(instance, next));
+            }
+
+            return new RouterStatus(routerId,
+                    filterOnAttribute(String.class, 0, results.get(address)),
+                    toTyped(String.class, results.get(autoLink)),
+                    toTyped(String.class, results.get(linkRoute)),
+                    filterOnAttribute(String.class, 0, results.get(connection)),
+                    toTyped(String.class, results.getOrDefault(link, RouterEntityTable.empty())));
+        });
+        status.whenComplete((result, error) -> {
+            if (status.isCancelled()) {
+                query.cancel(false);
+            }
+        });
+        return status;
+    }
+
+    /**
+     * The identity of the running router, changing when the pod is replaced or the router container restarted.
+     */
+    static String routerInstance(Pod router) {
+        StringBuilder instance = new StringBuilder(String.valueOf(router.getMetadata().getUid()));
+        if (router.getStatus().getContainerStatuses() != null) {
+            for (ContainerStatus containerStatus : router.getStatus().getContainerStatuses()) {
+                if ("router".equals(containerStatus.getName())) {
+                    instance.append('/').append(containerStatus.getContainerID());
+                    if (containerStatus.getState() != null && containerStatus.getState().getRunning() != null) {
+                        instance.append('/').append(containerStatus.getState().getRunning().getStartedAt());
+                    }
+                }
+            }
+        }
+        return instance.toString();
+    }
+
+    /**
+     * The results of the previous collection of a router, with the identity of the router they were collected from.
+     */
+    static class PreviousTables {
+        private final String instance;
+        private final Map<RouterEntity, RouterEntityTable> tables;
+
+        PreviousTables(String instance, Map<RouterEntity, RouterEntityTable> tables) {
+            this.instance = instance;
+            this.tables = tables;
+        }
     }
 
-    private static <T> List<List<T>> toTyped(Class<T> type, List<List<?>> list) {
-        List<List<T>> typed = new ArrayList<>();
-        for (List<?> entry : list) {
-            List<T> values = new ArrayList<>();
-            for (Object value : entry) {
-                values.add(type.cast(value));
+    private static <T> List<List<T>> toTyped(Class<T> type, RouterEntityTable table) {
+        List<List<T>> typed = new ArrayList<>(table.size());
+        int columns = table.getAttributeNames().length;
+        for (int row = 0; row < table.size(); row++) {
+            List<T> values = new ArrayList<>(columns);
+            for (int column = 0; column < columns; column++) {
+                values.add(table.get(row, column, type));
             }
             typed.add(values);
         }
         return typed;
     }
 
-    private static <T> List<T> filterOnAttribute(Class<T> type, int attrNum, List<List<?>> list) {
-        List<T> filtered = new ArrayList<>();
-        for (List<?> entry : list) {
-            T filteredValue = type.cast(entry.get(attrNum));
+    private static <T> List<T> filterOnAttribute(Class<T> type, int attrNum, RouterEntityTable table) {
+        List<T> filtered = new ArrayList<>(table.size());
+        for (int row = 0; row < table.size(); row++) {
+            T filteredValue = table.get(row, attrNum, type);
             if (filteredValue != null) {
                 filtered.add(filteredValue);
             }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import io.enmasse.address.model.Address;
+import io.enmasse.address.model.AddressSpecForwarder;
+import io.enmasse.address.model.AddressStatusForwarder;
+import io.enmasse.address.model.BrokerStatus;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The status of all routers from one collection, indexed so that checking an address does not depend on the number of
+ * addresses, autoLinks, linkRoutes or links of the routers.
+ *
+ * The indexes are built once, when the snapshot is created, except for the routers connected to each broker cluster,
+ * which is computed the first time the cluster is checked since broker containers are matched by cluster id prefix.
+ *
+ * The statuses of the routers may not all be from the same collection, the snapshot holds the time of the oldest one.
+ */
+final class RouterStatusSnapshot {
+    static final RouterStatusSnapshot EMPTY = new RouterStatusSnapshot(Collections.emptyList(), Instant.EPOCH);
+
+    private final List<RouterStatus> routers;
+    private final Instant collected;
+    // Directions with an active autoLink, by address
+    private final Map<String, Set<String>> activeAutoLinks = new HashMap<>();
+    // Directions with an active linkRoute, by prefix
+    private final Map<String, Set<String>> activeLinkRoutes = new HashMap<>();
+    // Whether a link is up on any router, by link name
+    private final Map<String, Boolean> linksUp = new HashMap<>();
+    // Routers with a connection from a container of the cluster, by cluster id
+    private final Map<String, Set<String>> connectedRouters = new ConcurrentHashMap<>();
+
+    RouterStatusSnapshot(List<RouterStatus> routers) {
+        this(routers, Instant.now());
+    }
+
+    /**
+     * @param collected time the oldest of the router statuses was collected
+     */
+    RouterStatusSnapshot(List<RouterStatus> routers, Instant collected) {
+        this.routers = Collections.unmodifiableList(new ArrayList<>(routers));
+        this.collected = collected;
+        for (RouterStatus router : this.routers) {
+            indexActive(router.getAutoLinks(), activeAutoLinks);
+            indexActive(router.getLinkRoutes(), activeLinkRoutes);
+
+            // Only the first link of a name on a router is considered
+            Map<String, Boolean> routerLinks = new HashMap<>();
+            for (List<String> link : router.getLinks()) {
+                routerLinks.putIfAbsent(link.get(0), "up".equals(link.get(1)));
+            }
+            routerLinks.forEach((linkName, up) -> linksUp.merge(linkName, up, Boolean::logicalOr));
+        }
+    }
+
+    private static void indexActive(List<List<String>> entities, Map<String, Set<String>> index) {
+        for (List<String> entity : entities) {
+            if (entity.size() > 3 && "active".equals(entity.get(3))) {
+                index.computeIfAbsent(entity.get(0), k -> new HashSet<>()).add(entity.get(2));
+            }
+        }
+    }
+
+    List<RouterStatus> getRouters() {
+        return routers;
+    }
+
+    Instant getCollected() {
+        return collected;
+    }
+
+    boolean isEmpty() {
+        return routers.isEmpty();
+    }
+
+    int checkAddress(Address address) {
+        int ok = 0;
+        for (RouterStatus router : routers) {
+            ok += router.checkAddress(address);
+        }
+        return ok;
+    }
+
+    int checkAutoLinks(Address address) {
+        int ok = 0;
+        for (RouterStatus router : routers) {
+            ok += router.checkAutoLinks(address);
+        }
+        return ok;
+    }
+
+    int checkLinkRoutes(Address address) {
+        int ok = 0;
+        for (RouterStatus router : routers) {
+            ok += router.checkLinkRoutes(address);
+        }
+        return ok;
+    }
+
+    int checkActiveAutoLink(Address address) {
+        Set<String> active = activeAutoLinks.getOrDefault(address.getSpec().getAddress(), Collections.emptySet());
+        if (active.size() < 2) {
+            address.getStatus().setReady(false).appendMessage("Address " + address.getSpec().getAddress() + " is missing active autoLink (active in dirs: " + active + ")");
+            return 0;
+        }
+        return 1;
+    }
+
+    int checkActiveLinkRoute(Address address) {
+        Set<String> active = activeLinkRoutes.getOrDefault(address.getSpec().getAddress(), Collections.emptySet());
+        if (active.size() < 2) {
+            address.getStatus().setReady(false).appendMessage("Address " + address.getSpec().getAddress() + " is missing active linkRoute (active in dirs: " + active + ")");
+            return 0;
+        }
+        return 1;
+    }
+
+    int checkConnection(Address address) {
+        Set<String> connected = new HashSet<>();
+        for (BrokerStatus brokerStatus : address.getStatus().getBrokerStatuses()) {
+            connected.addAll(connectedRouters.computeIfAbsent(brokerStatus.getClusterId(), this::findConnectedRouters));
+        }
+
+        int ok = connected.size();
+        if (ok == 0) {
+            address.getStatus().setReady(false).appendMessage("Address " + address.getSpec().getAddress() + " is missing connection from broker");
+        }
+        return ok;
+    }
+
+    private Set<String> findConnectedRouters(String clusterId) {
+        Set<String> connected = new HashSet<>();
+        for (RouterStatus router : routers) {
+            for (String containerId : router.getConnections()) {
+                if (containerId.startsWith(clusterId)) {
+                    connected.add(router.getRouterId());
+                    break;
+                }
+            }
+        }
+        return connected;
+    }
+
+    int checkForwarderLinks(Address address) {
+        if (address.getSpec().getForwarders() == null || address.getSpec().getForwarders().isEmpty()) {
+            return 0;
+        }
+
+        int ok = 0;
+        for (AddressSpecForwarder forwarder : address.getSpec().getForwarders()) {
+            Boolean isUp = linksUp.get(address.getForwarderLinkName(forwarder));
+            if (isUp == null) {
+                updateForwarderStatus(forwarder.getName(), false, "Unable to find link for forwarder '" + forwarder.getName() + "'", address.getStatus().getForwarders());
+            } else if (!isUp) {
+                updateForwarderStatus(forwarder.getName(), false, "Unable to find link in the up state for forwarder '" + forwarder.getName() + "'", address.getStatus().getForwarders());
+            } else {
+                ok++;
+            }
+        }
+        return ok;
+    }
+
+    private static void updateForwarderStatus(String name, boolean isReady, String message, List<AddressStatusForwarder> forwarderStatuses) {
+        forwarderStatuses.stream()
+                .filter(c -> c.getName().equals(name))
+                .findFirst().ifPresent(s -> {
+            s.setReady(isReady);
+            s.appendMessage(message);
+        });
+    }
+
+    @Override
+    public String toString() {
+        return routers.toString();
+    }
+}
@@ -28,6 +28,14 @@ public class StandardControllerOptions {
     private String authenticationServiceSaslInitHost;
     private Duration managementQueryTimeout;
     private Duration managementConnectTimeout;
+    private int managementQueryPageSize = 1000;
+    private boolean routerStatusDeltaQueries = false;
+    private boolean incrementalReconcile = false;
+    private Duration fullReconcileInterval = Duration.ofMinutes(10);
+    private int statusWriteConcurrency = 4;
+    private double statusWriteRate = 50.0;
+    private Duration routerStatusTimeout = Duration.ofSeconds(60);
+    private Duration routerStatusMaxAge = Duration.ofMinutes(5);
     private Duration kubernetesApiConnectTimeout;
     private Duration kubernetesApiReadTimeout;
     private Duration kubernetesApiWriteTimeout;
@@ -181,6 +189,34 @@ public class StandardControllerOptions {
                 .map(i -> Duration.ofSeconds(Long.parseLong(i)))
                 .orElse(Duration.ofSeconds(30)));
 
+        options.setManagementQueryPageSize(getEnv(env, "MANAGEMENT_QUERY_PAGE_SIZE")
+                .map(Integer::parseInt)
+                .orElse(1000));
+
+        options.setRouterStatusDeltaQueries(getEnv(env, "ROUTER_STATUS_DELTA_QUERIES").map(Boolean::parseBoolean).orElse(false));
+
+        options.setIncrementalReconcile(getEnv(env, "INCREMENTAL_RECONCILE").map(Boolean::parseBoolean).orElse(false));
+
+        options.setFullReconcileInterval(getEnv(env, "FULL_RECONCILE_INTERVAL")
+                .map(i -> Duration.ofSeconds(Long.parseLong(i)))
+                .orElse(Duration.ofMinutes(10)));
+
+        options.setStatusWriteConcurrency(getEnv(env, "STATUS_WRITE_CONCURRENCY")
+                .map(Integer::parseInt)
+                .orElse(4));
+
+        options.setStatusWriteRate(getEnv(env, "STATUS_WRITE_RATE")
+                .map(Double::parseDouble)
+                .orElse(50.0));
+
+        options.setRouterStatusTimeout(getEnv(env, "ROUTER_STATUS_TIMEOUT")
+                .map(i -> Duration.ofSeconds(Long.parseLong(i)))
+                .orElse(Duration.ofSeconds(60)));
+
+        options.setRouterStatusMaxAge(getEnv(env, "ROUTER_STATUS_MAX_AGE")
+                .map(i -> Duration.ofSeconds(Long.parseLong(i)))
+                .orElse(Duration.ofMinutes(5)));
+
         options.setKubernetesApiConnectTimeout(getEnv(env, "KUBERNETES_API_CONNECT_TIMEOUT")
                 .map(i -> Duration.ofSeconds(Long.parseLong(i)))
                 .orElse(Duration.ofSeconds(30)));
@@ -240,6 +276,14 @@ public class StandardControllerOptions {
                 ", authenticationServiceSaslInitHost='" + authenticationServiceSaslInitHost + '\'' +
                 ", managementQueryTimeout='" + managementQueryTimeout + '\'' +
                 ", managementConnectTimeout='" + managementConnectTimeout + '\'' +
+                ", managementQueryPageSize=" + managementQueryPageSize +
+                ", routerStatusDeltaQueries=" + routerStatusDeltaQueries +
+                ", incrementalReconcile=" + incrementalReconcile +
+                ", fullReconcileInterval=" + fullReconcileInterval +
+                ", statusWriteConcurrency=" + statusWriteConcurrency +
+                ", statusWriteRate=" + statusWriteRate +
+                ", routerStatusTimeout=" + routerStatusTimeout +
+                ", routerStatusMaxAge=" + routerStatusMaxAge +
                 ", kubernetesApiConnectTimeout='" + kubernetesApiConnectTimeout + '\'' +
                 ", kubernetesApiReadTimeout='" + kubernetesApiReadTimeout + '\'' +
                 ", kubernetesApiWriteTimeout='" + kubernetesApiWriteTimeout + '\'' +
@@ -266,6 +310,70 @@ public class StandardControllerOptions {
         this.managementConnectTimeout = managementConnectTimeout;
     }
 
+    public int getManagementQueryPageSize() {
+        return managementQueryPageSize;
+    }
+
+    public void setManagementQueryPageSize(int managementQueryPageSize) {
+        this.managementQueryPageSize = managementQueryPageSize;
+    }
+
+    public boolean isRouterStatusDeltaQueries() {
+        return routerStatusDeltaQueries;
+    }
+
+    public void setRouterStatusDeltaQueries(boolean routerStatusDeltaQueries) {
+        this.routerStatusDeltaQueries = routerStatusDeltaQueries;
+    }
+
+    public boolean isIncrementalReconcile() {
+        return incrementalReconcile;
+    }
+
+    public void setIncrementalReconcile(boolean incrementalReconcile) {
+        this.incrementalReconcile = incrementalReconcile;
+    }
+
+    public Duration getFullReconcileInterval() {
+        return fullReconcileInterval;
+    }
+
+    public void setFullReconcileInterval(Duration fullReconcileInterval) {
+        this.fullReconcileInterval = fullReconcileInterval;
+    }
+
+    public int getStatusWriteConcurrency() {
+        return statusWriteConcurrency;
+    }
+
+    public void setStatusWriteConcurrency(int statusWriteConcurrency) {
+        this.statusWriteConcurrency = statusWriteConcurrency;
+    }
+
+    public double getStatusWriteRate() {
+        return statusWriteRate;
+    }
+
+    public void setStatusWriteRate(double statusWriteRate) {
+        this.statusWriteRate = statusWriteRate;
+    }
+
+    public Duration getRouterStatusTimeout() {
+        return routerStatusTimeout;
+    }
+
+    public void setRouterStatusTimeout(Duration routerStatusTimeout) {
+        this.routerStatusTimeout = routerStatusTimeout;
+    }
+
+    public Duration getRouterStatusMaxAge() {
+        return routerStatusMaxAge;
+    }
+
+    public void setRouterStatusMaxAge(Duration routerStatusMaxAge) {
+        this.routerStatusMaxAge = routerStatusMaxAge;
+    }
+
     public Duration getStatusCheckInterval() {
         return statusCheckInterval;
     }
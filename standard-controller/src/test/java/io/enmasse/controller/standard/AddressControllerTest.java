@@ -45,10 +45,14 @@ public class AddressControllerTest {
         mockHelper = mock(Kubernetes.class);
         mockGenerator = mock(BrokerSetGenerator.class);
         mockApi = mock(AddressApi.class);
-        AddressSpaceApi mockSpaceApi = mock(AddressSpaceApi.class);
         mockClient = mock(OpenShiftClient.class);
-        EventLogger eventLogger = mock(EventLogger.class);
         when(mockHelper.getRouterCluster()).thenReturn(new RouterCluster("qdrouterd", 1, null));
+        controller = createController(false);
+    }
+
+    private AddressController createController(boolean incrementalReconcile) {
+        AddressSpaceApi mockSpaceApi = mock(AddressSpaceApi.class);
+        EventLogger eventLogger = mock(EventLogger.class);
         StandardControllerOptions options = new StandardControllerOptions();
         options.setAddressSpace("myspace");
         options.setAddressSpaceNamespace("ns");
@@ -56,8 +60,9 @@ public class AddressControllerTest {
         options.setAddressSpacePlanName("plan1");
         options.setResyncInterval(Duration.ofSeconds(5));
         options.setVersion("1.0");
+        options.setIncrementalReconcile(incrementalReconcile);
         Vertx vertx = Vertx.vertx();
-        controller = new AddressController(options, mockSpaceApi, mockApi, mockHelper, mockGenerator, eventLogger, standardControllerSchema, vertx, new Metrics(), idGenerator, new MutualTlsBrokerClientFactory(vertx, options));
+        return new AddressController(options, mockSpaceApi, mockApi, mockHelper, mockGenerator, eventLogger, standardControllerSchema, vertx, new Metrics(), idGenerator, new MutualTlsBrokerClientFactory(vertx, options));
     }
 
     @Test
@@ -123,6 +128,41 @@ public class AddressControllerTest {
         verify(mockApi).deleteAddress(eq(terminating));
     }
 
+    @Test
+    public void testValidationOfUnchangedAddressIsKept() throws Exception {
+        controller = createController(true);
+
+        Address a1 = createAnycast("1", "unknown-anycast");
+        controller.onUpdate(Collections.singletonList(a1));
+        assertEquals(Collections.singletonList("Unknown address plan 'unknown-anycast'"), a1.getStatus().getMessages());
+        assertFalse(a1.getStatus().isReady());
+
+        // Not validated again while the resource version is the same
+        a1 = createAnycast("1", "small-anycast");
+        controller.onUpdate(Collections.singletonList(a1));
+        assertEquals(Collections.singletonList("Unknown address plan 'unknown-anycast'"), a1.getStatus().getMessages());
+        assertFalse(a1.getStatus().isReady());
+
+        a1 = createAnycast("2", "small-anycast");
+        controller.onUpdate(Collections.singletonList(a1));
+        assertEquals(Collections.emptyList(), a1.getStatus().getMessages());
+        assertEquals(Phase.Configuring, a1.getStatus().getPhase());
+    }
+
+    private static Address createAnycast(String resourceVersion, String plan) {
+        return new AddressBuilder()
+                .withNewMetadata()
+                .withName("myspace.a1")
+                .withResourceVersion(resourceVersion)
+                .endMetadata()
+                .withNewSpec()
+                .withAddress("a")
+                .withType("anycast")
+                .withPlan(plan)
+                .endSpec()
+                .build();
+    }
+
     @Test
     public void testDuplicatePendingPendingAddresses() throws Exception {
 
@@ -372,7 +412,7 @@ public class AddressControllerTest {
         assertNotEquals(a.getSpec().getPlan(), a.getAnnotation(AnnotationKeys.APPLIED_PLAN));
         controller.onUpdate(Arrays.asList(a));
         ArgumentCaptor<Address> captor = ArgumentCaptor.forClass(Address.class);
-        verify(mockApi).replaceAddress(captor.capture());
+        verify(mockApi, timeout(10_000)).replaceAddress(captor.capture());
         Address captured = captor.getValue();
         assertEquals(captured.getSpec().getPlan(), captured.getAnnotation(AnnotationKeys.APPLIED_PLAN));
         assertEquals(a.getSpec().getPlan(), a.getAnnotation(AnnotationKeys.APPLIED_PLAN));
@@ -476,7 +516,7 @@ public class AddressControllerTest {
 
         controller.onUpdate(Arrays.asList(a));
         ArgumentCaptor<Address> captor = ArgumentCaptor.forClass(Address.class);
-        verify(mockApi).replaceAddress(captor.capture());
+        verify(mockApi, timeout(10_000)).replaceAddress(captor.capture());
         Address captured = captor.getValue();
         assertEquals(captured.getStatus().getForwarders().size(), a.getSpec().getForwarders().size());
         assertFalse(captured.getStatus().getForwarders().get(0).isReady());
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import io.enmasse.address.model.Address;
+import io.enmasse.address.model.AddressBuilder;
+import io.enmasse.address.model.AddressResolver;
+import io.enmasse.address.model.AddressSpaceResolver;
+import io.enmasse.admin.model.v1.ResourceAllowance;
+import io.enmasse.k8s.api.EventLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Benchmark of planning a batch of new pooled queues, as done by the address controller when many addresses are
+ * created at once. One in ten queues is partitioned on three brokers.
+ *
+ * Not run as part of the tests, run it through the main method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AddressProvisionerBenchmark {
+    private static final Pattern POOLED = Pattern.compile("^broker-1234-.*");
+
+    @Param({"1000", "10000"})
+    private int addresses;
+
+    private AddressProvisioner provisioner;
+    private Set<Address> pending;
+    private int brokerId;
+
+    @Setup
+    public void setupProvisioner() {
+        StandardControllerSchema standardControllerSchema = new StandardControllerSchema(Arrays.asList(
+                new ResourceAllowance("router", 100_000),
+                new ResourceAllowance("broker", 100_000),
+                new ResourceAllowance("aggregate", 100_000)));
+        provisioner = new AddressProvisioner(new AddressSpaceResolver(standardControllerSchema.getSchema()),
+                new AddressResolver(standardControllerSchema.getType()),
+                standardControllerSchema.getPlan(),
+                mock(BrokerSetGenerator.class),
+                mock(Kubernetes.class),
+                mock(EventLogger.class),
+                "1234",
+                () -> String.format("%06d", brokerId++));
+    }
+
+    @Setup(Level.Invocation)
+    public void setupAddresses() {
+        // Planning changes the status of the addresses
+        brokerId = 0;
+        pending = new LinkedHashSet<>();
+        for (int i = 0; i < addresses; i++) {
+            pending.add(createQueue("queue-" + i, i % 10 == 0 ? "small-sharded-queue" : "pooled-queue-small"));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Map<String, UsageInfo>> placementEngine() {
+        return provisioner.checkQuota(new HashMap<>(), pending, pending);
+    }
+
+    /**
+     * The placement of the same queues as done before the placement engine, copying the usage and going through all
+     * brokers in order of id for every address. The addresses are not otherwise checked against the plan.
+     */
+    @Benchmark
+    public Map<String, Map<String, UsageInfo>> scan() {
+        Map<String, Map<String, UsageInfo>> usage = new HashMap<>();
+        for (Address address : pending) {
+            int partitions = "small-sharded-queue".equals(address.getSpec().getPlan()) ? 3 : 1;
+            double credit = partitions == 3 ? 0.4 / 3 : 0.1;
+
+            Map<String, Map<String, UsageInfo>> needed = copy(usage);
+            Map<String, UsageInfo> brokerUsage = needed.computeIfAbsent("broker", k -> new HashMap<>());
+            List<String> selected = Collections.emptyList();
+            for (int retry = 0; selected.size() < partitions && retry < partitions + 1; retry++) {
+                selected = firstFit(brokerUsage, partitions, credit);
+                if (selected.size() < partitions) {
+                    brokerUsage.put("broker-1234-" + String.format("%06d", brokerId++), new UsageInfo());
+                }
+            }
+            for (String id : selected) {
+                brokerUsage.get(id).addUsed(credit);
+            }
+            usage = needed;
+        }
+        return usage;
+    }
+
+    private static List<String> firstFit(Map<String, UsageInfo> brokerUsage, int partitions, double credit) {
+        List<String> brokers = new ArrayList<>();
+        for (String host : brokerUsage.keySet()) {
+            if (POOLED.matcher(host).matches()) {
+                brokers.add(host);
+            }
+        }
+        Collections.sort(brokers);
+        List<String> selected = new ArrayList<>();
+        for (String host : brokers) {
+            if (selected.size() < partitions && brokerUsage.get(host).getUsed() + credit <= 1) {
+                selected.add(host);
+            }
+        }
+        return selected;
+    }
+
+    private static Map<String, Map<String, UsageInfo>> copy(Map<String, Map<String, UsageInfo>> usage) {
+        Map<String, Map<String, UsageInfo>> copy = new HashMap<>();
+        for (Map.Entry<String, Map<String, UsageInfo>> resourceUsage : usage.entrySet()) {
+            Map<String, UsageInfo> byId = new HashMap<>();
+            for (Map.Entry<String, UsageInfo> idUsage : resourceUsage.getValue().entrySet()) {
+                byId.put(idUsage.getKey(), new UsageInfo(idUsage.getValue()));
+            }
+            copy.put(resourceUsage.getKey(), byId);
+        }
+        return copy;
+    }
+
+    private static Address createQueue(String address, String plan) {
+        return new AddressBuilder()
+                .withNewMetadata()
+                .withName("myspace." + address)
+                .withNamespace("ns")
+                .endMetadata()
+                .withNewSpec()
+                .withAddress(address)
+                .withAddressSpace("myspace")
+                .withType("queue")
+                .withPlan(plan)
+                .endSpec()
+                .withNewStatus()
+                .withReady(false)
+                .endStatus()
+                .build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(AddressProvisionerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
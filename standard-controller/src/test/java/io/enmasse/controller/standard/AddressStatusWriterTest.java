@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import io.enmasse.address.model.Address;
+import io.enmasse.address.model.AddressBuilder;
+import io.enmasse.address.model.Phase;
+import io.enmasse.k8s.api.AddressApi;
+import io.fabric8.kubernetes.api.model.StatusBuilder;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AddressStatusWriterTest {
+    private AddressApi addressApi;
+    private AddressStatusWriter writer;
+
+    @BeforeEach
+    public void setup() {
+        addressApi = mock(AddressApi.class);
+        writer = new AddressStatusWriter(addressApi, 1, 0);
+    }
+
+    @AfterEach
+    public void teardown() throws InterruptedException {
+        writer.stop();
+    }
+
+    @Test
+    public void testOnlyLatestStatusIsWritten() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(addressApi.replaceAddress(any())).then(invocation -> {
+            Address written = invocation.getArgument(0);
+            if (written.getSpec().getAddress().equals("q0")) {
+                blocked.countDown();
+                release.await();
+            }
+            return true;
+        });
+
+        // Block the writer thread, so that the statuses of q1 are queued
+        writer.submit(createAddress("q0", Phase.Configuring));
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        Address q1 = createAddress("q1", Phase.Pending);
+        writer.submit(q1);
+        q1.getStatus().setPhase(Phase.Configuring);
+        writer.submit(q1);
+        q1.getStatus().setPhase(Phase.Active);
+        writer.submit(q1);
+        release.countDown();
+
+        verify(addressApi, timeout(10_000).times(2)).replaceAddress(any());
+        Thread.sleep(100);
+        ArgumentCaptor<Address> captor = ArgumentCaptor.forClass(Address.class);
+        verify(addressApi, times(2)).replaceAddress(captor.capture());
+        Address written = captor.getAllValues().get(1);
+        assertEquals("q1", written.getSpec().getAddress());
+        assertEquals(Phase.Active, written.getStatus().getPhase());
+        assertEquals(0, writer.getPending());
+    }
+
+    @Test
+    public void testConflictIsRetriedOnLatestVersion() {
+        Address stale = createAddress("q1", Phase.Active);
+        stale.getMetadata().setResourceVersion("1");
+        Address latest = createAddress("q1", Phase.Configuring);
+        latest.getMetadata().setResourceVersion("2");
+        when(addressApi.getAddressWithName("ns", "myspace.q1")).thenReturn(Optional.of(latest));
+        when(addressApi.replaceAddress(any())).then(invocation -> {
+            Address written = invocation.getArgument(0);
+            if ("1".equals(written.getMetadata().getResourceVersion())) {
+                throw new KubernetesClientException(new StatusBuilder().withCode(409).build());
+            }
+            return true;
+        });
+
+        writer.submit(stale);
+
+        verify(addressApi, timeout(10_000).times(2)).replaceAddress(any());
+        ArgumentCaptor<Address> captor = ArgumentCaptor.forClass(Address.class);
+        verify(addressApi, times(2)).replaceAddress(captor.capture());
+        Address written = captor.getAllValues().get(1);
+        assertEquals("2", written.getMetadata().getResourceVersion());
+        assertEquals(Phase.Active, written.getStatus().getPhase());
+        assertEquals(1, writer.getConflicts());
+    }
+
+    @Test
+    public void testServerErrorIsRetried() {
+        when(addressApi.replaceAddress(any()))
+                .thenThrow(new KubernetesClientException(new StatusBuilder().withCode(503).build()))
+                .thenReturn(true);
+
+        writer.submit(createAddress("q1", Phase.Active));
+
+        verify(addressApi, timeout(10_000).times(2)).replaceAddress(any());
+        assertEquals(0, writer.getFailures());
+    }
+
+    @Test
+    public void testOtherErrorIsNotRetried() throws Exception {
+        when(addressApi.replaceAddress(any())).thenThrow(new KubernetesClientException(new StatusBuilder().withCode(422).build()));
+
+        writer.submit(createAddress("q1", Phase.Active));
+
+        verify(addressApi, timeout(10_000)).replaceAddress(any());
+        Thread.sleep(500);
+        verify(addressApi, times(1)).replaceAddress(any());
+        assertEquals(1, writer.getFailures());
+    }
+
+    @Test
+    public void testWriteOfDeletedAddressIsDropped() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(addressApi.replaceAddress(any())).then(invocation -> {
+            blocked.countDown();
+            release.await();
+            return true;
+        });
+
+        // Block the writer thread, so that the status of q1 is queued
+        writer.submit(createAddress("q0", Phase.Configuring));
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        Address q1 = createAddress("q1", Phase.Terminating);
+        writer.submit(q1);
+        writer.cancel(q1);
+        release.countDown();
+
+        Thread.sleep(500);
+        ArgumentCaptor<Address> captor = ArgumentCaptor.forClass(Address.class);
+        verify(addressApi, times(1)).replaceAddress(captor.capture());
+        assertEquals("q0", captor.getValue().getSpec().getAddress());
+        assertEquals(0, writer.getPending());
+    }
+
+    private static Address createAddress(String address, Phase phase) {
+        return new AddressBuilder()
+                .withNewMetadata()
+                .withName("myspace." + address)
+                .withNamespace("ns")
+                .endMetadata()
+                .withNewSpec()
+                .withAddress(address)
+                .withAddressSpace("myspace")
+                .withType("queue")
+                .withPlan("small-queue")
+                .endSpec()
+                .withNewStatus()
+                .withReady(true)
+                .withPhase(phase)
+                .endStatus()
+                .build();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import io.enmasse.address.model.Address;
+import io.enmasse.address.model.AddressBuilder;
+import io.enmasse.address.model.AddressResolver;
+import io.enmasse.address.model.AddressSpaceResolver;
+import io.enmasse.address.model.AddressStatusBuilder;
+import io.enmasse.address.model.BrokerState;
+import io.enmasse.address.model.BrokerStatus;
+import io.enmasse.k8s.api.EventLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+
+public class AddressUsageCacheTest {
+    private StandardControllerSchema standardControllerSchema;
+    private AddressProvisioner provisioner;
+    private AddressUsageCache cache;
+
+    @BeforeEach
+    public void setup() {
+        standardControllerSchema = new StandardControllerSchema();
+        provisioner = new AddressProvisioner(new AddressSpaceResolver(standardControllerSchema.getSchema()),
+                new AddressResolver(standardControllerSchema.getType()),
+                standardControllerSchema.getPlan(),
+                mock(BrokerSetGenerator.class),
+                mock(Kubernetes.class),
+                mock(EventLogger.class),
+                "1234",
+                () -> "0");
+        cache = new AddressUsageCache(Duration.ofMinutes(10), Clock.fixed(Instant.now(), ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testUsageFollowsChanges() {
+        Set<Address> addresses = new LinkedHashSet<>();
+        addresses.add(createAddress("a1", "anycast", "small-anycast", null));
+        addresses.add(createAddress("q1", "queue", "small-queue", "broker-0"));
+        addresses.add(createAddress("q2", "queue", "small-queue", "broker-0"));
+        assertUsage(addresses);
+
+        // Moved to another broker
+        Address q2 = createAddress("q2", "queue", "small-queue", "broker-1");
+        addresses.removeIf(a -> a.getMetadata().getName().equals("myspace.q2"));
+        addresses.add(q2);
+        assertUsage(addresses);
+
+        // Deleted
+        addresses.removeIf(a -> a.getMetadata().getName().equals("myspace.q1"));
+        Map<String, Map<String, UsageInfo>> usage = assertUsage(addresses);
+        assertFalse(usage.get("broker").containsKey("broker-0"));
+
+        addresses.clear();
+        assertEquals(Collections.emptyMap(), cache.update(provisioner, standardControllerSchema.getSchema(), addresses));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testUsageReturnedIsCopy() {
+        Set<Address> addresses = Collections.singleton(createAddress("q1", "queue", "small-queue", "broker-0"));
+        cache.update(provisioner, standardControllerSchema.getSchema(), addresses).get("broker").get("broker-0").addUsed(1);
+        assertUsage(addresses);
+    }
+
+    private Map<String, Map<String, UsageInfo>> assertUsage(Set<Address> addresses) {
+        Map<String, Map<String, UsageInfo>> usage = cache.update(provisioner, standardControllerSchema.getSchema(), addresses);
+        Map<String, Map<String, UsageInfo>> expected = provisioner.checkUsage(addresses);
+        // Running totals may differ from a full sum by rounding
+        assertEquals(expected.keySet(), usage.keySet());
+        for (String resourceName : expected.keySet()) {
+            assertEquals(expected.get(resourceName).keySet(), usage.get(resourceName).keySet());
+            expected.get(resourceName).forEach((id, info) -> {
+                assertEquals(info.getUsed(), usage.get(resourceName).get(id).getUsed(), 0.000001);
+                assertEquals(info.getNeeded(), usage.get(resourceName).get(id).getNeeded());
+            });
+        }
+        return usage;
+    }
+
+    private static Address createAddress(String address, String type, String plan, String clusterId) {
+        AddressStatusBuilder status = new AddressStatusBuilder().withReady(true);
+        if (clusterId != null) {
+            status.addToBrokerStatuses(new BrokerStatus(clusterId, clusterId + "-0").setState(BrokerState.Active));
+        }
+        return new AddressBuilder()
+                .withNewMetadata()
+                .withName("myspace." + address)
+                .withNamespace("ns")
+                .endMetadata()
+                .withNewSpec()
+                .withAddress(address)
+                .withAddressSpace("myspace")
+                .withType(type)
+                .withPlan(plan)
+                .endSpec()
+                .withStatus(status.build())
+                .build();
+    }
+}
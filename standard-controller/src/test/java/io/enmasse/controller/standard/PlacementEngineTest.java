@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PlacementEngineTest {
+    private static final Pattern POOLED = Pattern.compile("^broker-1234-.*");
+    private static final double[] CREDITS = {0.049, 0.1, 0.2, 0.4 / 3, 0.6};
+
+    @Test
+    public void testFindsSameBrokersAsScanInIdOrder() {
+        Random random = new Random(1234);
+        Map<String, Map<String, UsageInfo>> usage = new HashMap<>();
+        PlacementEngine placement = new PlacementEngine(usage, POOLED);
+        placement.put("broker", "broker-sharded-1", usage(0.5));
+
+        for (int i = 0; i < 5000; i++) {
+            int partitions = 1 + random.nextInt(3);
+            double credit = CREDITS[random.nextInt(CREDITS.length)];
+
+            List<String> expected = scan(placement.getUsage().get("broker"), partitions, credit);
+            List<String> found = placement.findPooledBrokers(partitions, credit);
+            assertEquals(expected, found);
+
+            if (found.size() < partitions) {
+                placement.put("broker", "broker-1234-" + random.nextInt(100_000), new UsageInfo());
+            } else {
+                for (String brokerId : found) {
+                    placement.addUsed("broker", brokerId, credit);
+                }
+                if (random.nextInt(10) == 0) {
+                    placement.subUsed("broker", found.get(0), credit);
+                }
+            }
+            placement.commit();
+        }
+    }
+
+    @Test
+    public void testRollback() {
+        Map<String, Map<String, UsageInfo>> usage = new HashMap<>();
+        usage.put("broker", new HashMap<>(Collections.singletonMap("broker-1234-0", usage(0.9))));
+        usage.put("router", new HashMap<>(Collections.singletonMap("all", usage(0.2))));
+        PlacementEngine placement = new PlacementEngine(usage, POOLED);
+        assertEquals(2, placement.sumTotalNeeded());
+
+        placement.put("broker", "broker-1234-1", new UsageInfo());
+        placement.addUsed("broker", "broker-1234-1", 0.6);
+        placement.addUsed("broker", "broker-1234-0", 0.05);
+        placement.addUsed("router", "all", 1.0);
+        placement.computeIfAbsent("subscription", "broker-1234-1-0");
+        assertEquals(Arrays.asList("broker-1234-0", "broker-1234-1"), placement.findPooledBrokers(2, 0.01));
+        assertEquals(2, placement.sumNeeded("broker"));
+        assertEquals(4, placement.sumTotalNeeded());
+
+        placement.rollback();
+        assertEquals(usage, placement.getUsage());
+        assertFalse(placement.getUsage().containsKey("subscription"));
+        assertEquals(2, placement.sumTotalNeeded());
+        assertEquals(Collections.singletonList("broker-1234-0"), placement.findPooledBrokers(2, 0.1));
+        assertTrue(placement.findPooledBrokers(1, 0.2).isEmpty());
+    }
+
+    @Test
+    public void testUsageIsNotModified() {
+        Map<String, Map<String, UsageInfo>> usage = new HashMap<>();
+        usage.put("broker", new HashMap<>(Collections.singletonMap("broker-1234-0", usage(0.5))));
+        PlacementEngine placement = new PlacementEngine(usage, POOLED);
+
+        placement.addUsed("broker", "broker-1234-0", 0.5);
+        placement.commit();
+
+        assertEquals(0.5, usage.get("broker").get("broker-1234-0").getUsed(), 0.001);
+        assertEquals(1.0, placement.getUsage().get("broker").get("broker-1234-0").getUsed(), 0.001);
+    }
+
+    /**
+     * The first pooled brokers with room for a credit, going through all of them in order of id.
+     */
+    private static List<String> scan(Map<String, UsageInfo> brokerUsage, int count, double credit) {
+        List<String> brokers = new ArrayList<>();
+        for (String id : brokerUsage.keySet()) {
+            if (POOLED.matcher(id).matches()) {
+                brokers.add(id);
+            }
+        }
+        Collections.sort(brokers);
+        List<String> found = new ArrayList<>();
+        for (String id : brokers) {
+            if (found.size() < count && brokerUsage.get(id).getUsed() + credit <= 1) {
+                found.add(id);
+            }
+        }
+        return found;
+    }
+
+    private static UsageInfo usage(double used) {
+        UsageInfo info = new UsageInfo();
+        info.addUsed(used);
+        return info;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import io.enmasse.address.model.Address;
+import io.enmasse.address.model.AddressBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of checking the router status of all addresses of an address space, as done by the address controller on
+ * every cycle, with half of the addresses being queues and half pooled topics on two routers.
+ *
+ * Not run as part of the tests, run it through the main method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RouterStatusBenchmark {
+    private static final int ROUTERS = 2;
+
+    @Param({"1000", "10000", "50000"})
+    private int addresses;
+
+    private List<RouterStatus> routers;
+    private List<Address> queues;
+    private List<Address> topics;
+
+    @Setup
+    public void setup() {
+        queues = new ArrayList<>();
+        topics = new ArrayList<>();
+        List<String> routerAddresses = new ArrayList<>();
+        List<List<String>> autoLinks = new ArrayList<>();
+        List<List<String>> linkRoutes = new ArrayList<>();
+        for (int i = 0; i < addresses; i++) {
+            String name = "address-" + i;
+            if (i % 2 == 0) {
+                queues.add(createAddress(name, "queue"));
+                routerAddresses.add(name);
+                autoLinks.add(Arrays.asList(name, "broker-0", "in", "active"));
+                autoLinks.add(Arrays.asList(name, "broker-0", "out", "active"));
+            } else {
+                topics.add(createAddress(name, "topic"));
+                linkRoutes.add(Arrays.asList(name, "broker-0", "in", "active"));
+                linkRoutes.add(Arrays.asList(name, "broker-0", "out", "active"));
+            }
+        }
+
+        routers = new ArrayList<>();
+        for (int i = 0; i < ROUTERS; i++) {
+            routers.add(new RouterStatus("router-" + i, routerAddresses, autoLinks, linkRoutes, Arrays.asList("broker-0-0", "client"), new ArrayList<>()));
+        }
+    }
+
+    /**
+     * Build the snapshot of a collection and check all addresses against it.
+     */
+    @Benchmark
+    public int indexed() {
+        RouterStatusSnapshot snapshot = new RouterStatusSnapshot(routers);
+        int ok = 0;
+        for (Address queue : queues) {
+            ok += snapshot.checkAddress(queue);
+            ok += snapshot.checkAutoLinks(queue);
+            ok += snapshot.checkActiveAutoLink(queue);
+        }
+        for (Address topic : topics) {
+            ok += snapshot.checkLinkRoutes(topic);
+            ok += snapshot.checkActiveLinkRoute(topic);
+        }
+        return ok;
+    }
+
+    /**
+     * The same checks scanning the entities of each router for every address, as done before the snapshot.
+     */
+    @Benchmark
+    public int scan() {
+        int ok = 0;
+        for (Address queue : queues) {
+            String address = queue.getSpec().getAddress();
+            List<String> active = new ArrayList<>();
+            for (RouterStatus router : routers) {
+                if (router.getAddresses().contains(address)) {
+                    ok++;
+                }
+                for (List<String> autoLink : router.getAutoLinks()) {
+                    if (autoLink.get(0).equals(address)) {
+                        ok++;
+                        if ("active".equals(autoLink.get(3)) && !active.contains(autoLink.get(2))) {
+                            active.add(autoLink.get(2));
+                        }
+                    }
+                }
+            }
+            ok += active.size() < 2 ? 0 : 1;
+        }
+        for (Address topic : topics) {
+            String address = topic.getSpec().getAddress();
+            List<String> active = new ArrayList<>();
+            for (RouterStatus router : routers) {
+                for (List<String> linkRoute : router.getLinkRoutes()) {
+                    if (linkRoute.get(0).equals(address)) {
+                        ok++;
+                        if ("active".equals(linkRoute.get(3)) && !active.contains(linkRoute.get(2))) {
+                            active.add(linkRoute.get(2));
+                        }
+                    }
+                }
+            }
+            ok += active.size() < 2 ? 0 : 1;
+        }
+        return ok;
+    }
+
+    private static Address createAddress(String address, String type) {
+        return new AddressBuilder()
+                .withNewMetadata()
+                .withName("myspace." + address)
+                .endMetadata()
+                .withNewSpec()
+                .withAddress(address)
+                .withType(type)
+                .endSpec()
+                .withNewStatus()
+                .withReady(true)
+                .endStatus()
+                .build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RouterStatusBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
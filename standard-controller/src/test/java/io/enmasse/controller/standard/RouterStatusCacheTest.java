@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import io.enmasse.amqp.RouterEntity;
+import io.enmasse.amqp.RouterEntityTable;
+import io.enmasse.amqp.RouterManagement;
+import io.enmasse.k8s.api.EventLogger;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RouterStatusCacheTest {
+    private final Set<String> slowHosts = ConcurrentHashMap.newKeySet();
+    // Queries of the slow hosts, never answered
+    private final List<CompletableFuture<?>> slowQueries = new CopyOnWriteArrayList<>();
+    // Previous tables given to the queries, by host
+    private final Map<String, List<Map<RouterEntity, RouterEntityTable>>> previousTables = new ConcurrentHashMap<>();
+    private RouterManagement routerManagement;
+    private Kubernetes kubernetes;
+    private Clock clock;
+    private RouterStatusCache cache;
+
+    @BeforeEach
+    public void setup() {
+        routerManagement = mock(RouterManagement.class, invocation -> {
+            if (!"queryTablesAsync".equals(invocation.getMethod().getName())) {
+                return null;
+            }
+            previousTables.computeIfAbsent(invocation.getArgument(0), host -> new CopyOnWriteArrayList<>()).add(invocation.getArgument(2));
+            if (slowHosts.contains(invocation.getArgument(0))) {
+                CompletableFuture<Map<RouterEntity, RouterEntityTable>> query = new CompletableFuture<>();
+                slowQueries.add(query);
+                return query;
+            }
+            Map<RouterEntity, RouterEntityTable> results = new HashMap<>();
+            Object[] arguments = invocation.getArguments();
+            for (int i = 3; i < arguments.length; i++) {
+                results.put((RouterEntity) arguments[i], RouterEntityTable.empty());
+            }
+            return CompletableFuture.completedFuture(results);
+        });
+        kubernetes = mock(Kubernetes.class);
+        when(kubernetes.listRouters()).thenReturn(Arrays.asList(createRouter("router-0", "10.0.0.1"), createRouter("router-1", "10.0.0.2")));
+        clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1000));
+
+        cache = new RouterStatusCache(routerManagement, kubernetes, mock(EventLogger.class), "myspace", Duration.ofSeconds(30), false,
+                Duration.ofMillis(500), Duration.ofMinutes(5), clock);
+    }
+
+    @AfterEach
+    public void teardown() {
+        cache.stop();
+    }
+
+    @Test
+    public void testSlowRouterDoesNotHoldBackOthers() {
+        slowHosts.add("10.0.0.2");
+
+        cache.checkRouterStatus();
+
+        assertEquals(Arrays.asList("router-0"), routerIds(cache.getLatestResults()));
+        assertEquals(1, cache.getRouterCheckTimeouts());
+    }
+
+    @Test
+    public void testQueryOfSlowRouterIsCancelled() {
+        slowHosts.add("10.0.0.2");
+
+        cache.checkRouterStatus();
+        assertEquals(1, slowQueries.size());
+        assertTrue(slowQueries.get(0).isCancelled());
+
+        // Queried again by the next check
+        cache.checkRouterStatus();
+        assertEquals(2, slowQueries.size());
+        assertEquals(2, previousTables.get("10.0.0.2").size());
+    }
+
+    @Test
+    public void testPreviousStatusOfSlowRouterIsKept() {
+        cache.checkRouterStatus();
+        assertEquals(Arrays.asList("router-0", "router-1"), routerIds(cache.getLatestResults()));
+
+        slowHosts.add("10.0.0.2");
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1060));
+        cache.checkRouterStatus();
+
+        RouterStatusSnapshot snapshot = cache.getLatestResults();
+        assertEquals(Arrays.asList("router-0", "router-1"), routerIds(snapshot));
+        assertEquals(Instant.ofEpochSecond(1000), snapshot.getCollected());
+
+        // Older than the maximum age
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1400));
+        cache.checkRouterStatus();
+
+        snapshot = cache.getLatestResults();
+        assertEquals(Arrays.asList("router-0"), routerIds(snapshot));
+        assertEquals(Instant.ofEpochSecond(1400), snapshot.getCollected());
+    }
+
+    @Test
+    public void testLatestResultsAge() {
+        assertFalse(cache.getLatestResultsAge().isPresent());
+
+        cache.checkRouterStatus();
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1060));
+        assertEquals(Optional.of(Duration.ofSeconds(60)), cache.getLatestResultsAge());
+    }
+
+    @Test
+    public void testDeltaBaseIsResetOnRouterRestart() {
+        cache.stop();
+        cache = new RouterStatusCache(routerManagement, kubernetes, mock(EventLogger.class), "myspace", Duration.ofSeconds(30), true,
+                Duration.ofMillis(500), Duration.ofMinutes(5), clock);
+
+        cache.checkRouterStatus();
+        cache.checkRouterStatus();
+        assertTrue(previousTables.get("10.0.0.1").get(0).isEmpty());
+        assertFalse(previousTables.get("10.0.0.1").get(1).isEmpty());
+
+        // Same pod name, new router container
+        when(kubernetes.listRouters()).thenReturn(Arrays.asList(createRouter("router-0", "10.0.0.1", "docker://restarted"), createRouter("router-1", "10.0.0.2")));
+        cache.checkRouterStatus();
+        assertTrue(previousTables.get("10.0.0.1").get(2).isEmpty());
+        assertFalse(previousTables.get("10.0.0.2").get(2).isEmpty());
+
+        cache.checkRouterStatus();
+        assertFalse(previousTables.get("10.0.0.1").get(3).isEmpty());
+    }
+
+    private static List<String> routerIds(RouterStatusSnapshot snapshot) {
+        return snapshot.getRouters().stream().map(RouterStatus::getRouterId).sorted().collect(Collectors.toList());
+    }
+
+    private static Pod createRouter(String name, String ip) {
+        return createRouter(name, ip, "docker://" + name);
+    }
+
+    private static Pod createRouter(String name, String ip, String containerId) {
+        return new PodBuilder()
+                .editOrNewMetadata()
+                .withName(name)
+                .withUid(name + "-uid")
+                .endMetadata()
+                .editOrNewSpec()
+                .addNewContainer()
+                .withName("router")
+                .addNewPort()
+                .withName("amqps-normal")
+                .withContainerPort(55671)
+                .endPort()
+                .endContainer()
+                .endSpec()
+                .editOrNewStatus()
+                .withPodIP(ip)
+                .addNewContainerStatus()
+                .withName("router")
+                .withContainerID(containerId)
+                .endContainerStatus()
+                .addNewCondition()
+                .withType("Ready")
+                .withStatus("True")
+                .endCondition()
+                .endStatus()
+                .build();
+    }
+}
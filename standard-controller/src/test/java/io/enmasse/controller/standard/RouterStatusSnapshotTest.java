@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.enmasse.controller.standard;
+
+import io.enmasse.address.model.Address;
+import io.enmasse.address.model.AddressBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RouterStatusSnapshotTest {
+
+    @Test
+    public void testQueueChecks() {
+        RouterStatusSnapshot snapshot = new RouterStatusSnapshot(Arrays.asList(
+                new RouterStatus("r1", Arrays.asList("q1", "q2"),
+                        Arrays.asList(
+                                Arrays.asList("q1", "broker-0", "in", "active"),
+                                Arrays.asList("q1", "broker-0", "out", "active"),
+                                Arrays.asList("q2", "broker-0", "in", "inactive")),
+                        Collections.emptyList(), Collections.emptyList(), Collections.emptyList()),
+                new RouterStatus("r2", Collections.singletonList("q1"),
+                        Arrays.asList(
+                                Arrays.asList("q1", "broker-0", "in", "inactive"),
+                                Arrays.asList("q1", "broker-0", "out", "inactive")),
+                        Collections.emptyList(), Collections.emptyList(), Collections.emptyList())));
+
+        Address q1 = createAddress("q1", "queue", "broker-0");
+        assertEquals(2, snapshot.checkAddress(q1));
+        assertEquals(4, snapshot.checkAutoLinks(q1));
+        assertEquals(1, snapshot.checkActiveAutoLink(q1));
+        assertTrue(q1.getStatus().isReady());
+
+        Address q2 = createAddress("q2", "queue", "broker-0");
+        assertEquals(1, snapshot.checkAddress(q2));
+        assertEquals(1, snapshot.checkAutoLinks(q2));
+        assertEquals(0, snapshot.checkActiveAutoLink(q2));
+        assertFalse(q2.getStatus().isReady());
+        assertTrue(q2.getStatus().getMessages().contains("Address q2 not found on r2"));
+    }
+
+    @Test
+    public void testTopicChecks() {
+        List<List<String>> linkRoutes = Arrays.asList(
+                Arrays.asList("t1", "broker-0", "in", "active"),
+                Arrays.asList("t1", "broker-0", "out", "active"));
+        RouterStatusSnapshot snapshot = new RouterStatusSnapshot(Arrays.asList(
+                new RouterStatus("r1", Collections.emptyList(), Collections.emptyList(), linkRoutes, Arrays.asList("broker-0-0", "client"), Collections.emptyList()),
+                new RouterStatus("r2", Collections.emptyList(), Collections.emptyList(), linkRoutes, Collections.singletonList("client"), Collections.emptyList())));
+
+        Address t1 = createAddress("t1", "topic", "broker-0");
+        assertEquals(4, snapshot.checkLinkRoutes(t1));
+        assertEquals(1, snapshot.checkActiveLinkRoute(t1));
+        assertEquals(1, snapshot.checkConnection(t1));
+        assertTrue(t1.getStatus().isReady());
+
+        Address t2 = createAddress("t2", "topic", "broker-1");
+        assertEquals(0, snapshot.checkLinkRoutes(t2));
+        assertEquals(0, snapshot.checkConnection(t2));
+        assertFalse(t2.getStatus().isReady());
+    }
+
+    private static Address createAddress(String address, String type, String clusterId) {
+        return new AddressBuilder()
+                .withNewMetadata()
+                .withName("myspace." + address)
+                .endMetadata()
+                .withNewSpec()
+                .withAddress(address)
+                .withType(type)
+                .endSpec()
+                .withNewStatus()
+                .withReady(true)
+                .addNewBrokerStatus()
+                .withClusterId(clusterId)
+                .withContainerId(clusterId + "-0")
+                .endBrokerStatus()
+                .endStatus()
+                .build();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.broker.forwarder;
+
+import enmasse.discovery.Endpoint;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.net.PemKeyCertOptions;
+import io.vertx.core.net.PemTrustOptions;
+import io.vertx.proton.ProtonClient;
+import io.vertx.proton.ProtonClientOptions;
+import io.vertx.proton.ProtonConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The connections from the local broker to a remote broker, shared by the forwarders of all the addresses between them.
+ * Each forwarder opens its own links on the connections. When either connection is lost, both are closed and
+ * reconnected once for all the forwarders.
+ */
+public class BrokerConnection extends AbstractVerticle {
+    private static final Logger log = LoggerFactory.getLogger(BrokerConnection.class.getName());
+
+    private final Endpoint from;
+    private final Endpoint to;
+    private final long connectionRetryInterval;
+    private final String certDir;
+    private final Collection<String> addresses;
+    private final int window;
+    private volatile List<Forwarder> forwarders = Collections.emptyList();
+
+    private ProtonConnection senderConnection;
+    private ProtonConnection receiverConnection;
+    private boolean stopped;
+
+    public BrokerConnection(Endpoint from, Endpoint to, Collection<String> addresses, long connectionRetryInterval, String certDir, int window) {
+        this.from = from;
+        this.to = to;
+        this.connectionRetryInterval = connectionRetryInterval;
+        this.certDir = certDir;
+        this.addresses = new ArrayList<>(addresses);
+        this.window = window;
+    }
+
+    public List<Forwarder> getForwarders() {
+        return forwarders;
+    }
+
+    @Override
+    public void start() {
+        List<Forwarder> forwarders = new ArrayList<>();
+        for (String address : addresses) {
+            forwarders.add(new Forwarder(vertx, from, to, address, connectionRetryInterval, window));
+        }
+        this.forwarders = Collections.unmodifiableList(forwarders);
+        connectSender();
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        closeConnections();
+    }
+
+    private void connectSender() {
+        ProtonClient client = ProtonClient.create(vertx);
+        log.info(this + ": connecting to " + to.hostname() + ":" + to.port());
+        client.connect(getOptions(), to.hostname(), to.port(), event -> {
+            if (event.succeeded()) {
+                ProtonConnection connection = event.result();
+                senderConnection = connection;
+                connection.openHandler(result -> {
+                    if (result.succeeded()) {
+                        connectReceiver(connection);
+                    } else {
+                        connectionLost(connection, result.cause().getMessage());
+                    }
+                });
+                connection.closeHandler(result -> connectionLost(connection, "closed"));
+                connection.disconnectHandler(c -> connectionLost(connection, "disconnected"));
+                connection.open();
+            } else {
+                log.info(this + ": connection failed, retrying: " + event.cause().getMessage());
+                scheduleReconnect();
+            }
+        });
+    }
+
+    private void connectReceiver(ProtonConnection sender) {
+        String containerId = sender.getRemoteContainer();
+        ProtonClient client = ProtonClient.create(vertx);
+        log.info(this + ": connecting to " + from.hostname() + ":" + from.port());
+        client.connect(getOptions(), from.hostname(), from.port(), event -> {
+            if (sender != senderConnection) {
+                if (event.succeeded()) {
+                    event.result().close();
+                }
+            } else if (event.succeeded()) {
+                ProtonConnection connection = event.result();
+                receiverConnection = connection;
+                connection.setContainer("topic-forwarder-" + containerId);
+                connection.openHandler(result -> {
+                    if (result.succeeded()) {
+                        log.info(this + ": connected to " + sender.getRemoteContainer() + " and " + connection.getRemoteContainer());
+                        for (Forwarder forwarder : forwarders) {
+                            forwarder.attach(sender, connection, getLinkName(containerId, forwarder.getAddress()));
+                        }
+                    } else {
+                        connectionLost(connection, result.cause().getMessage());
+                    }
+                });
+                connection.closeHandler(result -> connectionLost(connection, "closed"));
+                connection.disconnectHandler(c -> connectionLost(connection, "disconnected"));
+                connection.open();
+            } else {
+                connectionLost(sender, "failed: " + event.cause().getMessage());
+            }
+        });
+    }
+
+    /**
+     * The subscription of a forwarder is named by its link. A single forwarder keeps the name used before connections
+     * were shared, so that its existing subscription is reused.
+     */
+    private String getLinkName(String containerId, String address) {
+        return addresses.size() == 1 ? containerId : containerId + "-" + address;
+    }
+
+    private void connectionLost(ProtonConnection connection, String reason) {
+        if (connection != senderConnection && connection != receiverConnection) {
+            // Already handled when the other connection was lost
+            return;
+        }
+        log.warn(this + ": connection " + reason + ", reconnecting");
+        closeConnections();
+        scheduleReconnect();
+    }
+
+    private void closeConnections() {
+        for (Forwarder forwarder : forwarders) {
+            forwarder.detach();
+        }
+        ProtonConnection sender = senderConnection;
+        ProtonConnection receiver = receiverConnection;
+        senderConnection = null;
+        receiverConnection = null;
+        if (receiver != null) {
+            receiver.close();
+            receiver.disconnect();
+        }
+        if (sender != null) {
+            sender.close();
+            sender.disconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        if (!stopped) {
+            vertx.setTimer(connectionRetryInterval, timerId -> {
+                if (!stopped && senderConnection == null) {
+                    connectSender();
+                }
+            });
+        }
+    }
+
+    private ProtonClientOptions getOptions() {
+        ProtonClientOptions options = new ProtonClientOptions();
+        if (certDir != null) {
+            options.setHostnameVerificationAlgorithm("")
+                    .setSsl(true)
+                    .addEnabledSaslMechanism("ANONYMOUS")
+                    .setHostnameVerificationAlgorithm("")
+                    .setPemTrustOptions(new PemTrustOptions()
+                            .addCertPath(new File(certDir, "ca.crt").getAbsolutePath()))
+                    .setPemKeyCertOptions(new PemKeyCertOptions()
+                            .setCertPath(new File(certDir, "tls.crt").getAbsolutePath())
+                            .setKeyPath(new File(certDir, "tls.key").getAbsolutePath()));
+        }
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(from.hostname()).append(":").append(from.port());
+        builder.append(" -> ");
+        builder.append(to.hostname()).append(":").append(to.port());
+        return builder.toString();
+    }
+}
@@ -6,178 +6,194 @@
 package enmasse.broker.forwarder;
 
 import enmasse.discovery.Endpoint;
-import io.vertx.core.AbstractVerticle;
-import io.vertx.core.net.PemKeyCertOptions;
-import io.vertx.core.net.PemTrustOptions;
-import io.vertx.proton.*;
+import io.enmasse.metrics.api.HistogramRecorder;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonDelivery;
+import io.vertx.proton.ProtonLink;
+import io.vertx.proton.ProtonLinkOptions;
+import io.vertx.proton.ProtonReceiver;
+import io.vertx.proton.ProtonSender;
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
 import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Outcome;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.amqp.messaging.Target;
 import org.apache.qpid.proton.amqp.messaging.TerminusDurability;
+import org.apache.qpid.proton.amqp.transport.DeliveryState;
 import org.apache.qpid.proton.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Optional;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * A forwarder forwards AMQP messages from one host to another, using durable subscriptions, flow control and linked acknowledgement.
+ * A forwarder forwards AMQP messages of an address from one host to another, using durable subscriptions, flow control and linked acknowledgement.
+ * The links of a forwarder are opened on the connections of the {@link BrokerConnection} it belongs to.
  */
-public class Forwarder extends AbstractVerticle {
+public class Forwarder {
     private static final Logger log = LoggerFactory.getLogger(Forwarder.class.getName());
 
+    private final Vertx vertx;
     private final String address;
     private final Endpoint from;
     private final Endpoint to;
-    private final long connectionRetryInterval;
+    private final long linkRetryInterval;
+    private final int window;
 
-    private volatile Optional<ProtonConnection> senderConnection = Optional.empty();
-    private volatile Optional<ProtonConnection> receiverConnection = Optional.empty();
+    private final LongAdder messagesForwarded = new LongAdder();
+    private final LongAdder messagesSkipped = new LongAdder();
+    private final HistogramRecorder forwardDuration = new HistogramRecorder(0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10);
+    private volatile SourceWindow currentWindow;
+
+    private ProtonConnection senderConnection;
+    private ProtonConnection receiverConnection;
+    private String linkName;
+    private ProtonSender sender;
+    private ProtonReceiver receiver;
 
     private static Symbol replicated = Symbol.getSymbol("replicated");
     private static Symbol topic = Symbol.getSymbol("topic");
-    private final String certDir;
 
-    public Forwarder(Endpoint from, Endpoint to, String address, long connectionRetryInterval, String certDir) {
+    Forwarder(Vertx vertx, Endpoint from, Endpoint to, String address, long linkRetryInterval, int window) {
+        this.vertx = vertx;
         this.from = from;
         this.to = to;
         this.address = address;
-        this.connectionRetryInterval = connectionRetryInterval;
-        this.certDir = certDir;
+        this.linkRetryInterval = linkRetryInterval;
+        this.window = window;
     }
 
-    @Override
-    public void start() {
+    /**
+     * Open the links of the forwarder on the given connections.
+     */
+    void attach(ProtonConnection senderConnection, ProtonConnection receiverConnection, String linkName) {
+        this.senderConnection = senderConnection;
+        this.receiverConnection = receiverConnection;
+        this.linkName = linkName;
         startSender();
     }
 
-    private void startReceiver(ProtonSender sender, String containerId) {
-        log.info("Starting receiver");
-        ProtonClient client = ProtonClient.create(vertx);
-        client.connect(getOptions(), from.hostname(), from.port(), event -> {
-            if (event.succeeded()) {
-                ProtonConnection connection = event.result();
-                connection.setContainer("topic-forwarder-" + containerId);
-                connection.open();
-                receiverConnection = Optional.of(connection);
-
-                Source source = new Source();
-                source.setAddress(address);
-                source.setCapabilities(topic);
-                source.setDurable(TerminusDurability.UNSETTLED_STATE);
-
-                ProtonReceiver receiver = connection.createReceiver(address, new ProtonLinkOptions().setLinkName(containerId));
-
-                receiver.setAutoAccept(false);
-                receiver.openHandler(handler -> {
-                    log.info(this + ": receiver opened to " + connection.getRemoteContainer());
-                });
-                receiver.closeHandler(result -> {
-                    if (result.succeeded()) {
-                        log.info(this + ": receiver closed");
-                        closeReceiver();
-                    } else {
-                        log.warn(this + ": receiver closed with error: " + result.cause().getMessage());
-                        closeReceiver();
-                        vertx.setTimer(connectionRetryInterval, timerId -> startReceiver(sender, containerId));
-                    }
-                });
-                receiver.setPrefetch(0);
-                receiver.flow(sender.getCredit());
-                receiver.setSource(source);
-                receiver.handler(((delivery, message) -> handleMessage(sender, receiver, delivery, message)));
-                receiver.open();
-            } else {
-                log.info(this + ": connection failed, retrying: " + event.cause().getMessage());
-                vertx.setTimer(connectionRetryInterval, timerId -> startReceiver(sender, containerId));
-            }
+    /**
+     * Forget the links of the forwarder, as their connections are closed.
+     */
+    void detach() {
+        closeLinks();
+        senderConnection = null;
+        receiverConnection = null;
+    }
+
+    private void startSender() {
+        log.info(this + ": starting sender");
+        ProtonSender sender = senderConnection.createSender(address);
+        this.sender = sender;
+        sender.openHandler(handler -> {
+            log.info(this + ": sender opened to " + senderConnection.getRemoteContainer());
+            startReceiver(sender);
         });
+        sender.closeHandler(result -> linkClosed(sender, result));
+
+        Target target = new Target();
+        target.setAddress(address);
+        target.setCapabilities(topic);
+        sender.setTarget(target);
+
+        sender.open();
     }
 
-    @Override
-    public String toString() {
-        StringBuilder builder = new StringBuilder();
-        builder.append(from.hostname()).append(":").append(from.port());
-        builder.append(" -> ");
-        builder.append(to.hostname()).append(":").append(to.port());
-        return builder.toString();
+    private void startReceiver(ProtonSender sender) {
+        log.info(this + ": starting receiver");
+        Source source = new Source();
+        source.setAddress(address);
+        source.setCapabilities(topic);
+        source.setDurable(TerminusDurability.UNSETTLED_STATE);
+
+        ProtonReceiver receiver = receiverConnection.createReceiver(address, new ProtonLinkOptions().setLinkName(linkName));
+        this.receiver = receiver;
+
+        receiver.setAutoAccept(false);
+        receiver.openHandler(handler -> {
+            log.info(this + ": receiver opened to " + receiverConnection.getRemoteContainer());
+        });
+        receiver.closeHandler(result -> linkClosed(receiver, result));
+        receiver.setPrefetch(0);
+        SourceWindow sourceWindow = new SourceWindow(receiver);
+        currentWindow = sourceWindow;
+        receiver.setSource(source);
+        receiver.handler(((delivery, message) -> handleMessage(sender, sourceWindow, delivery, message)));
+        receiver.open();
+        sourceWindow.open();
     }
 
-    private ProtonClientOptions getOptions() {
-        ProtonClientOptions options = new ProtonClientOptions();
-        if (certDir != null) {
-            options.setHostnameVerificationAlgorithm("")
-                    .setSsl(true)
-                    .addEnabledSaslMechanism("ANONYMOUS")
-                    .setHostnameVerificationAlgorithm("")
-                    .setPemTrustOptions(new PemTrustOptions()
-                            .addCertPath(new File(certDir, "ca.crt").getAbsolutePath()))
-                    .setPemKeyCertOptions(new PemKeyCertOptions()
-                            .setCertPath(new File(certDir, "tls.crt").getAbsolutePath())
-                            .setKeyPath(new File(certDir, "tls.key").getAbsolutePath()));
+    private void linkClosed(ProtonLink<?> link, AsyncResult<?> result) {
+        if (link != sender && link != receiver) {
+            // Closed by us
+            return;
+        }
+        String type = link == sender ? "sender" : "receiver";
+        closeLinks();
+        if (result.succeeded()) {
+            log.info(this + ": " + type + " closed");
+        } else {
+            log.warn(this + ": " + type + " closed with error: " + result.cause().getMessage());
+            ProtonConnection connection = senderConnection;
+            vertx.setTimer(linkRetryInterval, timerId -> {
+                if (connection != null && connection == senderConnection) {
+                    startSender();
+                }
+            });
         }
-        return options;
     }
 
-    private void startSender() {
-        ProtonClient client = ProtonClient.create(vertx);
-        log.info(this + ": starting sender");
-        client.connect(getOptions(), to.hostname(), to.port(), event -> {
-            if (event.succeeded()) {
-                ProtonConnection connection = event.result();
-                connection.open();
-                senderConnection = Optional.of(connection);
-                ProtonSender sender = connection.createSender(address);
-                sender.openHandler(handler -> {
-                    log.info(this + ": sender opened to " + connection.getRemoteContainer());
-                    startReceiver(sender, connection.getRemoteContainer());
-
-                });
-                sender.closeHandler(result -> {
-                    if (result.succeeded()) {
-                        log.info(this + ": sender closed");
-                        closeReceiver();
-                    } else {
-                        closeReceiver();
-                        log.warn(this + ": sender closed with error: " + result.cause().getMessage());
-                        vertx.setTimer(connectionRetryInterval, timerId -> startSender());
-                    }
-                });
-
-                Target target = new Target();
-                target.setAddress(address);
-                target.setCapabilities(topic);
-                sender.setTarget(target);
-
-                sender.open();
-            } else {
-                closeReceiver();
-                log.info(this + ": connection failed: " + event.cause().getMessage());
-                vertx.setTimer(connectionRetryInterval, timerId -> startSender());
-            }
-        });
+    private void closeLinks() {
+        ProtonReceiver receiver = this.receiver;
+        ProtonSender sender = this.sender;
+        this.receiver = null;
+        this.sender = null;
+        currentWindow = null;
+        if (receiver != null) {
+            receiver.close();
+        }
+        if (sender != null) {
+            sender.close();
+        }
     }
 
-    private void closeReceiver() {
-        receiverConnection.ifPresent(ProtonConnection::close);
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(address).append(": ");
+        builder.append(from.hostname()).append(":").append(from.port());
+        builder.append(" -> ");
+        builder.append(to.hostname()).append(":").append(to.port());
+        return builder.toString();
     }
 
-    private void handleMessage(ProtonSender protonSender, ProtonReceiver protonReceiver, ProtonDelivery protonDelivery, Message message) {
+    private void handleMessage(ProtonSender protonSender, SourceWindow sourceWindow, ProtonDelivery protonDelivery, Message message) {
         if (log.isDebugEnabled()) {
             log.debug(this + ": forwarding message");
         }
+        sourceWindow.received();
         if (!isMessageReplicated(message)) {
-            forwardMessage(protonSender, protonReceiver, protonDelivery, message);
+            forwardMessage(protonSender, sourceWindow, protonDelivery, message);
         } else {
-            protonDelivery.disposition(Accepted.getInstance(), true);
+            messagesSkipped.increment();
+            sourceWindow.settle(protonDelivery, Accepted.getInstance());
         }
     }
 
-    private void forwardMessage(ProtonSender protonSender, ProtonReceiver protonReceiver, ProtonDelivery sourceDelivery, Message message) {
+    private void forwardMessage(ProtonSender protonSender, SourceWindow sourceWindow, ProtonDelivery sourceDelivery, Message message) {
+        long receivedAt = System.nanoTime();
+        // The message is decoded by the receiver and encoded again by the sender. vertx-proton reads the bytes of a
+        // delivery and decodes them before calling the handler, without keeping them, so the replicated annotation
+        // can't be spliced in front of the original sections.
         MessageAnnotations annotations = message.getMessageAnnotations();
         if (annotations == null) {
             annotations = new MessageAnnotations(Collections.singletonMap(replicated, true));
@@ -185,20 +201,110 @@ public class Forwarder extends AbstractVerticle {
             annotations.getValue().put(replicated, true);
         }
         message.setMessageAnnotations(annotations);
+        AtomicBoolean done = new AtomicBoolean(false);
         protonSender.send(message, protonDelivery -> {
-            sourceDelivery.disposition(protonDelivery.getRemoteState(), protonDelivery.remotelySettled());
-            protonReceiver.flow(protonSender.getCredit() - protonReceiver.getCredit());
+            DeliveryState state = protonDelivery.getRemoteState();
+            // The destination may give the outcome without settling, the delivery is done either way
+            if (!(protonDelivery.remotelySettled() || state instanceof Outcome) || !done.compareAndSet(false, true)) {
+                return;
+            }
+            if (!protonDelivery.remotelySettled()) {
+                protonDelivery.settle();
+            }
+            messagesForwarded.increment();
+            forwardDuration.observe((double) (System.nanoTime() - receivedAt) / TimeUnit.SECONDS.toNanos(1));
+            sourceWindow.settle(sourceDelivery, state);
         });
     }
 
-    @Override
-    public void stop() {
-        receiverConnection.ifPresent(ProtonConnection::close);
-        senderConnection.ifPresent(ProtonConnection::close);
+    public String getAddress() {
+        return address;
+    }
+
+    public Endpoint getDestination() {
+        return to;
+    }
+
+    /**
+     * Number of messages forwarded and settled, or given an outcome, by the destination.
+     */
+    public long getMessagesForwarded() {
+        return messagesForwarded.sum();
+    }
+
+    /**
+     * Number of messages not forwarded because they were replicated from another broker.
+     */
+    public long getMessagesSkipped() {
+        return messagesSkipped.sum();
+    }
+
+    /**
+     * Number of messages received from the source that are not yet settled.
+     */
+    public int getMessagesInFlight() {
+        SourceWindow current = currentWindow;
+        return current != null ? current.inFlight : 0;
+    }
+
+    /**
+     * Time from receiving a message from the source to its settlement by the destination.
+     */
+    public HistogramRecorder getForwardDuration() {
+        return forwardDuration;
     }
 
     private static boolean isMessageReplicated(Message message) {
         MessageAnnotations annotations = message.getMessageAnnotations();
         return annotations != null && annotations.getValue().containsKey(replicated);
     }
+
+    /**
+     * Flow control of a source receiver. Credit is given for up to a window of messages in flight and returned in
+     * batches of half the window, rather than after each message, so that the source keeps sending while earlier
+     * messages are waiting for the destination. The source dispositions of all the settlements handled in the same
+     * event loop turn are applied together.
+     */
+    private class SourceWindow {
+        private final ProtonReceiver receiver;
+        private final List<Runnable> pendingDispositions = new ArrayList<>();
+        private volatile int inFlight;
+        private int pendingCredit;
+
+        private SourceWindow(ProtonReceiver receiver) {
+            this.receiver = receiver;
+        }
+
+        private void open() {
+            receiver.flow(window);
+        }
+
+        private void received() {
+            inFlight++;
+        }
+
+        /**
+         * Settle a delivery from the source with the outcome of the destination, freeing its credit.
+         */
+        private void settle(ProtonDelivery delivery, DeliveryState state) {
+            if (pendingDispositions.isEmpty()) {
+                vertx.runOnContext(v -> flush());
+            }
+            pendingDispositions.add(() -> delivery.disposition(state, true));
+            inFlight--;
+            pendingCredit++;
+        }
+
+        private void flush() {
+            for (Runnable disposition : pendingDispositions) {
+                disposition.run();
+            }
+            pendingDispositions.clear();
+
+            if (pendingCredit >= Math.max(1, window / 2)) {
+                receiver.flow(pendingCredit);
+                pendingCredit = 0;
+            }
+        }
+    }
 }
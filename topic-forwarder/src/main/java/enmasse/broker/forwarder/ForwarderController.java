@@ -7,42 +7,129 @@ package enmasse.broker.forwarder;
 
 import enmasse.discovery.DiscoveryListener;
 import enmasse.discovery.Host;
+import io.enmasse.metrics.api.HistogramMetric;
+import io.enmasse.metrics.api.MetricLabel;
+import io.enmasse.metrics.api.MetricSnapshot;
+import io.enmasse.metrics.api.MetricType;
+import io.enmasse.metrics.api.MetricValue;
+import io.enmasse.metrics.api.Metrics;
+import io.enmasse.metrics.api.MetricsFormatter;
+import io.enmasse.metrics.api.PrometheusMetricsFormatter;
+import io.enmasse.metrics.api.ScalarMetric;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.AbstractVerticle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Maintains a set of {@link Forwarder} instances from a given host based on discovered hosts.
+ * Maintains a set of {@link Forwarder} instances from a given host based on discovered hosts, with one
+ * {@link BrokerConnection} per discovered host for the forwarders of all addresses.
  */
 public class ForwarderController extends AbstractVerticle implements DiscoveryListener {
     private static final Logger log = LoggerFactory.getLogger(ForwarderController.class.getName());
 
+    private static final MetricsFormatter metricsFormatter = new PrometheusMetricsFormatter();
+
     private final Map<Host, String> replicatedHosts = new HashMap<>();
+    private final Map<Host, BrokerConnection> brokerConnections = new ConcurrentHashMap<>();
+    private final Metrics metrics = new Metrics();
 
     private final Host localHost;
-    private final String address;
+    private final List<String> addresses;
     private final long connectionRetryInterval = 5000;
     private final String certDir;
+    private final int window;
 
-    public ForwarderController(Host localHost, String address, String certDir) {
+    public ForwarderController(Host localHost, List<String> addresses, String certDir, int window) {
         this.localHost = localHost;
-        this.address = address;
+        this.addresses = new ArrayList<>(addresses);
         this.certDir = certDir;
+        this.window = window;
+        registerMetrics();
     }
 
     @Override
     public void start() {
         vertx.createHttpServer()
-                .requestHandler(request -> request.response().setStatusCode(HttpResponseStatus.OK.code()).end())
+                .requestHandler(request -> {
+                    if ("/metrics".equals(request.path())) {
+                        request.response()
+                                .setStatusCode(HttpResponseStatus.OK.code())
+                                .putHeader("Content-Type", "text/plain")
+                                .end(formatMetrics(System.currentTimeMillis()));
+                    } else {
+                        request.response().setStatusCode(HttpResponseStatus.OK.code()).end();
+                    }
+                })
                 .listen(8088);
     }
 
+    String formatMetrics(long timestamp) {
+        return metricsFormatter.format(metrics.getMetrics(), timestamp);
+    }
+
+    private void registerMetrics() {
+        metrics.registerMetric(new ScalarMetric(
+                "topic_forwarder_messages_forwarded_total",
+                "Number of messages forwarded and settled by the destination broker",
+                MetricType.counter,
+                () -> forwarderValues(Forwarder::getMessagesForwarded)));
+
+        metrics.registerMetric(new ScalarMetric(
+                "topic_forwarder_messages_skipped_total",
+                "Number of messages not forwarded because they were replicated from another broker",
+                MetricType.counter,
+                () -> forwarderValues(Forwarder::getMessagesSkipped)));
+
+        metrics.registerMetric(new ScalarMetric(
+                "topic_forwarder_messages_in_flight",
+                "Number of messages received from the local broker and not yet settled by the destination broker",
+                MetricType.gauge,
+                () -> forwarderValues(Forwarder::getMessagesInFlight)));
+
+        metrics.registerMetric(new HistogramMetric(
+                "topic_forwarder_forward_duration_seconds",
+                "Time from receiving a message from the local broker to its settlement by the destination broker",
+                MetricType.histogram,
+                () -> forwardDurationSnapshots().stream().flatMap(snapshot -> snapshot.getSumValues().stream()).collect(Collectors.toList()),
+                () -> forwardDurationSnapshots().stream().flatMap(snapshot -> snapshot.getCountValues().stream()).collect(Collectors.toList()),
+                Collections.singletonList(() -> forwardDurationSnapshots().stream().flatMap(snapshot -> snapshot.getValues().stream()).collect(Collectors.toList()))));
+    }
+
+    private List<MetricValue> forwarderValues(Function<Forwarder, Number> value) {
+        return forwarders()
+                .map(forwarder -> new MetricValue(value.apply(forwarder), getLabels(forwarder)))
+                .collect(Collectors.toList());
+    }
+
+    private List<MetricSnapshot> forwardDurationSnapshots() {
+        return forwarders()
+                .map(forwarder -> forwarder.getForwardDuration().toMetric("topic_forwarder_forward_duration_seconds", "", getLabels(forwarder)).getSnapshot())
+                .collect(Collectors.toList());
+    }
+
+    private Stream<Forwarder> forwarders() {
+        return brokerConnections.values().stream().flatMap(brokerConnection -> brokerConnection.getForwarders().stream());
+    }
+
+    private MetricLabel[] getLabels(Forwarder forwarder) {
+        return new MetricLabel[]{
+                new MetricLabel("address", forwarder.getAddress()),
+                new MetricLabel("destination", forwarder.getDestination().hostname() + ":" + forwarder.getDestination().port())};
+    }
+
     @Override
     public synchronized void hostsChanged(Set<Host> hosts) {
         hosts.remove(localHost);
@@ -66,18 +153,20 @@ public class ForwarderController extends AbstractVerticle implements DiscoveryLi
     }
 
     private void deleteForwarder(Host host) {
-        String forwarder = replicatedHosts.remove(host);
-        log.info("Deleting forwarder " + forwarder);
-        assert (forwarder != null);
-        vertx.undeploy(forwarder);
+        String brokerConnection = replicatedHosts.remove(host);
+        brokerConnections.remove(host);
+        log.info("Deleting forwarders " + brokerConnection);
+        assert (brokerConnection != null);
+        vertx.undeploy(brokerConnection);
     }
 
     private void createForwarder(Host host) {
-        Forwarder forwarder = new Forwarder(localHost.amqpEndpoint(), host.amqpEndpoint(), address, connectionRetryInterval, certDir);
-        log.info("Creating forwarder " + forwarder);
-        vertx.deployVerticle(forwarder, result -> {
+        BrokerConnection brokerConnection = new BrokerConnection(localHost.amqpEndpoint(), host.amqpEndpoint(), addresses, connectionRetryInterval, certDir, window);
+        log.info("Creating forwarders " + brokerConnection + " for " + addresses);
+        vertx.deployVerticle(brokerConnection, result -> {
             if (result.succeeded()) {
                 replicatedHosts.put(host, result.result());
+                brokerConnections.put(host, brokerConnection);
             }
         });
     }
@@ -12,26 +12,30 @@ import io.vertx.core.Vertx;
 import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * TopicForwarder entry point for topic forwarder.
  */
 public class TopicForwarder {
+    private static final int DEFAULT_WINDOW = 100;
 
     public static void main(String [] args) throws IOException, InterruptedException {
         Map<String, String> env = System.getenv();
         Map<String, String> labelFilter = getLabelFilter(env);
         Map<String, String> annotationFilter = getAnnotationFilter(env);
         Host localHost = getLocalHost();
-        String address = getAddress(env);
+        List<String> addresses = getAddresses(env);
 
         String certDir = System.getenv("CERT_DIR");
+        int window = getWindow(env);
 
         DiscoveryClient discoveryClient = new DiscoveryClient( labelFilter, annotationFilter, "broker");
-        ForwarderController replicator = new ForwarderController(localHost, address, certDir);
+        ForwarderController replicator = new ForwarderController(localHost, addresses, certDir, window);
         discoveryClient.addListener(replicator);
 
         Vertx vertx = Vertx.vertx();
@@ -42,8 +46,18 @@ public class TopicForwarder {
         });
     }
 
-    private static String getAddress(Map<String, String> env) {
-        return getEnvOrThrow(env, "TOPIC_NAME");
+    static List<String> getAddresses(Map<String, String> env) {
+        return Arrays.asList(getEnvOrThrow(env, "TOPIC_NAME").split(","));
+    }
+
+    private static int getWindow(Map<String, String> env) {
+        String value = env.get("FORWARDER_WINDOW");
+        int window = value != null ? Integer.parseInt(value) : DEFAULT_WINDOW;
+        // Without a window of at least one message no credit is ever given to the source
+        if (window < 1) {
+            throw new IllegalArgumentException(String.format("Invalid value '%s' for environment var 'FORWARDER_WINDOW', must be at least 1", value));
+        }
+        return window;
     }
 
     private static Host getLocalHost() throws UnknownHostException {
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019, EnMasse authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package enmasse.broker.forwarder;
+
+import enmasse.discovery.Endpoint;
+import enmasse.discovery.Host;
+import io.vertx.core.Verticle;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+public class ForwarderTest {
+    private static final int WINDOW = 4;
+    private final Vertx vertx = Vertx.vertx();
+    private final String localHost = "127.0.0.1";
+    private final String address = "mytopic";
+    private TestBroker local;
+    private TestBroker remote;
+
+    @BeforeEach
+    public void setup(VertxTestContext testContext) throws Exception {
+        local = new TestBroker(1, address);
+        remote = new TestBroker(2, address);
+        vertx.deployVerticle(local, testContext.succeeding(arg -> testContext.completeNow()));
+        vertx.deployVerticle(remote, testContext.succeeding(arg -> testContext.completeNow()));
+        waitFor(() -> local.getPort() > 0 && remote.getPort() > 0);
+    }
+
+    @AfterEach
+    public void teardown() {
+        vertx.close();
+    }
+
+    @Test
+    public void testWindowOfMessagesInFlight() throws Exception {
+        remote.holdDeliveries();
+        BrokerConnection brokerConnection = new BrokerConnection(new Endpoint(localHost, local.getPort()), new Endpoint(localHost, remote.getPort()),
+                Collections.singletonList(address), 1000, null, WINDOW);
+        deploy(brokerConnection);
+        waitFor(() -> local.numConnected() >= 1 && remote.numConnected() >= 1);
+
+        int messages = 3 * WINDOW;
+        for (int i = 0; i < messages; i++) {
+            local.sendMessage("Hello " + i, 60, TimeUnit.SECONDS);
+        }
+
+        // Without outcome from the remote broker, no more than a window of messages is forwarded
+        Forwarder forwarder = brokerConnection.getForwarders().get(0);
+        waitFor(() -> remote.numHeld() == WINDOW);
+        Thread.sleep(1000);
+        assertEquals(WINDOW, remote.numReceived());
+        assertEquals(WINDOW, forwarder.getMessagesInFlight());
+        assertEquals(0, forwarder.getMessagesForwarded());
+
+        // Accepted but not settled by the remote broker, the credit of the messages is given back all the same
+        while (forwarder.getMessagesForwarded() < messages) {
+            remote.acceptHeldDeliveries();
+            waitFor(() -> remote.numHeld() > 0 || forwarder.getMessagesForwarded() == messages);
+        }
+        assertEquals(messages, remote.numReceived());
+        waitFor(() -> forwarder.getMessagesInFlight() == 0);
+    }
+
+    @Test
+    public void testForwardersShareConnections() throws Exception {
+        List<String> addresses = TopicForwarder.getAddresses(Collections.singletonMap("TOPIC_NAME", "topic1,topic2,topic3"));
+        BrokerConnection brokerConnection = new BrokerConnection(new Endpoint(localHost, local.getPort()), new Endpoint(localHost, remote.getPort()),
+                addresses, 1000, null, WINDOW);
+        deploy(brokerConnection);
+
+        // A single connection to each broker, with the links of the forwarders of all topics
+        waitFor(() -> local.numAttached() == 3 && remote.numAttached() == 3);
+        assertEquals(3, brokerConnection.getForwarders().size());
+        assertEquals(1, local.numConnections());
+        assertEquals(1, remote.numConnections());
+
+        // Losing a connection, both are reconnected once and all forwarders attached again
+        remote.disconnectAll();
+        waitFor(() -> local.numAttached() == 6 && remote.numAttached() == 6);
+        Thread.sleep(1000);
+        assertEquals(6, local.numAttached());
+        assertEquals(6, remote.numAttached());
+        assertEquals(1, local.numConnections());
+        assertEquals(1, remote.numConnections());
+
+        // The test broker gives every message to all consumers, so it's forwarded once per topic
+        local.sendMessage("Hello", 60, TimeUnit.SECONDS);
+        waitFor(() -> remote.numReceived() == 3);
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        Host hostLocal = new Host(localHost, Collections.singletonMap("amqp", local.getPort()));
+        Host hostRemote = new Host(localHost, Collections.singletonMap("amqp", remote.getPort()));
+        ForwarderController controller = new ForwarderController(hostLocal, Collections.singletonList(address), null, WINDOW);
+        deploy(controller);
+        controller.hostsChanged(new HashSet<>(Collections.singleton(hostRemote)));
+        waitFor(() -> local.numConnected() >= 1 && remote.numConnected() >= 1);
+
+        local.sendMessage("Hello 1", 60, TimeUnit.SECONDS);
+        local.sendMessage("Hello 2", 60, TimeUnit.SECONDS);
+        waitFor(() -> remote.numReceived() == 2);
+
+        String labels = "{address=\"" + address + "\",destination=\"" + localHost + ":" + remote.getPort() + "\"}";
+        waitFor(() -> controller.formatMetrics(0).contains("enmasse_topic_forwarder_messages_forwarded_total" + labels + " 2\n"));
+        String metrics = controller.formatMetrics(0);
+        assertThat(metrics, containsString("enmasse_topic_forwarder_messages_skipped_total" + labels + " 0\n"));
+        assertThat(metrics, containsString("enmasse_topic_forwarder_messages_in_flight" + labels + " 0\n"));
+        assertThat(metrics, containsString("enmasse_topic_forwarder_forward_duration_seconds_count" + labels + " 2\n"));
+    }
+
+    private void deploy(Verticle verticle) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        vertx.deployVerticle(verticle, id -> latch.countDown());
+        assertTrue(latch.await(1, TimeUnit.MINUTES));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long endTime = System.currentTimeMillis() + 60_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < endTime) {
+            Thread.sleep(100);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -9,6 +9,7 @@ import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.proton.*;
 import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
 import org.apache.qpid.proton.amqp.messaging.AmqpValue;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.amqp.messaging.Target;
@@ -29,6 +30,11 @@ public class TestBroker extends AbstractVerticle {
     private final AsyncQueue queue = new AsyncQueue();
     private final AtomicInteger numConsumers = new AtomicInteger(0);
     private final AtomicInteger numProducers = new AtomicInteger(0);
+    private final AtomicInteger numReceived = new AtomicInteger(0);
+    private final AtomicInteger numAttached = new AtomicInteger(0);
+    private final Set<ProtonConnection> connections = Collections.synchronizedSet(new HashSet<>());
+    private final List<ProtonDelivery> heldDeliveries = new ArrayList<>();
+    private volatile boolean holdDeliveries;
 
     public TestBroker(int id, String address) {
         this.id = id;
@@ -41,6 +47,9 @@ public class TestBroker extends AbstractVerticle {
         protonServer = ProtonServer.create(vertx)
                 .connectHandler(connnection -> {
                     connnection.setContainer("broker-" + id);
+                    connections.add(connnection);
+                    connnection.closeHandler(closed -> connections.remove(connnection));
+                    connnection.disconnectHandler(disconnected -> connections.remove(connnection));
                     connnection.openHandler(conn -> {
                         if (conn.succeeded()) {
                             conn.result().open();
@@ -50,17 +59,34 @@ public class TestBroker extends AbstractVerticle {
                     });
                     connnection.sessionOpenHandler(ProtonSession::open);
                     connnection.receiverOpenHandler(receiver -> {
-                        receiver.handler((delivery, message) -> queue.add(message));
+                        boolean hold = holdDeliveries;
+                        receiver.setAutoAccept(!hold);
+                        receiver.handler((delivery, message) -> {
+                            numReceived.incrementAndGet();
+                            if (hold) {
+                                synchronized (heldDeliveries) {
+                                    heldDeliveries.add(delivery);
+                                }
+                            }
+                            queue.add(message);
+                        });
                         receiver.closeHandler(r -> numProducers.decrementAndGet());
                         receiver.open();
                         numProducers.incrementAndGet();
+                        numAttached.incrementAndGet();
                     });
 
                     connnection.senderOpenHandler(sender -> {
-                        queue.registerListener(sender::send);
+                        // Connections dropped by the broker leave their links behind
+                        queue.registerListener(message -> {
+                            if (connections.contains(connnection)) {
+                                sender.send(message);
+                            }
+                        });
                         sender.closeHandler(s -> numConsumers.decrementAndGet());
                         sender.open();
                         numConsumers.incrementAndGet();
+                        numAttached.incrementAndGet();
                     });
                 }).listen(0,"127.0.0.1", result -> {
                     if (result.succeeded()) {
@@ -136,6 +162,63 @@ public class TestBroker extends AbstractVerticle {
         return future;
     }
 
+    /**
+     * Keep the deliveries received on the links attached from now on without outcome, until released.
+     */
+    public void holdDeliveries() {
+        holdDeliveries = true;
+    }
+
+    /**
+     * Accept the deliveries held, without settling them.
+     */
+    public void acceptHeldDeliveries() {
+        context.runOnContext(v -> {
+            synchronized (heldDeliveries) {
+                heldDeliveries.forEach(delivery -> delivery.disposition(Accepted.getInstance(), false));
+                heldDeliveries.clear();
+            }
+        });
+    }
+
+    public int numHeld() {
+        synchronized (heldDeliveries) {
+            return heldDeliveries.size();
+        }
+    }
+
+    public int numReceived() {
+        return numReceived.get();
+    }
+
+    /**
+     * Number of connections open to the broker.
+     */
+    public int numConnections() {
+        return connections.size();
+    }
+
+    /**
+     * Number of links attached to the broker since it started.
+     */
+    public int numAttached() {
+        return numAttached.get();
+    }
+
+    /**
+     * Drop all the connections to the broker.
+     */
+    public void disconnectAll() {
+        context.runOnContext(v -> {
+            List<ProtonConnection> open;
+            synchronized (connections) {
+                open = new ArrayList<>(connections);
+                connections.clear();
+            }
+            open.forEach(ProtonConnection::disconnect);
+        });
+    }
+
     public int numConnected() {
         return numConsumers.get() + numProducers.get();
     }